@@ -0,0 +1,74 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.benchmarks;
+
+import com.microsoft.azure.kusto.ingest.IngestionProperties;
+import com.microsoft.azure.kusto.ingest.ManagedStreamingQueuingPolicy;
+import com.microsoft.azure.kusto.ingest.resources.RankedStorageAccount;
+import com.microsoft.azure.kusto.ingest.resources.RankedStorageAccountSet;
+import com.microsoft.azure.kusto.ingest.utils.IngestionUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The client-side work of ingesting a source: compressing it, deciding between streaming and queued ingestion, and ranking the storage accounts to
+ * upload to. The service calls themselves aren't measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IngestionBenchmark {
+    private static final int ACCOUNTS = 8;
+
+    @Param({"65536", "4194304"})
+    public int size;
+
+    private byte[] csv;
+    private RankedStorageAccountSet accounts;
+    private int result = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        csv = Payloads.csv(size);
+        accounts = new RankedStorageAccountSet();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.addAccount("account" + i);
+        }
+    }
+
+    @Benchmark
+    public ByteArrayInputStream compressStream() {
+        return IngestionUtils.compressStream(new ByteArrayInputStream(csv), false).block();
+    }
+
+    @Benchmark
+    public boolean shouldUseQueuedIngestion() {
+        return ManagedStreamingQueuingPolicy.Default.shouldUseQueuedIngestion(csv.length, false, IngestionProperties.DataFormat.CSV);
+    }
+
+    @Benchmark
+    public List<RankedStorageAccount> rankStorageAccounts() {
+        // Every account fails one in four uploads, so that the ranking has tiers to sort into
+        int next = result++;
+        accounts.addResultToAccount("account" + (next % ACCOUNTS), next % 4 != 0);
+        return accounts.getRankedShuffledAccounts();
+    }
+}
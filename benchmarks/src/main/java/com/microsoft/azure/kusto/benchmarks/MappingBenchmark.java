@@ -0,0 +1,142 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.benchmarks;
+
+import com.microsoft.azure.kusto.data.KustoOperationResult;
+import com.microsoft.azure.kusto.data.KustoResultClassMapper;
+import com.microsoft.azure.kusto.data.KustoResultMapper;
+import com.microsoft.azure.kusto.data.KustoResultSetTable;
+import com.microsoft.azure.kusto.data.KustoType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping rows to objects with {@link KustoResultMapper} and {@link KustoResultClassMapper}, over the first six columns of the mixed-type shapes.
+ * The real, bool and int columns are mapped as objects, as row-based results may hold them in another boxed type than the one the mapper casts to.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MappingBenchmark {
+    @Param({"WIDE", "TALL"})
+    public Payloads.Shape shape;
+
+    @Param({"false", "true"})
+    public boolean columnar;
+
+    private KustoResultSetTable table;
+
+    private final KustoResultMapper<Event> mapper = KustoResultMapper.newBuilder(Event::new)
+            .addColumn(KustoType.LONG, Payloads.columnName(0), true, Event::setId)
+            .addColumn(KustoType.STRING, Payloads.columnName(1), true, Event::setName)
+            .addColumn(KustoType.OBJECT, Payloads.columnName(2), true, (event, value) -> event.setScore(((Number) value).doubleValue()))
+            .addColumn(KustoType.DATETIME_INSTANT, Payloads.columnName(3), true, Event::setTimestamp)
+            .addColumn(KustoType.OBJECT, Payloads.columnName(4), true, (event, value) -> event.setEnabled((Boolean) value))
+            .addColumn(KustoType.OBJECT, Payloads.columnName(5), true, (event, value) -> event.setCount(((Number) value).intValue()))
+            .build();
+
+    private final KustoResultClassMapper<ColumnEvent> classMapper = KustoResultClassMapper.forClass(ColumnEvent.class);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        table = new KustoOperationResult(new ByteArrayInputStream(Payloads.v2Response(shape, false)), "v2", columnar).getPrimaryResults();
+    }
+
+    @Benchmark
+    public List<Event> resultMapperExtractList() {
+        table.beforeFirst();
+        return mapper.extractList(table);
+    }
+
+    @Benchmark
+    public List<ColumnEvent> resultClassMapperExtractList() {
+        table.beforeFirst();
+        return classMapper.extractList(table);
+    }
+
+    public static class Event {
+        private long id;
+        private String name;
+        private double score;
+        private Instant timestamp;
+        private boolean enabled;
+        private int count;
+
+        public void setId(Long id) {
+            this.id = id == null ? 0 : id;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public void setScore(double score) {
+            this.score = score;
+        }
+
+        public void setTimestamp(Instant timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled != null && enabled;
+        }
+
+        public void setCount(Integer count) {
+            this.count = count == null ? 0 : count;
+        }
+    }
+
+    // Named after the synthetic columns, as KustoResultClassMapper binds columns to setters by name
+    public static class ColumnEvent {
+        private long column0;
+        private String column1;
+        private double column2;
+        private Instant column3;
+        private boolean column4;
+        private int column5;
+
+        public void setColumn0(long column0) {
+            this.column0 = column0;
+        }
+
+        public void setColumn1(String column1) {
+            this.column1 = column1;
+        }
+
+        public void setColumn2(double column2) {
+            this.column2 = column2;
+        }
+
+        public void setColumn3(Instant column3) {
+            this.column3 = column3;
+        }
+
+        public void setColumn4(boolean column4) {
+            this.column4 = column4;
+        }
+
+        public void setColumn5(int column5) {
+            this.column5 = column5;
+        }
+    }
+}
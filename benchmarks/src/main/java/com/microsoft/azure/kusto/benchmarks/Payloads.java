@@ -0,0 +1,172 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Random;
+
+/**
+ * Synthetic query responses of various shapes. The values are generated from a fixed seed, so that every run parses the same bytes.
+ */
+public final class Payloads {
+    private static final Instant BASE_TIME = Instant.parse("2024-01-01T00:00:00Z");
+
+    public enum Shape {
+        // Many columns of mixed types, few rows
+        WIDE(200, 500),
+        // Few columns of mixed types, many rows
+        TALL(6, 100_000),
+        // Datetime and timespan columns
+        DATETIME(6, 50_000),
+        // Dynamic (json) columns
+        DYNAMIC(4, 20_000);
+
+        final int columns;
+        final int rows;
+
+        Shape(int columns, int rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+    }
+
+    private Payloads() {
+        // Hide constructor, as this is a static utility class
+    }
+
+    static String columnType(Shape shape, int column) {
+        switch (shape) {
+            case DATETIME:
+                return column % 2 == 0 ? "datetime" : "timespan";
+            case DYNAMIC:
+                return column == 0 ? "long" : "dynamic";
+            default:
+                switch (column % 6) {
+                    case 0:
+                        return "long";
+                    case 1:
+                        return "string";
+                    case 2:
+                        return "real";
+                    case 3:
+                        return "datetime";
+                    case 4:
+                        return "bool";
+                    default:
+                        return "int";
+                }
+        }
+    }
+
+    static String columnName(int column) {
+        return "Column" + column;
+    }
+
+    /**
+     * @param withNulls whether about one in twenty values is null
+     */
+    static byte[] v2Response(Shape shape, boolean withNulls) {
+        StringBuilder json = new StringBuilder();
+        json.append("[{\"FrameType\":\"DataSetHeader\",\"IsProgressive\":false,\"Version\":\"v2.0\"},");
+        json.append("{\"FrameType\":\"DataTable\",\"TableId\":0,\"TableKind\":\"QueryProperties\",\"TableName\":\"@ExtendedProperties\",")
+                .append("\"Columns\":[{\"ColumnName\":\"TableId\",\"ColumnType\":\"int\"},{\"ColumnName\":\"Key\",\"ColumnType\":\"string\"},")
+                .append("{\"ColumnName\":\"Value\",\"ColumnType\":\"dynamic\"}],\"Rows\":[[1,\"Visualization\",\"{\\\"Visualization\\\":null}\"]]},");
+        json.append("{\"FrameType\":\"DataTable\",\"TableId\":1,\"TableKind\":\"PrimaryResult\",\"TableName\":\"PrimaryResult\",\"Columns\":");
+        appendColumns(json, shape, "ColumnType");
+        json.append(",\"Rows\":");
+        appendRows(json, shape, withNulls);
+        json.append("},{\"FrameType\":\"DataSetCompletion\",\"HasErrors\":false,\"Cancelled\":false}]");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] v1Response(Shape shape, boolean withNulls) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"Tables\":[{\"TableName\":\"Table_0\",\"Columns\":");
+        appendColumns(json, shape, "DataType");
+        json.append(",\"Rows\":");
+        appendRows(json, shape, withNulls);
+        json.append("}]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return CSV records of the given total size, the kind of payload that is ingested
+     */
+    static byte[] csv(int size) {
+        Random random = new Random(42);
+        StringBuilder csv = new StringBuilder(size + 128);
+        while (csv.length() < size) {
+            csv.append(random.nextInt(1_000_000)).append(',').append("name-").append(random.nextInt(1000)).append(',')
+                    .append(BASE_TIME.plusSeconds(random.nextInt(86400 * 365))).append(',').append(random.nextDouble()).append('\n');
+        }
+        return csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendColumns(StringBuilder json, Shape shape, String typeProperty) {
+        json.append('[');
+        for (int column = 0; column < shape.columns; column++) {
+            if (column > 0) {
+                json.append(',');
+            }
+            json.append("{\"ColumnName\":\"").append(columnName(column)).append("\",\"").append(typeProperty).append("\":\"")
+                    .append(columnType(shape, column)).append("\"}");
+        }
+        json.append(']');
+    }
+
+    private static void appendRows(StringBuilder json, Shape shape, boolean withNulls) {
+        Random random = new Random(42);
+        json.append('[');
+        for (int row = 0; row < shape.rows; row++) {
+            json.append(row == 0 ? "[" : ",[");
+            for (int column = 0; column < shape.columns; column++) {
+                if (column > 0) {
+                    json.append(',');
+                }
+                appendValue(json, columnType(shape, column), random, withNulls);
+            }
+            json.append(']');
+        }
+        json.append(']');
+    }
+
+    private static void appendValue(StringBuilder json, String type, Random random, boolean withNulls) {
+        if (withNulls && random.nextInt(20) == 0) {
+            json.append("null");
+            return;
+        }
+
+        switch (type) {
+            case "long":
+                json.append(random.nextLong() >>> 20);
+                break;
+            case "int":
+                json.append(random.nextInt());
+                break;
+            case "real":
+                json.append(random.nextDouble() * 1000);
+                break;
+            case "bool":
+                json.append(random.nextBoolean());
+                break;
+            case "datetime":
+                json.append('"').append(BASE_TIME.plusNanos((random.nextLong() >>> 8) / 100 * 100)).append('"');
+                break;
+            case "timespan":
+                // Shorter than a day, which the service writes without a days part
+                Duration duration = Duration.ofNanos((random.nextLong() >>> 18) / 100 * 100);
+                json.append(String.format("\"%02d:%02d:%02d.%07d\"", duration.toHours(), duration.toMinutes() % 60, duration.getSeconds() % 60,
+                        duration.getNano() / 100));
+                break;
+            case "dynamic":
+                json.append("{\"id\":").append(random.nextInt(10_000)).append(",\"tags\":[\"a\",\"b\"],\"nested\":{\"score\":")
+                        .append(random.nextDouble()).append("}}");
+                break;
+            default:
+                json.append("\"value-").append(random.nextInt(100_000)).append('"');
+        }
+    }
+}
@@ -0,0 +1,64 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.benchmarks;
+
+import com.microsoft.azure.kusto.data.KustoOperationResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of whole query responses into {@link KustoOperationResult}s, from a String and from a stream, with row and with columnar storage.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultParsingBenchmark {
+    @Param({"WIDE", "TALL", "DATETIME", "DYNAMIC"})
+    public Payloads.Shape shape;
+
+    @Param({"v1", "v2"})
+    public String version;
+
+    private byte[] response;
+    private String responseString;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        response = "v2".equals(version) ? Payloads.v2Response(shape, true) : Payloads.v1Response(shape, true);
+        responseString = new String(response, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public KustoOperationResult parseString() {
+        return new KustoOperationResult(responseString, version);
+    }
+
+    @Benchmark
+    public KustoOperationResult parseStream() {
+        return new KustoOperationResult(new ByteArrayInputStream(response), version);
+    }
+
+    // Columnar storage only applies to v2 responses; for v1 this measures the same as parseStream
+    @Benchmark
+    public KustoOperationResult parseStreamColumnar() {
+        return new KustoOperationResult(new ByteArrayInputStream(response), version, true);
+    }
+}
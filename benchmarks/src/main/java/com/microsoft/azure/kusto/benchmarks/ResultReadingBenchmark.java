@@ -0,0 +1,88 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.benchmarks;
+
+import com.microsoft.azure.kusto.data.KustoOperationResult;
+import com.microsoft.azure.kusto.data.KustoResultSetTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading parsed results with the typed getters of {@link KustoResultSetTable}. The tables are parsed once, without nulls, so that every typed getter
+ * can be called.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultReadingBenchmark {
+    @Param({"WIDE", "TALL", "DATETIME", "DYNAMIC"})
+    public Payloads.Shape shape;
+
+    @Param({"false", "true"})
+    public boolean columnar;
+
+    private KustoResultSetTable table;
+    private String[] columnTypes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        KustoOperationResult result = new KustoOperationResult(new ByteArrayInputStream(Payloads.v2Response(shape, false)), "v2", columnar);
+        table = result.getPrimaryResults();
+        columnTypes = new String[shape.columns];
+        for (int column = 0; column < shape.columns; column++) {
+            columnTypes[column] = Payloads.columnType(shape, column);
+        }
+    }
+
+    @Benchmark
+    public void typedGetters(Blackhole blackhole) {
+        table.beforeFirst();
+        while (table.next()) {
+            for (int column = 0; column < columnTypes.length; column++) {
+                switch (columnTypes[column]) {
+                    case "long":
+                        blackhole.consume(table.getLong(column));
+                        break;
+                    case "int":
+                        blackhole.consume(table.getInt(column));
+                        break;
+                    case "real":
+                        blackhole.consume(table.getDouble(column));
+                        break;
+                    case "bool":
+                        blackhole.consume(table.getBoolean(column));
+                        break;
+                    case "datetime":
+                        blackhole.consume(table.getKustoDateTime(column));
+                        break;
+                    case "timespan":
+                        blackhole.consume(table.getDuration(column));
+                        break;
+                    case "dynamic":
+                        blackhole.consume(table.getJSONObject(column));
+                        break;
+                    default:
+                        blackhole.consume(table.getString(column));
+                }
+            }
+        }
+    }
+}
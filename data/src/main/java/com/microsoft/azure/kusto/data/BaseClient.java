@@ -23,6 +23,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.microsoft.azure.kusto.data.exceptions.DataServiceException;
 import com.microsoft.azure.kusto.data.exceptions.DataWebException;
 import com.microsoft.azure.kusto.data.exceptions.ExceptionUtils;
+import com.microsoft.azure.kusto.data.exceptions.KustoServiceQueryError;
 import com.microsoft.azure.kusto.data.exceptions.OneApiError;
 import com.microsoft.azure.kusto.data.exceptions.ThrottleException;
 import com.microsoft.azure.kusto.data.exceptions.WebException;
@@ -69,6 +70,38 @@ public abstract class BaseClient implements Client, StreamingClient {
                 });
     }
 
+    /**
+     * Like {@link #postAsync(HttpRequest, long)}, but a successful response is parsed into a {@link KustoOperationResult} while it is received, rather
+     * than being aggregated into a String first. Error responses are still read as a String, as they are small.
+     *
+     * @param properties the properties the request was sent with, whose client-side result options are applied when parsing the response
+     */
+    protected Mono<KustoOperationResult> postToOperationResultAsync(HttpRequest request, long timeoutMs, String version,
+            ClientRequestProperties properties) {
+        return httpClient.send(request, getContextTimeout(timeoutMs))
+                .flatMap(response -> {
+                    if (response.getStatusCode() == HttpStatus.OK) {
+                        return NonBlockingResponseParser.parse(response.getBody(), response.getHeaders().getValue(HttpHeaderName.CONTENT_ENCODING),
+                                version, properties)
+                                .doFinally(ignore -> response.close());
+                    }
+
+                    return Utils.getResponseBody(response)
+                            .<KustoOperationResult>map(responseBody -> {
+                                if (response.getStatusCode() == HttpStatus.TOO_MANY_REQS) {
+                                    throw new ThrottleException(response.getRequest().getUrl().toString());
+                                }
+                                throw createExceptionFromResponse(response.getRequest().getUrl().toString(), response, null, responseBody);
+                            }).doFinally(ignore -> response.close());
+                })
+                .onErrorMap(e -> {
+                    if (e instanceof DataServiceException || e instanceof KustoServiceQueryError) {
+                        return e;
+                    }
+                    return ExceptionUtils.createExceptionOnPost((Exception) e, request.getUrl(), "async");
+                });
+    }
+
     protected Mono<InputStream> postToStreamingOutputAsync(HttpRequest request, long timeoutMs,
             int currentRedirectCounter, int maxRedirectCount) {
         ResponseState state = new ResponseState();
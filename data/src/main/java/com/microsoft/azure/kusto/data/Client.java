@@ -5,8 +5,11 @@ package com.microsoft.azure.kusto.data;
 
 import com.microsoft.azure.kusto.data.exceptions.DataClientException;
 import com.microsoft.azure.kusto.data.exceptions.DataServiceException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 /**
  * A client for interacting with Kusto.
  */
@@ -153,4 +156,50 @@ public interface Client {
      * @return A {@link Mono} emitting the result of the query as a JSON string.
      */
     Mono<String> executeToJsonResultAsync(String database, String command, ClientRequestProperties properties);
+
+    /**
+     * Executes a query against the default database and emits the rows of its primary result one at a time.
+     *
+     * @param query The query to execute.
+     * @return A {@link Flux} emitting the rows of the primary result tables. See {@link #executeQueryStreamingRows(String, String, ClientRequestProperties)}.
+     */
+    default Flux<KustoResultRow> executeQueryStreamingRows(String query) {
+        return executeQueryStreamingRows(null, query);
+    }
+
+    /**
+     * Executes a query against the specified database and emits the rows of its primary result one at a time.
+     *
+     * @param database The name of the database.
+     * @param query The query to execute.
+     * @return A {@link Flux} emitting the rows of the primary result tables. See {@link #executeQueryStreamingRows(String, String, ClientRequestProperties)}.
+     */
+    default Flux<KustoResultRow> executeQueryStreamingRows(String database, String query) {
+        return executeQueryStreamingRows(database, query, null);
+    }
+
+    /**
+     * Executes a query against the specified database and emits the rows of its primary result one at a time, as they are read from the response.
+     * The query is sent with {@link ClientRequestProperties#OPTION_RESULTS_PROGRESSIVE_ENABLED} set, and the response is parsed as it arrives, so
+     * memory use doesn't grow with the number of rows, and reading from the network is paced by the subscriber's demand.
+     * Rows of all primary result tables are emitted in the order the service sent them; use {@link KustoResultRow#getTableId()} to tell them apart.
+     * Errors reported by the service in the middle of the response are emitted as errors after the rows that preceded them.
+     *
+     * The default implementation, for clients that don't stream rows, executes the query with {@link #executeQueryAsync(String, String,
+     * ClientRequestProperties)} and emits the rows of its primary result tables once the whole result was read.
+     *
+     * @param database The name of the database, or null for the default database.
+     * @param query The query to execute.
+     * @param properties Additional request properties.
+     * @return A {@link Flux} emitting the rows of the primary result tables.
+     */
+    default Flux<KustoResultRow> executeQueryStreamingRows(String database, String query, ClientRequestProperties properties) {
+        return executeQueryAsync(database, query, properties).flatMapMany(result -> {
+            List<KustoResultSetTable> tables = result.getResultTables();
+            // Like KustoOperationResult.getPrimaryResults, a single table is the primary result whatever its kind
+            return Flux.fromIterable(tables)
+                    .filter(table -> tables.size() == 1 || table.getTableKind() == WellKnownDataSet.PrimaryResult)
+                    .concatMap(table -> Flux.fromIterable(table.getData()).map(values -> new KustoResultRow(table, values)));
+        });
+    }
 }
@@ -40,6 +40,42 @@ public class ClientFactory {
         return new ClientImpl(csb, properties);
     }
 
+    /**
+     * Creates a new {@linkplain Client} instance with the given connection string, which answers repeated queries from a client-side cache.
+     * The underlying HTTP client is customized with the given properties.
+     *
+     * @param csb the connection string builder
+     * @param properties HTTP client properties
+     * @param queryResultCache the cache of query results, see {@link QueryResultCache}
+     * @return a fully constructed {@linkplain Client} instance
+     * @throws URISyntaxException if the cluster URL is invalid
+     */
+    public static Client createClient(ConnectionStringBuilder csb, HttpClientProperties properties, QueryResultCache queryResultCache)
+            throws URISyntaxException {
+        ClientImpl client = new ClientImpl(csb, properties);
+        client.setQueryResultCache(queryResultCache);
+        return client;
+    }
+
+    /**
+     * Creates a new {@linkplain Client} instance with the given connection string, which can coalesce identical queries: a query (same database,
+     * query text, parameters and options) that is sent while an identical one is in flight shares its response instead of sending its own request.
+     * Every caller still receives its own {@link KustoOperationResult}, but their rows are shared and must not be modified. Management commands are
+     * never coalesced. The underlying HTTP client is customized with the given properties.
+     *
+     * @param csb the connection string builder
+     * @param properties HTTP client properties
+     * @param requestCoalescingEnabled whether to coalesce identical concurrent queries
+     * @return a fully constructed {@linkplain Client} instance
+     * @throws URISyntaxException if the cluster URL is invalid
+     */
+    public static Client createClient(ConnectionStringBuilder csb, HttpClientProperties properties, boolean requestCoalescingEnabled)
+            throws URISyntaxException {
+        ClientImpl client = new ClientImpl(csb, properties);
+        client.setRequestCoalescingEnabled(requestCoalescingEnabled);
+        return client;
+    }
+
     /**
      * Creates a new {@linkplain Client} instance with the given connection string. The underlying HTTP client is
      * customized with the given properties.
@@ -9,6 +9,7 @@ import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 import org.jetbrains.annotations.NotNull;
@@ -34,8 +35,8 @@ import com.microsoft.azure.kusto.data.instrumentation.MonitoredActivity;
 import com.microsoft.azure.kusto.data.instrumentation.TraceableAttributes;
 import com.microsoft.azure.kusto.data.req.KustoRequest;
 import com.microsoft.azure.kusto.data.req.KustoRequestContext;
-import com.microsoft.azure.kusto.data.res.JsonResult;
 
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 import reactor.util.function.Tuple2;
@@ -54,6 +55,10 @@ class ClientImpl extends BaseClient {
     private final String defaultDatabaseName;
     private final ClientDetails clientDetails;
     private boolean endpointValidated = false;
+    private volatile QueryResultCache queryResultCache = null;
+    private volatile RequestCoalescer requestCoalescer = null;
+    // Keeps the cached results of this client apart from those of other clients, which may authenticate as other principals
+    private final String callerId = UUID.randomUUID().toString();
 
     public ClientImpl(ConnectionStringBuilder csb) throws URISyntaxException {
         this(csb, HttpClientProperties.builder().build());
@@ -100,9 +105,44 @@ class ClientImpl extends BaseClient {
 
     @Override
     public Mono<KustoOperationResult> executeQueryAsync(String database, String query, ClientRequestProperties properties) {
+        QueryResultCache cache = queryResultCache;
+        if (cache != null) {
+            return cache.getOrExecute(callerId, clusterUrl, database, query, properties,
+                    () -> executeAsync(database, query, properties, CommandType.QUERY));
+        }
+
         return executeAsync(database, query, properties, CommandType.QUERY);
     }
 
+    /**
+     * Sets a client-side cache that answers repeated queries of this client, see {@link QueryResultCache}. A cache may be set on several clients,
+     * but each of them only receives the results of its own queries.
+     *
+     * @param queryResultCache the cache, or null to send every query to the service
+     */
+    public void setQueryResultCache(QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * Sets whether identical queries (same database, query text, parameters and options) that are sent while one of them is in flight share its
+     * response instead of each sending its own request. Every caller still receives its own {@link KustoOperationResult}, but their rows are shared
+     * and must not be modified. Management commands are never coalesced, as they may have side effects.
+     *
+     * @param requestCoalescingEnabled whether to coalesce identical concurrent queries. Defaults to false.
+     */
+    public void setRequestCoalescingEnabled(boolean requestCoalescingEnabled) {
+        this.requestCoalescer = requestCoalescingEnabled ? new RequestCoalescer() : null;
+    }
+
+    public boolean isRequestCoalescingEnabled() {
+        return requestCoalescer != null;
+    }
+
     @Override
     public KustoOperationResult executeMgmt(String command) {
         return executeMgmt(defaultDatabaseName, command);
@@ -167,12 +207,25 @@ class ClientImpl extends BaseClient {
     }
 
     private Mono<KustoOperationResult> executeImplAsync(KustoRequest kr) {
+        RequestCoalescer coalescer = requestCoalescer;
+        if (coalescer != null && kr.getCommandType() == CommandType.QUERY) {
+            String key = RequestCoalescer.createKey(callerId, clusterUrl, kr.getDatabase(), kr.getCommand(), kr.getProperties());
+            return coalescer.execute(key, () -> sendAsync(kr));
+        }
+
+        return sendAsync(kr);
+    }
+
+    private Mono<KustoOperationResult> sendAsync(KustoRequest kr) {
         String clusterEndpoint = String.format(kr.getCommandType().getEndpoint(), clusterUrl);
-        return executeWithTimeout(kr, ".executeImplAsync")
-                .publishOn(Schedulers.boundedElastic())
-                .map(response -> {
-                    JsonResult jsonResult = new JsonResult(response, clusterEndpoint);
-                    return new KustoOperationResult(jsonResult.getResult(), jsonResult.getEndpoint().endsWith("v2/rest/query") ? "v2" : "v1");
+        String version = clusterEndpoint.endsWith("v2/rest/query") ? "v2" : "v1";
+        return prepareRequestAsync(kr)
+                .flatMap(requestContext -> {
+                    ClientRequestProperties properties = kr.getProperties() == null ? new ClientRequestProperties() : kr.getProperties();
+                    long timeoutMs = determineTimeout(properties, kr.getCommandType(), clusterUrl);
+                    return MonitoredActivity.wrap(
+                            postToOperationResultAsync(requestContext.getHttpRequest(), timeoutMs, version, properties),
+                            kr.getCommandType().getActivityTypeSuffix().concat(".executeImplAsync"));
                 })
                 .onErrorMap(KustoServiceQueryError.class, e -> new DataServiceException(clusterEndpoint, e.getMessage(), e, e.isPermanent()))
                 .onErrorMap(Exception.class, e -> {
@@ -410,6 +463,48 @@ class ClientImpl extends BaseClient {
                         "ClientImpl.executeStreamingQuery", updateAndGetExecuteTracingAttributes(kr.getDatabase(), properties)));
     }
 
+    @Override
+    public Flux<KustoResultRow> executeQueryStreamingRows(String query) {
+        return executeQueryStreamingRows(defaultDatabaseName, query);
+    }
+
+    @Override
+    public Flux<KustoResultRow> executeQueryStreamingRows(String database, String query) {
+        return executeQueryStreamingRows(database, query, null);
+    }
+
+    @Override
+    public Flux<KustoResultRow> executeQueryStreamingRows(String database, String query, ClientRequestProperties properties) {
+        return Flux.defer(() -> {
+            ClientRequestProperties requestProperties = properties == null ? new ClientRequestProperties() : properties.copy();
+            requestProperties.setOption(ClientRequestProperties.OPTION_RESULTS_PROGRESSIVE_ENABLED, true);
+            KustoRequest kr = new KustoRequest(query, database == null ? defaultDatabaseName : database, requestProperties, CommandType.QUERY);
+            String clusterEndpoint = String.format(kr.getCommandType().getEndpoint(), clusterUrl);
+
+            return executeStreamingQueryAsync(kr)
+                    .flatMapMany(stream -> Flux.using(
+                            () -> new KustoResultRowReader(stream),
+                            reader -> Flux.fromIterable(() -> reader),
+                            reader -> {
+                                try {
+                                    reader.close();
+                                } catch (IOException e) {
+                                    LOGGER.debug("executeQueryStreamingRows: Error while closing the response stream.", e);
+                                }
+                            })
+                            // Reading rows blocks on the network, so requests for more rows are served on a worker rather than on the caller's thread
+                            .subscribeOn(Schedulers.boundedElastic()))
+                    .onErrorMap(KustoServiceQueryError.class, e -> new DataServiceException(clusterEndpoint, e.getMessage(), e, e.isPermanent()))
+                    .onErrorMap(Exception.class, e -> {
+                        if (e instanceof DataServiceException || e instanceof DataClientException) {
+                            return e;
+                        }
+
+                        return new DataClientException(clusterEndpoint, ExceptionUtils.getMessageEx(e), e);
+                    });
+        });
+    }
+
     // Package-private for testability. The 30s client-side grace is applied once in BaseClient.getContextTimeout
     // (via EXTRA_TIMEOUT_FOR_CLIENT_SIDE); do not add it here as well or it will be applied twice.
     long determineTimeout(ClientRequestProperties properties, CommandType commandType, String clusterUrl) {
@@ -28,6 +28,7 @@ import com.microsoft.azure.kusto.data.format.CslRealFormat;
 import com.microsoft.azure.kusto.data.format.CslTimespanFormat;
 import com.microsoft.azure.kusto.data.format.CslUuidFormat;
 import com.microsoft.azure.kusto.data.instrumentation.TraceableAttributes;
+import reactor.core.scheduler.Scheduler;
 
 /*
  * Kusto supports attaching various properties to client requests (such as queries and control commands).
@@ -42,6 +43,10 @@ public class ClientRequestProperties implements Serializable, TraceableAttribute
 
     // If set and positive, indicates the maximum number of HTTP redirects that the client will process. [Integer]
     public static final String OPTION_CLIENT_MAX_REDIRECT_COUNT = "client_max_redirect_count";
+    // If set to true, the service returns query results progressively (TableHeader, TableFragment and TableCompletion frames). [Boolean]
+    public static final String OPTION_RESULTS_PROGRESSIVE_ENABLED = "results_progressive_enabled";
+    // If set, the maximum age of a cached query result that may be returned, by the service and by a client-side QueryResultCache. [Timespan]
+    public static final String OPTION_QUERY_RESULTS_CACHE_MAX_AGE = "query_results_cache_max_age";
     /*
      * Matches valid Kusto Timespans: Optionally negative, optional number of days followed by a period, optionally up to 24 as hours followed by a colon,
      * followed by up to 59 minutes (required), followed by up to 59 seconds (required), followed by optional subseconds prepended by a period. For example:
@@ -58,6 +63,8 @@ public class ClientRequestProperties implements Serializable, TraceableAttribute
     private String clientRequestId;
     private String application;
     private String user;
+    private boolean columnarResults = false;
+    private transient Scheduler resultDecodeScheduler = null;
 
     public ClientRequestProperties() {
         parameters = new HashMap<>();
@@ -347,10 +354,66 @@ public class ClientRequestProperties implements Serializable, TraceableAttribute
         this.user = user;
     }
 
+    /**
+     * Gets whether the tables of the query result are stored column by column.
+     * @return Whether columnar result storage is enabled.
+     */
+    public boolean isColumnarResults() {
+        return columnarResults;
+    }
+
+    /**
+     * Sets whether the tables of the query result are stored column by column, with long, int, real and bool columns kept in primitive arrays.
+     * This reduces the memory held by large results and lets the primitive getters of {@link KustoResultSetTable} read values without boxing.
+     * Real values are then returned as {@link Double} rather than {@link java.math.BigDecimal}.
+     * Applies to v2 query responses only. This is a client-side setting and isn't sent to the service.
+     * @param columnarResults Whether to enable columnar result storage.
+     */
+    public void setColumnarResults(boolean columnarResults) {
+        this.columnarResults = columnarResults;
+    }
+
+    /**
+     * Gets the scheduler the tables of the query result are converted on.
+     * @return The scheduler, or null if the result is converted on the thread reading the response.
+     */
+    public Scheduler getResultDecodeScheduler() {
+        return resultDecodeScheduler;
+    }
+
+    /**
+     * Sets a scheduler to convert the tables of the query result on, for example {@link reactor.core.scheduler.Schedulers#parallel()}, or
+     * {@code Schedulers.fromExecutorService(ForkJoinPool.commonPool())}. Tables are converted concurrently, and the rows of large tables are converted
+     * in concurrent ranges; the order of the tables and of their rows is kept. Ignored when columnar results are enabled.
+     * The scheduler should not be the one the response is read on, as that thread waits for the conversions to complete.
+     * This is a client-side setting and isn't sent to the service.
+     * @param resultDecodeScheduler The scheduler, or null to convert the result on the thread reading the response.
+     */
+    public void setResultDecodeScheduler(Scheduler resultDecodeScheduler) {
+        this.resultDecodeScheduler = resultDecodeScheduler;
+    }
+
+    // A copy that can be changed without changing the properties the caller passed in
+    ClientRequestProperties copy() {
+        ClientRequestProperties copy = new ClientRequestProperties();
+        copy.options.putAll(options);
+        copy.parameters.putAll(parameters);
+        copy.clientRequestId = clientRequestId;
+        copy.application = application;
+        copy.user = user;
+        copy.columnarResults = columnarResults;
+        copy.resultDecodeScheduler = resultDecodeScheduler;
+        return copy;
+    }
+
     Iterator<Map.Entry<String, Object>> getOptions() {
         return options.entrySet().iterator();
     }
 
+    Iterator<Map.Entry<String, Object>> getParameters() {
+        return parameters.entrySet().iterator();
+    }
+
     public Map<String, String> getTracingAttributes() {
         Map<String, String> attributes = new HashMap<>();
         attributes.put("clientRequestId", getClientRequestId());
@@ -0,0 +1,563 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.data;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Column-oriented storage for the rows of a {@link KustoResultSetTable}.
+ * Columns of type long, int, real and bool are kept in primitive arrays with a null bitmap, so that reading them with the primitive getters of
+ * {@link KustoResultSetTable} doesn't box. Other columns are kept as objects, converted the same way as in row storage.
+ * Real values are kept as doubles rather than as exact {@link BigDecimal}s. Datetime and timespan columns are parsed once, when the rows are read, to
+ * nanoseconds (since the epoch for datetimes); their values are formatted back to the service's layout when they are read as objects, and the few
+ * values that formatting wouldn't reproduce exactly keep the service's original string. Long values that fit in an int are boxed as Integers, like the
+ * json parser does in row storage, so that the object and int getters return the same as they do there.
+ * <p>
+ * The class exposes the rows as a read-only {@code List<List<Object>>}, whose rows are views that box values on access, so that code written against
+ * {@link KustoResultSetTable#getData()} keeps working.
+ */
+class ColumnarRows extends AbstractList<List<Object>> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ColumnVector[] vectors;
+    private int rowCount = 0;
+
+    ColumnarRows(KustoResultColumn[] columns) {
+        vectors = new ColumnVector[columns == null ? 0 : columns.length];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = ColumnVector.forType(columns[i].getColumnType());
+        }
+    }
+
+    /**
+     * Appends a row read from a v2 response.
+     *
+     * @param parser      a parser positioned on the row's START_ARRAY token. When the method returns, it is positioned on the row's END_ARRAY token.
+     * @param frameParser used to read values that aren't stored as primitives
+     */
+    void readRow(JsonParser parser, KustoV2FrameParser frameParser) throws IOException {
+        int column = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (column >= vectors.length) {
+                throw new JsonParseException(parser, String.format("Row %d has more values than the table has columns", rowCount));
+            }
+            vectors[column] = vectors[column].append(rowCount, parser, token, frameParser);
+            column++;
+        }
+        if (column != vectors.length) {
+            throw new JsonParseException(parser, String.format("Row %d has %d values but the table has %d columns", rowCount, column, vectors.length));
+        }
+        rowCount++;
+    }
+
+    // Releases the spare capacity of the column arrays once all rows were read
+    void trimToSize() {
+        for (ColumnVector vector : vectors) {
+            vector.trimToSize(rowCount);
+        }
+    }
+
+    @Override
+    public List<Object> get(int index) {
+        if (index < 0 || index >= rowCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + rowCount);
+        }
+        return new Row(index);
+    }
+
+    @Override
+    public int size() {
+        return rowCount;
+    }
+
+    /**
+     * A view of a single row. The primitive getters read from the column arrays without boxing.
+     */
+    class Row extends AbstractList<Object> {
+        private final int rowIndex;
+
+        Row(int rowIndex) {
+            this.rowIndex = rowIndex;
+        }
+
+        @Override
+        public Object get(int columnIndex) {
+            return vectors[columnIndex].get(rowIndex);
+        }
+
+        @Override
+        public int size() {
+            return vectors.length;
+        }
+
+        long getLong(int columnIndex) {
+            return vectors[columnIndex].getLong(rowIndex);
+        }
+
+        int getInt(int columnIndex) {
+            return vectors[columnIndex].getInt(rowIndex);
+        }
+
+        double getDouble(int columnIndex) {
+            return vectors[columnIndex].getDouble(rowIndex);
+        }
+
+        boolean getBoolean(int columnIndex) {
+            return vectors[columnIndex].getBoolean(rowIndex);
+        }
+
+        boolean isNull(int columnIndex) {
+            return vectors[columnIndex].nulls.get(rowIndex);
+        }
+
+        // Whether the column is a datetime or timespan column stored as nanoseconds
+        boolean hasNanos(int columnIndex) {
+            return vectors[columnIndex] instanceof NanosVector;
+        }
+
+        long getNanos(int columnIndex) {
+            return ((NanosVector) vectors[columnIndex]).getNanos(rowIndex);
+        }
+    }
+
+    abstract static class ColumnVector {
+        final BitSet nulls = new BitSet();
+
+        static ColumnVector forType(String columnType) {
+            switch (columnType.toLowerCase()) {
+                case "long":
+                case "int64":
+                    return new LongVector();
+                case "int":
+                case "int32":
+                    return new IntVector();
+                case "real":
+                case "double":
+                    return new DoubleVector();
+                case "bool":
+                case "boolean":
+                    return new BooleanVector();
+                case "datetime":
+                case "date":
+                    return new DateTimeVector();
+                case "timespan":
+                case "time":
+                    return new TimespanVector();
+                default:
+                    return new ObjectVector(INITIAL_CAPACITY);
+            }
+        }
+
+        /**
+         * Appends the value the parser is positioned on.
+         *
+         * @return this vector, or an {@link ObjectVector} holding all values of the column if the value doesn't fit the column's primitive type
+         */
+        ColumnVector append(int rowIndex, JsonParser parser, JsonToken token, KustoV2FrameParser frameParser) throws IOException {
+            if (token == JsonToken.VALUE_NULL) {
+                nulls.set(rowIndex);
+                appendNull(rowIndex);
+                return this;
+            }
+            if (!appendValue(rowIndex, parser, token)) {
+                ObjectVector promoted = toObjectVector(rowIndex);
+                return promoted.append(rowIndex, parser, token, frameParser);
+            }
+            return this;
+        }
+
+        abstract void appendNull(int rowIndex);
+
+        // Returns false if the value can't be stored in this vector
+        abstract boolean appendValue(int rowIndex, JsonParser parser, JsonToken token) throws IOException;
+
+        abstract Object getNonNull(int rowIndex);
+
+        abstract void trimToSize(int size);
+
+        Object get(int rowIndex) {
+            return nulls.get(rowIndex) ? null : getNonNull(rowIndex);
+        }
+
+        // The defaults follow the conversions of the row-based getters of KustoResultSetTable
+        long getLong(int rowIndex) {
+            Object obj = get(rowIndex);
+            if (obj instanceof Integer) {
+                return ((Integer) obj).longValue();
+            }
+            return (long) obj;
+        }
+
+        int getInt(int rowIndex) {
+            return (int) get(rowIndex);
+        }
+
+        double getDouble(int rowIndex) {
+            Object obj = get(rowIndex);
+            if (obj instanceof BigDecimal) {
+                return ((BigDecimal) obj).doubleValue();
+            }
+            return (double) obj;
+        }
+
+        boolean getBoolean(int rowIndex) {
+            return (boolean) get(rowIndex);
+        }
+
+        void checkNotNull(int rowIndex) {
+            if (nulls.get(rowIndex)) {
+                throw new NullPointerException(String.format("Value at row %d is null", rowIndex));
+            }
+        }
+
+        ObjectVector toObjectVector(int rowCount) {
+            ObjectVector objects = new ObjectVector(Math.max(INITIAL_CAPACITY, rowCount * 2));
+            for (int i = 0; i < rowCount; i++) {
+                objects.values[i] = get(i);
+            }
+            objects.nulls.or(nulls);
+            return objects;
+        }
+    }
+
+    static class LongVector extends ColumnVector {
+        private long[] values = new long[INITIAL_CAPACITY];
+
+        @Override
+        void appendNull(int rowIndex) {
+            ensureCapacity(rowIndex);
+        }
+
+        @Override
+        boolean appendValue(int rowIndex, JsonParser parser, JsonToken token) throws IOException {
+            if (token != JsonToken.VALUE_NUMBER_INT || parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                return false;
+            }
+            ensureCapacity(rowIndex);
+            values[rowIndex] = parser.getLongValue();
+            return true;
+        }
+
+        private void ensureCapacity(int rowIndex) {
+            if (rowIndex >= values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+        }
+
+        @Override
+        Object getNonNull(int rowIndex) {
+            long value = values[rowIndex];
+            if ((int) value == value) {
+                return (int) value;
+            }
+            return value;
+        }
+
+        @Override
+        long getLong(int rowIndex) {
+            checkNotNull(rowIndex);
+            return values[rowIndex];
+        }
+
+        @Override
+        int getInt(int rowIndex) {
+            checkNotNull(rowIndex);
+            long value = values[rowIndex];
+            if ((int) value != value) {
+                // Row storage fails the same way, as the value is boxed as a Long
+                throw new ClassCastException(String.format("Value at row %d doesn't fit in an int: %d", rowIndex, value));
+            }
+            return (int) value;
+        }
+
+        @Override
+        void trimToSize(int size) {
+            values = Arrays.copyOf(values, size);
+        }
+    }
+
+    static class IntVector extends ColumnVector {
+        private int[] values = new int[INITIAL_CAPACITY];
+
+        @Override
+        void appendNull(int rowIndex) {
+            ensureCapacity(rowIndex);
+        }
+
+        @Override
+        boolean appendValue(int rowIndex, JsonParser parser, JsonToken token) throws IOException {
+            if (token != JsonToken.VALUE_NUMBER_INT || parser.getNumberType() != JsonParser.NumberType.INT) {
+                return false;
+            }
+            ensureCapacity(rowIndex);
+            values[rowIndex] = parser.getIntValue();
+            return true;
+        }
+
+        private void ensureCapacity(int rowIndex) {
+            if (rowIndex >= values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+        }
+
+        @Override
+        Object getNonNull(int rowIndex) {
+            return values[rowIndex];
+        }
+
+        @Override
+        int getInt(int rowIndex) {
+            checkNotNull(rowIndex);
+            return values[rowIndex];
+        }
+
+        @Override
+        long getLong(int rowIndex) {
+            checkNotNull(rowIndex);
+            return values[rowIndex];
+        }
+
+        @Override
+        void trimToSize(int size) {
+            values = Arrays.copyOf(values, size);
+        }
+    }
+
+    static class DoubleVector extends ColumnVector {
+        private double[] values = new double[INITIAL_CAPACITY];
+
+        @Override
+        void appendNull(int rowIndex) {
+            ensureCapacity(rowIndex);
+        }
+
+        @Override
+        boolean appendValue(int rowIndex, JsonParser parser, JsonToken token) throws IOException {
+            double value;
+            if (token == JsonToken.VALUE_NUMBER_FLOAT || token == JsonToken.VALUE_NUMBER_INT) {
+                value = parser.getDoubleValue();
+            } else if (token == JsonToken.VALUE_STRING) {
+                // The service writes non-finite reals as strings ("NaN", "Infinity", "-Infinity")
+                try {
+                    value = Double.parseDouble(parser.getText());
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            } else {
+                return false;
+            }
+            ensureCapacity(rowIndex);
+            values[rowIndex] = value;
+            return true;
+        }
+
+        private void ensureCapacity(int rowIndex) {
+            if (rowIndex >= values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+        }
+
+        @Override
+        Object getNonNull(int rowIndex) {
+            return values[rowIndex];
+        }
+
+        @Override
+        double getDouble(int rowIndex) {
+            checkNotNull(rowIndex);
+            return values[rowIndex];
+        }
+
+        @Override
+        void trimToSize(int size) {
+            values = Arrays.copyOf(values, size);
+        }
+    }
+
+    static class BooleanVector extends ColumnVector {
+        private final BitSet values = new BitSet();
+
+        @Override
+        void appendNull(int rowIndex) {
+        }
+
+        @Override
+        boolean appendValue(int rowIndex, JsonParser parser, JsonToken token) {
+            if (token != JsonToken.VALUE_TRUE && token != JsonToken.VALUE_FALSE) {
+                return false;
+            }
+            values.set(rowIndex, token == JsonToken.VALUE_TRUE);
+            return true;
+        }
+
+        @Override
+        Object getNonNull(int rowIndex) {
+            return values.get(rowIndex);
+        }
+
+        @Override
+        boolean getBoolean(int rowIndex) {
+            checkNotNull(rowIndex);
+            return values.get(rowIndex);
+        }
+
+        @Override
+        void trimToSize(int size) {
+        }
+    }
+
+    abstract static class NanosVector extends ColumnVector {
+        private long[] values = new long[INITIAL_CAPACITY];
+        // The service's strings of the values that format() doesn't reproduce, allocated once there is one
+        private String[] originals;
+
+        @Override
+        void appendNull(int rowIndex) {
+            ensureCapacity(rowIndex);
+        }
+
+        @Override
+        boolean appendValue(int rowIndex, JsonParser parser, JsonToken token) throws IOException {
+            if (token != JsonToken.VALUE_STRING) {
+                return false;
+            }
+            String text = parser.getText();
+            long nanos = parse(text);
+            if (nanos == KustoDateTimeParser.NOT_PARSED) {
+                return false;
+            }
+            ensureCapacity(rowIndex);
+            values[rowIndex] = nanos;
+            if (!isFormattedAs(text, nanos)) {
+                if (originals == null) {
+                    originals = new String[values.length];
+                }
+                originals[rowIndex] = text;
+            }
+            return true;
+        }
+
+        // Returns KustoDateTimeParser.NOT_PARSED if the value can't be stored as nanoseconds
+        abstract long parse(String value);
+
+        abstract String format(long nanos);
+
+        // Whether format() returns the value as the service wrote it
+        boolean isFormattedAs(String value, long nanos) {
+            return format(nanos).equals(value);
+        }
+
+        private void ensureCapacity(int rowIndex) {
+            if (rowIndex >= values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+                if (originals != null) {
+                    originals = Arrays.copyOf(originals, values.length);
+                }
+            }
+        }
+
+        @Override
+        Object getNonNull(int rowIndex) {
+            if (originals != null && originals[rowIndex] != null) {
+                return originals[rowIndex];
+            }
+            return format(values[rowIndex]);
+        }
+
+        long getNanos(int rowIndex) {
+            checkNotNull(rowIndex);
+            return values[rowIndex];
+        }
+
+        @Override
+        void trimToSize(int size) {
+            values = Arrays.copyOf(values, size);
+            if (originals != null) {
+                originals = Arrays.copyOf(originals, size);
+            }
+        }
+    }
+
+    static class DateTimeVector extends NanosVector {
+        @Override
+        long parse(String value) {
+            return KustoDateTimeParser.tryParseEpochNanos(value);
+        }
+
+        @Override
+        String format(long nanos) {
+            return KustoDateTimeParser.formatEpochNanos(nanos);
+        }
+
+        // The service's usual layout, with 7 fraction digits, is checked without formatting the value
+        @Override
+        boolean isFormattedAs(String value, long nanos) {
+            if (value.length() == 28 && value.charAt(10) == 'T' && value.charAt(27) == 'Z') {
+                return true;
+            }
+            return super.isFormattedAs(value, nanos);
+        }
+    }
+
+    static class TimespanVector extends NanosVector {
+        @Override
+        long parse(String value) {
+            return KustoDateTimeParser.tryParseTimespanNanos(value);
+        }
+
+        @Override
+        String format(long nanos) {
+            return KustoDateTimeParser.formatTimespanNanos(nanos);
+        }
+    }
+
+    static class ObjectVector extends ColumnVector {
+        private Object[] values;
+
+        ObjectVector(int capacity) {
+            values = new Object[capacity];
+        }
+
+        @Override
+        ColumnVector append(int rowIndex, JsonParser parser, JsonToken token, KustoV2FrameParser frameParser) throws IOException {
+            if (rowIndex >= values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[rowIndex] = frameParser.readValue(parser, token);
+            if (values[rowIndex] == null) {
+                nulls.set(rowIndex);
+            }
+            return this;
+        }
+
+        @Override
+        void appendNull(int rowIndex) {
+        }
+
+        @Override
+        boolean appendValue(int rowIndex, JsonParser parser, JsonToken token) {
+            return true;
+        }
+
+        @Override
+        Object getNonNull(int rowIndex) {
+            return values[rowIndex];
+        }
+
+        @Override
+        void trimToSize(int size) {
+            values = Arrays.copyOf(values, size);
+        }
+    }
+}
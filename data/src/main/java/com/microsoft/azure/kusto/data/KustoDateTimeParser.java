@@ -0,0 +1,334 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.data;
+
+import com.microsoft.azure.kusto.data.format.CslTimespanFormat;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+
+/**
+ * Parses the datetime and timespan values of query results without going through {@link DateTimeFormatter}.
+ * The service writes datetimes as {@code yyyy-MM-ddTHH:mm:ss.fffffffZ} and timespans as {@code [-][d.]hh:mm:ss[.fffffff]}; values in these layouts are
+ * parsed by hand, without allocating intermediate objects. Any other value falls back to the formatter-based parsing used before.
+ */
+final class KustoDateTimeParser {
+    /**
+     * Returned by the {@code tryParse} methods when the value doesn't have the fixed layout or is out of the supported range.
+     */
+    static final long NOT_PARSED = Long.MIN_VALUE;
+
+    private static final DateTimeFormatter kustoDateTimeFormatter = new DateTimeFormatterBuilder().parseCaseInsensitive()
+            .append(DateTimeFormatter.ISO_LOCAL_DATE_TIME).appendLiteral('Z').toFormatter();
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long SECONDS_PER_DAY = 86_400L;
+    private static final int DATE_TIME_LENGTH_WITHOUT_FRACTION = 19; // yyyy-MM-ddTHH:mm:ss
+    private static final int MAX_FRACTION_DIGITS = 9;
+    // Epoch seconds whose nanoseconds fit in a long
+    private static final long MIN_EPOCH_SECOND_AS_NANOS = Long.MIN_VALUE / NANOS_PER_SECOND + 1;
+    private static final long MAX_EPOCH_SECOND_AS_NANOS = Long.MAX_VALUE / NANOS_PER_SECOND - 1;
+    private static final long MAX_TIMESPAN_DAYS_AS_NANOS = Long.MAX_VALUE / NANOS_PER_SECOND / SECONDS_PER_DAY - 1;
+
+    private KustoDateTimeParser() {
+    }
+
+    /**
+     * @return the datetime as nanoseconds since the epoch, or {@link #NOT_PARSED} if it doesn't have the fixed layout or is outside of the years
+     *         1677-2262 that nanoseconds since the epoch can represent
+     */
+    static long tryParseEpochNanos(CharSequence value) {
+        long epochSecond = parseEpochSecond(value);
+        if (epochSecond == NOT_PARSED || epochSecond < MIN_EPOCH_SECOND_AS_NANOS || epochSecond > MAX_EPOCH_SECOND_AS_NANOS) {
+            return NOT_PARSED;
+        }
+
+        return epochSecond * NANOS_PER_SECOND + parseNanoOfSecond(value);
+    }
+
+    /**
+     * @return the datetime, or null if it doesn't have the fixed layout
+     */
+    static LocalDateTime tryParseLocalDateTime(CharSequence value) {
+        long epochSecond = parseEpochSecond(value);
+        if (epochSecond == NOT_PARSED) {
+            return null;
+        }
+
+        return LocalDateTime.ofEpochSecond(epochSecond, parseNanoOfSecond(value), ZoneOffset.UTC);
+    }
+
+    static LocalDateTime parseLocalDateTime(String value) {
+        LocalDateTime dateTime = tryParseLocalDateTime(value);
+        return dateTime != null ? dateTime : LocalDateTime.parse(value, kustoDateTimeFormatter);
+    }
+
+    static Instant parseInstant(String value) {
+        long epochSecond = parseEpochSecond(value);
+        if (epochSecond == NOT_PARSED) {
+            return Instant.parse(value);
+        }
+
+        return Instant.ofEpochSecond(epochSecond, parseNanoOfSecond(value));
+    }
+
+    static long parseEpochMillis(String value) {
+        long epochSecond = parseEpochSecond(value);
+        if (epochSecond == NOT_PARSED) {
+            return Instant.parse(value).toEpochMilli();
+        }
+
+        return epochSecond * 1000 + parseNanoOfSecond(value) / 1_000_000;
+    }
+
+    static LocalDateTime toLocalDateTime(long epochNanos) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochNanos, NANOS_PER_SECOND), (int) Math.floorMod(epochNanos, NANOS_PER_SECOND), ZoneOffset.UTC);
+    }
+
+    /**
+     * Formats nanoseconds since the epoch the way the service writes datetimes, with 7 fraction digits (9 if the value has sub-tick precision).
+     */
+    static String formatEpochNanos(long epochNanos) {
+        LocalDateTime dateTime = toLocalDateTime(epochNanos);
+        StringBuilder sb = new StringBuilder(30);
+        appendPadded(sb, dateTime.getYear(), 4).append('-');
+        appendPadded(sb, dateTime.getMonthValue(), 2).append('-');
+        appendPadded(sb, dateTime.getDayOfMonth(), 2).append('T');
+        appendPadded(sb, dateTime.getHour(), 2).append(':');
+        appendPadded(sb, dateTime.getMinute(), 2).append(':');
+        appendPadded(sb, dateTime.getSecond(), 2).append('.');
+        appendFraction(sb, dateTime.getNano());
+        return sb.append('Z').toString();
+    }
+
+    /**
+     * @return the timespan in nanoseconds, or {@link #NOT_PARSED} if it doesn't have the fixed layout or doesn't fit in a long
+     */
+    static long tryParseTimespanNanos(CharSequence value) {
+        int length = value.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && value.charAt(0) == '-') {
+            negative = true;
+            i++;
+        }
+
+        // The leading number is either the days, followed by '.', or the hours, followed by ':'
+        int start = i;
+        long leading = 0;
+        while (i < length && i - start < 10 && isDigit(value.charAt(i))) {
+            leading = leading * 10 + (value.charAt(i) - '0');
+            i++;
+        }
+        if (i == start || i >= length) {
+            return NOT_PARSED;
+        }
+
+        long days = 0;
+        int hours;
+        if (value.charAt(i) == '.') {
+            days = leading;
+            hours = parseTwoDigits(value, i + 1);
+            i += 3;
+        } else if (i - start == 2) {
+            hours = (int) leading;
+        } else {
+            return NOT_PARSED;
+        }
+
+        if (days > MAX_TIMESPAN_DAYS_AS_NANOS || i + 6 > length || value.charAt(i) != ':' || value.charAt(i + 3) != ':') {
+            return NOT_PARSED;
+        }
+        int minutes = parseTwoDigits(value, i + 1);
+        int seconds = parseTwoDigits(value, i + 4);
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59) {
+            return NOT_PARSED;
+        }
+        i += 6;
+
+        long nanoOfSecond = 0;
+        if (i < length) {
+            if (value.charAt(i) != '.' || length - i - 1 < 1 || length - i - 1 > MAX_FRACTION_DIGITS) {
+                return NOT_PARSED;
+            }
+            nanoOfSecond = parseFraction(value, i + 1, length);
+            if (nanoOfSecond < 0) {
+                return NOT_PARSED;
+            }
+        }
+
+        long nanos = ((days * 24 + hours) * 60 + minutes) * 60 + seconds;
+        nanos = nanos * NANOS_PER_SECOND + nanoOfSecond;
+        return negative ? -nanos : nanos;
+    }
+
+    static Duration parseDuration(String value) {
+        long nanos = tryParseTimespanNanos(value);
+        return nanos != NOT_PARSED ? Duration.ofNanos(nanos) : new CslTimespanFormat(value).getValue();
+    }
+
+    /**
+     * Formats a timespan the way the service writes it, omitting the days and the fraction when they are 0.
+     */
+    static String formatTimespanNanos(long nanos) {
+        StringBuilder sb = new StringBuilder(26);
+        if (nanos < 0) {
+            sb.append('-');
+        }
+        // Negating Long.MIN_VALUE overflows, but tryParseTimespanNanos never returns a value that large
+        long remaining = Math.abs(nanos);
+        long totalSeconds = remaining / NANOS_PER_SECOND;
+        int nanoOfSecond = (int) (remaining % NANOS_PER_SECOND);
+        long days = totalSeconds / SECONDS_PER_DAY;
+        int secondOfDay = (int) (totalSeconds % SECONDS_PER_DAY);
+        if (days > 0) {
+            sb.append(days).append('.');
+        }
+        appendPadded(sb, secondOfDay / 3600, 2).append(':');
+        appendPadded(sb, secondOfDay / 60 % 60, 2).append(':');
+        appendPadded(sb, secondOfDay % 60, 2);
+        if (nanoOfSecond != 0) {
+            appendFraction(sb.append('.'), nanoOfSecond);
+        }
+        return sb.toString();
+    }
+
+    // Returns the epoch second of a yyyy-MM-ddTHH:mm:ss[.f]Z datetime after validating the whole value, or NOT_PARSED
+    private static long parseEpochSecond(CharSequence value) {
+        int length = value.length();
+        if (length < DATE_TIME_LENGTH_WITHOUT_FRACTION + 1 || length > DATE_TIME_LENGTH_WITHOUT_FRACTION + 2 + MAX_FRACTION_DIGITS) {
+            return NOT_PARSED;
+        }
+        char last = value.charAt(length - 1);
+        if (value.charAt(4) != '-' || value.charAt(7) != '-' || (value.charAt(10) != 'T' && value.charAt(10) != 't') || value.charAt(13) != ':'
+                || value.charAt(16) != ':' || (last != 'Z' && last != 'z')) {
+            return NOT_PARSED;
+        }
+        if (length > DATE_TIME_LENGTH_WITHOUT_FRACTION + 1
+                && (value.charAt(DATE_TIME_LENGTH_WITHOUT_FRACTION) != '.' || length == DATE_TIME_LENGTH_WITHOUT_FRACTION + 2
+                        || parseFraction(value, DATE_TIME_LENGTH_WITHOUT_FRACTION + 1, length - 1) < 0)) {
+            return NOT_PARSED;
+        }
+
+        int century = parseTwoDigits(value, 0);
+        int yearOfCentury = parseTwoDigits(value, 2);
+        // Each half of the year is checked on its own, since a malformed one would otherwise be absorbed by the other (20x1 would be 1999)
+        if (century < 0 || yearOfCentury < 0) {
+            return NOT_PARSED;
+        }
+        int year = century * 100 + yearOfCentury;
+        int month = parseTwoDigits(value, 5);
+        int day = parseTwoDigits(value, 8);
+        int hour = parseTwoDigits(value, 11);
+        int minute = parseTwoDigits(value, 14);
+        int second = parseTwoDigits(value, 17);
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month) || hour < 0 || hour > 23 || minute < 0 || minute > 59
+                || second < 0 || second > 59) {
+            return NOT_PARSED;
+        }
+
+        return epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second;
+    }
+
+    // Must only be called after parseEpochSecond validated the value
+    private static int parseNanoOfSecond(CharSequence value) {
+        int length = value.length();
+        if (length == DATE_TIME_LENGTH_WITHOUT_FRACTION + 1) {
+            return 0;
+        }
+
+        return (int) parseFraction(value, DATE_TIME_LENGTH_WITHOUT_FRACTION + 1, length - 1);
+    }
+
+    // Returns the digits in [start, end) as nanoseconds of a second, or -1 if they aren't all digits
+    private static long parseFraction(CharSequence value, int start, int end) {
+        long fraction = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            fraction = fraction * 10 + (c - '0');
+        }
+        for (int i = end - start; i < MAX_FRACTION_DIGITS; i++) {
+            fraction *= 10;
+        }
+
+        return fraction;
+    }
+
+    // Returns -1 if the two characters aren't digits
+    private static int parseTwoDigits(CharSequence value, int index) {
+        if (index + 2 > value.length()) {
+            return -1;
+        }
+        char tens = value.charAt(index);
+        char ones = value.charAt(index + 1);
+        if (!isDigit(tens) || !isDigit(ones)) {
+            return -1;
+        }
+
+        return (tens - '0') * 10 + (ones - '0');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // Days since 1970-01-01 of a proleptic Gregorian date, the same computation as LocalDate.toEpochDay
+    private static long epochDay(int year, int month, int day) {
+        long total = 365L * year;
+        total += (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+
+        return total - 719528; // days from year 0 to 1970
+    }
+
+    private static StringBuilder appendPadded(StringBuilder sb, int value, int width) {
+        for (int limit = 10; width > 1; width--, limit *= 10) {
+            if (value < limit) {
+                sb.append('0');
+            }
+        }
+
+        return sb.append(value);
+    }
+
+    private static void appendFraction(StringBuilder sb, int nanoOfSecond) {
+        if (nanoOfSecond % 100 == 0) {
+            appendPadded(sb, nanoOfSecond / 100, 7);
+        } else {
+            appendPadded(sb, nanoOfSecond, 9);
+        }
+    }
+}
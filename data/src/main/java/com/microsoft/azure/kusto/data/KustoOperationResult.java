@@ -3,19 +3,26 @@
 
 package com.microsoft.azure.kusto.data;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
 import com.microsoft.azure.kusto.data.exceptions.JsonPropertyMissingException;
 import com.microsoft.azure.kusto.data.exceptions.KustoServiceQueryError;
+import com.microsoft.azure.kusto.data.instrumentation.FunctionOneException;
 import com.microsoft.azure.kusto.data.instrumentation.MonitoredActivity;
 import com.microsoft.azure.kusto.data.instrumentation.SupplierOneException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.lang.invoke.MethodHandles;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 public class KustoOperationResult implements Iterator<KustoResultSetTable> {
 
@@ -31,10 +38,6 @@ public class KustoOperationResult implements Iterator<KustoResultSetTable> {
     private static final String TABLE_ID_PROPERTY_NAME = "Id";
     private static final String TABLE_KIND_PROPERTY_NAME = "Kind";
     private static final String TABLES_LIST_PROPERTY_NAME = "Tables";
-    private static final String DATA_TABLE_FRAME_TYPE_PROPERTY_VALUE = "DataTable";
-    private static final String FRAME_TYPE_PROPERTY_NAME = "FrameType";
-    private static final String DATA_SET_COMPLETION_FRAME_TYPE_PROPERTY_VALUE = "DataSetCompletion";
-    private static final String HAS_ERRORS_PROPERTY_NAME = "HasErrors";
     static final String ONE_API_ERRORS_PROPERTY_NAME = "OneApiErrors";
 
     private final List<KustoResultSetTable> resultTables = new ArrayList<>();
@@ -43,19 +46,88 @@ public class KustoOperationResult implements Iterator<KustoResultSetTable> {
     private final ObjectMapper objectMapper = Utils.getObjectMapper();
 
     public KustoOperationResult(String response, String version) {
+        this(objectMapper -> objectMapper.createParser(response), version, false, null);
+    }
+
+    /**
+     * Reads the result directly from a response stream, without first materializing the response as a String.
+     * v2 responses are parsed frame by frame, so only the table currently being read is held in memory in addition to the tables already read.
+     * The stream is read to its end but isn't closed.
+     *
+     * @param response the (decompressed) response body
+     * @param version  the endpoint version that produced the response, "v1" or "v2"
+     */
+    public KustoOperationResult(InputStream response, String version) {
+        this(response, version, false);
+    }
+
+    /**
+     * Reads the result directly from a response stream, optionally storing the tables of v2 responses column by column.
+     *
+     * @param response        the (decompressed) response body
+     * @param version         the endpoint version that produced the response, "v1" or "v2"
+     * @param columnarResults whether the tables of a v2 response are stored column by column, see {@link ClientRequestProperties#setColumnarResults}
+     */
+    public KustoOperationResult(InputStream response, String version, boolean columnarResults) {
+        this(objectMapper -> objectMapper.createParser(response), version, columnarResults, null);
+    }
+
+    /**
+     * Reads the result directly from a response stream, applying the client-side result options of the request properties:
+     * {@link ClientRequestProperties#setColumnarResults} and {@link ClientRequestProperties#setResultDecodeScheduler}.
+     *
+     * @param response   the (decompressed) response body
+     * @param version    the endpoint version that produced the response, "v1" or "v2"
+     * @param properties the properties the request was sent with, may be null
+     */
+    public KustoOperationResult(InputStream response, String version, ClientRequestProperties properties) {
+        this(objectMapper -> objectMapper.createParser(response), version, properties != null && properties.isColumnarResults(),
+                ParallelTableDecoder.fromProperties(properties));
+    }
+
+    /**
+     * Wraps tables that were already read, e.g. frame by frame by {@link NonBlockingResponseParser}.
+     */
+    KustoOperationResult(List<KustoResultSetTable> resultTables) {
+        this.resultTables.addAll(resultTables);
+        it = this.resultTables.iterator();
+    }
+
+    KustoOperationResult(FunctionOneException<JsonParser, ObjectMapper, IOException> parserFactory, String version, boolean columnarResults,
+            ParallelTableDecoder parallelDecoder) {
         MonitoredActivity.invoke((SupplierOneException<Void, KustoServiceQueryError>) () -> {
-            kustoOperationResultImpl(response, version);
+            kustoOperationResultImpl(parserFactory, version, columnarResults, parallelDecoder);
             return null;
         }, "KustoOperationResult.createFromResponse");
         it = resultTables.iterator();
     }
 
-    private void kustoOperationResultImpl(String response, String version) {
-        if (version.contains("v2")) {
-            createFromV2Response(response);
-        } else {
-            createFromV1Response(response);
+    private void kustoOperationResultImpl(FunctionOneException<JsonParser, ObjectMapper, IOException> parserFactory, String version, boolean columnarResults,
+            ParallelTableDecoder parallelDecoder) {
+        try (JsonParser parser = parserFactory.apply(objectMapper)) {
+            if (version.contains("v2")) {
+                createFromV2Response(parser, columnarResults, parallelDecoder);
+            } else {
+                JsonNode jsonObject = objectMapper.readTree(parser);
+                createFromV1Response(jsonObject == null ? MissingNode.getInstance() : jsonObject, parallelDecoder);
+            }
+        } catch (JsonProcessingException e) {
+            log.error("Json processing error occurred while parsing string to json with exception", e);
+            throw new KustoServiceQueryError("Json processing error occurred while parsing string to json with exception " + e.getMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the response", e);
+        }
+    }
+
+    /**
+     * @return a result with its own iterator and table cursors over the same rows
+     */
+    KustoOperationResult copy() {
+        List<KustoResultSetTable> tables = new ArrayList<>(resultTables.size());
+        for (KustoResultSetTable table : resultTables) {
+            tables.add(new KustoResultSetTable(table));
         }
+        return new KustoOperationResult(tables);
     }
 
     public List<KustoResultSetTable> getResultTables() {
@@ -80,19 +152,26 @@ public class KustoOperationResult implements Iterator<KustoResultSetTable> {
         return resultTables.stream().filter(t -> t.getTableKind().equals(WellKnownDataSet.PrimaryResult)).findFirst().orElse(null);
     }
 
-    private void createFromV1Response(String response) {
+    private void createFromV1Response(JsonNode jsonObject, ParallelTableDecoder parallelDecoder) {
         try {
-            JsonNode jsonObject = objectMapper.readTree(response);
             if (jsonObject.has(TABLES_LIST_PROPERTY_NAME) && jsonObject.get(TABLES_LIST_PROPERTY_NAME).isArray()) {
                 ArrayNode jsonArray = (ArrayNode) jsonObject.get(TABLES_LIST_PROPERTY_NAME);
-                for (int i = 0; i < jsonArray.size(); i++) {
-                    JsonNode table = jsonArray.get(i);
-                    resultTables.add(new KustoResultSetTable(table));
+                if (parallelDecoder != null) {
+                    List<CompletableFuture<KustoResultSetTable>> tables = new ArrayList<>(jsonArray.size());
+                    for (int i = 0; i < jsonArray.size(); i++) {
+                        tables.add(parallelDecoder.decode(jsonArray.get(i)));
+                    }
+                    resultTables.addAll(ParallelTableDecoder.joinAll(tables));
+                } else {
+                    for (int i = 0; i < jsonArray.size(); i++) {
+                        JsonNode table = jsonArray.get(i);
+                        resultTables.add(new KustoResultSetTable(table));
+                    }
                 }
             } else {
                 throw new JsonPropertyMissingException("Tables Property missing from V1 response json");
             }
-        } catch (JsonProcessingException | JsonPropertyMissingException e) {
+        } catch (JsonPropertyMissingException e) {
             log.error("Json processing error occurred while parsing string to json with exception", e);
             throw new KustoServiceQueryError("Json processing error occurred while parsing string to json with exception " + e.getMessage());
         }
@@ -118,31 +197,9 @@ public class KustoOperationResult implements Iterator<KustoResultSetTable> {
         }
     }
 
-    private void createFromV2Response(String response) {
-        ArrayNode jsonArray;
+    private void createFromV2Response(JsonParser parser, boolean columnarResults, ParallelTableDecoder parallelDecoder) throws IOException {
         try {
-            JsonNode jsonNode = objectMapper.readTree(response);
-            if (jsonNode.isArray()) {
-                jsonArray = (ArrayNode) jsonNode;
-                for (JsonNode node : jsonArray) {
-                    String frameType = "";
-                    if (node.has(FRAME_TYPE_PROPERTY_NAME)) {
-                        frameType = node.get(FRAME_TYPE_PROPERTY_NAME).asText();
-                    }
-
-                    if (frameType.equals(DATA_SET_COMPLETION_FRAME_TYPE_PROPERTY_VALUE) &&
-                            node.has(HAS_ERRORS_PROPERTY_NAME) && node.get(HAS_ERRORS_PROPERTY_NAME).asBoolean()) {
-                        ArrayNode oneApiErrors = (ArrayNode) node.get(ONE_API_ERRORS_PROPERTY_NAME);
-
-                        throw KustoServiceQueryError.fromOneApiErrorArray(oneApiErrors, true);
-                    }
-                    if (frameType.equals(DATA_TABLE_FRAME_TYPE_PROPERTY_VALUE)) {
-                        resultTables.add(new KustoResultSetTable(node));
-                    }
-                }
-            } else {
-                throw new JsonPropertyMissingException("There is no array in the response which can be parsed");
-            }
+            new KustoV2FrameParser(objectMapper, columnarResults, parallelDecoder).parse(parser, resultTables::add);
         } catch (JsonProcessingException | JsonPropertyMissingException jsonException) {
             log.error("Json processing error occurred while parsing string to json with exception", jsonException);
             throw new KustoServiceQueryError(
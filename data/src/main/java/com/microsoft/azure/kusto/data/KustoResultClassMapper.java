@@ -0,0 +1,442 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.data;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandleProxies;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * A class for mapping Kusto results to a list of pojos, binding columns to the properties of a class by name instead of through setters registered
+ * one by one like {@link KustoResultMapper}.
+ * <p>
+ * JavaBeans are populated through their public {@code setXxx} methods, and records through their canonical constructor. Column names are matched
+ * to property (or record component) names case-insensitively; columns without a matching property are ignored, and properties without a matching
+ * column keep their default value. Null values leave primitive properties at their default value. When a property has overloaded setters, the one
+ * taking the natural Java type of the column's Kusto type (e.g. {@code long} for a {@code long} column) is used.
+ * <p>
+ * Setters are bound with {@link LambdaMetafactory} once per table, and long, int, double and boolean setters receive primitive values; when the table
+ * is columnar (see {@link ClientRequestProperties#setColumnarResults}), these values are read without boxing.
+ *
+ * @param <R>
+ *            pojo type returned by the mapping
+ */
+public class KustoResultClassMapper<R> {
+    private static final Map<Class<?>, Object> PRIMITIVE_DEFAULTS = new HashMap<>();
+
+    static {
+        PRIMITIVE_DEFAULTS.put(boolean.class, false);
+        PRIMITIVE_DEFAULTS.put(byte.class, (byte) 0);
+        PRIMITIVE_DEFAULTS.put(short.class, (short) 0);
+        PRIMITIVE_DEFAULTS.put(char.class, (char) 0);
+        PRIMITIVE_DEFAULTS.put(int.class, 0);
+        PRIMITIVE_DEFAULTS.put(long.class, 0L);
+        PRIMITIVE_DEFAULTS.put(float.class, 0f);
+        PRIMITIVE_DEFAULTS.put(double.class, 0d);
+    }
+
+    private final Class<R> type;
+    private final MethodHandles.Lookup lookup;
+    // JavaBeans: setters (all overloads) by lower-cased property name
+    private final Map<String, List<MethodHandle>> setters = new HashMap<>();
+    private final Supplier<R> beanConstructor;
+    // Records: the canonical constructor, spread over an Object[] of the components
+    private final MethodHandle recordConstructor;
+    private final String[] recordComponentNames;
+    private final Class<?>[] recordComponentTypes;
+
+    /**
+     * Creates a mapper for a JavaBean (a class with a public no-argument constructor and public setters) or a record.
+     *
+     * @param <R>
+     *            pojo type returned by the mapping
+     * @param type
+     *            the class to map rows to
+     * @return the mapper
+     * @throws IllegalArgumentException
+     *             if the class is neither a JavaBean nor a record
+     */
+    public static <R> KustoResultClassMapper<R> forClass(Class<R> type) {
+        return new KustoResultClassMapper<>(type);
+    }
+
+    private KustoResultClassMapper(Class<R> type) {
+        this.type = type;
+        this.lookup = lookupFor(type);
+        try {
+            if (isRecord(type)) {
+                Object[] components = (Object[]) Class.class.getMethod("getRecordComponents").invoke(type);
+                recordComponentNames = new String[components.length];
+                recordComponentTypes = new Class<?>[components.length];
+                for (int i = 0; i < components.length; i++) {
+                    recordComponentNames[i] = (String) components[i].getClass().getMethod("getName").invoke(components[i]);
+                    recordComponentTypes[i] = (Class<?>) components[i].getClass().getMethod("getType").invoke(components[i]);
+                }
+                recordConstructor = lookup.unreflectConstructor(type.getDeclaredConstructor(recordComponentTypes))
+                        .asSpreader(Object[].class, components.length);
+                beanConstructor = null;
+            } else {
+                beanConstructor = createFunction(Supplier.class, "get", MethodType.methodType(Object.class),
+                        lookup.findConstructor(type, MethodType.methodType(void.class)), MethodType.methodType(type));
+                for (Method method : type.getMethods()) {
+                    if (isSetter(method)) {
+                        String propertyName = method.getName().substring(3).toLowerCase(Locale.ROOT);
+                        setters.computeIfAbsent(propertyName, k -> new ArrayList<>()).add(lookup.unreflect(method));
+                    }
+                }
+                recordConstructor = null;
+                recordComponentNames = null;
+                recordComponentTypes = null;
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(String.format("Class %s must be a record or have an accessible no-argument constructor", type.getName()), e);
+        }
+    }
+
+    public R extractSingle(KustoResultSetTable resultSet) {
+        if (!resultSet.next()) {
+            return null;
+        }
+
+        return recordConstructor != null ? createRecord(bindRecord(resultSet), resultSet) : populateBean(bindBean(resultSet), resultSet);
+    }
+
+    public List<R> extractList(KustoResultSetTable resultSet) {
+        List<R> ret = new ArrayList<>(resultSet.count());
+        if (recordConstructor != null) {
+            ColumnBinding[] bindings = bindRecord(resultSet);
+            while (resultSet.next()) {
+                ret.add(createRecord(bindings, resultSet));
+            }
+        } else {
+            PropertyBinding<R>[] bindings = bindBean(resultSet);
+            while (resultSet.next()) {
+                ret.add(populateBean(bindings, resultSet));
+            }
+        }
+        return ret;
+    }
+
+    private R populateBean(PropertyBinding<R>[] bindings, KustoResultSetTable row) {
+        R bean = beanConstructor.get();
+        for (PropertyBinding<R> binding : bindings) {
+            try {
+                binding.set(bean, row);
+            } catch (RuntimeException e) {
+                throw binding.error(e);
+            }
+        }
+        return bean;
+    }
+
+    private R createRecord(ColumnBinding[] bindings, KustoResultSetTable row) {
+        Object[] args = new Object[bindings.length];
+        for (int i = 0; i < bindings.length; i++) {
+            ColumnBinding binding = bindings[i];
+            Object value = null;
+            if (binding.reader != null) {
+                try {
+                    value = binding.reader.read(row, binding.ordinal);
+                } catch (RuntimeException e) {
+                    throw binding.error(e);
+                }
+            }
+            args[i] = value != null || !recordComponentTypes[i].isPrimitive() ? value : PRIMITIVE_DEFAULTS.get(recordComponentTypes[i]);
+        }
+
+        try {
+            return type.cast(recordConstructor.invoke(args));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(String.format("Failed to create an instance of %s", type.getName()), t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private PropertyBinding<R>[] bindBean(KustoResultSetTable resultSet) {
+        List<PropertyBinding<R>> bindings = new ArrayList<>();
+        for (KustoResultColumn column : resultSet.getColumns()) {
+            String propertyName = column.getColumnName().toLowerCase(Locale.ROOT);
+            List<MethodHandle> overloads = setters.get(propertyName);
+            if (overloads != null) {
+                bindings.add(bindSetter(column, propertyName, selectSetter(overloads, column)));
+            }
+        }
+        return bindings.toArray(new PropertyBinding[0]);
+    }
+
+    /**
+     * Picks the setter to bind a column to. {@link Class#getMethods()} returns methods in no particular order, so when a property has overloaded
+     * setters, the one whose parameter is the natural Java type of the column's Kusto type is used, and anything else is reported as ambiguous.
+     */
+    private MethodHandle selectSetter(List<MethodHandle> overloads, KustoResultColumn column) {
+        if (overloads.size() == 1) {
+            return overloads.get(0);
+        }
+
+        MethodHandle selected = null;
+        for (MethodHandle overload : overloads) {
+            if (isNaturalType(overload.type().parameterType(1), column.getColumnType())) {
+                if (selected != null) {
+                    selected = null;
+                    break;
+                }
+                selected = overload;
+            }
+        }
+        if (selected == null) {
+            throw new IllegalArgumentException(String.format("Column %s of type %s matches several setters of %s, none of which takes its natural type",
+                    column.getColumnName(), column.getColumnType(), type.getName()));
+        }
+        return selected;
+    }
+
+    private ColumnBinding[] bindRecord(KustoResultSetTable resultSet) {
+        Map<String, KustoResultColumn> columnsByName = new HashMap<>();
+        for (KustoResultColumn column : resultSet.getColumns()) {
+            columnsByName.putIfAbsent(column.getColumnName().toLowerCase(Locale.ROOT), column);
+        }
+
+        ColumnBinding[] bindings = new ColumnBinding[recordComponentNames.length];
+        for (int i = 0; i < bindings.length; i++) {
+            KustoResultColumn column = columnsByName.get(recordComponentNames[i].toLowerCase(Locale.ROOT));
+            bindings[i] = column == null ? new ColumnBinding(null, recordComponentNames[i], recordComponentTypes[i], null)
+                    : new ColumnBinding(column, recordComponentNames[i], recordComponentTypes[i], readerFor(recordComponentTypes[i], column));
+        }
+        return bindings;
+    }
+
+    @SuppressWarnings("unchecked")
+    private PropertyBinding<R> bindSetter(KustoResultColumn column, String propertyName, MethodHandle setter) {
+        Class<?> propertyType = setter.type().parameterType(1);
+        int ordinal = column.getOrdinal();
+        if (propertyType == long.class) {
+            ObjLongConsumer<R> consumer = createFunction(ObjLongConsumer.class, "accept", MethodType.methodType(void.class, Object.class, long.class),
+                    setter, MethodType.methodType(void.class, type, long.class));
+            return new PropertyBinding<R>(column, propertyName, propertyType) {
+                @Override
+                void set(R bean, KustoResultSetTable row) {
+                    if (!row.isNull(ordinal)) {
+                        consumer.accept(bean, row.getLong(ordinal));
+                    }
+                }
+            };
+        }
+        if (propertyType == int.class) {
+            ObjIntConsumer<R> consumer = createFunction(ObjIntConsumer.class, "accept", MethodType.methodType(void.class, Object.class, int.class),
+                    setter, MethodType.methodType(void.class, type, int.class));
+            return new PropertyBinding<R>(column, propertyName, propertyType) {
+                @Override
+                void set(R bean, KustoResultSetTable row) {
+                    if (!row.isNull(ordinal)) {
+                        consumer.accept(bean, row.getInt(ordinal));
+                    }
+                }
+            };
+        }
+        if (propertyType == double.class) {
+            ObjDoubleConsumer<R> consumer = createFunction(ObjDoubleConsumer.class, "accept", MethodType.methodType(void.class, Object.class, double.class),
+                    setter, MethodType.methodType(void.class, type, double.class));
+            return new PropertyBinding<R>(column, propertyName, propertyType) {
+                @Override
+                void set(R bean, KustoResultSetTable row) {
+                    if (!row.isNull(ordinal)) {
+                        consumer.accept(bean, row.getDouble(ordinal));
+                    }
+                }
+            };
+        }
+
+        // Other primitives (boolean values are cached, so boxing them doesn't allocate) go through their wrapper type
+        Class<?> boxedType = propertyType.isPrimitive() ? MethodType.methodType(propertyType).wrap().returnType() : propertyType;
+        ValueReader valueReader = readerFor(propertyType, column);
+        BiConsumer<R, Object> consumer = createFunction(BiConsumer.class, "accept", MethodType.methodType(void.class, Object.class, Object.class),
+                setter, MethodType.methodType(void.class, type, boxedType));
+        boolean skipNulls = propertyType.isPrimitive();
+        return new PropertyBinding<R>(column, propertyName, propertyType) {
+            @Override
+            void set(R bean, KustoResultSetTable row) {
+                Object value = valueReader.read(row, ordinal);
+                if (value != null || !skipNulls) {
+                    consumer.accept(bean, value);
+                }
+            }
+        };
+    }
+
+    private static ValueReader readerFor(Class<?> targetType, KustoResultColumn column) {
+        ValueReader reader;
+        if (targetType == long.class || targetType == Long.class) {
+            reader = (row, ordinal) -> row.getLong(ordinal);
+        } else if (targetType == int.class || targetType == Integer.class) {
+            reader = (row, ordinal) -> row.getInt(ordinal);
+        } else if (targetType == double.class || targetType == Double.class) {
+            reader = (row, ordinal) -> row.getDouble(ordinal);
+        } else if (targetType == float.class || targetType == Float.class) {
+            reader = (row, ordinal) -> row.getFloat(ordinal);
+        } else if (targetType == boolean.class || targetType == Boolean.class) {
+            reader = (row, ordinal) -> row.getBoolean(ordinal);
+        } else if (targetType == short.class || targetType == Short.class) {
+            reader = (row, ordinal) -> row.getShort(ordinal);
+        } else if (targetType == String.class) {
+            reader = KustoResultSetTable::getString;
+        } else if (targetType == BigDecimal.class) {
+            reader = KustoResultSetTable::getBigDecimal;
+        } else if (targetType == UUID.class) {
+            reader = KustoResultSetTable::getUUID;
+        } else if (targetType == LocalDateTime.class) {
+            reader = KustoResultSetTable::getKustoDateTime;
+        } else if (targetType == Instant.class) {
+            reader = (row, ordinal) -> row.getKustoDateTime(ordinal).toInstant(ZoneOffset.UTC);
+        } else if (targetType == ZonedDateTime.class) {
+            reader = (row, ordinal) -> row.getKustoDateTime(ordinal).atZone(ZoneOffset.UTC);
+        } else if (targetType == Duration.class) {
+            reader = KustoResultSetTable::getDuration;
+        } else if (targetType == JsonNode.class) {
+            reader = KustoResultSetTable::getJSONObject;
+        } else if (targetType.isEnum()) {
+            reader = (row, ordinal) -> enumValue(targetType, row.getString(ordinal));
+        } else if (targetType == Object.class) {
+            reader = KustoResultSetTable::getObject;
+        } else {
+            throw new IllegalArgumentException(String.format("Column %s of type %s can't be mapped to a property of type %s", column.getColumnName(),
+                    column.getColumnType(), targetType.getName()));
+        }
+
+        return (row, ordinal) -> row.isNull(ordinal) ? null : reader.read(row, ordinal);
+    }
+
+    private static boolean isNaturalType(Class<?> targetType, String columnType) {
+        switch (columnType) {
+            case "long":
+            case "int64":
+                return targetType == long.class || targetType == Long.class;
+            case "int":
+            case "int32":
+                return targetType == int.class || targetType == Integer.class;
+            case "real":
+            case "double":
+                return targetType == double.class || targetType == Double.class;
+            case "bool":
+            case "boolean":
+                return targetType == boolean.class || targetType == Boolean.class;
+            case "datetime":
+            case "date":
+                return targetType == LocalDateTime.class || targetType == Instant.class || targetType == ZonedDateTime.class;
+            case "timespan":
+            case "time":
+                return targetType == Duration.class;
+            case "guid":
+            case "uuid":
+                return targetType == UUID.class;
+            case "decimal":
+                return targetType == BigDecimal.class;
+            case "dynamic":
+                return targetType == JsonNode.class;
+            case "string":
+                return targetType == String.class;
+            default:
+                return false;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumValue(Class<?> enumType, String name) {
+        return Enum.valueOf((Class<Enum>) enumType, name);
+    }
+
+    /**
+     * Binds a method handle to a functional interface with {@link LambdaMetafactory}, so that calls through the interface are as fast as direct calls.
+     * If the lookup isn't allowed to define the lambda (for example when the class belongs to a named module that isn't open to this library),
+     * falls back to a proxy that invokes the method handle.
+     */
+    @SuppressWarnings("unchecked")
+    private <F> F createFunction(Class<? super F> functionalInterface, String methodName, MethodType erasedType, MethodHandle target,
+            MethodType instantiatedType) {
+        try {
+            return (F) LambdaMetafactory.metafactory(lookup, methodName, MethodType.methodType(functionalInterface), erasedType, target, instantiatedType)
+                    .getTarget().invoke();
+        } catch (Throwable e) {
+            MethodHandle adapted = target.asType(instantiatedType).asType(erasedType);
+            return (F) MethodHandleProxies.asInterfaceInstance(functionalInterface, adapted);
+        }
+    }
+
+    private static MethodHandles.Lookup lookupFor(Class<?> type) {
+        try {
+            return MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+        } catch (IllegalAccessException | SecurityException e) {
+            return MethodHandles.lookup();
+        }
+    }
+
+    private static boolean isSetter(Method method) {
+        return method.getName().length() > 3 && method.getName().startsWith("set") && method.getParameterCount() == 1
+                && !Modifier.isStatic(method.getModifiers()) && !method.isBridge();
+    }
+
+    // Records are detected by name, since the library targets a Java version without java.lang.Record
+    private static boolean isRecord(Class<?> type) {
+        return type.getSuperclass() != null && "java.lang.Record".equals(type.getSuperclass().getName());
+    }
+
+    private interface ValueReader {
+        Object read(KustoResultSetTable row, int ordinal);
+    }
+
+    private static class ColumnBinding {
+        final String columnName;
+        final String columnType;
+        final int ordinal;
+        final String propertyName;
+        final Class<?> propertyType;
+        final ValueReader reader;
+
+        ColumnBinding(KustoResultColumn column, String propertyName, Class<?> propertyType, ValueReader reader) {
+            this.columnName = column == null ? null : column.getColumnName();
+            this.columnType = column == null ? null : column.getColumnType();
+            this.ordinal = column == null ? -1 : column.getOrdinal();
+            this.propertyName = propertyName;
+            this.propertyType = propertyType;
+            this.reader = reader;
+        }
+
+        IllegalArgumentException error(RuntimeException e) {
+            return new IllegalArgumentException(String.format("Column %s (ordinal %d) is of type %s but property %s is of type %s", columnName, ordinal,
+                    columnType, propertyName, propertyType.getName()), e);
+        }
+    }
+
+    private abstract static class PropertyBinding<R> extends ColumnBinding {
+        PropertyBinding(KustoResultColumn column, String propertyName, Class<?> propertyType) {
+            super(column, propertyName, propertyType, null);
+        }
+
+        abstract void set(R bean, KustoResultSetTable row);
+    }
+}
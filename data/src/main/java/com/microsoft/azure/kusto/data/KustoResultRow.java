@@ -0,0 +1,178 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.data;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A single row of a query result, as emitted by {@link Client#executeQueryStreamingRows(String, String, ClientRequestProperties)}.
+ * Values are converted the same way as in {@link KustoResultSetTable}. Rows of the same table share their column metadata.
+ */
+public class KustoResultRow {
+    private final KustoResultSetTable table;
+    private final List<Object> values;
+
+    KustoResultRow(KustoResultSetTable table, List<Object> values) {
+        this.table = table;
+        this.values = values;
+    }
+
+    public String getTableName() {
+        return table.getTableName();
+    }
+
+    public String getTableId() {
+        return table.getTableId();
+    }
+
+    public KustoResultColumn[] getColumns() {
+        return table.getColumns();
+    }
+
+    public List<Object> getValues() {
+        return values;
+    }
+
+    public int findColumn(String columnName) {
+        return table.findColumn(columnName);
+    }
+
+    public Object getObject(int columnIndex) {
+        return values.get(columnIndex);
+    }
+
+    public Object getObject(String columnName) {
+        return getObject(findColumn(columnName));
+    }
+
+    public String getString(int columnIndex) {
+        Object obj = getObject(columnIndex);
+        if (obj == null) {
+            return null;
+        }
+
+        return obj.toString();
+    }
+
+    public String getString(String columnName) {
+        return getString(findColumn(columnName));
+    }
+
+    public Boolean getBooleanObject(int columnIndex) {
+        return (Boolean) getObject(columnIndex);
+    }
+
+    public Boolean getBooleanObject(String columnName) {
+        return getBooleanObject(findColumn(columnName));
+    }
+
+    public Integer getIntegerObject(int columnIndex) {
+        return (Integer) getObject(columnIndex);
+    }
+
+    public Integer getIntegerObject(String columnName) {
+        return getIntegerObject(findColumn(columnName));
+    }
+
+    public Long getLongObject(int columnIndex) {
+        Object obj = getObject(columnIndex);
+        if (obj instanceof Integer) {
+            return ((Integer) obj).longValue();
+        }
+        return (Long) obj;
+    }
+
+    public Long getLongObject(String columnName) {
+        return getLongObject(findColumn(columnName));
+    }
+
+    public Double getDoubleObject(int columnIndex) {
+        Object obj = getObject(columnIndex);
+        if (obj instanceof BigDecimal) {
+            return ((BigDecimal) obj).doubleValue();
+        }
+        return (Double) obj;
+    }
+
+    public Double getDoubleObject(String columnName) {
+        return getDoubleObject(findColumn(columnName));
+    }
+
+    public BigDecimal getBigDecimal(int columnIndex) {
+        Object obj = getObject(columnIndex);
+        if (obj == null) {
+            return null;
+        }
+
+        return new BigDecimal(obj.toString());
+    }
+
+    public BigDecimal getBigDecimal(String columnName) {
+        return getBigDecimal(findColumn(columnName));
+    }
+
+    public UUID getUUID(int columnIndex) {
+        Object u = getObject(columnIndex);
+        if (u == null) {
+            return null;
+        }
+        return UUID.fromString((String) u);
+    }
+
+    public UUID getUUID(String columnName) {
+        return getUUID(findColumn(columnName));
+    }
+
+    public LocalDateTime getKustoDateTime(int columnIndex) {
+        Object obj = getObject(columnIndex);
+        if (obj == null) {
+            return null;
+        }
+
+        return KustoDateTimeParser.parseLocalDateTime(obj.toString());
+    }
+
+    public LocalDateTime getKustoDateTime(String columnName) {
+        return getKustoDateTime(findColumn(columnName));
+    }
+
+    /*
+     * Like KustoResultSetTable.getDate, a datetime is read in the default time zone, and a long or int column as milliseconds since the epoch
+     */
+    public Date getDate(int columnIndex) {
+        Object obj = getObject(columnIndex);
+        if (obj == null) {
+            return null;
+        }
+        if (obj instanceof Number) {
+            return new Date(((Number) obj).longValue());
+        }
+
+        return new Date(getKustoDateTime(columnIndex).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
+    public Date getDate(String columnName) {
+        return getDate(findColumn(columnName));
+    }
+
+    public JsonNode getJSONObject(int columnIndex) {
+        return (JsonNode) getObject(columnIndex);
+    }
+
+    public JsonNode getJSONObject(String columnName) {
+        return getJSONObject(findColumn(columnName));
+    }
+
+    @Override
+    public String toString() {
+        return values.toString();
+    }
+}
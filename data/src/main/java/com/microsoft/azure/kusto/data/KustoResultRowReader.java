@@ -0,0 +1,194 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.data;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.microsoft.azure.kusto.data.exceptions.JsonPropertyMissingException;
+import com.microsoft.azure.kusto.data.exceptions.KustoServiceQueryError;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Iterates over the rows of the primary result tables of a v2 query response, reading only as much of the response stream as is needed to return the
+ * next row. Both the progressive protocol (TableHeader, TableFragment and TableCompletion frames) and complete DataTable frames are supported.
+ * Rows of other tables (QueryProperties, QueryCompletionInformation) are skipped without being materialized.
+ */
+class KustoResultRowReader implements Iterator<KustoResultRow>, Closeable {
+    static final String TABLE_HEADER_FRAME_TYPE_PROPERTY_VALUE = "TableHeader";
+    static final String TABLE_FRAGMENT_FRAME_TYPE_PROPERTY_VALUE = "TableFragment";
+    static final String TABLE_COMPLETION_FRAME_TYPE_PROPERTY_VALUE = "TableCompletion";
+    static final String TABLE_FRAGMENT_TYPE_PROPERTY_NAME = "TableFragmentType";
+    static final String DATA_REPLACE_FRAGMENT_TYPE_PROPERTY_VALUE = "DataReplace";
+
+    private final ObjectMapper objectMapper = Utils.getObjectMapper();
+    private final KustoV2FrameParser frameParser = new KustoV2FrameParser(objectMapper);
+    private final JsonParser parser;
+    private final InputStream stream;
+
+    // Tables announced by TableHeader frames, by table id
+    private final Map<String, KustoResultSetTable> progressiveTables = new HashMap<>();
+    private final Set<String> tablesWithRows = new HashSet<>();
+
+    private boolean started = false;
+    private boolean finished = false;
+    private ObjectNode currentFrame = null;
+    // The table whose rows are currently being read, or null if the current rows are skipped
+    private KustoResultSetTable currentRowsTable = null;
+    private boolean inRows = false;
+    private KustoResultRow nextRow = null;
+
+    KustoResultRowReader(InputStream stream) throws IOException {
+        this.stream = stream;
+        this.parser = objectMapper.createParser(stream);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextRow == null && !finished) {
+            try {
+                nextRow = readNextRow();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read the query response", e);
+            }
+        }
+
+        return nextRow != null;
+    }
+
+    @Override
+    public KustoResultRow next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        KustoResultRow row = nextRow;
+        nextRow = null;
+        return row;
+    }
+
+    private KustoResultRow readNextRow() throws IOException {
+        if (!started) {
+            started = true;
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonPropertyMissingException("There is no array in the response which can be parsed");
+            }
+        }
+
+        while (true) {
+            if (inRows) {
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.END_ARRAY) {
+                    inRows = false;
+                    continue;
+                }
+
+                List<Object> values = frameParser.readRow(parser, token);
+                if (currentRowsTable != null) {
+                    tablesWithRows.add(currentRowsTable.getTableId());
+                    return new KustoResultRow(currentRowsTable, values);
+                }
+                continue;
+            }
+
+            JsonToken token = parser.nextToken();
+            if (currentFrame != null) {
+                if (token == JsonToken.FIELD_NAME) {
+                    readFrameProperty();
+                } else {
+                    completeFrame(currentFrame);
+                    currentFrame = null;
+                }
+                continue;
+            }
+
+            if (token == JsonToken.START_OBJECT) {
+                currentFrame = objectMapper.createObjectNode();
+            } else if (token == JsonToken.END_ARRAY) {
+                finished = true;
+                return null;
+            } else {
+                throw new JsonParseException(parser, "Expected a frame object or the end of the response but got " + token);
+            }
+        }
+    }
+
+    private void readFrameProperty() throws IOException {
+        String propertyName = parser.currentName();
+        JsonToken valueToken = parser.nextToken();
+        if (!KustoResultSetTable.ROWS_PROPERTY_NAME.equals(propertyName) || valueToken != JsonToken.START_ARRAY) {
+            currentFrame.set(propertyName, objectMapper.readTree(parser));
+            return;
+        }
+
+        currentRowsTable = resolveRowsTable(currentFrame);
+        if (currentRowsTable == null) {
+            parser.skipChildren();
+        } else {
+            inRows = true;
+        }
+    }
+
+    // Returns the primary result table the rows of the frame belong to, or null if the rows shouldn't be returned
+    private KustoResultSetTable resolveRowsTable(ObjectNode frame) {
+        String frameType = getText(frame, KustoV2FrameParser.FRAME_TYPE_PROPERTY_NAME);
+        KustoResultSetTable table = null;
+        if (KustoV2FrameParser.DATA_TABLE_FRAME_TYPE_PROPERTY_VALUE.equals(frameType)) {
+            table = new KustoResultSetTable(frame, null);
+        } else if (TABLE_FRAGMENT_FRAME_TYPE_PROPERTY_VALUE.equals(frameType)) {
+            table = progressiveTables.get(getText(frame, KustoResultSetTable.TABLE_ID_PROPERTY_NAME));
+            if (table != null && DATA_REPLACE_FRAGMENT_TYPE_PROPERTY_VALUE.equals(getText(frame, TABLE_FRAGMENT_TYPE_PROPERTY_NAME))
+                    && tablesWithRows.contains(table.getTableId())) {
+                throw new KustoServiceQueryError(String.format("Table '%s' replaced rows that were already returned. " +
+                        "Queries whose results are replaced progressively can't be read row by row.", table.getTableName()));
+            }
+        }
+
+        return table != null && table.getTableKind() == WellKnownDataSet.PrimaryResult ? table : null;
+    }
+
+    private void completeFrame(ObjectNode frame) {
+        String frameType = getText(frame, KustoV2FrameParser.FRAME_TYPE_PROPERTY_NAME);
+        if (TABLE_HEADER_FRAME_TYPE_PROPERTY_VALUE.equals(frameType)) {
+            KustoResultSetTable table = new KustoResultSetTable(frame, null);
+            progressiveTables.put(table.getTableId(), table);
+        } else if (TABLE_COMPLETION_FRAME_TYPE_PROPERTY_VALUE.equals(frameType)) {
+            JsonNode errors = frame.get(KustoOperationResult.ONE_API_ERRORS_PROPERTY_NAME);
+            if (errors != null && errors.isArray() && !errors.isEmpty()) {
+                throw KustoServiceQueryError.fromOneApiErrorArray((ArrayNode) errors, true);
+            }
+        } else if (KustoV2FrameParser.DATA_SET_COMPLETION_FRAME_TYPE_PROPERTY_VALUE.equals(frameType) &&
+                frame.has(KustoV2FrameParser.HAS_ERRORS_PROPERTY_NAME) && frame.get(KustoV2FrameParser.HAS_ERRORS_PROPERTY_NAME).asBoolean()) {
+            throw KustoServiceQueryError.fromOneApiErrorArray((ArrayNode) frame.get(KustoOperationResult.ONE_API_ERRORS_PROPERTY_NAME), true);
+        }
+    }
+
+    private static String getText(JsonNode frame, String propertyName) {
+        return frame.has(propertyName) ? frame.get(propertyName).asText() : "";
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            parser.close();
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -18,6 +18,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.sql.Date;
 import java.sql.*;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -43,9 +44,6 @@ public class KustoResultSetTable {
     protected static final String EXCEPTIONS_PROPERTY_NAME = "Exceptions";
 
     private static final String EMPTY_STRING = "";
-    private static final DateTimeFormatter kustoDateTimeFormatter = new DateTimeFormatterBuilder().parseCaseInsensitive()
-            .append(DateTimeFormatter.ISO_LOCAL_DATE_TIME).appendLiteral('Z').toFormatter();
-
     private static final DateTimeFormatterBuilder  parseFormatterBuilder = new DateTimeFormatterBuilder()
             .appendPattern("yyyy-MM-dd")
             .optionalStart().appendLiteral('T').optionalEnd() // Optional 'T' between date and time
@@ -98,6 +96,14 @@ public class KustoResultSetTable {
     }
 
     protected KustoResultSetTable(JsonNode jsonTable) {
+        this(jsonTable, readRows(jsonTable));
+    }
+
+    /*
+     * Builds the table from its header properties (name, id, kind and columns) and rows that were already converted to java objects, e.g. by a streaming
+     * reader that never holds the "Rows" array as a json tree. The "Rows" property of jsonTable, if any, is ignored.
+     */
+    KustoResultSetTable(JsonNode jsonTable, List<List<Object>> rows) {
         if (jsonTable.has(TABLE_NAME_PROPERTY_NAME)) {
             tableName = jsonTable.get(TABLE_NAME_PROPERTY_NAME).asText();
         }
@@ -108,10 +114,36 @@ public class KustoResultSetTable {
         String tableKindString = jsonTable.has(TABLE_KIND_PROPERTY_NAME) ? jsonTable.get(TABLE_KIND_PROPERTY_NAME).asText() : EMPTY_STRING;
         tableKind = StringUtils.isBlank(tableKindString) ? null : WellKnownDataSet.valueOf(tableKindString);
 
+        columnsAsArray = parseColumns(jsonTable);
+        if (columnsAsArray != null) {
+            for (KustoResultColumn col : columnsAsArray) {
+                columns.put(col.getColumnName(), col);
+            }
+        }
+
+        this.rows = rows == null ? new ArrayList<>() : rows;
+        rowIterator = this.rows.iterator();
+    }
+
+    /*
+     * Creates a table with its own cursor over the rows of another table, e.g. for every caller that receives a cached result. The rows are shared.
+     */
+    KustoResultSetTable(KustoResultSetTable other) {
+        tableName = other.tableName;
+        tableId = other.tableId;
+        tableKind = other.tableKind;
+        columns.putAll(other.columns);
+        columnsAsArray = other.columnsAsArray;
+        rows = other.rows;
+        rowIterator = rows.iterator();
+    }
+
+    static KustoResultColumn[] parseColumns(JsonNode jsonTable) {
+        KustoResultColumn[] parsedColumns = null;
         if (jsonTable.has(COLUMNS_PROPERTY_NAME) && jsonTable.get(COLUMNS_PROPERTY_NAME).getNodeType() == JsonNodeType.ARRAY) {
             ArrayNode columnsJson = (ArrayNode) jsonTable.get(COLUMNS_PROPERTY_NAME);
             if (columnsJson != null) {
-                columnsAsArray = new KustoResultColumn[columnsJson.size()];
+                parsedColumns = new KustoResultColumn[columnsJson.size()];
                 for (int i = 0; i < columnsJson.size(); i++) {
                     JsonNode jsonCol = columnsJson.get(i);
 
@@ -121,10 +153,7 @@ public class KustoResultSetTable {
                         columnType = jsonCol.has(COLUMN_TYPE_SECOND_PROPERTY_NAME) ? jsonCol.get(COLUMN_TYPE_SECOND_PROPERTY_NAME).asText() : EMPTY_STRING;
                     }
                     if (jsonCol.has(COLUMN_NAME_PROPERTY_NAME)) {
-                        KustoResultColumn col = new KustoResultColumn(
-                                jsonCol.has(COLUMN_NAME_PROPERTY_NAME) ? jsonCol.get(COLUMN_NAME_PROPERTY_NAME).asText() : EMPTY_STRING, columnType, i);
-                        columnsAsArray[i] = col;
-                        columns.put(jsonCol.has(COLUMN_NAME_PROPERTY_NAME) ? jsonCol.get(COLUMN_NAME_PROPERTY_NAME).asText() : EMPTY_STRING, col);
+                        parsedColumns[i] = new KustoResultColumn(jsonCol.get(COLUMN_NAME_PROPERTY_NAME).asText(), columnType, i);
                     } else {
                         throw new JsonPropertyMissingException("Column Name property is missing in the json response");
                     }
@@ -132,70 +161,85 @@ public class KustoResultSetTable {
             }
         }
 
-        ArrayNode exceptions;
-        ArrayNode jsonRows = null;
+        return parsedColumns;
+    }
+
+    private static List<List<Object>> readRows(JsonNode jsonTable) {
+        ArrayNode jsonRows = getJsonRows(jsonTable);
+        if (jsonRows == null) {
+            return null;
+        }
+
+        return readRows(jsonRows, 0, jsonRows.size());
+    }
+
+    static ArrayNode getJsonRows(JsonNode jsonTable) {
         if (jsonTable.has(ROWS_PROPERTY_NAME) && jsonTable.get(ROWS_PROPERTY_NAME).getNodeType() == JsonNodeType.ARRAY) {
-            jsonRows = (ArrayNode) jsonTable.get(ROWS_PROPERTY_NAME);
-        }
-        if (jsonRows != null) {
-            List<List<Object>> values = new ArrayList<>();
-            for (int i = 0; i < jsonRows.size(); i++) {
-                JsonNode row = jsonRows.get(i);
-                if (jsonRows.get(i).getNodeType() == JsonNodeType.OBJECT) {
-                    exceptions = row.has(EXCEPTIONS_PROPERTY_NAME) ? ((ArrayNode) row.get(EXCEPTIONS_PROPERTY_NAME)) : null;
-                    if (exceptions != null) {
-                        throw KustoServiceQueryError.fromOneApiErrorArray(exceptions, exceptions.size() == 1); // TODO: this is the same logic as before, should
-                                                                                                               // check with Yehezkel why isOneApi error is true
-                                                                                                               // if there is one exception
-                    } else {
-                        throw KustoServiceQueryError.fromOneApiErrorArray((ArrayNode) row.get(ONE_API_ERRORS_PROPERTY_NAME), true);
-                    }
-                }
-                ArrayNode rowAsJsonArray = (ArrayNode) jsonRows.get(i);
-                List<Object> rowVector = new ArrayList<>();
-                for (int j = 0; j < rowAsJsonArray.size(); j++) {
-                    JsonNode obj = rowAsJsonArray.get(j);
-                    if (obj.isNull()) {
-                        rowVector.add(null);
-                    } else {
-                        switch (rowAsJsonArray.get(j).getNodeType()) {
-                            case STRING:
-                                rowVector.add(obj.asText());
-                                break;
-                            case BOOLEAN:
-                                rowVector.add(obj.asBoolean());
-                                break;
-                            case NUMBER:
-                                if (obj.isInt()) {
-                                    rowVector.add(obj.asInt());
-                                } else if (obj.isLong()) {
-                                    rowVector.add(obj.asLong());
-                                } else if (obj.isBigDecimal()) {
-                                    rowVector.add(obj.decimalValue());
-                                } else if (obj.isDouble()) {
-                                    rowVector.add(obj.asDouble());
-                                } else if (obj.isShort()) {
-                                    rowVector.add(obj.shortValue());
-                                } else if (obj.isFloat()) {
-                                    rowVector.add(obj.floatValue());
-                                } else {
-                                    rowVector.add(obj);
-                                }
-                                break;
-                            default:
+            return (ArrayNode) jsonTable.get(ROWS_PROPERTY_NAME);
+        }
+        return null;
+    }
+
+    // Converts the rows in [from, to) of a json "Rows" array
+    static List<List<Object>> readRows(ArrayNode jsonRows, int from, int to) {
+        List<List<Object>> values = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            JsonNode row = jsonRows.get(i);
+            if (jsonRows.get(i).getNodeType() == JsonNodeType.OBJECT) {
+                throw createRowError(row);
+            }
+            ArrayNode rowAsJsonArray = (ArrayNode) jsonRows.get(i);
+            List<Object> rowVector = new ArrayList<>();
+            for (int j = 0; j < rowAsJsonArray.size(); j++) {
+                JsonNode obj = rowAsJsonArray.get(j);
+                if (obj.isNull()) {
+                    rowVector.add(null);
+                } else {
+                    switch (rowAsJsonArray.get(j).getNodeType()) {
+                        case STRING:
+                            rowVector.add(obj.asText());
+                            break;
+                        case BOOLEAN:
+                            rowVector.add(obj.asBoolean());
+                            break;
+                        case NUMBER:
+                            if (obj.isInt()) {
+                                rowVector.add(obj.asInt());
+                            } else if (obj.isLong()) {
+                                rowVector.add(obj.asLong());
+                            } else if (obj.isBigDecimal()) {
+                                rowVector.add(obj.decimalValue());
+                            } else if (obj.isDouble()) {
+                                rowVector.add(obj.asDouble());
+                            } else if (obj.isShort()) {
+                                rowVector.add(obj.shortValue());
+                            } else if (obj.isFloat()) {
+                                rowVector.add(obj.floatValue());
+                            } else {
                                 rowVector.add(obj);
-                        }
+                            }
+                            break;
+                        default:
+                            rowVector.add(obj);
                     }
                 }
-                values.add(rowVector);
             }
+            values.add(rowVector);
+        }
+
+        return values;
+    }
 
-            rows = values;
-        } else {
-            rows = new ArrayList<>();
+    // A row that is a json object rather than an array holds the errors the service ran into while producing the table
+    static KustoServiceQueryError createRowError(JsonNode row) {
+        ArrayNode exceptions = row.has(EXCEPTIONS_PROPERTY_NAME) ? ((ArrayNode) row.get(EXCEPTIONS_PROPERTY_NAME)) : null;
+        if (exceptions != null) {
+            return KustoServiceQueryError.fromOneApiErrorArray(exceptions, exceptions.size() == 1); // TODO: this is the same logic as before, should
+                                                                                                   // check with Yehezkel why isOneApi error is true
+                                                                                                   // if there is one exception
         }
 
-        rowIterator = rows.iterator();
+        return KustoServiceQueryError.fromOneApiErrorArray((ArrayNode) row.get(ONE_API_ERRORS_PROPERTY_NAME), true);
     }
 
     public List<Object> getCurrentRow() {
@@ -236,6 +280,9 @@ public class KustoResultSetTable {
     }
 
     public boolean getBoolean(int columnIndex) {
+        if (currentRow instanceof ColumnarRows.Row) {
+            return ((ColumnarRows.Row) currentRow).getBoolean(columnIndex);
+        }
         return (boolean) get(columnIndex);
     }
 
@@ -268,6 +315,9 @@ public class KustoResultSetTable {
     }
 
     public int getInt(int columnIndex) {
+        if (currentRow instanceof ColumnarRows.Row) {
+            return ((ColumnarRows.Row) currentRow).getInt(columnIndex);
+        }
         return (int) get(columnIndex);
     }
 
@@ -284,6 +334,9 @@ public class KustoResultSetTable {
     }
 
     public long getLong(int columnIndex) {
+        if (currentRow instanceof ColumnarRows.Row) {
+            return ((ColumnarRows.Row) currentRow).getLong(columnIndex);
+        }
         return (long) getLongGeneric(columnIndex);
     }
 
@@ -296,6 +349,9 @@ public class KustoResultSetTable {
         if (obj instanceof BigDecimal) {
             return ((BigDecimal) obj).floatValue();
         }
+        if (obj instanceof Double) {
+            return ((Double) obj).floatValue();
+        }
         return obj;
     }
 
@@ -316,6 +372,9 @@ public class KustoResultSetTable {
     }
 
     public double getDouble(int columnIndex) {
+        if (currentRow instanceof ColumnarRows.Row) {
+            return ((ColumnarRows.Row) currentRow).getDouble(columnIndex);
+        }
         return (double) getDoubleGeneric(columnIndex);
     }
 
@@ -348,9 +407,13 @@ public class KustoResultSetTable {
         switch (columnsAsArray[columnIndex].getColumnType()) {
             case "string":
             case "datetime":
-                if (get(columnIndex) == null) {
+                if (isNull(columnIndex)) {
                     return null;
                 }
+                LocalDateTime dateTime = tryGetLocalDateTime(columnIndex);
+                if (dateTime != null) {
+                    return Timestamp.valueOf(dateTime);
+                }
                 return Timestamp.valueOf(StringUtils.chop(getString(columnIndex)).replace("T", " "));
             case "long":
             case "int":
@@ -553,17 +616,55 @@ public class KustoResultSetTable {
      * This will return the full dateTime from Kusto as sql.Date is less precise
      */
     public LocalDateTime getKustoDateTime(int columnIndex) {
-        if (get(columnIndex) == null) {
+        if (isNull(columnIndex)) {
             return null;
         }
-        String dateString = getString(columnIndex);
-        return LocalDateTime.parse(dateString, kustoDateTimeFormatter);
+        if (currentRow instanceof ColumnarRows.Row && ((ColumnarRows.Row) currentRow).hasNanos(columnIndex)) {
+            return KustoDateTimeParser.toLocalDateTime(((ColumnarRows.Row) currentRow).getNanos(columnIndex));
+        }
+        return KustoDateTimeParser.parseLocalDateTime(getString(columnIndex));
     }
 
     public LocalDateTime getKustoDateTime(String columnName) {
         return getKustoDateTime(findColumn(columnName));
     }
 
+    /**
+     * Returns a timespan column as a Duration, with the full precision of the service's timespan
+     *
+     * @param columnIndex         Column index that contains the timespan
+     * @return Duration, or null if the value is null
+     */
+    public Duration getDuration(int columnIndex) {
+        if (isNull(columnIndex)) {
+            return null;
+        }
+        if (currentRow instanceof ColumnarRows.Row && ((ColumnarRows.Row) currentRow).hasNanos(columnIndex)) {
+            return Duration.ofNanos(((ColumnarRows.Row) currentRow).getNanos(columnIndex));
+        }
+        return KustoDateTimeParser.parseDuration(getString(columnIndex));
+    }
+
+    public Duration getDuration(String columnName) {
+        return getDuration(findColumn(columnName));
+    }
+
+    // Checks for null without boxing or formatting the value of a columnar row
+    boolean isNull(int columnIndex) {
+        if (currentRow instanceof ColumnarRows.Row) {
+            return ((ColumnarRows.Row) currentRow).isNull(columnIndex);
+        }
+        return get(columnIndex) == null;
+    }
+
+    // Returns null if the value doesn't have the layout the service writes datetimes in
+    private LocalDateTime tryGetLocalDateTime(int columnIndex) {
+        if (currentRow instanceof ColumnarRows.Row && ((ColumnarRows.Row) currentRow).hasNanos(columnIndex)) {
+            return KustoDateTimeParser.toLocalDateTime(((ColumnarRows.Row) currentRow).getNanos(columnIndex));
+        }
+        return KustoDateTimeParser.tryParseLocalDateTime(getString(columnIndex));
+    }
+
     /**
      * This will cut the date up to yyyy-MM-dd'T'HH:mm:ss.SSS
      *
@@ -581,12 +682,16 @@ public class KustoResultSetTable {
             case "string":
             case "datetime":
                 try {
-                    if (get(columnIndex) == null) {
+                    if (isNull(columnIndex)) {
                         return null;
                     }
+                    ZoneId zoneId = calendar.getTimeZone().toZoneId();
+                    LocalDateTime dateTime = tryGetLocalDateTime(columnIndex);
+                    if (dateTime != null) {
+                        return new Date(dateTime.atZone(zoneId).toInstant().toEpochMilli());
+                    }
                     String dateString = getString(columnIndex);
                     // First try the original FastDateFormat approach with strict patterns
-                    ZoneId zoneId = calendar.getTimeZone().toZoneId();
                     DateTimeFormatter formatter = (zoneId != null)
                             ? parseFormatterBuilder.toFormatter().withZone(zoneId)
                             : parseFormatterBuilder.toFormatter();
@@ -24,8 +24,8 @@ public class KustoType<C> {
     public static final KustoType<Float> REAL_FLOAT = new KustoType<>(Float.class, o -> Float.valueOf(Double.class.cast(o).floatValue()));
 
     public static final KustoType<ZonedDateTime> DATETIME_ZONED_DATE_TIME = new KustoType<>(ZonedDateTime.class, o -> ZonedDateTime.parse(o.toString()));
-    public static final KustoType<Instant> DATETIME_INSTANT = new KustoType<>(Instant.class, o -> Instant.parse(o.toString()));
-    public static final KustoType<Long> DATETIME_LONG = new KustoType<>(Long.class, o -> Instant.parse(o.toString()).toEpochMilli());
+    public static final KustoType<Instant> DATETIME_INSTANT = new KustoType<>(Instant.class, o -> KustoDateTimeParser.parseInstant(o.toString()));
+    public static final KustoType<Long> DATETIME_LONG = new KustoType<>(Long.class, o -> KustoDateTimeParser.parseEpochMillis(o.toString()));
 
     public static final KustoType<Object> OBJECT = new KustoType<>(Object.class);
 
@@ -0,0 +1,214 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.data;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.microsoft.azure.kusto.data.exceptions.JsonPropertyMissingException;
+import com.microsoft.azure.kusto.data.exceptions.KustoServiceQueryError;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Reads a v2 query response (a json array of frames) token by token, instead of building a json tree of the whole response.
+ * Every property of a frame except "Rows" is small and is read as a tree; rows are converted to java objects as they are read, so the memory held while
+ * parsing is bounded by the table being built rather than by the raw payload.
+ */
+class KustoV2FrameParser {
+    static final String FRAME_TYPE_PROPERTY_NAME = "FrameType";
+    static final String DATA_TABLE_FRAME_TYPE_PROPERTY_VALUE = "DataTable";
+    static final String DATA_SET_COMPLETION_FRAME_TYPE_PROPERTY_VALUE = "DataSetCompletion";
+    static final String HAS_ERRORS_PROPERTY_NAME = "HasErrors";
+
+    private final ObjectMapper objectMapper;
+    private final boolean columnar;
+    private final ParallelTableDecoder parallelDecoder;
+
+    KustoV2FrameParser(ObjectMapper objectMapper) {
+        this(objectMapper, false, null);
+    }
+
+    /**
+     * @param columnar        whether the rows of DataTable frames are stored in {@link ColumnarRows} rather than as lists of objects
+     * @param parallelDecoder if not null, DataTable frames are read as json trees and converted by the decoder while the following frames are read.
+     *                        Ignored when {@code columnar} is set, as columnar rows are built directly from the parser's tokens.
+     */
+    KustoV2FrameParser(ObjectMapper objectMapper, boolean columnar, ParallelTableDecoder parallelDecoder) {
+        this.objectMapper = objectMapper;
+        this.columnar = columnar;
+        this.parallelDecoder = columnar ? null : parallelDecoder;
+    }
+
+    /**
+     * Reads all frames from the parser, handing every DataTable frame to the consumer as soon as it was read.
+     *
+     * @param parser        a parser positioned before the response's opening bracket
+     * @param tableConsumer receives the tables in the order in which they appear in the response
+     * @throws IOException                  if the response can't be read or isn't valid json
+     * @throws JsonPropertyMissingException if the response isn't a json array
+     * @throws KustoServiceQueryError       if the service reported errors in a DataSetCompletion frame or in a table's rows
+     */
+    void parse(JsonParser parser, Consumer<KustoResultSetTable> tableConsumer) throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new JsonPropertyMissingException("There is no array in the response which can be parsed");
+        }
+
+        List<CompletableFuture<KustoResultSetTable>> pendingTables = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+            CompletableFuture<KustoResultSetTable> table = readFrameAsync(parser);
+            if (table == null) {
+                continue;
+            }
+
+            if (parallelDecoder != null) {
+                pendingTables.add(table);
+            } else {
+                tableConsumer.accept(table.join());
+            }
+        }
+
+        if (token != JsonToken.END_ARRAY) {
+            throw new JsonParseException(parser, "Expected a frame object or the end of the response but got " + token);
+        }
+        ParallelTableDecoder.joinAll(pendingTables).forEach(tableConsumer);
+    }
+
+    /**
+     * Reads a single frame, handing it to the parallel decoder if there is one.
+     *
+     * @param parser a parser positioned on the frame's START_OBJECT token. When the method returns, it is positioned on the frame's END_OBJECT token.
+     * @return the table read from the frame if it is a DataTable frame, null otherwise. Without a parallel decoder the future is already completed.
+     */
+    CompletableFuture<KustoResultSetTable> readFrameAsync(JsonParser parser) throws IOException {
+        if (parallelDecoder != null) {
+            ObjectNode frame = objectMapper.readTree(parser);
+            return isDataTableFrame(frame) ? parallelDecoder.decode(frame) : null;
+        }
+
+        KustoResultSetTable table = readFrame(parser);
+        return table == null ? null : CompletableFuture.completedFuture(table);
+    }
+
+    /**
+     * Reads a single frame.
+     *
+     * @param parser a parser positioned on the frame's START_OBJECT token. When the method returns, it is positioned on the frame's END_OBJECT token.
+     * @return the table read from the frame if it is a DataTable frame, null otherwise
+     */
+    KustoResultSetTable readFrame(JsonParser parser) throws IOException {
+        ObjectNode frame = objectMapper.createObjectNode();
+        List<List<Object>> rows = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String propertyName = parser.currentName();
+            JsonToken valueToken = parser.nextToken();
+            if (KustoResultSetTable.ROWS_PROPERTY_NAME.equals(propertyName) && valueToken == JsonToken.START_ARRAY) {
+                // The service writes "Columns" before "Rows", so the column types are known when the rows are read
+                rows = columnar && frame.has(KustoResultSetTable.COLUMNS_PROPERTY_NAME) ? readColumnarRows(parser, frame) : readRows(parser);
+            } else {
+                frame.set(propertyName, objectMapper.readTree(parser));
+            }
+        }
+
+        return isDataTableFrame(frame) ? new KustoResultSetTable(frame, rows) : null;
+    }
+
+    // Throws if the frame is a DataSetCompletion frame reporting errors
+    private static boolean isDataTableFrame(ObjectNode frame) {
+        String frameType = frame.has(FRAME_TYPE_PROPERTY_NAME) ? frame.get(FRAME_TYPE_PROPERTY_NAME).asText() : "";
+        if (frameType.equals(DATA_SET_COMPLETION_FRAME_TYPE_PROPERTY_VALUE) &&
+                frame.has(HAS_ERRORS_PROPERTY_NAME) && frame.get(HAS_ERRORS_PROPERTY_NAME).asBoolean()) {
+            throw KustoServiceQueryError.fromOneApiErrorArray((ArrayNode) frame.get(KustoOperationResult.ONE_API_ERRORS_PROPERTY_NAME), true);
+        }
+
+        return frameType.equals(DATA_TABLE_FRAME_TYPE_PROPERTY_VALUE);
+    }
+
+    private List<List<Object>> readRows(JsonParser parser) throws IOException {
+        List<List<Object>> rows = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            rows.add(readRow(parser, token));
+        }
+
+        return rows;
+    }
+
+    private ColumnarRows readColumnarRows(JsonParser parser, ObjectNode frame) throws IOException {
+        ColumnarRows rows = new ColumnarRows(KustoResultSetTable.parseColumns(frame));
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.START_OBJECT) {
+                throw KustoResultSetTable.createRowError(objectMapper.readTree(parser));
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected a row array but got " + token);
+            }
+            rows.readRow(parser, this);
+        }
+
+        rows.trimToSize();
+        return rows;
+    }
+
+    /**
+     * Reads a single element of a "Rows" array.
+     *
+     * @param parser a parser positioned on the row's first token. When the method returns, it is positioned on the row's last token.
+     * @param token  the current token of the parser
+     * @return the row's values, converted the same way as in {@link KustoResultSetTable}
+     * @throws KustoServiceQueryError if the element is an error object rather than a row
+     */
+    List<Object> readRow(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.START_OBJECT) {
+            throw KustoResultSetTable.createRowError(objectMapper.readTree(parser));
+        }
+        if (token != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected a row array but got " + token);
+        }
+
+        List<Object> row = new ArrayList<>();
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            row.add(readValue(parser, token));
+        }
+
+        return row;
+    }
+
+    // Matches the conversions KustoResultSetTable applies to json tree values
+    Object readValue(JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NUMBER_INT:
+                switch (parser.getNumberType()) {
+                    case INT:
+                        return parser.getIntValue();
+                    case LONG:
+                        return parser.getLongValue();
+                    default:
+                        return objectMapper.readTree(parser);
+                }
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDecimalValue();
+            default:
+                return objectMapper.readTree(parser);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.data;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.microsoft.azure.kusto.data.exceptions.JsonPropertyMissingException;
+import com.microsoft.azure.kusto.data.exceptions.KustoServiceQueryError;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Parses a response body into a {@link KustoOperationResult} while it is being received, without blocking a thread on the network and without
+ * aggregating the body into a String. Compressed bodies are inflated chunk by chunk, and the inflated bytes are fed to Jackson's non-blocking parser.
+ * <p>
+ * The tokens of a v2 response are buffered one frame at a time, and every complete frame is handed to {@link KustoV2FrameParser}, so only the frame
+ * being received is held in addition to the tables already read. A v1 response is a single json object, so its tokens are buffered until it is
+ * complete.
+ */
+class NonBlockingResponseParser {
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final ObjectMapper objectMapper = Utils.getObjectMapper();
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final EmbeddedChannel inflater;
+    private final String version;
+    private final boolean v2;
+    private final ParallelTableDecoder parallelDecoder;
+    private final KustoV2FrameParser frameParser;
+    private final List<CompletableFuture<KustoResultSetTable>> tables = new ArrayList<>();
+
+    // The tokens of the v2 frame being received, or of the whole v1 response
+    private TokenBuffer buffer;
+    private int depth;
+    private boolean ended;
+    private byte[] copyBuffer;
+
+    private NonBlockingResponseParser(String contentEncoding, String version, boolean columnarResults, ParallelTableDecoder parallelDecoder)
+            throws IOException {
+        this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        this.inflater = createInflater(contentEncoding);
+        this.version = version;
+        this.v2 = version.contains("v2");
+        this.parallelDecoder = parallelDecoder;
+        this.frameParser = new KustoV2FrameParser(objectMapper, columnarResults, parallelDecoder);
+    }
+
+    /**
+     * Parses a response body as it is received. The body is parsed on the {@link Schedulers#boundedElastic()} scheduler rather than on the thread that
+     * delivers it, which is usually an event loop thread of the HTTP client.
+     *
+     * @param body            the raw response body, whose buffers stay valid once emitted, as the HTTP client copies them by default
+     * @param contentEncoding the value of the response's Content-Encoding header, may be null
+     * @param version         the endpoint version that produced the response, "v1" or "v2"
+     * @param properties      the properties the request was sent with, whose client-side result options are applied, may be null
+     * @return the result, failing with a {@link KustoServiceQueryError} if the response is invalid or reports errors
+     */
+    static Mono<KustoOperationResult> parse(Flux<ByteBuffer> body, String contentEncoding, String version, ClientRequestProperties properties) {
+        return Mono.using(
+                () -> new NonBlockingResponseParser(contentEncoding, version, properties != null && properties.isColumnarResults(),
+                        ParallelTableDecoder.fromProperties(properties)),
+                responseParser -> body
+                        // Inflating the body and decoding its frames must not hold up the event loop, which serves other connections too
+                        .publishOn(Schedulers.boundedElastic())
+                        .doOnNext(responseParser::onNext)
+                        .then(Mono.defer(responseParser::complete)),
+                NonBlockingResponseParser::close);
+    }
+
+    private static EmbeddedChannel createInflater(String contentEncoding) {
+        if (contentEncoding == null) {
+            return null;
+        }
+        if (contentEncoding.contains("gzip")) {
+            return new EmbeddedChannel(ZlibCodecFactory.newZlibDecoder(ZlibWrapper.GZIP));
+        }
+        if (contentEncoding.contains("deflate")) {
+            return new EmbeddedChannel(ZlibCodecFactory.newZlibDecoder(ZlibWrapper.ZLIB_OR_NONE));
+        }
+        return null;
+    }
+
+    // The chunk is fully consumed before this returns (what the parser reads from it is copied into its tokens), so it isn't retained afterwards
+    private void onNext(ByteBuffer chunk) {
+        try {
+            if (inflater == null) {
+                feed(Unpooled.wrappedBuffer(chunk));
+            } else {
+                inflater.writeInbound(Unpooled.wrappedBuffer(chunk));
+                readInflated();
+            }
+        } catch (IOException | JsonPropertyMissingException e) {
+            throw toRuntimeException(e);
+        }
+    }
+
+    private Mono<KustoOperationResult> complete() {
+        try {
+            if (inflater != null) {
+                inflater.finish();
+                readInflated();
+            }
+            feeder.endOfInput();
+            readAvailableTokens();
+        } catch (IOException | JsonPropertyMissingException e) {
+            return Mono.error(toRuntimeException(e));
+        }
+
+        if (!v2) {
+            TokenBuffer response = buffer;
+            Mono<KustoOperationResult> result = Mono.fromCallable(() -> new KustoOperationResult(
+                    objectMapper -> response == null ? objectMapper.createParser(new byte[0]) : response.asParser(objectMapper), version, false,
+                    parallelDecoder));
+            // Waiting for the parallel decoder must not happen on the thread that delivered the response
+            return parallelDecoder == null ? result : result.subscribeOn(Schedulers.boundedElastic());
+        }
+
+        if (!ended) {
+            return Mono.error(depth == 0 ? toRuntimeException(new JsonPropertyMissingException("There is no array in the response which can be parsed"))
+                    : toRuntimeException(new JsonParseException(parser, "Unexpected end of the response")));
+        }
+
+        return Mono.fromFuture(CompletableFuture.allOf(tables.toArray(new CompletableFuture[0])).thenApply(ignore -> {
+            List<KustoResultSetTable> resultTables = new ArrayList<>(tables.size());
+            for (CompletableFuture<KustoResultSetTable> table : tables) {
+                resultTables.add(table.join());
+            }
+            return new KustoOperationResult(resultTables);
+        }));
+    }
+
+    private void readInflated() throws IOException {
+        ByteBuf inflated;
+        while ((inflated = inflater.readInbound()) != null) {
+            feed(inflated);
+        }
+    }
+
+    private void feed(ByteBuf bytes) throws IOException {
+        try {
+            int length = bytes.readableBytes();
+            if (length == 0) {
+                return;
+            }
+
+            if (bytes.hasArray()) {
+                int offset = bytes.arrayOffset() + bytes.readerIndex();
+                feeder.feedInput(bytes.array(), offset, offset + length);
+            } else {
+                if (copyBuffer == null || copyBuffer.length < length) {
+                    copyBuffer = new byte[length];
+                }
+                bytes.getBytes(bytes.readerIndex(), copyBuffer, 0, length);
+                feeder.feedInput(copyBuffer, 0, length);
+            }
+            // The parser must consume all of its input before it can be fed again
+            readAvailableTokens();
+        } finally {
+            bytes.release();
+        }
+    }
+
+    private void readAvailableTokens() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (!ended) {
+                onToken(token);
+            }
+        }
+    }
+
+    private void onToken(JsonToken token) throws IOException {
+        if (v2 && depth == 0) {
+            if (token != JsonToken.START_ARRAY) {
+                throw new JsonPropertyMissingException("There is no array in the response which can be parsed");
+            }
+            depth = 1;
+            return;
+        }
+
+        if (v2 && depth == 1) {
+            if (token == JsonToken.END_ARRAY) {
+                ended = true;
+                return;
+            }
+            if (token != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a frame object or the end of the response but got " + token);
+            }
+        }
+
+        if (buffer == null) {
+            buffer = new TokenBuffer(parser).forceUseOfBigDecimal(true);
+        }
+        buffer.copyCurrentEvent(parser);
+        if (token.isStructStart()) {
+            depth++;
+        } else if (token.isStructEnd()) {
+            depth--;
+        }
+
+        if (!v2) {
+            ended = depth == 0;
+        } else if (depth == 1) {
+            readFrame();
+        }
+    }
+
+    private void readFrame() throws IOException {
+        try (JsonParser frame = buffer.asParser(objectMapper)) {
+            frame.nextToken();
+            CompletableFuture<KustoResultSetTable> table = frameParser.readFrameAsync(frame);
+            if (table != null) {
+                tables.add(table);
+            }
+        }
+        buffer = null;
+    }
+
+    // Maps parsing failures the same way as KustoOperationResult does
+    private static RuntimeException toRuntimeException(Exception e) {
+        if (e instanceof JsonProcessingException || e instanceof JsonPropertyMissingException) {
+            log.error("Json processing error occurred while parsing string to json with exception", e);
+            return new KustoServiceQueryError("Json processing error occurred while parsing string to json with exception " + e.getMessage());
+        }
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        return new UncheckedIOException("Failed to read the response", (IOException) e);
+    }
+
+    private void close() {
+        if (inflater != null) {
+            inflater.finishAndReleaseAll();
+        }
+        try {
+            parser.close();
+        } catch (IOException e) {
+            log.debug("Failed to close the response parser", e);
+        }
+    }
+}
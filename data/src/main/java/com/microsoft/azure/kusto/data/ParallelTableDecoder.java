@@ -0,0 +1,92 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.data;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Converts the json trees of result tables to {@link KustoResultSetTable}s on an executor. Tables are converted concurrently with each other, and the
+ * rows of a large table are split into ranges that are converted concurrently and concatenated in order.
+ * <p>
+ * Only the calling thread waits for the conversions, so the executor may be bounded, as long as the calling thread isn't one of its threads.
+ */
+class ParallelTableDecoder {
+    static final int ROWS_PER_TASK = 4096;
+
+    private final Executor executor;
+    private final int rowsPerTask;
+
+    ParallelTableDecoder(Executor executor) {
+        this(executor, ROWS_PER_TASK);
+    }
+
+    ParallelTableDecoder(Executor executor, int rowsPerTask) {
+        this.executor = executor;
+        this.rowsPerTask = rowsPerTask;
+    }
+
+    /**
+     * @return a decoder running on {@link ClientRequestProperties#getResultDecodeScheduler}, or null if the properties don't set a scheduler
+     */
+    static ParallelTableDecoder fromProperties(ClientRequestProperties properties) {
+        return properties == null || properties.getResultDecodeScheduler() == null ? null
+                : new ParallelTableDecoder(properties.getResultDecodeScheduler()::schedule);
+    }
+
+    /**
+     * Starts converting a table. The json tree must not be modified until the returned future completes.
+     */
+    CompletableFuture<KustoResultSetTable> decode(JsonNode jsonTable) {
+        ArrayNode jsonRows = KustoResultSetTable.getJsonRows(jsonTable);
+        if (jsonRows == null || jsonRows.size() == 0) {
+            return CompletableFuture.supplyAsync(() -> new KustoResultSetTable(jsonTable, null), executor);
+        }
+
+        List<CompletableFuture<List<List<Object>>>> ranges = new ArrayList<>();
+        for (int from = 0; from < jsonRows.size(); from += rowsPerTask) {
+            int start = from;
+            int end = Math.min(from + rowsPerTask, jsonRows.size());
+            ranges.add(CompletableFuture.supplyAsync(() -> KustoResultSetTable.readRows(jsonRows, start, end), executor));
+        }
+
+        return CompletableFuture.allOf(ranges.toArray(new CompletableFuture[0])).thenApply(ignore -> {
+            List<List<Object>> rows;
+            if (ranges.size() == 1) {
+                rows = ranges.get(0).join();
+            } else {
+                rows = new ArrayList<>(jsonRows.size());
+                for (CompletableFuture<List<List<Object>>> range : ranges) {
+                    rows.addAll(range.join());
+                }
+            }
+            return new KustoResultSetTable(jsonTable, rows);
+        });
+    }
+
+    /**
+     * Waits for the tables in order, rethrowing the exception a conversion failed with.
+     */
+    static List<KustoResultSetTable> joinAll(List<CompletableFuture<KustoResultSetTable>> tables) {
+        List<KustoResultSetTable> results = new ArrayList<>(tables.size());
+        try {
+            for (CompletableFuture<KustoResultSetTable> table : tables) {
+                results.add(table.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+
+        return results;
+    }
+}
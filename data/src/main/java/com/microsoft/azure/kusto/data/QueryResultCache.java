@@ -0,0 +1,290 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.data;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A client-side cache of query results, opted into with {@link ClientImpl#setQueryResultCache} or
+ * {@link ClientFactory#createClient(com.microsoft.azure.kusto.data.auth.ConnectionStringBuilder, com.microsoft.azure.kusto.data.http.HttpClientProperties,
+ * QueryResultCache)}. Only queries are cached, never management commands.
+ * <p>
+ * Results are keyed by the client that sent the query, the cluster, the database, the query text with its whitespace normalized, and the parameters and options of the request
+ * properties that affect the result. They expire after a time to live, and the least recently used results are evicted once the estimated size of the
+ * cached results exceeds a bound. Concurrent identical queries that miss the cache share a single request to the service.
+ * <p>
+ * If a request sets {@link ClientRequestProperties#OPTION_QUERY_RESULTS_CACHE_MAX_AGE}, a cached result is only returned if it is at most that old,
+ * like the service's own query results cache.
+ * <p>
+ * Every caller receives its own {@link KustoOperationResult}, with its own cursors, but the rows are shared between callers and must not be modified.
+ * A cache may be set on several clients, which then share its size bound but not their results, as their credentials may grant access to different
+ * data.
+ */
+public class QueryResultCache {
+    // Rough per-object costs of a 64-bit JVM with compressed references, used to estimate the size of results
+    private static final int REFERENCE_SIZE = 8;
+    private static final int ROW_OVERHEAD = 40;
+    private static final int STRING_OVERHEAD = 40;
+    private static final int BOXED_SIZE = 24;
+    private static final int BIG_DECIMAL_SIZE = 64;
+    private static final int SAMPLED_ROWS = 64;
+
+    private final long timeToLiveNanos;
+    private final long maxSizeInBytes;
+    private final LongSupplier nanoClock;
+
+    // Guarded by "this"; iterates from the least to the most recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeInBytes = 0;
+
+    private final RequestCoalescer inFlight = new RequestCoalescer();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private QueryResultCache(QueryResultCacheBuilder builder) {
+        this(builder.timeToLive, builder.maxSizeInBytes, System::nanoTime);
+    }
+
+    QueryResultCache(Duration timeToLive, long maxSizeInBytes, LongSupplier nanoClock) {
+        Ensure.argIsNotNull(timeToLive, "timeToLive");
+        Ensure.isTrue(!timeToLive.isNegative() && !timeToLive.isZero(), "timeToLive must be positive");
+        Ensure.isTrue(maxSizeInBytes > 0, "maxSizeInBytes must be positive");
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.maxSizeInBytes = maxSizeInBytes;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Instantiates a new builder.
+     *
+     * @return a new {@linkplain QueryResultCacheBuilder}
+     */
+    public static QueryResultCacheBuilder builder() {
+        return new QueryResultCacheBuilder();
+    }
+
+    /**
+     * Returns the cached result of a query, or executes it if there is no fresh enough result.
+     *
+     * @param callerId identifies the client, whose results aren't shared with other clients
+     * @param execute  executes the query, called at most once per subscription and only on a miss that no identical request is in flight for
+     */
+    Mono<KustoOperationResult> getOrExecute(String callerId, String clusterUrl, String database, String query, ClientRequestProperties properties,
+            Supplier<Mono<KustoOperationResult>> execute) {
+        return Mono.defer(() -> {
+            String key = RequestCoalescer.createKey(callerId, clusterUrl, database, query, properties);
+            KustoOperationResult cached = get(key, getMaxAgeNanos(properties));
+            if (cached != null) {
+                hitCount.incrementAndGet();
+                return Mono.just(cached.copy());
+            }
+
+            missCount.incrementAndGet();
+            return inFlight.execute(key, () -> execute.get().doOnNext(result -> put(key, result)));
+        });
+    }
+
+    private static Long getMaxAgeNanos(ClientRequestProperties properties) {
+        Object maxAge = properties == null ? null : properties.getOption(ClientRequestProperties.OPTION_QUERY_RESULTS_CACHE_MAX_AGE);
+        if (maxAge instanceof Duration) {
+            return ((Duration) maxAge).toNanos();
+        }
+        if (maxAge instanceof String) {
+            long nanos = KustoDateTimeParser.tryParseTimespanNanos((String) maxAge);
+            // A value the service wouldn't accept either is left for the service to reject
+            return nanos == KustoDateTimeParser.NOT_PARSED ? null : nanos;
+        }
+
+        return null;
+    }
+
+    private synchronized KustoOperationResult get(String key, Long maxAgeNanos) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        long age = nanoClock.getAsLong() - entry.createdAtNanos;
+        if (age >= timeToLiveNanos) {
+            entries.remove(key);
+            sizeInBytes -= entry.sizeInBytes;
+            return null;
+        }
+
+        return maxAgeNanos != null && age > maxAgeNanos ? null : entry.result;
+    }
+
+    private void put(String key, KustoOperationResult result) {
+        long resultSize = estimateSizeInBytes(result) + STRING_OVERHEAD + 2L * key.length();
+        if (resultSize > maxSizeInBytes) {
+            return;
+        }
+
+        synchronized (this) {
+            Entry previous = entries.put(key, new Entry(result, nanoClock.getAsLong(), resultSize));
+            if (previous != null) {
+                sizeInBytes -= previous.sizeInBytes;
+            }
+            sizeInBytes += resultSize;
+
+            Iterator<Entry> leastRecentlyUsed = entries.values().iterator();
+            while (sizeInBytes > maxSizeInBytes) {
+                Entry evicted = leastRecentlyUsed.next();
+                leastRecentlyUsed.remove();
+                sizeInBytes -= evicted.sizeInBytes;
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    // Estimates the size of every table from a sample of its rows
+    static long estimateSizeInBytes(KustoOperationResult result) {
+        long size = 0;
+        for (KustoResultSetTable table : result.getResultTables()) {
+            List<List<Object>> rows = table.getData();
+            int sampled = Math.min(rows.size(), SAMPLED_ROWS);
+            long sampleSize = 0;
+            for (int i = 0; i < sampled; i++) {
+                List<Object> row = rows.get(i);
+                sampleSize += ROW_OVERHEAD;
+                for (Object value : row) {
+                    sampleSize += REFERENCE_SIZE + estimateSizeInBytes(value);
+                }
+            }
+            size += sampled == 0 ? 0 : sampleSize * rows.size() / sampled;
+        }
+
+        return size;
+    }
+
+    private static long estimateSizeInBytes(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return STRING_OVERHEAD + 2L * ((String) value).length();
+        }
+        if (value instanceof BigDecimal) {
+            return BIG_DECIMAL_SIZE;
+        }
+        if (value instanceof JsonNode) {
+            return STRING_OVERHEAD + 4L * value.toString().length();
+        }
+        return BOXED_SIZE;
+    }
+
+    /**
+     * Removes all cached results. Requests in flight are still shared by identical requests until they complete.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        sizeInBytes = 0;
+    }
+
+    /**
+     * @return the number of requests answered from the cache
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of requests that weren't answered from the cache, including those that shared an identical request in flight
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the number of requests that missed the cache but shared an identical request in flight instead of sending their own
+     */
+    public long getCoalescedCount() {
+        return inFlight.getCoalescedCount();
+    }
+
+    /**
+     * @return the number of results evicted to keep the cache within its size bound. Expired results aren't counted.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return the number of cached results, including expired results that weren't requested since they expired
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the estimated size of the cached results, in bytes
+     */
+    public synchronized long getEstimatedSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    private static class Entry {
+        private final KustoOperationResult result;
+        private final long createdAtNanos;
+        private final long sizeInBytes;
+
+        private Entry(KustoOperationResult result, long createdAtNanos, long sizeInBytes) {
+            this.result = result;
+            this.createdAtNanos = createdAtNanos;
+            this.sizeInBytes = sizeInBytes;
+        }
+    }
+
+    public static class QueryResultCacheBuilder {
+        private Duration timeToLive = Duration.ofMinutes(1);
+        private long maxSizeInBytes = 64L * 1024 * 1024;
+
+        public QueryResultCacheBuilder() {
+        }
+
+        /**
+         * Sets how long a result is kept after it was received. Defaults to 1 minute.
+         *
+         * @param timeToLive the time to live of results, must be positive
+         * @return the builder instance
+         */
+        public QueryResultCacheBuilder timeToLive(Duration timeToLive) {
+            this.timeToLive = timeToLive;
+            return this;
+        }
+
+        /**
+         * Sets the bound on the estimated size of the cached results, beyond which the least recently used results are evicted. A result larger than
+         * the bound isn't cached. Defaults to 64 MB.
+         *
+         * @param maxSizeInBytes the bound in bytes, must be positive
+         * @return the builder instance
+         */
+        public QueryResultCacheBuilder maxSizeInBytes(long maxSizeInBytes) {
+            this.maxSizeInBytes = maxSizeInBytes;
+            return this;
+        }
+
+        /**
+         * Builds a cache with the configured settings.
+         *
+         * @return a new {@linkplain QueryResultCache}
+         */
+        public QueryResultCache build() {
+            return new QueryResultCache(this);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.data;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Shares a single request between identical requests that are in flight at the same time, the way {@link com.microsoft.azure.kusto.data.auth.CloudInfo}
+ * shares the retrieval of a cluster's cloud info. Every subscriber receives its own copy of the result, see {@link KustoOperationResult#copy()}.
+ */
+class RequestCoalescer {
+    private final Map<String, Mono<KustoOperationResult>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * Subscribes to the request in flight for the key, or starts a new one if there is none.
+     * The shared request isn't cancelled when a subscriber cancels, as other subscribers may be waiting for it.
+     *
+     * @param key     identifies identical requests, see {@link #createKey}
+     * @param execute sends the request, called only if no request with the key is in flight
+     */
+    Mono<KustoOperationResult> execute(String key, Supplier<Mono<KustoOperationResult>> execute) {
+        return Mono.defer(() -> {
+            boolean[] created = {false};
+            Mono<KustoOperationResult> shared = inFlight.computeIfAbsent(key, k -> {
+                created[0] = true;
+                return execute.get()
+                        .doFinally(ignore -> inFlight.remove(k))
+                        .share();
+            });
+            if (!created[0]) {
+                coalescedCount.incrementAndGet();
+            }
+
+            return shared.map(KustoOperationResult::copy);
+        });
+    }
+
+    /**
+     * @return the number of requests that subscribed to an identical request in flight instead of sending their own
+     */
+    long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /*
+     * The key of a request: everything that may change its result, including who sends it, as principals may see different data. Timeouts, redirects
+     * and client-side options don't, and neither does the maximum age of a cached result, which only decides whether a cached result may be used.
+     */
+    static String createKey(String callerId, String clusterUrl, String database, String query, ClientRequestProperties properties) {
+        StringBuilder key = new StringBuilder();
+        key.append(callerId).append('\n').append(clusterUrl).append('\n').append(database).append('\n').append(normalizeQuery(query));
+        Map<String, Object> options = new TreeMap<>();
+        Map<String, Object> parameters = new TreeMap<>();
+        if (properties != null) {
+            for (Iterator<Map.Entry<String, Object>> it = properties.getOptions(); it.hasNext();) {
+                Map.Entry<String, Object> option = it.next();
+                String name = option.getKey();
+                if (!name.equals(ClientRequestProperties.OPTION_SERVER_TIMEOUT) && !name.equals(ClientRequestProperties.OPTION_NO_REQUEST_TIMEOUT) &&
+                        !name.equals(ClientRequestProperties.OPTION_CLIENT_MAX_REDIRECT_COUNT) &&
+                        !name.equals(ClientRequestProperties.OPTION_QUERY_RESULTS_CACHE_MAX_AGE)) {
+                    options.put(name, option.getValue());
+                }
+            }
+            for (Iterator<Map.Entry<String, Object>> it = properties.getParameters(); it.hasNext();) {
+                Map.Entry<String, Object> parameter = it.next();
+                parameters.put(parameter.getKey(), parameter.getValue());
+            }
+        }
+        key.append('\n').append(options).append('\n').append(parameters).append('\n').append(properties != null && properties.isColumnarResults());
+
+        return key.toString();
+    }
+
+    /*
+     * Collapses runs of whitespace outside of string literals and comments, so that reformatting a query doesn't change its key. A run that contains a
+     * line break collapses to a line break, as it ends a // comment. Comments and ``` multi-line string literals are kept as they are.
+     */
+    static String normalizeQuery(String query) {
+        if (query == null) {
+            return "";
+        }
+
+        StringBuilder normalized = new StringBuilder(query.length());
+        char quote = 0;
+        boolean verbatim = false;
+        char pendingWhitespace = 0;
+        for (int i = 0, end; i < query.length(); i = end) {
+            char c = query.charAt(i);
+            end = i + 1;
+            if (quote != 0) {
+                if (c == '\\' && !verbatim && end < query.length()) {
+                    end++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (normalized.length() > 0 && pendingWhitespace != '\n') {
+                    pendingWhitespace = c == '\n' || c == '\r' ? '\n' : ' ';
+                }
+                continue;
+            } else {
+                if (pendingWhitespace != 0) {
+                    normalized.append(pendingWhitespace);
+                    pendingWhitespace = 0;
+                }
+                if (query.startsWith("//", i)) {
+                    while (end < query.length() && query.charAt(end) != '\n' && query.charAt(end) != '\r') {
+                        end++;
+                    }
+                } else if (query.startsWith("```", i)) {
+                    end = query.indexOf("```", i + 3);
+                    end = end < 0 ? query.length() : end + 3;
+                } else if (c == '\'' || c == '"') {
+                    quote = c;
+                    verbatim = i > 0 && query.charAt(i - 1) == '@';
+                }
+            }
+            normalized.append(query, i, end);
+        }
+
+        return normalized.toString();
+    }
+}
@@ -186,7 +186,9 @@ public class Utils {
      */
     public static InputStream resolveInputStream(HttpResponse response, InputStream contentStream) {
         try {
-            String contentEncoding = response.getHeaders().get(HttpHeaderName.CONTENT_ENCODING).getValue();
+            String contentEncoding = Optional.ofNullable(response.getHeaders().get(HttpHeaderName.CONTENT_ENCODING))
+                    .map(HttpHeader::getValue)
+                    .orElse(StringUtils.EMPTY);
             if (contentEncoding.contains("gzip")) {
                 return new GZIPInputStream(contentStream);
             } else if (contentEncoding.contains("deflate")) {
@@ -4,22 +4,18 @@
 package com.microsoft.azure.kusto.data.auth;
 
 import com.microsoft.aad.msal4j.ClientCredentialParameters;
-import com.microsoft.aad.msal4j.IAccount;
 import com.microsoft.aad.msal4j.IAuthenticationResult;
 import com.microsoft.aad.msal4j.IConfidentialClientApplication;
 import com.microsoft.azure.kusto.data.exceptions.DataClientException;
 import com.microsoft.azure.kusto.data.exceptions.DataServiceException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
-import java.util.Set;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.time.Duration;
 
 import com.azure.core.http.HttpClient;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import reactor.core.publisher.Mono;
 
 public abstract class ConfidentialAppTokenProviderBase extends MsalTokenProviderBase {
     final String applicationClientId;
@@ -42,32 +38,24 @@ public abstract class ConfidentialAppTokenProviderBase extends MsalTokenProvider
     }
 
     @Override
-    protected IAuthenticationResult acquireNewAccessToken() throws DataServiceException {
-        IAuthenticationResult result;
-        try {
-            CompletableFuture<IAuthenticationResult> future = clientApplication.acquireToken(
-                    ClientCredentialParameters.builder(scopes).build());
-            result = future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
-        } catch (ExecutionException | TimeoutException e) {
-            throw new DataServiceException(clusterUrl, ERROR_ACQUIRING_APPLICATION_ACCESS_TOKEN, e, false);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new DataServiceException(clusterUrl, ERROR_ACQUIRING_APPLICATION_ACCESS_TOKEN, e, false);
-        }
-
-        if (result == null) {
-            throw new DataServiceException(clusterUrl, "acquireNewAccessToken got 'null' authentication result", false);
-        }
-        return result;
+    protected Mono<IAuthenticationResult> acquireNewAccessToken() {
+        return Mono.fromFuture(() -> clientApplication.acquireToken(ClientCredentialParameters.builder(scopes).build()))
+                .timeout(Duration.ofMillis(TIMEOUT_MS))
+                .onErrorMap(e -> e instanceof Exception && !(e instanceof DataServiceException),
+                        e -> new DataServiceException(clusterUrl, ERROR_ACQUIRING_APPLICATION_ACCESS_TOKEN, (Exception) e, false))
+                .switchIfEmpty(Mono.error(() -> new DataServiceException(clusterUrl, "acquireNewAccessToken got 'null' authentication result", false)));
     }
 
     @Override
-    protected IAuthenticationResult acquireAccessTokenSilentlyMsal()
-            throws MalformedURLException, InterruptedException, ExecutionException, TimeoutException {
-        CompletableFuture<Set<IAccount>> accounts = clientApplication.getAccounts();
-        return clientApplication
-                .acquireTokenSilently(getSilentParameters(accounts.join()))
-                .get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    protected Mono<IAuthenticationResult> acquireAccessTokenSilentlyMsal() {
+        return Mono.fromFuture(clientApplication::getAccounts)
+                .flatMap(accounts -> {
+                    try {
+                        return Mono.fromFuture(clientApplication.acquireTokenSilently(getSilentParameters(accounts)));
+                    } catch (MalformedURLException e) {
+                        return Mono.error(e);
+                    }
+                });
     }
 
     protected abstract IConfidentialClientApplication getClientApplication() throws MalformedURLException;
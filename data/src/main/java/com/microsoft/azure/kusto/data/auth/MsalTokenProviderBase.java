@@ -6,7 +6,6 @@ import com.microsoft.aad.msal4j.SilentParameters;
 import com.microsoft.azure.kusto.data.StringUtils;
 import com.microsoft.azure.kusto.data.UriUtils;
 import com.microsoft.azure.kusto.data.exceptions.DataClientException;
-import com.microsoft.azure.kusto.data.exceptions.DataServiceException;
 
 import com.microsoft.azure.kusto.data.instrumentation.MonitoredActivity;
 import com.azure.core.http.HttpClient;
@@ -16,19 +15,26 @@ import reactor.core.publisher.Mono;
 
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
+import java.time.Duration;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 public abstract class MsalTokenProviderBase extends CloudDependentTokenProviderBase {
     protected static final String ERROR_ACQUIRING_APPLICATION_ACCESS_TOKEN = "Error acquiring ApplicationAccessToken";
     protected static final String ORGANIZATION_URI_SUFFIX = "organizations";
     protected static final String ERROR_INVALID_AUTHORITY_URL = "Error acquiring ApplicationAccessToken due to invalid Authority URL";
     protected static final int TIMEOUT_MS = 20 * 1000;
+    // A cached token is not used this close to its expiry, to allow for clock skew and the time the request takes to reach the service
+    static final long EXPIRY_MARGIN_MS = 60 * 1000;
+    // A cached token is refreshed in the background once it is this close to its expiry
+    static final long REFRESH_WINDOW_MS = 5 * 60 * 1000;
     private static final String PERSONAL_TENANT_IDV2_AAD = "9188040d-6c67-4c5b-b112-36a304b66dad"; // Identifies MSA accounts
     private final String authorityId;
     protected String aadAuthorityUrl;
     private String firstPartyAuthorityUrl;
+    private volatile IAuthenticationResult cachedResult;
+    // The token refresh in flight, shared by everyone waiting for it
+    private final AtomicReference<Mono<IAuthenticationResult>> inFlightRefresh = new AtomicReference<>();
 
     MsalTokenProviderBase(@NotNull String clusterUrl, String authorityId, @Nullable HttpClient httpClient) throws URISyntaxException {
         super(clusterUrl, httpClient);
@@ -56,29 +62,63 @@ public abstract class MsalTokenProviderBase extends CloudDependentTokenProviderB
 
     @Override
     protected Mono<String> acquireAccessTokenImpl() {
-        return Mono.fromCallable(this::acquireAccessTokenSilently)
-                .switchIfEmpty(Mono.defer(() -> MonitoredActivity.wrap(Mono.fromCallable(this::acquireNewAccessToken),
-                        getAuthMethod().concat(".acquireNewAccessToken"), getTracingAttributes())))
-                .map(IAuthenticationResult::accessToken);
+        return Mono.defer(() -> {
+            IAuthenticationResult cached = cachedResult;
+            if (cached != null) {
+                long millisToExpiry = cached.expiresOnDate().getTime() - System.currentTimeMillis();
+                if (millisToExpiry > EXPIRY_MARGIN_MS) {
+                    if (millisToExpiry <= REFRESH_WINDOW_MS) {
+                        // Refreshed in the background, so that requests never wait on AAD while the cached token is still valid
+                        refreshToken().subscribe(ignore -> {
+                        }, e -> logger.warn("Failed to refresh the access token in the background: {}", e.getMessage()));
+                    }
+                    return Mono.just(cached.accessToken());
+                }
+            }
+            return refreshToken().map(IAuthenticationResult::accessToken);
+        });
     }
 
-    protected IAuthenticationResult acquireAccessTokenSilently() {
-        try {
-            return acquireAccessTokenSilentlyMsal();
-        } catch (MalformedURLException e) {
-            throw new DataClientException(clusterUrl, ERROR_INVALID_AUTHORITY_URL, e);
-        } catch (TimeoutException | ExecutionException e) {
-            return null; // Legitimate outcome, in which case a new token will be acquired
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return null; // Legitimate outcome, in which case a new token will be acquired
+    /**
+     * @return the token refresh in flight, or a new one if there is none, so that concurrent callers share a single request to AAD
+     */
+    private Mono<IAuthenticationResult> refreshToken() {
+        while (true) {
+            Mono<IAuthenticationResult> current = inFlightRefresh.get();
+            if (current != null) {
+                return current;
+            }
+
+            Mono<IAuthenticationResult> refresh = acquireAccessTokenSilently()
+                    .switchIfEmpty(Mono.defer(() -> MonitoredActivity.wrap(acquireNewAccessToken(),
+                            getAuthMethod().concat(".acquireNewAccessToken"), getTracingAttributes())))
+                    .doOnSuccess(result -> {
+                        cachedResult = result;
+                        inFlightRefresh.set(null);
+                    })
+                    .doOnError(e -> inFlightRefresh.set(null))
+                    .cache();
+            if (inFlightRefresh.compareAndSet(null, refresh)) {
+                return refresh;
+            }
         }
     }
 
-    protected abstract IAuthenticationResult acquireAccessTokenSilentlyMsal()
-            throws MalformedURLException, InterruptedException, ExecutionException, TimeoutException;
+    /**
+     * @return the token from MSAL's cache, refreshed by MSAL if needed, or an empty result if there is no cached account or MSAL failed, in which case a
+     *         new token is acquired
+     */
+    protected Mono<IAuthenticationResult> acquireAccessTokenSilently() {
+        return acquireAccessTokenSilentlyMsal()
+                .timeout(Duration.ofMillis(TIMEOUT_MS))
+                .onErrorMap(MalformedURLException.class, e -> new DataClientException(clusterUrl, ERROR_INVALID_AUTHORITY_URL, e))
+                // Legitimate outcome, in which case a new token will be acquired
+                .onErrorResume(e -> !(e instanceof DataClientException), e -> Mono.empty());
+    }
+
+    protected abstract Mono<IAuthenticationResult> acquireAccessTokenSilentlyMsal();
 
-    protected abstract IAuthenticationResult acquireNewAccessToken();
+    protected abstract Mono<IAuthenticationResult> acquireNewAccessToken();
 
     SilentParameters getSilentParameters(Set<IAccount> accountSet) {
         IAccount account = getAccount(accountSet);
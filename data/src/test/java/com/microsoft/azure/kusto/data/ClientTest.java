@@ -1,14 +1,29 @@
 package com.microsoft.azure.kusto.data;
 
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.util.Context;
 import com.microsoft.azure.kusto.data.auth.ConnectionStringBuilder;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
 class ClientTest {
 
     @Test
@@ -56,4 +71,40 @@ class ClientTest {
             Assertions.assertEquals(entry.getValue(), client.getClusterUrl());
         }
     }
+
+    @Test
+    @DisplayName("streaming rows doesn't change the caller's request properties")
+    void testStreamingRowsCopiesProperties() throws URISyntaxException {
+        // The query fails once it was prepared and sent
+        HttpClient httpClient = mock(HttpClient.class);
+        when(httpClient.send(any(HttpRequest.class), any(Context.class))).thenReturn(Mono.error(new IOException("Unavailable")));
+        ClientImpl client = new ClientImpl(ConnectionStringBuilder.createWithAadAccessTokenAuthentication("http://localhost", "test"), httpClient);
+        ClientRequestProperties properties = new ClientRequestProperties();
+        properties.setOption("query_language", "kql");
+
+        Assertions.assertThrows(Exception.class, () -> client.executeQueryStreamingRows("db", "T", properties).blockLast());
+        verify(httpClient, atLeastOnce()).send(any(HttpRequest.class), any(Context.class));
+        Assertions.assertNull(properties.getOption(ClientRequestProperties.OPTION_RESULTS_PROGRESSIVE_ENABLED));
+        Assertions.assertEquals("kql", properties.getOption("query_language"));
+    }
+
+    @Test
+    @DisplayName("clients that don't stream rows emit the rows of the primary results of the whole result")
+    void testStreamingRowsDefaultsToTheWholeResult() {
+        String response = "[{\"FrameType\":\"DataTable\",\"TableId\":0,\"TableKind\":\"QueryProperties\",\"TableName\":\"@ExtendedProperties\"," +
+                "\"Columns\":[{\"ColumnName\":\"Value\",\"ColumnType\":\"string\"}],\"Rows\":[[\"{}\"]]}," +
+                "{\"FrameType\":\"DataTable\",\"TableId\":1,\"TableKind\":\"PrimaryResult\",\"TableName\":\"PrimaryResult\"," +
+                "\"Columns\":[{\"ColumnName\":\"x\",\"ColumnType\":\"string\"}],\"Rows\":[[\"a\"],[\"b\"]]}," +
+                "{\"FrameType\":\"DataTable\",\"TableId\":2,\"TableKind\":\"PrimaryResult\",\"TableName\":\"PrimaryResult\"," +
+                "\"Columns\":[{\"ColumnName\":\"y\",\"ColumnType\":\"long\"}],\"Rows\":[[1]]}]";
+        Client client = mock(Client.class, CALLS_REAL_METHODS);
+        doReturn(Mono.just(new KustoOperationResult(response, "v2"))).when(client).executeQueryAsync("db", "T", null);
+
+        List<KustoResultRow> rows = client.executeQueryStreamingRows("db", "T").collectList().block();
+        Assertions.assertEquals(3, rows.size());
+        Assertions.assertEquals("a", rows.get(0).getString("x"));
+        Assertions.assertEquals("b", rows.get(1).getString(0));
+        Assertions.assertEquals("2", rows.get(2).getTableId());
+        Assertions.assertEquals(1L, rows.get(2).getLongObject("y"));
+    }
 }
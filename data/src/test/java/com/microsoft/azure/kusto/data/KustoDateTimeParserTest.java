@@ -0,0 +1,124 @@
+package com.microsoft.azure.kusto.data;
+
+import com.microsoft.azure.kusto.data.format.CslTimespanFormat;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KustoDateTimeParserTest {
+    private static final DateTimeFormatter kustoDateTimeFormatter = new DateTimeFormatterBuilder().parseCaseInsensitive()
+            .append(DateTimeFormatter.ISO_LOCAL_DATE_TIME).appendLiteral('Z').toFormatter();
+
+    @Test
+    void parsesDateTimesLikeTheFormatter() {
+        String[] values = {"2024-01-15T19:45:16.8109217Z", "2022-05-17T00:00:00Z", "2022-05-17T00:00:00.1Z", "2022-05-17T00:00:00.123456789Z",
+                "2000-02-29T23:59:59.9999999Z", "1970-01-01T00:00:00.0000000Z", "1969-12-31T23:59:59.9999999Z", "0001-01-01T00:00:00.0000000Z",
+                "9999-12-31T23:59:59.9999999Z", "2022-05-17t00:00:00z"};
+        for (String value : values) {
+            LocalDateTime expected = LocalDateTime.parse(value, kustoDateTimeFormatter);
+            assertEquals(expected, KustoDateTimeParser.tryParseLocalDateTime(value), value);
+            assertEquals(expected, KustoDateTimeParser.parseLocalDateTime(value), value);
+            assertEquals(expected.toInstant(ZoneOffset.UTC), KustoDateTimeParser.parseInstant(value), value);
+            assertEquals(expected.toInstant(ZoneOffset.UTC).toEpochMilli(), KustoDateTimeParser.parseEpochMillis(value), value);
+        }
+    }
+
+    @Test
+    void epochNanosRoundTrip() {
+        String value = "2024-01-15T19:45:16.8109217Z";
+        long nanos = KustoDateTimeParser.tryParseEpochNanos(value);
+        assertEquals(ChronoUnit.NANOS.between(Instant.EPOCH, Instant.parse(value)), nanos);
+        assertEquals(value, KustoDateTimeParser.formatEpochNanos(nanos));
+        assertEquals("1969-12-31T23:59:59.9999999Z", KustoDateTimeParser.formatEpochNanos(-100));
+        assertEquals("2022-05-17T00:00:00.123456789Z", KustoDateTimeParser.formatEpochNanos(KustoDateTimeParser.tryParseEpochNanos(
+                "2022-05-17T00:00:00.123456789Z")));
+
+        // Outside of the range of epoch nanoseconds
+        assertEquals(KustoDateTimeParser.NOT_PARSED, KustoDateTimeParser.tryParseEpochNanos("0001-01-01T00:00:00.0000000Z"));
+        assertEquals(KustoDateTimeParser.NOT_PARSED, KustoDateTimeParser.tryParseEpochNanos("2300-01-01T00:00:00.0000000Z"));
+    }
+
+    @Test
+    void fallsBackForOtherLayouts() {
+        String[] values = {"2024-01-15 19:45:16Z", "2024-01-15T19:45:16", "2024-01-15T19:45:16.Z", "2024-02-30T00:00:00Z", "2024-01-15T24:00:00Z",
+                "2024-1-15T19:45:16Z", "2024-01-15T19:45:16.1234567890Z", "2024-01-15T19:45:16+01:00", "20x1-01-15T19:45:16Z",
+                "x024-01-15T19:45:16Z", "2-24-01-15T19:45:16Z", ""};
+        for (String value : values) {
+            assertNull(KustoDateTimeParser.tryParseLocalDateTime(value), value);
+            assertEquals(KustoDateTimeParser.NOT_PARSED, KustoDateTimeParser.tryParseEpochNanos(value), value);
+        }
+
+        assertEquals(Instant.parse("2024-01-15T19:45:16.123Z"), KustoDateTimeParser.parseInstant("2024-01-15T19:45:16.123Z"));
+        // A malformed half of the year isn't absorbed by the other one
+        assertThrows(DateTimeParseException.class, () -> KustoDateTimeParser.parseLocalDateTime("20x1-01-15T19:45:16Z"));
+        assertThrows(DateTimeParseException.class, () -> KustoDateTimeParser.parseInstant("x024-01-15T19:45:16Z"));
+
+        // The formatter resolves invalid days of month leniently
+        assertEquals(LocalDateTime.of(2024, 2, 29, 0, 0), KustoDateTimeParser.parseLocalDateTime("2024-02-30T00:00:00Z"));
+    }
+
+    @Test
+    void parsesTimespansLikeTheRegexParser() {
+        String[] values = {"00:00:17.6227443", "00:00:00", "1.02:03:04.5000000", "-00:00:01", "-3.00:00:00.0000001", "23:59:59.9999999",
+                "10675.01:02:03.123456789"};
+        for (String value : values) {
+            Duration expected = new CslTimespanFormat(value).getValue();
+            assertEquals(expected.toNanos(), KustoDateTimeParser.tryParseTimespanNanos(value), value);
+            assertEquals(expected, KustoDateTimeParser.parseDuration(value), value);
+        }
+
+        assertEquals("00:00:17.6227443", KustoDateTimeParser.formatTimespanNanos(KustoDateTimeParser.tryParseTimespanNanos("00:00:17.6227443")));
+        assertEquals("1.02:03:04.5000000", KustoDateTimeParser.formatTimespanNanos(KustoDateTimeParser.tryParseTimespanNanos("1.02:03:04.5")));
+        assertEquals("-00:00:01", KustoDateTimeParser.formatTimespanNanos(-1_000_000_000L));
+
+        String[] others = {"1:02:03", "24:00:00", "00:60:00", "00:00:00.", "1.2:03:04", "abc", ""};
+        for (String value : others) {
+            assertEquals(KustoDateTimeParser.NOT_PARSED, KustoDateTimeParser.tryParseTimespanNanos(value), value);
+        }
+        assertThrows(RuntimeException.class, () -> KustoDateTimeParser.parseDuration("abc"));
+    }
+
+    @Test
+    void columnarResultsStoreDateTimesAsNanos() throws Exception {
+        String response = "[{\"FrameType\":\"DataTable\",\"TableId\":1,\"TableKind\":\"PrimaryResult\",\"TableName\":\"PrimaryResult\"," +
+                "\"Columns\":[{\"ColumnName\":\"d\",\"ColumnType\":\"datetime\"},{\"ColumnName\":\"t\",\"ColumnType\":\"timespan\"}]," +
+                "\"Rows\":[[\"2024-01-15T19:45:16.8109217Z\",\"1.00:00:01.5000000\"],[null,null],[\"0001-01-01T00:00:00.0000000Z\",\"00:00:00\"]]}]";
+        for (boolean columnar : new boolean[] {false, true}) {
+            KustoResultSetTable table = new KustoOperationResult(new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)), "v2", columnar)
+                    .getPrimaryResults();
+
+            table.next();
+            assertEquals(LocalDateTime.of(2024, 1, 15, 19, 45, 16, 810921700), table.getKustoDateTime("d"));
+            assertEquals(Timestamp.valueOf(LocalDateTime.of(2024, 1, 15, 19, 45, 16, 810921700)), table.getTimestamp("d"));
+            assertEquals("2024-01-15T19:45:16.8109217Z", table.getString("d"));
+            assertEquals(Duration.ofDays(1).plusMillis(1500), table.getDuration("t"));
+            assertEquals("1.00:00:01.5000000", table.getString("t"));
+
+            table.next();
+            assertNull(table.getKustoDateTime("d"));
+            assertNull(table.getTimestamp("d"));
+            assertNull(table.getDuration("t"));
+
+            // Out of the range of epoch nanoseconds, so the column falls back to storing strings
+            table.next();
+            assertEquals(LocalDateTime.of(1, 1, 1, 0, 0), table.getKustoDateTime("d"));
+            assertEquals(Duration.ZERO, table.getDuration("t"));
+            assertEquals(LocalDateTime.of(2024, 1, 15, 19, 45, 16, 810921700), KustoDateTimeParser.parseLocalDateTime(
+                    (String) table.getData().get(0).get(0)));
+        }
+    }
+}
@@ -1,9 +1,18 @@
 package com.microsoft.azure.kusto.data;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.microsoft.azure.kusto.data.exceptions.DataWebException;
 import com.microsoft.azure.kusto.data.exceptions.KustoServiceQueryError;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -19,4 +28,207 @@ class KustoOperationResultTest {
         assertEquals(1, thrownException.getExceptions().size());
         assertSame(thrownException.getExceptions().get(0).getClass(), DataWebException.class);
     }
+
+    private static final String V2_RESPONSE = "[{\"FrameType\":\"DataSetHeader\",\"IsProgressive\":false,\"Version\":\"v2.0\"}," +
+            "{\"FrameType\":\"DataTable\",\"TableId\":0,\"TableKind\":\"QueryProperties\",\"TableName\":\"@ExtendedProperties\"," +
+            "\"Columns\":[{\"ColumnName\":\"TableId\",\"ColumnType\":\"int\"},{\"ColumnName\":\"Key\",\"ColumnType\":\"string\"}]," +
+            "\"Rows\":[[1,\"Visualization\"]]}," +
+            "{\"FrameType\":\"DataTable\",\"TableId\":1,\"TableKind\":\"PrimaryResult\",\"TableName\":\"PrimaryResult\"," +
+            "\"Columns\":[{\"ColumnName\":\"i\",\"ColumnType\":\"int\"},{\"ColumnName\":\"l\",\"ColumnType\":\"long\"}," +
+            "{\"ColumnName\":\"r\",\"ColumnType\":\"real\"},{\"ColumnName\":\"b\",\"ColumnType\":\"bool\"}," +
+            "{\"ColumnName\":\"s\",\"ColumnType\":\"string\"},{\"ColumnName\":\"d\",\"ColumnType\":\"dynamic\"}]," +
+            "\"Rows\":[[1,10000000000,1.10,true,\"\u00e4\u20ac\",{\"a\":[1,2]}],[null,null,null,null,null,null]," +
+            "[2,123456789012345678901234567890,-0.5,false,\"x\",[\"y\"]]]}," +
+            "{\"FrameType\":\"DataSetCompletion\",\"HasErrors\":false,\"Cancelled\":false}]";
+
+    @Test
+    public void testStreamingParseMatchesJsonTreeParse() throws Exception {
+        JsonNode primaryTableJson = Utils.getObjectMapper().readTree(V2_RESPONSE).get(2);
+        KustoResultSetTable expected = new KustoResultSetTable(primaryTableJson);
+
+        KustoOperationResult fromString = new KustoOperationResult(V2_RESPONSE, "v2");
+        KustoOperationResult fromStream;
+        try (InputStream stream = new ByteArrayInputStream(V2_RESPONSE.getBytes(StandardCharsets.UTF_8))) {
+            fromStream = new KustoOperationResult(stream, "v2");
+        }
+
+        for (KustoOperationResult result : new KustoOperationResult[] {fromString, fromStream}) {
+            assertEquals(2, result.getResultTables().size());
+            KustoResultSetTable primary = result.getPrimaryResults();
+            assertEquals("PrimaryResult", primary.getTableName());
+            assertEquals("1", primary.getTableId());
+            assertEquals(6, primary.getColumns().length);
+            assertEquals(expected.getData(), primary.getData());
+
+            primary.next();
+            assertEquals(1, primary.getInt("i"));
+            assertEquals(10000000000L, primary.getLong("l"));
+            assertEquals(new BigDecimal("1.10"), primary.getBigDecimal("r"));
+            assertEquals(1.1d, primary.getDouble("r"));
+            assertTrue(primary.getBoolean("b"));
+            assertEquals("\u00e4\u20ac", primary.getString("s"));
+            assertEquals(2, primary.getJSONObject("d").get("a").size());
+        }
+    }
+
+    @Test
+    public void testColumnarParseReadsPrimitiveColumns() throws Exception {
+        KustoOperationResult result;
+        try (InputStream stream = new ByteArrayInputStream(V2_RESPONSE.getBytes(StandardCharsets.UTF_8))) {
+            result = new KustoOperationResult(stream, "v2", true);
+        }
+
+        KustoResultSetTable primary = result.getPrimaryResults();
+        assertEquals(3, primary.count());
+        primary.next();
+        assertEquals(1, primary.getInt("i"));
+        assertEquals(10000000000L, primary.getLong("l"));
+        assertEquals(1.1d, primary.getDouble("r"));
+        assertEquals(1.1d, primary.getDoubleObject("r"));
+        assertEquals(new BigDecimal("1.1"), primary.getBigDecimal("r"));
+        assertTrue(primary.getBoolean("b"));
+        assertEquals("\u00e4\u20ac", primary.getString("s"));
+        assertEquals(2, primary.getJSONObject("d").get("a").size());
+
+        primary.next();
+        assertNull(primary.getIntegerObject("i"));
+        assertNull(primary.getLongObject("l"));
+        assertNull(primary.getDoubleObject("r"));
+        assertNull(primary.getBooleanObject("b"));
+        assertThrows(NullPointerException.class, () -> primary.getLong("l"));
+        assertThrows(NullPointerException.class, () -> primary.getDouble("r"));
+
+        // A value that doesn't fit in a long moves the column to object storage, keeping the values read before it
+        primary.next();
+        assertEquals(2, primary.getInt("i"));
+        assertEquals(-0.5d, primary.getDouble("r"));
+        assertFalse(primary.getBoolean("b"));
+        assertEquals("123456789012345678901234567890", primary.getString("l"));
+        assertEquals(10000000000L, primary.getData().get(0).get(1));
+        assertNull(primary.getData().get(1).get(1));
+
+        KustoResultSetTable rowBased = new KustoOperationResult(V2_RESPONSE, "v2").getPrimaryResults();
+        assertEquals(rowBased.getData().get(0).get(0), primary.getData().get(0).get(0));
+        assertEquals(rowBased.getData().get(2).get(4), primary.getData().get(2).get(4));
+    }
+
+    @Test
+    public void testColumnarParseMatchesRowStorageAccessors() {
+        String response = "[{\"FrameType\":\"DataTable\",\"TableId\":1,\"TableKind\":\"PrimaryResult\",\"TableName\":\"PrimaryResult\"," +
+                "\"Columns\":[{\"ColumnName\":\"l\",\"ColumnType\":\"long\"},{\"ColumnName\":\"dt\",\"ColumnType\":\"datetime\"}," +
+                "{\"ColumnName\":\"ts\",\"ColumnType\":\"timespan\"}]," +
+                "\"Rows\":[[5,\"2024-01-15T19:45:16.8109217Z\",\"1.02:03:04.5000000\"],[-7,\"2022-05-17T00:00:00Z\",\"00:00:01.5\"]," +
+                "[10000000000,\"2022-05-17t00:00:00.1z\",\"00:00:00\"],[null,null,null]]}]";
+        KustoResultSetTable rowBased = new KustoOperationResult(response, "v2").getPrimaryResults();
+        KustoResultSetTable columnar = new KustoOperationResult(new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)), "v2", true)
+                .getPrimaryResults();
+        assertEquals(rowBased.getData(), columnar.getData());
+
+        while (rowBased.next()) {
+            assertTrue(columnar.next());
+            for (int column = 0; column < 3; column++) {
+                assertEquals(rowBased.getObject(column), columnar.getObject(column));
+                assertEquals(rowBased.getString(column), columnar.getString(column));
+            }
+            assertEquals(rowBased.getLongObject(0), columnar.getLongObject(0));
+            assertEquals(rowBased.getKustoDateTime(1), columnar.getKustoDateTime(1));
+            assertEquals(rowBased.getDuration(2), columnar.getDuration(2));
+        }
+
+        rowBased.first();
+        columnar.first();
+        assertEquals(5, columnar.getInt(0));
+        assertEquals(Integer.valueOf(5), columnar.getIntegerObject(0));
+        assertEquals("2024-01-15T19:45:16.8109217Z", columnar.getString(1));
+        columnar.next();
+        assertEquals(-7, columnar.getInt(0));
+        assertEquals("2022-05-17T00:00:00Z", columnar.getString(1));
+        assertEquals("00:00:01.5", columnar.getString(2));
+        rowBased.first();
+        rowBased.next();
+        rowBased.next();
+        columnar.next();
+        assertThrows(ClassCastException.class, () -> rowBased.getInt(0));
+        assertThrows(ClassCastException.class, () -> columnar.getInt(0));
+        assertEquals(10000000000L, columnar.getLong(0));
+    }
+
+    @Test
+    public void testColumnarParseHandlesNonFiniteRealsAndRowErrors() {
+        String response = "[{\"FrameType\":\"DataTable\",\"TableId\":1,\"TableKind\":\"PrimaryResult\",\"TableName\":\"PrimaryResult\"," +
+                "\"Columns\":[{\"ColumnName\":\"r\",\"ColumnType\":\"real\"}],\"Rows\":[[\"NaN\"],[\"-Infinity\"]]}]";
+        KustoResultSetTable primary = new KustoOperationResult(new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)), "v2", true)
+                .getPrimaryResults();
+        primary.next();
+        assertTrue(Double.isNaN(primary.getDouble(0)));
+        primary.next();
+        assertEquals(Double.NEGATIVE_INFINITY, primary.getDouble(0));
+
+        String withError = "[{\"FrameType\":\"DataTable\",\"TableId\":1,\"TableKind\":\"PrimaryResult\",\"TableName\":\"PrimaryResult\"," +
+                "\"Columns\":[{\"ColumnName\":\"l\",\"ColumnType\":\"long\"}],\"Rows\":[[1],{\"OneApiErrors\":[{\"error\":{\"code\":\"LimitsExceeded\"," +
+                "\"message\":\"Request is invalid and cannot be executed.\",\"@permanent\":true}}]}]}]";
+        assertThrows(KustoServiceQueryError.class,
+                () -> new KustoOperationResult(new ByteArrayInputStream(withError.getBytes(StandardCharsets.UTF_8)), "v2", true));
+    }
+
+    @Test
+    public void testParallelDecodeKeepsTableAndRowOrder() throws Exception {
+        StringBuilder rows = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            rows.append(i == 0 ? "" : ",").append("[").append(i).append(",\"r").append(i).append("\"]");
+        }
+        StringBuilder response = new StringBuilder("[{\"FrameType\":\"DataSetHeader\",\"IsProgressive\":false,\"Version\":\"v2.0\"}");
+        for (int t = 0; t < 3; t++) {
+            response.append(",{\"FrameType\":\"DataTable\",\"TableId\":").append(t).append(",\"TableKind\":\"PrimaryResult\",\"TableName\":\"T")
+                    .append(t).append("\",\"Columns\":[{\"ColumnName\":\"i\",\"ColumnType\":\"int\"},{\"ColumnName\":\"s\",\"ColumnType\":\"string\"}],")
+                    .append("\"Rows\":[").append(t == 1 ? "" : rows).append("]}");
+        }
+        response.append(",{\"FrameType\":\"DataSetCompletion\",\"HasErrors\":false,\"Cancelled\":false}]");
+
+        ClientRequestProperties properties = new ClientRequestProperties();
+        properties.setResultDecodeScheduler(Schedulers.parallel());
+        KustoOperationResult parallel = new KustoOperationResult(new ByteArrayInputStream(response.toString().getBytes(StandardCharsets.UTF_8)), "v2",
+                properties);
+        KustoOperationResult sequential = new KustoOperationResult(response.toString(), "v2");
+
+        assertEquals(3, parallel.getResultTables().size());
+        for (int t = 0; t < 3; t++) {
+            assertEquals("T" + t, parallel.getResultTables().get(t).getTableName());
+            assertEquals(sequential.getResultTables().get(t).getData(), parallel.getResultTables().get(t).getData());
+        }
+        assertEquals(10000, parallel.getResultTables().get(2).count());
+        assertEquals(0, parallel.getResultTables().get(1).count());
+
+        KustoOperationResult v1Parallel = new KustoOperationResult(new ByteArrayInputStream(
+                "{\"Tables\":[{\"TableName\":\"Table_0\",\"Columns\":[{\"ColumnName\":\"x\",\"DataType\":\"Int32\"}],\"Rows\":[[1],[2]]}]}"
+                        .getBytes(StandardCharsets.UTF_8)),
+                "v1", properties);
+        assertEquals(2, v1Parallel.getPrimaryResults().count());
+        assertEquals(WellKnownDataSet.PrimaryResult, v1Parallel.getPrimaryResults().getTableKind());
+    }
+
+    @Test
+    public void testParallelDecodeSplitsRowRangesAndPropagatesRowErrors() throws Exception {
+        JsonNode table = Utils.getObjectMapper().readTree(V2_RESPONSE).get(2);
+        ParallelTableDecoder decoder = new ParallelTableDecoder(ForkJoinPool.commonPool(), 1);
+        KustoResultSetTable decoded = ParallelTableDecoder.joinAll(Collections.singletonList(decoder.decode(table))).get(0);
+        assertEquals(new KustoResultSetTable(table).getData(), decoded.getData());
+        assertEquals("PrimaryResult", decoded.getTableName());
+
+        JsonNode withError = Utils.getObjectMapper().readTree("{\"TableName\":\"t\",\"Columns\":[{\"ColumnName\":\"x\",\"ColumnType\":\"int\"}]," +
+                "\"Rows\":[[1],{\"OneApiErrors\":[{\"error\":{\"code\":\"LimitsExceeded\",\"message\":\"Request is invalid and cannot be executed.\"," +
+                "\"@permanent\":true}}]}]}");
+        assertThrows(KustoServiceQueryError.class, () -> ParallelTableDecoder.joinAll(Collections.singletonList(decoder.decode(withError))));
+    }
+
+    @Test
+    public void testStreamingParseThrowsOnInvalidResponse() {
+        assertThrows(KustoServiceQueryError.class,
+                () -> new KustoOperationResult(new ByteArrayInputStream("{\"a\":1}".getBytes(StandardCharsets.UTF_8)), "v2"));
+        assertThrows(KustoServiceQueryError.class,
+                () -> new KustoOperationResult(new ByteArrayInputStream("[{\"FrameType\":\"DataTable\",\"Rows\":[[1,".getBytes(StandardCharsets.UTF_8)),
+                        "v2"));
+        assertThrows(KustoServiceQueryError.class,
+                () -> new KustoOperationResult(new ByteArrayInputStream(new byte[0]), "v1"));
+    }
 }
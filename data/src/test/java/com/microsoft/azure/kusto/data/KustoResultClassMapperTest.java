@@ -0,0 +1,189 @@
+package com.microsoft.azure.kusto.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KustoResultClassMapperTest {
+    private static final String RESPONSE = "[{\"FrameType\":\"DataTable\",\"TableId\":1,\"TableKind\":\"PrimaryResult\",\"TableName\":\"PrimaryResult\"," +
+            "\"Columns\":[{\"ColumnName\":\"Id\",\"ColumnType\":\"long\"},{\"ColumnName\":\"Count\",\"ColumnType\":\"int\"}," +
+            "{\"ColumnName\":\"Score\",\"ColumnType\":\"real\"},{\"ColumnName\":\"Enabled\",\"ColumnType\":\"bool\"}," +
+            "{\"ColumnName\":\"Name\",\"ColumnType\":\"string\"},{\"ColumnName\":\"Timestamp\",\"ColumnType\":\"datetime\"}," +
+            "{\"ColumnName\":\"Elapsed\",\"ColumnType\":\"timespan\"},{\"ColumnName\":\"Guid\",\"ColumnType\":\"guid\"}," +
+            "{\"ColumnName\":\"Level\",\"ColumnType\":\"string\"},{\"ColumnName\":\"Amount\",\"ColumnType\":\"decimal\"}," +
+            "{\"ColumnName\":\"Unmapped\",\"ColumnType\":\"string\"}]," +
+            "\"Rows\":[[10000000000,3,1.5,true,\"a\",\"2024-01-15T19:45:16.8109217Z\",\"00:00:01.5000000\",\"e091cf92-6195-4005-bad5-82af80ff1939\"," +
+            "\"B\",\"1.25\",\"x\"]," +
+            "[null,null,null,null,null,null,null,null,null,null,null]]}]";
+
+    public enum Level {
+        A, B
+    }
+
+    public static class Event {
+        long id = -1;
+        Integer count;
+        double score = -1;
+        boolean enabled = true;
+        String name;
+        Instant timestamp;
+        Duration elapsed;
+        UUID guid;
+        Level level;
+        BigDecimal amount;
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public void setCount(Integer count) {
+            this.count = count;
+        }
+
+        public void setScore(double score) {
+            this.score = score;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Event setName(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public void setTimestamp(Instant timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        public void setElapsed(Duration elapsed) {
+            this.elapsed = elapsed;
+        }
+
+        public void setGuid(UUID guid) {
+            this.guid = guid;
+        }
+
+        public void setLevel(Level level) {
+            this.level = level;
+        }
+
+        public void setAmount(BigDecimal amount) {
+            this.amount = amount;
+        }
+    }
+
+    public static class WrongType {
+        public void setName(long name) {
+        }
+    }
+
+    public static class Overloaded {
+        String id;
+        long count;
+
+        public void setId(String id) {
+            this.id = "string " + id;
+        }
+
+        public void setId(long id) {
+            this.id = "long " + id;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public void setCount(long count) {
+            this.count = -count;
+        }
+    }
+
+    public static class AmbiguousOverloads {
+        public void setName(Level name) {
+        }
+
+        public void setName(UUID name) {
+        }
+    }
+
+    public static class NoDefaultConstructor {
+        public NoDefaultConstructor(String ignored) {
+        }
+    }
+
+    @Test
+    void mapsBeansFromRowAndColumnarTables() {
+        for (boolean columnar : new boolean[] {false, true}) {
+            List<Event> events = KustoResultClassMapper.forClass(Event.class).extractList(read(RESPONSE, columnar));
+            assertEquals(2, events.size());
+
+            Event event = events.get(0);
+            assertEquals(10000000000L, event.id);
+            assertEquals(3, event.count);
+            assertEquals(1.5d, event.score);
+            assertTrue(event.enabled);
+            assertEquals("a", event.name);
+            assertEquals(Instant.parse("2024-01-15T19:45:16.8109217Z"), event.timestamp);
+            assertEquals(Duration.ofMillis(1500), event.elapsed);
+            assertEquals(UUID.fromString("e091cf92-6195-4005-bad5-82af80ff1939"), event.guid);
+            assertEquals(Level.B, event.level);
+            assertEquals(new BigDecimal("1.25"), event.amount);
+
+            // Nulls leave primitive properties untouched and set the others to null
+            Event empty = events.get(1);
+            assertEquals(-1, empty.id);
+            assertEquals(-1d, empty.score);
+            assertTrue(empty.enabled);
+            assertNull(empty.count);
+            assertNull(empty.name);
+            assertNull(empty.timestamp);
+            assertNull(empty.level);
+        }
+    }
+
+    @Test
+    void extractSingleReadsTheNextRow() {
+        KustoResultSetTable table = read(RESPONSE, true);
+        KustoResultClassMapper<Event> mapper = KustoResultClassMapper.forClass(Event.class);
+        assertEquals("a", mapper.extractSingle(table).name);
+        assertNull(mapper.extractSingle(table).name);
+        assertNull(mapper.extractSingle(table));
+    }
+
+    @Test
+    void reportsMismatchedColumns() {
+        KustoResultClassMapper<WrongType> mapper = KustoResultClassMapper.forClass(WrongType.class);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> mapper.extractList(read(RESPONSE, false)));
+        assertTrue(e.getMessage().contains("Name"));
+
+        assertThrows(IllegalArgumentException.class, () -> KustoResultClassMapper.forClass(NoDefaultConstructor.class));
+    }
+
+    @Test
+    void picksTheOverloadedSetterMatchingTheColumnType() {
+        Overloaded overloaded = KustoResultClassMapper.forClass(Overloaded.class).extractList(read(RESPONSE, false)).get(0);
+        assertEquals("long 10000000000", overloaded.id);
+        assertEquals(3, overloaded.count);
+
+        KustoResultClassMapper<AmbiguousOverloads> mapper = KustoResultClassMapper.forClass(AmbiguousOverloads.class);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> mapper.extractList(read(RESPONSE, false)));
+        assertTrue(e.getMessage().contains("Name"));
+    }
+
+    private static KustoResultSetTable read(String response, boolean columnar) {
+        return new KustoOperationResult(new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)), "v2", columnar).getPrimaryResults();
+    }
+}
@@ -0,0 +1,123 @@
+package com.microsoft.azure.kusto.data;
+
+import com.microsoft.azure.kusto.data.exceptions.KustoServiceQueryError;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KustoResultRowReaderTest {
+    private static final String PROGRESSIVE_RESPONSE = "[{\"FrameType\":\"DataSetHeader\",\"IsProgressive\":true,\"Version\":\"v2.0\"}," +
+            "{\"FrameType\":\"DataTable\",\"TableId\":0,\"TableKind\":\"QueryProperties\",\"TableName\":\"@ExtendedProperties\"," +
+            "\"Columns\":[{\"ColumnName\":\"TableId\",\"ColumnType\":\"int\"},{\"ColumnName\":\"Key\",\"ColumnType\":\"string\"}]," +
+            "\"Rows\":[[1,\"Visualization\"]]}," +
+            "{\"FrameType\":\"TableHeader\",\"TableId\":1,\"TableKind\":\"PrimaryResult\",\"TableName\":\"PrimaryResult\"," +
+            "\"Columns\":[{\"ColumnName\":\"Name\",\"ColumnType\":\"string\"},{\"ColumnName\":\"Count\",\"ColumnType\":\"long\"}]}," +
+            "{\"FrameType\":\"TableFragment\",\"TableFragmentType\":\"DataAppend\",\"TableId\":1,\"Rows\":[[\"a\",1],[\"b\",2]]}," +
+            "{\"FrameType\":\"TableProgress\",\"TableId\":1,\"TableProgress\":50.0}," +
+            "{\"FrameType\":\"TableFragment\",\"TableFragmentType\":\"DataAppend\",\"TableId\":1,\"Rows\":[[null,3000000000]]}," +
+            "{\"FrameType\":\"TableCompletion\",\"TableId\":1,\"RowCount\":3}," +
+            "{\"FrameType\":\"DataTable\",\"TableId\":2,\"TableKind\":\"QueryCompletionInformation\",\"TableName\":\"QueryCompletionInformation\"," +
+            "\"Columns\":[{\"ColumnName\":\"Level\",\"ColumnType\":\"int\"}],\"Rows\":[[4]]}," +
+            "{\"FrameType\":\"DataSetCompletion\",\"HasErrors\":false,\"Cancelled\":false}]";
+
+    @Test
+    void readsPrimaryResultRowsFromProgressiveFrames() throws IOException {
+        List<KustoResultRow> rows = readAll(PROGRESSIVE_RESPONSE);
+
+        assertEquals(3, rows.size());
+        assertEquals("PrimaryResult", rows.get(0).getTableName());
+        assertEquals(2, rows.get(0).getColumns().length);
+        assertEquals("a", rows.get(0).getString("Name"));
+        assertEquals(1L, rows.get(0).getLongObject("Count"));
+        assertEquals("b", rows.get(1).getString(0));
+        assertNull(rows.get(2).getString("Name"));
+        assertEquals(3000000000L, rows.get(2).getLongObject(1));
+    }
+
+    @Test
+    void readsPrimaryResultRowsFromDataTableFrames() throws IOException {
+        String response = "[{\"FrameType\":\"DataSetHeader\",\"IsProgressive\":false,\"Version\":\"v2.0\"}," +
+                "{\"FrameType\":\"DataTable\",\"TableId\":1,\"TableKind\":\"PrimaryResult\",\"TableName\":\"PrimaryResult\"," +
+                "\"Columns\":[{\"ColumnName\":\"x\",\"ColumnType\":\"real\"}],\"Rows\":[[1.5],[2.5]]}," +
+                "{\"FrameType\":\"DataSetCompletion\",\"HasErrors\":false,\"Cancelled\":false}]";
+
+        List<KustoResultRow> rows = readAll(response);
+
+        assertEquals(2, rows.size());
+        assertEquals(2.5d, rows.get(1).getDoubleObject("x"));
+    }
+
+    @Test
+    void readsDatetimesLikeTheResultSetTable() throws Exception {
+        String response = "[{\"FrameType\":\"DataTable\",\"TableId\":1,\"TableKind\":\"PrimaryResult\",\"TableName\":\"PrimaryResult\"," +
+                "\"Columns\":[{\"ColumnName\":\"d\",\"ColumnType\":\"datetime\"},{\"ColumnName\":\"l\",\"ColumnType\":\"long\"}]," +
+                "\"Rows\":[[\"2024-02-29T23:59:58.1234567Z\",1700000000000],[null,null]]}]";
+
+        List<KustoResultRow> rows = readAll(response);
+        KustoResultSetTable table = new KustoOperationResult(response, "v2").getPrimaryResults();
+        table.next();
+
+        assertEquals(table.getKustoDateTime("d"), rows.get(0).getKustoDateTime("d"));
+        assertEquals(table.getDate("d"), rows.get(0).getDate("d"));
+        assertEquals(table.getDate("l"), rows.get(0).getDate(1));
+        assertNull(rows.get(1).getKustoDateTime(0));
+        assertNull(rows.get(1).getDate("l"));
+    }
+
+    @Test
+    void emitsRowsBeforeFailingOnTableCompletionErrors() throws IOException {
+        String response = "[{\"FrameType\":\"TableHeader\",\"TableId\":1,\"TableKind\":\"PrimaryResult\",\"TableName\":\"PrimaryResult\"," +
+                "\"Columns\":[{\"ColumnName\":\"x\",\"ColumnType\":\"int\"}]}," +
+                "{\"FrameType\":\"TableFragment\",\"TableFragmentType\":\"DataAppend\",\"TableId\":1,\"Rows\":[[1]]}," +
+                "{\"FrameType\":\"TableCompletion\",\"TableId\":1,\"RowCount\":1,\"OneApiErrors\":[{\"error\":{\"code\":\"LimitsExceeded\"," +
+                "\"message\":\"Request is invalid and cannot be executed.\",\"@permanent\":true}}]}]";
+
+        try (KustoResultRowReader reader = new KustoResultRowReader(toStream(response))) {
+            assertTrue(reader.hasNext());
+            assertEquals(1, reader.next().getIntegerObject(0));
+            assertThrows(KustoServiceQueryError.class, reader::hasNext);
+        }
+    }
+
+    @Test
+    void failsWhenAlreadyReturnedRowsAreReplaced() throws IOException {
+        String response = "[{\"FrameType\":\"TableHeader\",\"TableId\":1,\"TableKind\":\"PrimaryResult\",\"TableName\":\"PrimaryResult\"," +
+                "\"Columns\":[{\"ColumnName\":\"x\",\"ColumnType\":\"int\"}]}," +
+                "{\"FrameType\":\"TableFragment\",\"TableFragmentType\":\"DataReplace\",\"TableId\":1,\"Rows\":[[1]]}," +
+                "{\"FrameType\":\"TableFragment\",\"TableFragmentType\":\"DataReplace\",\"TableId\":1,\"Rows\":[[2]]}]";
+
+        try (KustoResultRowReader reader = new KustoResultRowReader(toStream(response))) {
+            assertEquals(1, reader.next().getIntegerObject(0));
+            assertThrows(KustoServiceQueryError.class, reader::hasNext);
+        }
+    }
+
+    @Test
+    void emptyResponseHasNoRows() throws IOException {
+        try (KustoResultRowReader reader = new KustoResultRowReader(toStream("[]"))) {
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    private static List<KustoResultRow> readAll(String response) throws IOException {
+        List<KustoResultRow> rows = new ArrayList<>();
+        try (KustoResultRowReader reader = new KustoResultRowReader(toStream(response))) {
+            reader.forEachRemaining(rows::add);
+        }
+        return rows;
+    }
+
+    private static ByteArrayInputStream toStream(String response) {
+        return new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8));
+    }
+}
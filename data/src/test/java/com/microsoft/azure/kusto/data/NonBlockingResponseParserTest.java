@@ -0,0 +1,120 @@
+package com.microsoft.azure.kusto.data;
+
+import com.microsoft.azure.kusto.data.exceptions.KustoServiceQueryError;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NonBlockingResponseParserTest {
+    private static final String V2_RESPONSE = "[{\"FrameType\":\"DataSetHeader\",\"IsProgressive\":false,\"Version\":\"v2.0\"}," +
+            "{\"FrameType\":\"DataTable\",\"TableId\":0,\"TableKind\":\"QueryProperties\",\"TableName\":\"@ExtendedProperties\"," +
+            "\"Columns\":[{\"ColumnName\":\"TableId\",\"ColumnType\":\"int\"},{\"ColumnName\":\"Value\",\"ColumnType\":\"dynamic\"}]," +
+            "\"Rows\":[[1,{\"Visualization\":\"table\",\"Nested\":[1,2]}]]}," +
+            "{\"FrameType\":\"DataTable\",\"TableId\":1,\"TableKind\":\"PrimaryResult\",\"TableName\":\"PrimaryResult\"," +
+            "\"Columns\":[{\"ColumnName\":\"s\",\"ColumnType\":\"string\"},{\"ColumnName\":\"l\",\"ColumnType\":\"long\"}," +
+            "{\"ColumnName\":\"r\",\"ColumnType\":\"real\"},{\"ColumnName\":\"d\",\"ColumnType\":\"decimal\"}]," +
+            "\"Rows\":[[\"äöü €𝄞 text\",10000000000,0.1000000000000000055511151231257827,\"1.25\"],[null,null,null,null],[\"\",1,-2.5E-3,null]]}," +
+            "{\"FrameType\":\"DataSetCompletion\",\"HasErrors\":false,\"Cancelled\":false}]";
+
+    private static final String V1_RESPONSE = "{\"Tables\":[{\"TableName\":\"Table_0\",\"Columns\":[{\"ColumnName\":\"x\",\"DataType\":\"String\"}]," +
+            "\"Rows\":[[\"ä€\"],[\"b\"]]}]}";
+
+    @Test
+    void parsesChunkedResponsesLikeTheStringParser() throws IOException {
+        for (int chunkSize : new int[] {1, 7, 1 << 16}) {
+            for (boolean gzip : new boolean[] {false, true}) {
+                KustoOperationResult expected = new KustoOperationResult(V2_RESPONSE, "v2");
+                KustoOperationResult actual = parse(V2_RESPONSE, gzip, chunkSize, "v2", null);
+                assertEquals(expected.getResultTables().size(), actual.getResultTables().size());
+                for (int i = 0; i < expected.getResultTables().size(); i++) {
+                    assertEquals(expected.getResultTables().get(i).getTableName(), actual.getResultTables().get(i).getTableName());
+                    assertEquals(expected.getResultTables().get(i).getData(), actual.getResultTables().get(i).getData());
+                }
+
+                KustoOperationResult v1 = parse(V1_RESPONSE, gzip, chunkSize, "v1", null);
+                assertEquals(new KustoOperationResult(V1_RESPONSE, "v1").getPrimaryResults().getData(), v1.getPrimaryResults().getData());
+            }
+        }
+    }
+
+    @Test
+    void appliesClientSideResultOptions() throws IOException {
+        ClientRequestProperties properties = new ClientRequestProperties();
+        properties.setColumnarResults(true);
+        KustoResultSetTable columnar = parse(V2_RESPONSE, true, 5, "v2", properties).getPrimaryResults();
+        columnar.next();
+        assertEquals(10000000000L, columnar.getLong("l"));
+
+        properties.setColumnarResults(false);
+        properties.setResultDecodeScheduler(Schedulers.parallel());
+        assertEquals(new KustoOperationResult(V2_RESPONSE, "v2").getPrimaryResults().getData(),
+                parse(V2_RESPONSE, true, 5, "v2", properties).getPrimaryResults().getData());
+        assertEquals(2, parse(V1_RESPONSE, false, 3, "v1", properties).getPrimaryResults().count());
+    }
+
+    @Test
+    void failsOnErrorsAndInvalidResponses() {
+        String withErrors = "[{\"FrameType\":\"DataSetHeader\",\"IsProgressive\":false,\"Version\":\"v2.0\"}," +
+                "{\"FrameType\":\"DataSetCompletion\",\"HasErrors\":true,\"Cancelled\":false,\"OneApiErrors\":[{\"error\":{\"code\":\"LimitsExceeded\"," +
+                "\"message\":\"Request is invalid and cannot be executed.\",\"@permanent\":true}}]}]";
+        String rowError = "[{\"FrameType\":\"DataTable\",\"TableId\":1,\"TableKind\":\"PrimaryResult\",\"TableName\":\"PrimaryResult\"," +
+                "\"Columns\":[{\"ColumnName\":\"x\",\"ColumnType\":\"int\"}],\"Rows\":[[1],{\"OneApiErrors\":[{\"error\":{\"code\":\"LimitsExceeded\"," +
+                "\"message\":\"Request is invalid and cannot be executed.\",\"@permanent\":true}}]}]}]";
+
+        assertThrows(KustoServiceQueryError.class, () -> parse(withErrors, true, 4, "v2", null));
+        assertThrows(KustoServiceQueryError.class, () -> parse(rowError, false, 4, "v2", null));
+        assertThrows(KustoServiceQueryError.class, () -> parse("{\"a\":1}", false, 4, "v2", null));
+        assertThrows(KustoServiceQueryError.class, () -> parse("[{\"FrameType\":", false, 4, "v2", null));
+        assertThrows(KustoServiceQueryError.class, () -> parse("[{]", true, 4, "v2", null));
+        assertThrows(KustoServiceQueryError.class, () -> parse("", false, 4, "v2", null));
+        assertThrows(KustoServiceQueryError.class, () -> parse("", false, 4, "v1", null));
+    }
+
+    @Test
+    void parsesOffTheThreadThatDeliversTheBody() {
+        Scheduler eventLoop = Schedulers.newSingle("event-loop");
+        try {
+            Flux<ByteBuffer> body = Flux.just(ByteBuffer.wrap(V2_RESPONSE.getBytes(StandardCharsets.UTF_8))).subscribeOn(eventLoop);
+            String parsingThread = NonBlockingResponseParser.parse(body, null, "v2", null)
+                    .map(result -> Thread.currentThread().getName())
+                    .block();
+            assertTrue(parsingThread.startsWith("boundedElastic"), parsingThread);
+        } finally {
+            eventLoop.dispose();
+        }
+    }
+
+    private static KustoOperationResult parse(String response, boolean gzip, int chunkSize, String version, ClientRequestProperties properties)
+            throws IOException {
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        if (gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzipOut = new GZIPOutputStream(compressed)) {
+                gzipOut.write(bytes);
+            }
+            bytes = compressed.toByteArray();
+        }
+
+        // Direct buffers, as the network delivers them, which the parser has to copy
+        List<ByteBuffer> chunks = new ArrayList<>();
+        for (int i = 0; i < bytes.length; i += chunkSize) {
+            int length = Math.min(chunkSize, bytes.length - i);
+            chunks.add((ByteBuffer) ByteBuffer.allocateDirect(length).put(bytes, i, length).flip());
+        }
+
+        return NonBlockingResponseParser.parse(Flux.fromIterable(chunks), gzip ? "gzip" : null, version, properties).block();
+    }
+}
@@ -0,0 +1,158 @@
+package com.microsoft.azure.kusto.data;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryResultCacheTest {
+    private static final String RESPONSE = "[{\"FrameType\":\"DataTable\",\"TableId\":1,\"TableKind\":\"PrimaryResult\",\"TableName\":\"PrimaryResult\"," +
+            "\"Columns\":[{\"ColumnName\":\"x\",\"ColumnType\":\"string\"}],\"Rows\":[[\"a\"],[\"b\"]]}]";
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @Test
+    void cachesUntilTheTimeToLiveAndHonoursMaxAge() {
+        QueryResultCache cache = new QueryResultCache(Duration.ofMinutes(1), Long.MAX_VALUE, now::get);
+        KustoResultSetTable first = query(cache, "T | take 2", null).getPrimaryResults();
+        first.next();
+        assertEquals("a", first.getString(0));
+
+        // A hit gets its own cursors over the same rows
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+        KustoOperationResult hit = query(cache, "T  |  take 2 ", null);
+        assertNotSame(first, hit.getPrimaryResults());
+        hit.getPrimaryResults().next();
+        assertEquals("a", hit.getPrimaryResults().getString(0));
+        assertEquals(1, executions.get());
+
+        // A line break is kept, as it can end a comment, so the query gets its own entry
+        query(cache, "T\n| take 2", null);
+        assertEquals(2, executions.get());
+
+        ClientRequestProperties properties = new ClientRequestProperties();
+        properties.setOption(ClientRequestProperties.OPTION_QUERY_RESULTS_CACHE_MAX_AGE, "00:00:10");
+        query(cache, "T | take 2", properties);
+        assertEquals(3, executions.get());
+        query(cache, "T | take 2", properties);
+        assertEquals(3, executions.get());
+
+        now.addAndGet(Duration.ofMinutes(1).toNanos());
+        query(cache, "T | take 2", null);
+        assertEquals(4, executions.get());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    void keysByDatabaseQueryAndResultAffectingProperties() {
+        ClientRequestProperties properties = new ClientRequestProperties();
+        properties.setParameter("p", 1);
+        properties.setOption("query_language", "kql");
+        String key = RequestCoalescer.createKey("client", "https://c", "db", "T | where x == 'a  b'", properties);
+
+        ClientRequestProperties withTimeout = new ClientRequestProperties();
+        withTimeout.setTimeoutInMilliSec(10000L);
+        withTimeout.setOption("query_language", "kql");
+        withTimeout.setParameter("p", 1);
+        assertEquals(key, RequestCoalescer.createKey("client", "https://c", "db", "  T |  where x ==\t'a  b'", withTimeout));
+
+        assertNotEquals(key, RequestCoalescer.createKey("client", "https://c", "db", "T | where x == 'a b'", properties));
+        assertNotEquals(key, RequestCoalescer.createKey("client", "https://c", "db2", "T | where x == 'a  b'", properties));
+        // Clients may authenticate as principals that see different data
+        assertNotEquals(key, RequestCoalescer.createKey("other client", "https://c", "db", "T | where x == 'a  b'", properties));
+        properties.setParameter("p", 2);
+        assertNotEquals(key, RequestCoalescer.createKey("client", "https://c", "db", "T | where x == 'a  b'", properties));
+
+        assertEquals("T | where x == \"a\\\"  b\" and y == @'c\\'", RequestCoalescer.normalizeQuery("T |   where x == \"a\\\"  b\"  and y == @'c\\'"));
+
+    }
+
+    @Test
+    void keysQueriesByTheTextOfTheirCommentsAndMultiLineStrings() {
+        // A line break ends a comment, so it can't collapse into a space
+        assertNotEquals(RequestCoalescer.normalizeQuery("T // note\n| take 1"), RequestCoalescer.normalizeQuery("T // note | take 1"));
+        assertEquals("T // note  a\n| take 1", RequestCoalescer.normalizeQuery("T   // note  a\r\n  \n | take 1"));
+
+        assertEquals("print x = ```a  \n  b``` | take 1", RequestCoalescer.normalizeQuery("print  x = ```a  \n  b```  | take  1"));
+        assertNotEquals(RequestCoalescer.normalizeQuery("print x = ```a b```"), RequestCoalescer.normalizeQuery("print x = ```a  b```"));
+        // Quotes inside multi-line strings and comments don't start string literals
+        assertEquals("print ```'```\n| take 1 // it's\n| take 2", RequestCoalescer.normalizeQuery("print ```'```\n| take  1 // it's\n| take  2"));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedResults() {
+        long resultSize = QueryResultCache.estimateSizeInBytes(new KustoOperationResult(RESPONSE, "v2"));
+        QueryResultCache cache = new QueryResultCache(Duration.ofMinutes(1), 2 * resultSize + 300, now::get);
+        query(cache, "A", null);
+        query(cache, "B", null);
+        query(cache, "A", null);
+        query(cache, "C", null);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertTrue(cache.getEstimatedSizeInBytes() <= 2 * resultSize + 300);
+
+        query(cache, "A", null);
+        assertEquals(3, executions.get());
+        query(cache, "B", null);
+        assertEquals(4, executions.get());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getEstimatedSizeInBytes());
+    }
+
+    @Test
+    void coalescesConcurrentMissesAndDoesNotCacheErrors() {
+        QueryResultCache cache = new QueryResultCache(Duration.ofMinutes(1), Long.MAX_VALUE, now::get);
+        Sinks.One<KustoOperationResult> response = Sinks.one();
+        Supplier<Mono<KustoOperationResult>> execute = () -> {
+            executions.incrementAndGet();
+            return response.asMono();
+        };
+
+        Mono<KustoOperationResult> first = cache.getOrExecute("client", "https://c", "db", "T", null, execute).cache();
+        Mono<KustoOperationResult> second = cache.getOrExecute("client", "https://c", "db", "T", null, execute).cache();
+        first.subscribe();
+        second.subscribe();
+        response.tryEmitValue(new KustoOperationResult(RESPONSE, "v2"));
+
+        assertNotSame(first.block(), second.block());
+        assertEquals(1, executions.get());
+        assertEquals(1, cache.getCoalescedCount());
+
+        // Another client's identical query isn't answered with the result of this one
+        cache.getOrExecute("other client", "https://c", "db", "T", null, () -> {
+            executions.incrementAndGet();
+            return Mono.fromCallable(() -> new KustoOperationResult(RESPONSE, "v2"));
+        }).block();
+        assertEquals(2, executions.get());
+
+        Supplier<Mono<KustoOperationResult>> failing = () -> {
+            executions.incrementAndGet();
+            return Mono.error(new IllegalStateException("failed"));
+        };
+        for (int i = 0; i < 2; i++) {
+            assertFalse(cache.getOrExecute("client", "https://c", "db", "U", null, failing).onErrorResume(e -> Mono.empty()).blockOptional().isPresent());
+        }
+        assertEquals(4, executions.get());
+    }
+
+    private KustoOperationResult query(QueryResultCache cache, String query, ClientRequestProperties properties) {
+        return cache.getOrExecute("client", "https://cluster", "db", query, properties, () -> {
+            executions.incrementAndGet();
+            return Mono.fromCallable(() -> new KustoOperationResult(RESPONSE, "v2"));
+        }).block();
+    }
+}
@@ -0,0 +1,139 @@
+package com.microsoft.azure.kusto.data;
+
+import com.microsoft.azure.kusto.data.auth.ConnectionStringBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.function.Tuple2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RequestCoalescerTest {
+    private static final String RESPONSE = "[{\"FrameType\":\"DataTable\",\"TableId\":1,\"TableKind\":\"PrimaryResult\",\"TableName\":\"PrimaryResult\"," +
+            "\"Columns\":[{\"ColumnName\":\"x\",\"ColumnType\":\"string\"}],\"Rows\":[[\"a\"],[\"b\"]]}]";
+
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @Test
+    void sharesRequestsInFlightUntilTheyComplete() {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        Sinks.One<KustoOperationResult> response = Sinks.one();
+        Supplier<Mono<KustoOperationResult>> execute = () -> {
+            executions.incrementAndGet();
+            return response.asMono();
+        };
+
+        Mono<KustoOperationResult> first = coalescer.execute("a", execute).cache();
+        Mono<KustoOperationResult> second = coalescer.execute("a", execute).cache();
+        Mono<KustoOperationResult> other = coalescer.execute("b", execute).cache();
+        first.subscribe();
+        second.subscribe();
+        other.subscribe();
+
+        // A subscriber that cancels doesn't cancel the request for the others
+        Disposable cancelled = coalescer.execute("a", execute).subscribe();
+        cancelled.dispose();
+
+        response.tryEmitValue(new KustoOperationResult(RESPONSE, "v2"));
+        KustoOperationResult firstResult = first.block();
+        KustoOperationResult secondResult = second.block();
+        assertNotSame(firstResult, secondResult);
+        assertNotSame(firstResult.getPrimaryResults(), secondResult.getPrimaryResults());
+        assertEquals(2, secondResult.getPrimaryResults().count());
+        assertEquals(2, executions.get());
+        assertEquals(2, coalescer.getCoalescedCount());
+
+        // Completed requests aren't reused
+        coalescer.execute("a", () -> {
+            executions.incrementAndGet();
+            return Mono.just(new KustoOperationResult(RESPONSE, "v2"));
+        }).block();
+        assertEquals(3, executions.get());
+    }
+
+    @Test
+    void coalescesTheQueriesOfAClientCreatedWithIt() throws Exception {
+        AtomicInteger queries = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            if (!exchange.getRequestURI().getPath().equals("/v2/rest/query")) {
+                // There's no cloud metadata, so the default cloud is used
+                respond(exchange, 404, "");
+                return;
+            }
+
+            queries.incrementAndGet();
+            try {
+                // Keeps the request in flight while the other queries are sent
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, RESPONSE);
+        });
+        server.start();
+        try {
+            String clusterUrl = "http://localhost:" + server.getAddress().getPort();
+            Client coalescing = ClientFactory.createClient(ConnectionStringBuilder.createWithAadAccessTokenAuthentication(clusterUrl, "token"),
+                    null, true);
+            Tuple2<KustoOperationResult, KustoOperationResult> results = Mono.zip(
+                    coalescing.executeQueryAsync("db", "T"),
+                    coalescing.executeQueryAsync("db", "T")).block();
+            assertEquals(2, results.getT1().getPrimaryResults().count());
+            assertEquals(2, results.getT2().getPrimaryResults().count());
+            assertEquals(1, queries.get());
+
+            queries.set(0);
+            Client client = ClientFactory.createClient(ConnectionStringBuilder.createWithAadAccessTokenAuthentication(clusterUrl, "token"), null, false);
+            Mono.zip(client.executeQueryAsync("db", "T"), client.executeQueryAsync("db", "T")).block();
+            assertEquals(2, queries.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    @Test
+    void propagatesErrorsToEverySubscriber() {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        Sinks.One<KustoOperationResult> response = Sinks.one();
+        Supplier<Mono<KustoOperationResult>> execute = () -> {
+            executions.incrementAndGet();
+            return response.asMono();
+        };
+
+        Mono<KustoOperationResult> first = coalescer.execute("a", execute).cache();
+        Mono<KustoOperationResult> second = coalescer.execute("a", execute).cache();
+        first.subscribe(ignore -> {
+        }, ignore -> {
+        });
+        second.subscribe(ignore -> {
+        }, ignore -> {
+        });
+        response.tryEmitError(new IllegalStateException("failed"));
+
+        assertThrows(IllegalStateException.class, first::block);
+        assertThrows(IllegalStateException.class, second::block);
+        assertEquals(1, executions.get());
+    }
+}
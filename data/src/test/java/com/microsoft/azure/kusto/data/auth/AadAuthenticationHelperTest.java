@@ -6,6 +6,8 @@ package com.microsoft.azure.kusto.data.auth;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import java.io.FileReader;
 import java.io.IOException;
@@ -48,6 +50,7 @@ import com.microsoft.azure.kusto.data.exceptions.DataClientException;
 import com.microsoft.azure.kusto.data.exceptions.DataServiceException;
 
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
 public class AadAuthenticationHelperTest {
     @BeforeAll
@@ -74,7 +77,7 @@ public class AadAuthenticationHelperTest {
         assertEquals("https://login.microsoftonline.com/organizations/", aadAuthenticationHelper.aadAuthorityUrl);
         assertEquals(new HashSet<>(Collections.singletonList("https://kusto.kusto.windows.net/.default")), aadAuthenticationHelper.scopes);
         Assertions.assertThrows(DataServiceException.class,
-                aadAuthenticationHelper::acquireNewAccessToken);
+                () -> aadAuthenticationHelper.acquireNewAccessToken().block());
     }
 
     public static KeyCert readPem(String path, String password)
@@ -136,23 +139,62 @@ public class AadAuthenticationHelperTest {
                 Mockito.mock(ITenantProfile.class));
 
         // doThrow(DataServiceException.class).when(aadAuthenticationHelperSpy).acquireAccessTokenSilently();
-        doReturn(null).when(aadAuthenticationHelperSpy).acquireAccessTokenSilently();
-        doReturn(authenticationResult).when(aadAuthenticationHelperSpy).acquireNewAccessToken();
+        doReturn(Mono.empty()).when(aadAuthenticationHelperSpy).acquireAccessTokenSilently();
+        doReturn(Mono.just(authenticationResult)).when(aadAuthenticationHelperSpy).acquireNewAccessToken();
         assertEquals("firstToken", aadAuthenticationHelperSpy.acquireAccessToken().block());
         assertEquals("https://login.microsoftonline.com/organizations/", aadAuthenticationHelperSpy.aadAuthorityUrl);
         assertEquals(new HashSet<>(Collections.singletonList("https://kusto.kusto.windows.net/.default")), aadAuthenticationHelperSpy.scopes);
 
-        doReturn(authenticationResultFromRefresh).when(aadAuthenticationHelperSpy).acquireAccessTokenSilently();
+        doReturn(Mono.just(authenticationResultFromRefresh)).when(aadAuthenticationHelperSpy).acquireAccessTokenSilently();
         // Token was passed as expired - expected to be refreshed
         assertEquals("fromRefresh", aadAuthenticationHelperSpy.acquireAccessToken().block());
         // Token is still valid - expected to return the same
         assertEquals("fromRefresh", aadAuthenticationHelperSpy.acquireAccessToken().block());
 
-        doReturn(authenticationResultNullRefreshTokenResult).when(aadAuthenticationHelperSpy).acquireNewAccessToken();
+        doReturn(Mono.just(authenticationResultNullRefreshTokenResult)).when(aadAuthenticationHelperSpy).acquireNewAccessToken();
         // Null refresh token + token is now expired- expected to authenticate again and reacquire token
         assertEquals("fromRefresh", aadAuthenticationHelperSpy.acquireAccessToken().block());
     }
 
+    @Test
+    @DisplayName("validate cached token is refreshed in the background before it expires, once for concurrent callers")
+    void refreshCachedTokenInBackgroundBeforeExpiry()
+            throws IOException, URISyntaxException, CertificateException, OperatorCreationException, PKCSException {
+        String certFilePath = Path.of("src", "test", "resources", "cert.cer").toString();
+        String privateKeyPath = Path.of("src", "test", "resources", "key.pem").toString();
+
+        X509Certificate x509Certificate = readPem(certFilePath, "basic").getCertificate();
+        PrivateKey privateKey = readPem(privateKeyPath, "basic").getKey();
+
+        ConnectionStringBuilder csb = ConnectionStringBuilder
+                .createWithAadApplicationCertificate("https://resource.uri", "client-id", x509Certificate, privateKey);
+
+        MsalTokenProviderBase aadAuthenticationHelperSpy = (MsalTokenProviderBase) spy(TokenProviderFactory.createTokenProvider(csb, null));
+
+        MockAccount account = new MockAccount("homeAccountId", "environment", "username", Collections.emptyMap());
+        IAuthenticationResult expiringResult = new MockAuthenticationResult("expiring", "expiring", account, "environment", "environment",
+                new Date(System.currentTimeMillis() + MsalTokenProviderBase.REFRESH_WINDOW_MS / 2), Mockito.mock(ITenantProfile.class));
+        IAuthenticationResult refreshedResult = new MockAuthenticationResult("refreshed", "refreshed", account, "environment", "environment",
+                new Date(System.currentTimeMillis() + 2 * MsalTokenProviderBase.REFRESH_WINDOW_MS), Mockito.mock(ITenantProfile.class));
+
+        doReturn(Mono.empty()).when(aadAuthenticationHelperSpy).acquireAccessTokenSilently();
+        doReturn(Mono.just(expiringResult)).when(aadAuthenticationHelperSpy).acquireNewAccessToken();
+        assertEquals("expiring", aadAuthenticationHelperSpy.acquireAccessToken().block());
+
+        // The token is still valid, so it is returned right away while a single refresh runs in the background
+        Sinks.One<IAuthenticationResult> refresh = Sinks.one();
+        doReturn(refresh.asMono()).when(aadAuthenticationHelperSpy).acquireAccessTokenSilently();
+        assertEquals("expiring", aadAuthenticationHelperSpy.acquireAccessToken().block());
+        assertEquals("expiring", aadAuthenticationHelperSpy.acquireAccessToken().block());
+        verify(aadAuthenticationHelperSpy, times(2)).acquireAccessTokenSilently();
+
+        refresh.tryEmitValue(refreshedResult);
+        assertEquals("refreshed", aadAuthenticationHelperSpy.acquireAccessToken().block());
+        // The refreshed token is far from its expiry, so it is not refreshed again
+        verify(aadAuthenticationHelperSpy, times(2)).acquireAccessTokenSilently();
+        verify(aadAuthenticationHelperSpy, times(1)).acquireNewAccessToken();
+    }
+
     @Test
     @DisplayName("validate cloud settings for non-standard cloud")
     void checkCloudSettingsAbnormal() throws URISyntaxException, IllegalAccessException, NoSuchFieldException {
@@ -0,0 +1,307 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.ingest;
+
+import com.microsoft.azure.kusto.data.Ensure;
+import com.microsoft.azure.kusto.data.exceptions.DataWebException;
+import com.microsoft.azure.kusto.data.exceptions.OneApiError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>AdaptiveManagedStreamingQueuingPolicy</p>
+ * <p>
+ * A {@link ManagedStreamingQueuingPolicy} that learns, for every database, table, format and compression, the largest data size that can be streamed,
+ * from the outcomes of the streaming attempts of a {@link ManagedStreamingIngestClient}. How much a table's data grows when decompressed varies
+ * widely, so instead of estimating the raw size of the data with fixed factors, every table starts from the limit of the default policy and then:
+ * <ul>
+ * <li>grows its limit by 10% when data close to the limit is streamed quickly,</li>
+ * <li>shrinks its limit below the size of data the service rejected as too large, and</li>
+ * <li>shrinks its limit by 10% when data close to the limit takes longer than {@code maxStreamingLatency} to stream.</li>
+ * </ul>
+ * The limit never exceeds the 10 MB the service accepts in a streaming request, times the factor. Use {@link #getTableStatistics()} to monitor the
+ * limits and the outcomes they were learned from.
+ */
+public class AdaptiveManagedStreamingQueuingPolicy extends ManagedStreamingQueuingPolicy {
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    public static final Duration DEFAULT_MAX_STREAMING_LATENCY = Duration.ofSeconds(10);
+    static final double GROWTH_RATE = 1.1;
+    static final double SLOW_SHRINK_RATE = 0.9;
+    // Data at least this close to the limit tells whether the limit is right
+    static final double NEAR_LIMIT_RATIO = 0.75;
+    // The limit is set this far below the size of data that was too large
+    static final double TOO_LARGE_MARGIN = 0.8;
+    // Small data is always streamed, however often larger data fails
+    static final double MIN_STREAMING_SIZE_LIMIT = 64 * 1024;
+    private static final double LATENCY_SMOOTHING = 0.2;
+    private static final int REQUEST_ENTITY_TOO_LARGE = 413;
+
+    private final long maxStreamingLatencyNanos;
+    private final Map<TableKey, TableState> tables = new ConcurrentHashMap<>();
+
+    public AdaptiveManagedStreamingQueuingPolicy() {
+        this(1, DEFAULT_MAX_STREAMING_LATENCY);
+    }
+
+    /**
+     * @param factor              scales the limits, as in {@link ManagedStreamingQueuingPolicy}
+     * @param maxStreamingLatency how long streaming data close to the limit may take before the limit shrinks
+     */
+    public AdaptiveManagedStreamingQueuingPolicy(double factor, Duration maxStreamingLatency) {
+        super(factor);
+        Ensure.argIsNotNull(maxStreamingLatency, "maxStreamingLatency");
+        Ensure.isTrue(!maxStreamingLatency.isNegative() && !maxStreamingLatency.isZero(), "maxStreamingLatency must be positive");
+        this.maxStreamingLatencyNanos = maxStreamingLatency.toNanos();
+    }
+
+    @Override
+    public boolean shouldUseQueuedIngestion(long dataSize, boolean compressed, IngestionProperties ingestionProperties) {
+        // In case available() was implemented wrong, do streaming
+        if (dataSize <= 0) {
+            return false;
+        }
+
+        return getTableState(compressed, ingestionProperties).shouldUseQueuedIngestion(dataSize);
+    }
+
+    @Override
+    public void onStreamingSucceeded(long dataSize, boolean compressed, IngestionProperties ingestionProperties, Duration latency) {
+        getTableState(compressed, ingestionProperties).onSucceeded(dataSize, latency.toNanos());
+    }
+
+    @Override
+    public void onStreamingFailed(long dataSize, boolean compressed, IngestionProperties ingestionProperties, Throwable error) {
+        getTableState(compressed, ingestionProperties).onFailed(dataSize, isRequestTooLarge(error));
+    }
+
+    /**
+     * @return a snapshot of what was learned about every table this policy made decisions for
+     */
+    public Map<TableKey, TableStatistics> getTableStatistics() {
+        Map<TableKey, TableStatistics> statistics = new HashMap<>();
+        tables.forEach((key, state) -> statistics.put(key, state.getStatistics()));
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    private TableState getTableState(boolean compressed, IngestionProperties ingestionProperties) {
+        TableKey key = new TableKey(ingestionProperties.getDatabaseName(), ingestionProperties.getTableName(), ingestionProperties.getDataFormat(),
+                compressed);
+        return tables.computeIfAbsent(key, ignore -> new TableState(key, getStreamingSizeLimit(compressed, key.dataFormat),
+                getFactor() * MAX_STREAMING_STREAM_SIZE_BYTES));
+    }
+
+    static boolean isRequestTooLarge(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DataWebException) {
+                DataWebException webException = (DataWebException) cause;
+                if (Objects.equals(webException.getStatusCode(), REQUEST_ENTITY_TOO_LARGE)) {
+                    return true;
+                }
+
+                OneApiError apiError = webException.getApiError();
+                return apiError != null && apiError.getCode() != null && apiError.getCode().contains("TooLarge");
+            }
+        }
+        return false;
+    }
+
+    private class TableState {
+        private final TableKey key;
+        private final double maxLimit;
+
+        // Guarded by "this"
+        private double limit;
+        private long queuedCount;
+        private long succeededCount;
+        private long failedCount;
+        private long tooLargeCount;
+        private double averageLatencyNanos = -1;
+
+        TableState(TableKey key, double initialLimit, double maxLimit) {
+            this.key = key;
+            this.limit = initialLimit;
+            this.maxLimit = maxLimit;
+        }
+
+        synchronized boolean shouldUseQueuedIngestion(long dataSize) {
+            if (dataSize > limit) {
+                queuedCount++;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void onSucceeded(long dataSize, long latencyNanos) {
+            succeededCount++;
+            averageLatencyNanos = averageLatencyNanos < 0 ? latencyNanos
+                    : averageLatencyNanos + LATENCY_SMOOTHING * (latencyNanos - averageLatencyNanos);
+
+            // Data far below the limit says nothing about whether larger data would succeed
+            if (dataSize < NEAR_LIMIT_RATIO * limit) {
+                return;
+            }
+
+            if (latencyNanos > maxStreamingLatencyNanos) {
+                setLimit(limit * SLOW_SHRINK_RATE, "streaming was slow");
+            } else {
+                setLimit(limit * GROWTH_RATE, "streaming succeeded");
+            }
+        }
+
+        synchronized void onFailed(long dataSize, boolean tooLarge) {
+            failedCount++;
+            if (tooLarge) {
+                tooLargeCount++;
+                setLimit(Math.min(limit, dataSize * TOO_LARGE_MARGIN), "data was too large");
+            }
+        }
+
+        // Guarded by "this"
+        private void setLimit(double newLimit, String reason) {
+            newLimit = Math.max(MIN_STREAMING_SIZE_LIMIT, Math.min(maxLimit, newLimit));
+            if (newLimit != limit) {
+                log.debug("Streaming size limit of {} changed from {} to {} bytes because {}", key, (long) limit, (long) newLimit, reason);
+                limit = newLimit;
+            }
+        }
+
+        synchronized TableStatistics getStatistics() {
+            return new TableStatistics((long) limit, queuedCount, succeededCount, failedCount, tooLargeCount,
+                    averageLatencyNanos < 0 ? null : Duration.ofNanos((long) averageLatencyNanos));
+        }
+    }
+
+    /**
+     * The database, table, format and compression a streaming size limit is learned for.
+     */
+    public static final class TableKey {
+        private final String databaseName;
+        private final String tableName;
+        private final IngestionProperties.DataFormat dataFormat;
+        private final boolean compressed;
+
+        TableKey(String databaseName, String tableName, IngestionProperties.DataFormat dataFormat, boolean compressed) {
+            this.databaseName = databaseName;
+            this.tableName = tableName;
+            this.dataFormat = dataFormat;
+            this.compressed = compressed;
+        }
+
+        public String getDatabaseName() {
+            return databaseName;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public IngestionProperties.DataFormat getDataFormat() {
+            return dataFormat;
+        }
+
+        public boolean isCompressed() {
+            return compressed;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TableKey)) {
+                return false;
+            }
+            TableKey other = (TableKey) o;
+            return compressed == other.compressed && Objects.equals(databaseName, other.databaseName) && Objects.equals(tableName, other.tableName)
+                    && dataFormat == other.dataFormat;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(databaseName, tableName, dataFormat, compressed);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s.%s (%s%s)", databaseName, tableName, dataFormat, compressed ? ", compressed" : "");
+        }
+    }
+
+    /**
+     * What a policy learned about a table, and the outcomes it learned it from.
+     */
+    public static final class TableStatistics {
+        private final long streamingSizeLimit;
+        private final long queuedCount;
+        private final long succeededCount;
+        private final long failedCount;
+        private final long tooLargeCount;
+        private final Duration averageLatency;
+
+        TableStatistics(long streamingSizeLimit, long queuedCount, long succeededCount, long failedCount, long tooLargeCount, Duration averageLatency) {
+            this.streamingSizeLimit = streamingSizeLimit;
+            this.queuedCount = queuedCount;
+            this.succeededCount = succeededCount;
+            this.failedCount = failedCount;
+            this.tooLargeCount = tooLargeCount;
+            this.averageLatency = averageLatency;
+        }
+
+        /**
+         * @return the largest data size that is streamed, in bytes
+         */
+        public long getStreamingSizeLimit() {
+            return streamingSizeLimit;
+        }
+
+        /**
+         * @return how many times data was queued without trying to stream it, because it was larger than the limit
+         */
+        public long getQueuedCount() {
+            return queuedCount;
+        }
+
+        /**
+         * @return how many streaming attempts succeeded
+         */
+        public long getSucceededCount() {
+            return succeededCount;
+        }
+
+        /**
+         * @return how many streaming attempts failed, for any reason
+         */
+        public long getFailedCount() {
+            return failedCount;
+        }
+
+        /**
+         * @return how many streaming attempts failed because the data was too large
+         */
+        public long getTooLargeCount() {
+            return tooLargeCount;
+        }
+
+        /**
+         * @return the exponentially weighted average latency of the successful streaming attempts, or null if none succeeded yet
+         */
+        public Duration getAverageLatency() {
+            return averageLatency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("TableStatistics{streamingSizeLimit=%d, queuedCount=%d, succeededCount=%d, failedCount=%d, tooLargeCount=%d, averageLatency=%s}",
+                    streamingSizeLimit, queuedCount, succeededCount, failedCount, tooLargeCount, averageLatency);
+        }
+    }
+}
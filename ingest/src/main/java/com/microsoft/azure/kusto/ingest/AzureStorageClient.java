@@ -9,25 +9,71 @@ import com.azure.data.tables.implementation.models.TableServiceErrorException;
 import com.azure.data.tables.models.TableEntity;
 import com.azure.storage.blob.BlobAsyncClient;
 import com.azure.storage.blob.BlobContainerAsyncClient;
+import com.azure.storage.blob.specialized.BlockBlobAsyncClient;
 import com.azure.storage.queue.QueueAsyncClient;
 import com.microsoft.azure.kusto.data.Ensure;
 import com.microsoft.azure.kusto.ingest.utils.IngestionUtils;
 import org.apache.commons.codec.binary.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class AzureStorageClient {
     private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+    // Streams are staged in blocks while the rest of the source is read (and compressed), so that at most about
+    // UPLOAD_BLOCK_SIZE * (maxUploadBlocksInFlight + 1) bytes of it are held in memory
+    static final int UPLOAD_BLOCK_SIZE = 4 * 1024 * 1024;
+    static final int MAX_UPLOAD_BLOCKS_IN_FLIGHT = 4;
+
+    private final int uploadBlockSize;
+    private volatile int maxUploadBlocksInFlight;
+    private volatile int compressionParallelism = 1;
+
     public AzureStorageClient() {
+        this(UPLOAD_BLOCK_SIZE, MAX_UPLOAD_BLOCKS_IN_FLIGHT);
+    }
+
+    AzureStorageClient(int uploadBlockSize, int maxUploadBlocksInFlight) {
+        this.uploadBlockSize = uploadBlockSize;
+        setMaxUploadBlocksInFlight(maxUploadBlocksInFlight);
+    }
+
+    /**
+     * Sets how many blocks of a stream are uploaded concurrently. Streams are uploaded in blocks of 4 MB as they are read, so this also bounds the
+     * memory an upload holds. Defaults to 4.
+     *
+     * @param maxUploadBlocksInFlight the number of blocks, must be positive
+     */
+    public void setMaxUploadBlocksInFlight(int maxUploadBlocksInFlight) {
+        Ensure.isTrue(maxUploadBlocksInFlight > 0, "maxUploadBlocksInFlight must be positive");
+        this.maxUploadBlocksInFlight = maxUploadBlocksInFlight;
+    }
+
+    /**
+     * Sets how many cores compress a stream or file before it is uploaded. With more than one, the source is compressed in chunks of 4 MB on the
+     * {@link Schedulers#parallel()} scheduler, into a multi-member gzip blob. Defaults to 1, which compresses the source into a single gzip member on
+     * the thread that reads it.
+     *
+     * @param compressionParallelism the number of chunks compressed at once, must be positive
+     */
+    public void setCompressionParallelism(int compressionParallelism) {
+        Ensure.isTrue(compressionParallelism > 0, "compressionParallelism must be positive");
+        this.compressionParallelism = compressionParallelism;
     }
 
     Mono<Void> postMessageToQueue(QueueAsyncClient queueAsyncClient, String content) {
@@ -64,26 +110,21 @@ public class AzureStorageClient {
         Ensure.fileExists(sourceFile, "sourceFile");
         Ensure.argIsNotNull(blobAsyncClient, "blobAsyncClient");
 
-        return Mono.defer(() -> {
-            try {
-                InputStream inputStream = Files.newInputStream(sourceFile.toPath());
-                return IngestionUtils.compressStream(inputStream, false)
-                        .flatMap(bytes -> blobAsyncClient.getBlockBlobAsyncClient()
-                                .upload(BinaryData.fromStream(bytes, (long) bytes.available()), true));
-            } catch (IOException e) {
-                throw Exceptions.propagate(e);
-            }
-        }).then();
+        return Mono.using(() -> Files.newInputStream(sourceFile.toPath()),
+                inputStream -> compressAndUploadStream(inputStream, blobAsyncClient),
+                AzureStorageClient::closeSourceFile).then();
     }
 
     Mono<Void> uploadFileToBlob(File sourceFile, BlobAsyncClient blobAsyncClient) throws IOException {
         Ensure.argIsNotNull(blobAsyncClient, "blob");
         Ensure.fileExists(sourceFile, "sourceFile");
 
-        return blobAsyncClient.uploadFromFile(sourceFile.getPath());
+        // Blocks are staged straight from mappings of the file
+        return uploadInBlocks(IngestionUtils.mapFileToBlocks(sourceFile.toPath(), uploadBlockSize), blobAsyncClient, block -> {
+        }).then();
     }
 
-    Mono<Integer> uploadStreamToBlob(InputStream inputStream,
+    Mono<Long> uploadStreamToBlob(InputStream inputStream,
             String blobName,
             BlobContainerAsyncClient asyncContainer,
             boolean shouldCompress) {
@@ -101,33 +142,63 @@ public class AzureStorageClient {
         }
     }
 
-    // Returns original stream size
-    Mono<Integer> uploadStream(InputStream inputStream, BlobAsyncClient blobAsyncClient) {
+    // Returns original stream size. The stream is left open, so that the upload can be retried from a mark
+    Mono<Long> uploadStream(InputStream inputStream, BlobAsyncClient blobAsyncClient) {
         Ensure.argIsNotNull(inputStream, "inputStream");
         Ensure.argIsNotNull(blobAsyncClient, "blobAsyncClient");
 
-        IngestionUtils.IntegerHolder size = new IngestionUtils.IntegerHolder();
+        // Blocks go back to the pool once staged, so the stream is read into about as many buffers as there are blocks in flight
+        Queue<ByteBuffer> pool = new ArrayBlockingQueue<>(maxUploadBlocksInFlight + 1);
+        return uploadInBlocks(IngestionUtils.readStreamToBlocks(inputStream, true, uploadBlockSize, pool), blobAsyncClient, pool::offer);
+    }
 
-        return IngestionUtils.toByteArray(inputStream)
-                .flatMap(bytes -> {
-                    size.add(bytes.length);
-                    return blobAsyncClient.getBlockBlobAsyncClient().upload(BinaryData.fromBytes(bytes), true);
-                })
-                .map(x -> size.getValue());
+    private static void closeSourceFile(InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            log.warn("Failed to close a file after uploading it", e);
+        }
     }
 
-    // Returns original stream size
-    Mono<Integer> compressAndUploadStream(InputStream inputStream, BlobAsyncClient blobAsyncClient) {
+    // Returns the compressed size. The stream is left open, so that the upload can be retried from a mark
+    Mono<Long> compressAndUploadStream(InputStream inputStream, BlobAsyncClient blobAsyncClient) {
         Ensure.argIsNotNull(inputStream, "inputStream");
         Ensure.argIsNotNull(blobAsyncClient, "blobAsyncClient");
 
-        IngestionUtils.IntegerHolder size = new IngestionUtils.IntegerHolder();
-        return IngestionUtils.compressStream(inputStream, false)
-                .flatMap(bytes -> {
-                    size.add(bytes.available());
-                    return blobAsyncClient.getBlockBlobAsyncClient().upload(BinaryData.fromStream(bytes, (long) bytes.available()), true);
-                })
-                .map(x -> size.getValue());
+        int parallelism = compressionParallelism;
+        Flux<ByteBuffer> blocks = parallelism > 1
+                ? IngestionUtils.compressStreamInParallel(inputStream, true, uploadBlockSize, parallelism, Schedulers.parallel())
+                : IngestionUtils.compressStreamToBlocks(inputStream, true, uploadBlockSize);
+        return uploadInBlocks(blocks, blobAsyncClient, block -> {
+        });
+    }
+
+    // Returns the total size of the blocks. Stages every block as soon as it is read and commits them once all are staged; only committed blocks
+    // become part of the blob, so a failed upload leaves nothing behind but uncommitted blocks, which the service discards.
+    private Mono<Long> uploadInBlocks(Flux<ByteBuffer> blocks, BlobAsyncClient blobAsyncClient, Consumer<ByteBuffer> onStaged) {
+        BlockBlobAsyncClient blockBlobAsyncClient = blobAsyncClient.getBlockBlobAsyncClient();
+        AtomicLong size = new AtomicLong();
+
+        return blocks
+                // Reading the stream blocks, and more blocks are requested from the threads that complete the uploads
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnNext(block -> size.addAndGet(block.remaining()))
+                .index()
+                .flatMapSequential(indexedBlock -> {
+                    String blockId = blockId(indexedBlock.getT1());
+                    ByteBuffer block = indexedBlock.getT2();
+                    return blockBlobAsyncClient.stageBlock(blockId, BinaryData.fromByteBuffer(block))
+                            .doOnSuccess(ignore -> onStaged.accept(block))
+                            .thenReturn(blockId);
+                }, maxUploadBlocksInFlight, 1)
+                .collectList()
+                .flatMap(blockIds -> blockBlobAsyncClient.commitBlockList(blockIds, true))
+                .map(x -> size.get());
+    }
+
+    // Block ids must all have the same length within a blob
+    private static String blockId(long index) {
+        return Base64.encodeBase64String(String.format("%08d", index).getBytes(StandardCharsets.UTF_8));
     }
 
 }
@@ -0,0 +1,379 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.ingest;
+
+import com.azure.storage.common.policy.RequestRetryOptions;
+import com.microsoft.azure.kusto.data.Ensure;
+import com.microsoft.azure.kusto.ingest.exceptions.IngestionClientException;
+import com.microsoft.azure.kusto.ingest.result.IngestionResult;
+import com.microsoft.azure.kusto.ingest.result.ValidationPolicy;
+import com.microsoft.azure.kusto.ingest.source.BlobSourceInfo;
+import com.microsoft.azure.kusto.ingest.source.FileSourceInfo;
+import com.microsoft.azure.kusto.ingest.source.ResultSetSourceInfo;
+import com.microsoft.azure.kusto.ingest.source.StreamSourceInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.lang.invoke.MethodHandles;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>BatchingIngestClient</p>
+ * <p>
+ * This class wraps a {@link QueuedIngestClient}, and aggregates small streams ingested into the same table with the same properties into one blob,
+ * uploaded and queued with a single message. A batch is flushed once it holds {@code maxBatchSizeInBytes} of data or {@code maxBatchCount} streams,
+ * or {@code maxBatchDelay} after its first stream was added, whichever comes first.
+ * <p>
+ * Only streams of line-delimited formats, whose records can be concatenated, are batched: uncompressed, without {@code ignoreFirstRecord}, and in
+ * the {@code csv}, {@code tsv}, {@code scsv}, {@code sohsv}, {@code psv}, {@code txt}, {@code tsve}, {@code json} or {@code multijson} format.
+ * Streams are separated by a line break. Other streams (such as {@code raw} ones, which are ingested as a single record), streams larger than
+ * {@code maxBatchSizeInBytes}, and files, blobs and result sets, are ingested directly with the wrapped client.
+ * <p>
+ * The result of a batched stream completes once its batch was queued, and is the result of the whole batch; failures of the batch are reported to
+ * every stream in it. Closing the client flushes the pending batches, waits for them to be queued, and closes the wrapped client.
+ */
+public class BatchingIngestClient extends IngestClientBase implements QueuedIngestClient {
+    public static final String CLASS_NAME = BatchingIngestClient.class.getSimpleName();
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    // The largest array the JVM reliably allocates
+    private static final int MAX_STREAM_READ_SIZE = Integer.MAX_VALUE - 8;
+    // Formats whose records are delimited by line breaks, so that streams joined by a line break keep their records
+    private static final Set<IngestionProperties.DataFormat> BATCHABLE_FORMATS = EnumSet.of(IngestionProperties.DataFormat.CSV,
+            IngestionProperties.DataFormat.TSV, IngestionProperties.DataFormat.SCSV, IngestionProperties.DataFormat.SOHSV,
+            IngestionProperties.DataFormat.PSV, IngestionProperties.DataFormat.TXT, IngestionProperties.DataFormat.TSVE,
+            IngestionProperties.DataFormat.JSON, IngestionProperties.DataFormat.MULTIJSON);
+
+    private final QueuedIngestClient queuedIngestClient;
+    private final long maxBatchSizeInBytes;
+    private final int maxBatchCount;
+    private final Duration maxBatchDelay;
+    private final Scheduler scheduler;
+
+    // Guarded by "this"
+    private final Map<String, Batch> batches = new HashMap<>();
+
+    private BatchingIngestClient(BatchingIngestClientBuilder builder) {
+        this(builder.queuedIngestClient, builder.maxBatchSizeInBytes, builder.maxBatchCount, builder.maxBatchDelay, Schedulers.parallel());
+    }
+
+    BatchingIngestClient(QueuedIngestClient queuedIngestClient, long maxBatchSizeInBytes, int maxBatchCount, Duration maxBatchDelay,
+            Scheduler scheduler) {
+        Ensure.argIsNotNull(queuedIngestClient, "queuedIngestClient");
+        Ensure.isTrue(maxBatchSizeInBytes > 0, "maxBatchSizeInBytes must be positive");
+        Ensure.isTrue(maxBatchCount > 0, "maxBatchCount must be positive");
+        Ensure.argIsNotNull(maxBatchDelay, "maxBatchDelay");
+        this.queuedIngestClient = queuedIngestClient;
+        this.maxBatchSizeInBytes = maxBatchSizeInBytes;
+        this.maxBatchCount = maxBatchCount;
+        this.maxBatchDelay = maxBatchDelay;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Instantiates a new builder.
+     *
+     * @param queuedIngestClient the client to ingest batches with
+     * @return a new {@linkplain BatchingIngestClientBuilder}
+     */
+    public static BatchingIngestClientBuilder builder(QueuedIngestClient queuedIngestClient) {
+        return new BatchingIngestClientBuilder(queuedIngestClient);
+    }
+
+    @Override
+    protected Mono<IngestionResult> ingestFromStreamAsyncImpl(StreamSourceInfo streamSourceInfo, IngestionProperties ingestionProperties) {
+        Ensure.argIsNotNull(streamSourceInfo, "streamSourceInfo");
+        Ensure.argIsNotNull(ingestionProperties, "ingestionProperties");
+        streamSourceInfo.validate();
+        ingestionProperties.validate();
+
+        if (!isBatchable(streamSourceInfo, ingestionProperties)) {
+            return queuedIngestClient.ingestFromStreamAsync(streamSourceInfo, ingestionProperties);
+        }
+
+        String key;
+        try {
+            key = getBatchKey(ingestionProperties);
+        } catch (IOException e) {
+            throw new IngestionClientException("Failed to ingest from stream", e);
+        }
+
+        // Reads the stream when subscribed to, so that streams join their batch in the order they were subscribed to. Only up to a byte more than a
+        // batch holds is read, and streams larger than that are ingested directly, so that they're never held in memory.
+        int readLimit = (int) Math.min(maxBatchSizeInBytes, MAX_STREAM_READ_SIZE - 1) + 1;
+        return Mono.fromCallable(() -> readStream(streamSourceInfo, readLimit))
+                .flatMap(data -> data.length < readLimit ? add(key, ingestionProperties, data)
+                        : ingestDirectly(streamSourceInfo, data, ingestionProperties))
+                .onErrorMap(IOException.class, e -> new IngestionClientException("Failed to read from stream", e));
+    }
+
+    static boolean isBatchable(StreamSourceInfo streamSourceInfo, IngestionProperties ingestionProperties) {
+        return streamSourceInfo.getCompressionType() == null
+                && !ingestionProperties.isIgnoreFirstRecord()
+                && BATCHABLE_FORMATS.contains(ingestionProperties.getDataFormat());
+    }
+
+    // Streams may only share a batch if every property that is sent with the batch is the same
+    static String getBatchKey(IngestionProperties ingestionProperties) throws IOException {
+        Map<String, String> properties = new TreeMap<>(ingestionProperties.getIngestionProperties());
+        properties.remove("authorizationContext");
+        ValidationPolicy validationPolicy = ingestionProperties.getValidationPolicy();
+        return String.join("\n",
+                ingestionProperties.getDatabaseName(),
+                ingestionProperties.getTableName(),
+                String.valueOf(ingestionProperties.getReportLevel()),
+                String.valueOf(ingestionProperties.getReportMethod()),
+                String.valueOf(ingestionProperties.getFlushImmediately()),
+                validationPolicy == null ? "" : validationPolicy.getValidationOptions() + "/" + validationPolicy.getValidationPolicyType(),
+                properties.toString());
+    }
+
+    // Reads up to limit bytes, and closes the stream unless it was read up to the limit, since the rest of it is still to be ingested
+    private static byte[] readStream(StreamSourceInfo streamSourceInfo, int limit) throws IOException {
+        boolean readToLimit = false;
+        try {
+            byte[] data = streamSourceInfo.getStream().readNBytes(limit);
+            readToLimit = data.length == limit;
+            return data;
+        } finally {
+            if (!readToLimit && !streamSourceInfo.isLeaveOpen()) {
+                streamSourceInfo.getStream().close();
+            }
+        }
+    }
+
+    private Mono<IngestionResult> ingestDirectly(StreamSourceInfo streamSourceInfo, byte[] prefix, IngestionProperties ingestionProperties) {
+        log.debug("Ingesting a stream of more than {} bytes into table '{}' without batching it", maxBatchSizeInBytes,
+                ingestionProperties.getTableName());
+        InputStream stream = new SequenceInputStream(new ByteArrayInputStream(prefix), streamSourceInfo.getStream());
+        return queuedIngestClient.ingestFromStreamAsync(new StreamSourceInfo(stream, streamSourceInfo.isLeaveOpen(), streamSourceInfo.getSourceId()),
+                ingestionProperties);
+    }
+
+    private Mono<IngestionResult> add(String key, IngestionProperties ingestionProperties, byte[] data) {
+        Batch full = null;
+        Mono<IngestionResult> result;
+        synchronized (this) {
+            Batch batch = batches.get(key);
+            if (batch == null) {
+                Batch created = new Batch(new IngestionProperties(ingestionProperties));
+                created.timer = scheduler.schedule(() -> flushIfPending(key, created), maxBatchDelay.toNanos(), TimeUnit.NANOSECONDS);
+                batches.put(key, created);
+                batch = created;
+            }
+
+            batch.append(data);
+            result = batch.result.asMono();
+            if (batch.data.size() >= maxBatchSizeInBytes || batch.count >= maxBatchCount) {
+                batches.remove(key);
+                full = batch;
+            }
+        }
+
+        if (full != null) {
+            flush(full);
+        }
+        return result;
+    }
+
+    private void flushIfPending(String key, Batch batch) {
+        synchronized (this) {
+            if (!batches.remove(key, batch)) {
+                return;
+            }
+        }
+        flush(batch);
+    }
+
+    private Mono<IngestionResult> flush(Batch batch) {
+        batch.timer.dispose();
+        log.debug("Flushing a batch of {} streams ({} bytes) into table '{}'", batch.count, batch.data.size(), batch.properties.getTableName());
+
+        queuedIngestClient.ingestFromStreamAsync(new StreamSourceInfo(batch.data.toInputStream()), batch.properties)
+                .subscribe(batch.result::tryEmitValue, batch.result::tryEmitError);
+        return batch.result.asMono();
+    }
+
+    /**
+     * Flushes every pending batch, without waiting for its thresholds.
+     *
+     * @return a Mono that completes once the flushed batches were queued, or failed to
+     */
+    public Mono<Void> flushAsync() {
+        List<Batch> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(batches.values());
+            batches.clear();
+        }
+
+        return Flux.fromIterable(pending)
+                .flatMap(batch -> flush(batch).onErrorResume(e -> Mono.empty()))
+                .then();
+    }
+
+    @Override
+    protected Mono<IngestionResult> ingestFromFileAsyncImpl(FileSourceInfo fileSourceInfo, IngestionProperties ingestionProperties) {
+        return queuedIngestClient.ingestFromFileAsync(fileSourceInfo, ingestionProperties);
+    }
+
+    @Override
+    protected Mono<IngestionResult> ingestFromBlobAsyncImpl(BlobSourceInfo blobSourceInfo, IngestionProperties ingestionProperties) {
+        return queuedIngestClient.ingestFromBlobAsync(blobSourceInfo, ingestionProperties);
+    }
+
+    @Override
+    protected Mono<IngestionResult> ingestFromResultSetAsyncImpl(ResultSetSourceInfo resultSetSourceInfo, IngestionProperties ingestionProperties) {
+        return queuedIngestClient.ingestFromResultSetAsync(resultSetSourceInfo, ingestionProperties);
+    }
+
+    @Override
+    protected String getClientType() {
+        return CLASS_NAME;
+    }
+
+    @Override
+    public void setQueueRequestOptions(RequestRetryOptions queueRequestOptions) {
+        queuedIngestClient.setQueueRequestOptions(queueRequestOptions);
+    }
+
+    @Override
+    public void setMaxUploadBlocksInFlight(int maxUploadBlocksInFlight) {
+        queuedIngestClient.setMaxUploadBlocksInFlight(maxUploadBlocksInFlight);
+    }
+
+    @Override
+    public void setCompressionParallelism(int compressionParallelism) {
+        queuedIngestClient.setCompressionParallelism(compressionParallelism);
+    }
+
+    /**
+     * Sets a spool on the wrapped client, see {@link QueuedIngestClientImpl#setSpool(IngestionSpool)}.
+     *
+     * @param spool the spool, or null to upload and queue batches directly
+     * @throws UnsupportedOperationException if the wrapped client doesn't support spooling
+     */
+    public void setSpool(IngestionSpool spool) {
+        IngestionSpool.setOn(queuedIngestClient, spool);
+    }
+
+    @Override
+    public Flux<IngestionResult> ingestFromResultSetInBlobsAsync(ResultSetSourceInfo resultSetSourceInfo, IngestionProperties ingestionProperties,
+            long maxBlobSize) {
+        // Result sets large enough to need several blobs are not batched
+        return queuedIngestClient.ingestFromResultSetInBlobsAsync(resultSetSourceInfo, ingestionProperties, maxBlobSize);
+    }
+
+    @Override
+    public IngestionResourceManager getResourceManager() {
+        return queuedIngestClient.getResourceManager();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushAsync().block();
+        queuedIngestClient.close();
+    }
+
+    private static class Batch {
+        private final IngestionProperties properties;
+        private final BatchBuffer data = new BatchBuffer();
+        private final Sinks.One<IngestionResult> result = Sinks.one();
+        private int count = 0;
+        private Disposable timer;
+
+        private Batch(IngestionProperties properties) {
+            this.properties = properties;
+        }
+
+        private void append(byte[] stream) {
+            if (data.size() > 0 && data.lastByte() != '\n') {
+                data.write('\n');
+            }
+            data.write(stream, 0, stream.length);
+            count++;
+        }
+    }
+
+    // Reads the batch without copying it
+    private static class BatchBuffer extends ByteArrayOutputStream {
+        private byte lastByte() {
+            return buf[count - 1];
+        }
+
+        private ByteArrayInputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+
+    public static class BatchingIngestClientBuilder {
+        private final QueuedIngestClient queuedIngestClient;
+        private long maxBatchSizeInBytes = 16L * 1024 * 1024;
+        private int maxBatchCount = 1000;
+        private Duration maxBatchDelay = Duration.ofSeconds(10);
+
+        public BatchingIngestClientBuilder(QueuedIngestClient queuedIngestClient) {
+            this.queuedIngestClient = queuedIngestClient;
+        }
+
+        /**
+         * Sets the size of the data in a batch, before compression, at which it is flushed. Defaults to 16 MB.
+         *
+         * @param maxBatchSizeInBytes the size in bytes, must be positive
+         * @return the builder instance
+         */
+        public BatchingIngestClientBuilder maxBatchSizeInBytes(long maxBatchSizeInBytes) {
+            this.maxBatchSizeInBytes = maxBatchSizeInBytes;
+            return this;
+        }
+
+        /**
+         * Sets the number of streams in a batch at which it is flushed. Defaults to 1000.
+         *
+         * @param maxBatchCount the number of streams, must be positive
+         * @return the builder instance
+         */
+        public BatchingIngestClientBuilder maxBatchCount(int maxBatchCount) {
+            this.maxBatchCount = maxBatchCount;
+            return this;
+        }
+
+        /**
+         * Sets how long after its first stream was added a batch is flushed, if it didn't reach another threshold first. Defaults to 10 seconds.
+         *
+         * @param maxBatchDelay the delay
+         * @return the builder instance
+         */
+        public BatchingIngestClientBuilder maxBatchDelay(Duration maxBatchDelay) {
+            this.maxBatchDelay = maxBatchDelay;
+            return this;
+        }
+
+        /**
+         * Builds a client with the configured settings.
+         *
+         * @return a new {@linkplain BatchingIngestClient}
+         */
+        public BatchingIngestClient build() {
+            return new BatchingIngestClient(this);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.ingest;
+
+import com.microsoft.azure.kusto.data.Ensure;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * An input stream over data read from another stream into a chain of fixed-size chunks drawn from a {@link Pool}. Only as many chunks are taken as the
+ * data fills, so small data holds a single chunk, and resetting the stream replays the data from the chunks without copying it. Closing the stream
+ * returns its chunks to the pool, so it must not be read once it is closed.
+ */
+class ChunkedInputStream extends InputStream {
+    private final Pool pool;
+    private final int size;
+    // Null once the chunks were returned to the pool
+    private List<byte[]> chunks;
+    private int position = 0;
+    private int mark = 0;
+
+    private ChunkedInputStream(Pool pool, List<byte[]> chunks, int size) {
+        this.pool = pool;
+        this.chunks = chunks;
+        this.size = size;
+    }
+
+    /**
+     * Reads a stream until it ends or {@code maxBytes} were read, whichever comes first.
+     *
+     * @param source   the stream to read, which is left open
+     * @param maxBytes the number of bytes to read at most
+     * @param pool     the pool to take the chunks from
+     * @return the bytes that were read
+     * @throws IOException if reading the stream fails, in which case the chunks that were taken are returned to the pool
+     */
+    static ChunkedInputStream read(InputStream source, int maxBytes, Pool pool) throws IOException {
+        List<byte[]> chunks = new ArrayList<>();
+        int size = 0;
+        int chunkPosition = pool.chunkSize;
+        try {
+            while (size < maxBytes) {
+                if (chunkPosition == pool.chunkSize) {
+                    chunks.add(pool.acquire());
+                    chunkPosition = 0;
+                }
+
+                int read = source.read(chunks.get(chunks.size() - 1), chunkPosition, Math.min(pool.chunkSize - chunkPosition, maxBytes - size));
+                if (read < 0) {
+                    break;
+                }
+                chunkPosition += read;
+                size += read;
+            }
+        } catch (IOException | RuntimeException e) {
+            chunks.forEach(pool::release);
+            throw e;
+        }
+
+        return new ChunkedInputStream(pool, chunks, size);
+    }
+
+    /**
+     * @return the number of bytes that were read into the chunks
+     */
+    int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized int read() throws IOException {
+        ensureOpen();
+        if (position >= size) {
+            return -1;
+        }
+
+        int value = chunks.get(position / pool.chunkSize)[position % pool.chunkSize] & 0xFF;
+        position++;
+        return value;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= size) {
+            return -1;
+        }
+
+        int count = 0;
+        while (count < len && position < size) {
+            int chunkPosition = position % pool.chunkSize;
+            int length = Math.min(len - count, Math.min(pool.chunkSize - chunkPosition, size - position));
+            System.arraycopy(chunks.get(position / pool.chunkSize), chunkPosition, b, off + count, length);
+            count += length;
+            position += length;
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized long skip(long n) {
+        int count = (int) Math.max(0, Math.min(n, size - position));
+        position += count;
+        return count;
+    }
+
+    @Override
+    public synchronized int available() {
+        return chunks == null ? 0 : size - position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int ignored) {
+        mark = position;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        ensureOpen();
+        position = mark;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (chunks != null) {
+            chunks.forEach(pool::release);
+            chunks = null;
+        }
+    }
+
+    // Guarded by "this"
+    private void ensureOpen() throws IOException {
+        if (chunks == null) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * A bounded pool of chunks. Chunks are allocated when the pool is empty, and dropped when it is full.
+     */
+    static class Pool {
+        private final int chunkSize;
+        private final Queue<byte[]> chunks;
+
+        Pool(int chunkSize, int maxPooledChunks) {
+            Ensure.isTrue(chunkSize > 0, "chunkSize must be positive");
+            Ensure.isTrue(maxPooledChunks > 0, "maxPooledChunks must be positive");
+            this.chunkSize = chunkSize;
+            this.chunks = new ArrayBlockingQueue<>(maxPooledChunks);
+        }
+
+        byte[] acquire() {
+            byte[] chunk = chunks.poll();
+            return chunk != null ? chunk : new byte[chunkSize];
+        }
+
+        void release(byte[] chunk) {
+            chunks.offer(chunk);
+        }
+
+        int getPooledCount() {
+            return chunks.size();
+        }
+    }
+}
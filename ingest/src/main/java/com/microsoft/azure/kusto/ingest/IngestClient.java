@@ -3,13 +3,17 @@
 
 package com.microsoft.azure.kusto.ingest;
 
+import com.microsoft.azure.kusto.data.Ensure;
 import com.microsoft.azure.kusto.ingest.exceptions.IngestionClientException;
 import com.microsoft.azure.kusto.ingest.exceptions.IngestionServiceException;
 import com.microsoft.azure.kusto.ingest.result.IngestionResult;
+import com.microsoft.azure.kusto.ingest.result.SourceIngestionResult;
 import com.microsoft.azure.kusto.ingest.source.BlobSourceInfo;
 import com.microsoft.azure.kusto.ingest.source.FileSourceInfo;
 import com.microsoft.azure.kusto.ingest.source.ResultSetSourceInfo;
+import com.microsoft.azure.kusto.ingest.source.SourceInfo;
 import com.microsoft.azure.kusto.ingest.source.StreamSourceInfo;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.io.Closeable;
@@ -145,4 +149,46 @@ public interface IngestClient extends Closeable {
      * @see IngestionProperties
      */
     Mono<IngestionResult> ingestFromStreamAsync(StreamSourceInfo streamSourceInfo, IngestionProperties ingestionProperties);
+
+    /**
+     * <p>Ingest data from many sources, into Kusto table.</p>
+     * This method ingests every source of {@code sources} like the ingest method for its type would, with up to {@code concurrency} sources
+     * ingested at once, according to the properties mentioned in {@code ingestionProperties}. Sources are requested from {@code sources} as
+     * ingestions complete, and a source that fails doesn't stop the others.
+     *
+     * @param sources             The {@link FileSourceInfo}, {@link StreamSourceInfo}, {@link BlobSourceInfo} or {@link ResultSetSourceInfo} sources
+     *                            to be ingested
+     * @param ingestionProperties Settings used to customize the ingestion of every source
+     * @param concurrency         The number of sources ingested at once
+     * @return a {@link SourceIngestionResult} for every source, in the order the ingestions complete
+     * @see IngestionProperties
+     */
+    default Flux<SourceIngestionResult> ingestManyAsync(Flux<? extends SourceInfo> sources, IngestionProperties ingestionProperties, int concurrency) {
+        Ensure.argIsNotNull(sources, "sources");
+        Ensure.argIsNotNull(ingestionProperties, "ingestionProperties");
+        Ensure.isTrue(concurrency > 0, "concurrency must be positive");
+
+        // Unordered, so that a slow source doesn't hold back the results of those after it. Every source gets its own copy of the properties, as
+        // ingesting a source may set properties on it.
+        return sources.flatMap(source -> ingestSourceAsync(source, new IngestionProperties(ingestionProperties))
+                .map(result -> SourceIngestionResult.success(source, result))
+                .onErrorResume(e -> Mono.just(SourceIngestionResult.failure(source, e))), concurrency, 1);
+    }
+
+    private Mono<IngestionResult> ingestSourceAsync(SourceInfo source, IngestionProperties ingestionProperties) {
+        if (source instanceof FileSourceInfo) {
+            return ingestFromFileAsync((FileSourceInfo) source, ingestionProperties);
+        }
+        if (source instanceof StreamSourceInfo) {
+            return ingestFromStreamAsync((StreamSourceInfo) source, ingestionProperties);
+        }
+        if (source instanceof BlobSourceInfo) {
+            return ingestFromBlobAsync((BlobSourceInfo) source, ingestionProperties);
+        }
+        if (source instanceof ResultSetSourceInfo) {
+            return ingestFromResultSetAsync((ResultSetSourceInfo) source, ingestionProperties);
+        }
+
+        return Mono.error(new IngestionClientException("Unsupported source type: " + source.getClass().getName()));
+    }
 }
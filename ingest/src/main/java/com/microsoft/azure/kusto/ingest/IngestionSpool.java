@@ -0,0 +1,595 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.ingest;
+
+import com.microsoft.azure.kusto.data.Ensure;
+import com.microsoft.azure.kusto.ingest.exceptions.IngestionClientException;
+import com.microsoft.azure.kusto.ingest.utils.SystemTimeProvider;
+import com.microsoft.azure.kusto.ingest.utils.TimeProvider;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>IngestionSpool</p>
+ * <p>
+ * A write-ahead spool on local disk for a {@link QueuedIngestClient}. Once set with {@link QueuedIngestClientImpl#setSpool(IngestionSpool)}, the
+ * client appends the data of every ingestion, together with its ingestion message, to the spool and returns once it is written to disk. A background
+ * uploader drains the spool in order, uploading the data to blob storage and posting the message to the ingestion queue, and backs off while storage
+ * or the queues are unavailable, so outages of any length are absorbed without losing data or holding it in memory.
+ * <p>
+ * Every record is written to a file of its own, which is moved into place once it is on disk and deleted once the record was delivered, so a spool
+ * that is opened again after a crash delivers whatever was not delivered yet. Records are written concurrently, so a large or slow source doesn't hold
+ * up other ingestions or the delivery. Records are delivered at least once: one that was delivered just before a crash may be delivered again. The
+ * spool holds at most {@code maxSizeBytes}; appending a record that doesn't fit fails with an {@link IngestionClientException} as soon as it
+ * exceeds the quota. Use {@link #getPendingCount()}, {@link #getSizeBytes()} and {@link #getOldestPendingAge()} to monitor it.
+ */
+public class IngestionSpool implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    static final Duration MIN_BACKOFF = Duration.ofSeconds(1);
+    static final Duration MAX_BACKOFF = Duration.ofMinutes(5);
+    private static final int RECORD_MAGIC = 0x4B53504C;
+    // magic, spooled time and header length
+    private static final int RECORD_PREFIX_SIZE = 4 + 8 + 4;
+    // payload length and source size
+    private static final int PAYLOAD_PREFIX_SIZE = 8 + 8;
+    private static final int CRC_SIZE = 8;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final String RECORD_FILE_PREFIX = "record-";
+    private static final String RECORD_FILE_SUFFIX = ".spool";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final long maxSizeBytes;
+    private final TimeProvider timeProvider;
+    private final Scheduler scheduler;
+    // Includes the records being written, so that concurrent appends can't exceed the quota together
+    private final AtomicLong sizeBytes = new AtomicLong();
+    private final AtomicLong nextRecordId = new AtomicLong();
+
+    // Guarded by "this"
+    private final Deque<Record> pending = new ArrayDeque<>();
+    private Function<Record, Mono<Void>> deliverer;
+    private boolean delivering = false;
+    private Disposable backoff;
+    private int consecutiveFailures = 0;
+    private boolean closed = false;
+
+    /**
+     * Opens the spool in a directory, recovering the records that were not delivered yet when it was last used.
+     *
+     * @param directory    the directory of the spool, created if needed. It must not be used by another spool at the same time.
+     * @param maxSizeBytes the number of bytes of disk the spool may use
+     * @throws IOException if the directory can't be created or read
+     */
+    public IngestionSpool(Path directory, long maxSizeBytes) throws IOException {
+        this(directory, maxSizeBytes, new SystemTimeProvider(), Schedulers.boundedElastic());
+    }
+
+    IngestionSpool(Path directory, long maxSizeBytes, TimeProvider timeProvider, Scheduler scheduler) throws IOException {
+        Ensure.argIsNotNull(directory, "directory");
+        Ensure.isTrue(maxSizeBytes > 0, "maxSizeBytes must be positive");
+        this.directory = directory;
+        this.maxSizeBytes = maxSizeBytes;
+        this.timeProvider = timeProvider;
+        this.scheduler = scheduler;
+
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    // Sets the spool on a client that supports spooling, which the wrapping clients forward to the client they wrap
+    static void setOn(QueuedIngestClient client, @Nullable IngestionSpool spool) {
+        if (client instanceof QueuedIngestClientImpl) {
+            ((QueuedIngestClientImpl) client).setSpool(spool);
+        } else if (client instanceof BatchingIngestClient) {
+            ((BatchingIngestClient) client).setSpool(spool);
+        } else if (client instanceof ManagedStreamingIngestClient) {
+            ((ManagedStreamingIngestClient) client).setSpool(spool);
+        } else {
+            throw new UnsupportedOperationException(client.getClass().getName() + " doesn't support spooling");
+        }
+    }
+
+    /**
+     * @return the number of records that were not delivered yet
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return the number of bytes of disk the spool uses, including records that are being appended
+     */
+    public long getSizeBytes() {
+        return sizeBytes.get();
+    }
+
+    /**
+     * @return how long ago the oldest pending record was spooled, or null if there are none
+     */
+    @Nullable
+    public synchronized Duration getOldestPendingAge() {
+        Record oldest = pending.peekFirst();
+        return oldest == null ? null : Duration.ofMillis(Math.max(0, timeProvider.currentTimeMillis() - oldest.spooledAtMillis));
+    }
+
+    /**
+     * Appends a record, and returns once it is written to disk. Appends don't wait for each other, and records are delivered in the order their
+     * appends return.
+     *
+     * @param header   describes the record to its deliverer
+     * @param payload  the data of the record, read to its end, or null if there is none
+     * @param compress whether to gzip the payload
+     * @return the record
+     */
+    Record append(byte[] header, @Nullable InputStream payload, boolean compress) {
+        synchronized (this) {
+            ensureOpen();
+        }
+
+        long recordId = nextRecordId.getAndIncrement();
+        Path temp = tempPath(recordId);
+        Record record;
+        try {
+            record = writeRecord(recordId, temp, header, payload, compress);
+        } catch (SpoolFullException e) {
+            deleteTemp(temp);
+            throw new IngestionClientException(String.format("The ingestion spool in '%s' is full (%d bytes)", directory, maxSizeBytes));
+        } catch (IOException | RuntimeException e) {
+            deleteTemp(temp);
+            throw new IngestionClientException(String.format("Failed to append to the ingestion spool in '%s'", directory), e);
+        }
+
+        synchronized (this) {
+            pending.addLast(record);
+            if (deliverer != null && !delivering && backoff == null && !closed) {
+                delivering = true;
+                scheduler.schedule(this::deliverNext);
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Starts delivering the pending records in the background, one after the other. A record is delivered once the Mono the deliverer returns for
+     * it completes; when it fails, the record is retried with an exponential backoff.
+     *
+     * @param deliverer delivers a record
+     */
+    synchronized void startDraining(Function<Record, Mono<Void>> deliverer) {
+        ensureOpen();
+        Ensure.argIsNotNull(deliverer, "deliverer");
+        stopDraining();
+        this.deliverer = deliverer;
+        consecutiveFailures = 0;
+        if (!pending.isEmpty()) {
+            delivering = true;
+            scheduler.schedule(this::deliverNext);
+        }
+    }
+
+    /**
+     * Stops delivering records. A delivery in flight still completes.
+     */
+    synchronized void stopDraining() {
+        deliverer = null;
+        if (backoff != null) {
+            backoff.dispose();
+            backoff = null;
+        }
+    }
+
+    /**
+     * Closes the spool. Appends in progress still complete, and their records are delivered once the spool is opened again.
+     */
+    @Override
+    public synchronized void close() {
+        stopDraining();
+        closed = true;
+    }
+
+    private void deliverNext() {
+        Record record;
+        Function<Record, Mono<Void>> currentDeliverer;
+        synchronized (this) {
+            record = pending.peekFirst();
+            currentDeliverer = deliverer;
+            if (record == null || currentDeliverer == null || closed) {
+                delivering = false;
+                return;
+            }
+        }
+
+        Mono.defer(() -> currentDeliverer.apply(record)).subscribe(ignore -> {
+        }, e -> onDeliveryFailed(record, e), () -> onDelivered(record));
+    }
+
+    private void onDelivered(Record record) {
+        boolean acknowledged;
+        synchronized (this) {
+            consecutiveFailures = 0;
+            acknowledged = pending.peekFirst() == record;
+            if (acknowledged) {
+                pending.removeFirst();
+            }
+        }
+
+        if (acknowledged) {
+            try {
+                Files.deleteIfExists(recordPath(record.recordId));
+                sizeBytes.addAndGet(-record.length);
+            } catch (IOException e) {
+                // The record stays delivered in memory, it would only be delivered again after a restart
+                log.error("Failed to delete delivered record {} of the ingestion spool in '{}'", record.recordId, directory, e);
+            }
+        }
+        scheduler.schedule(this::deliverNext);
+    }
+
+    private synchronized void onDeliveryFailed(Record record, Throwable e) {
+        consecutiveFailures++;
+        Duration delay = getBackoff(consecutiveFailures);
+        log.warn("Failed to deliver spooled ingestion {} ({} failures in a row), retrying in {}", record.recordId, consecutiveFailures, delay, e);
+        delivering = false;
+        if (deliverer != null && !closed) {
+            backoff = Mono.delay(delay, scheduler).subscribe(ignore -> {
+                synchronized (this) {
+                    backoff = null;
+                    delivering = true;
+                }
+                deliverNext();
+            });
+        }
+    }
+
+    static Duration getBackoff(int consecutiveFailures) {
+        long millis = MIN_BACKOFF.toMillis() << Math.min(consecutiveFailures - 1, 20);
+        return Duration.ofMillis(Math.min(millis, MAX_BACKOFF.toMillis()));
+    }
+
+    // Reserves quota for bytes about to be written
+    private void reserve(long bytes) throws SpoolFullException {
+        long size;
+        do {
+            size = sizeBytes.get();
+            if (size + bytes > maxSizeBytes) {
+                throw new SpoolFullException();
+            }
+        } while (!sizeBytes.compareAndSet(size, size + bytes));
+    }
+
+    /*
+     * Writes a record to a temporary file, reserving the quota for every write before it happens, and moves it into place once it is on disk, so that
+     * a record file is never torn. The payload length is written last, after the payload.
+     */
+    private Record writeRecord(long recordId, Path temp, byte[] header, @Nullable InputStream payload, boolean compress) throws IOException {
+        long spooledAt = timeProvider.currentTimeMillis();
+        CRC32 crc = new CRC32();
+        crc.update(header);
+        ByteBuffer prefix = ByteBuffer.allocate(RECORD_PREFIX_SIZE + header.length + PAYLOAD_PREFIX_SIZE);
+        prefix.putInt(RECORD_MAGIC).putLong(spooledAt).putInt(header.length).put(header).putLong(-1).putLong(-1).flip();
+
+        long reserved = 0;
+        boolean written = false;
+        try {
+            long payloadStart = prefix.capacity();
+            long payloadLength;
+            long sourceSize = 0;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                reserve(prefix.capacity() + CRC_SIZE);
+                reserved = prefix.capacity() + CRC_SIZE;
+                writeFully(channel, prefix, 0);
+
+                channel.position(payloadStart);
+                QuotaOutputStream quotaStream = new QuotaOutputStream(Channels.newOutputStream(channel));
+                try (OutputStream checkedStream = new CheckedOutputStream(new BufferedOutputStream(quotaStream, COPY_BUFFER_SIZE), crc);
+                        OutputStream payloadStream = compress ? new GZIPOutputStream(checkedStream, COPY_BUFFER_SIZE) : checkedStream) {
+                    if (payload != null) {
+                        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                        int read;
+                        while ((read = payload.read(buffer)) >= 0) {
+                            payloadStream.write(buffer, 0, read);
+                            sourceSize += read;
+                        }
+                    }
+                } finally {
+                    reserved += quotaStream.reserved;
+                }
+                payloadLength = channel.size() - payloadStart;
+
+                ByteBuffer crcBuffer = ByteBuffer.allocate(CRC_SIZE);
+                crcBuffer.putLong(crc.getValue()).flip();
+                writeFully(channel, crcBuffer, payloadStart + payloadLength);
+                ByteBuffer lengths = ByteBuffer.allocate(PAYLOAD_PREFIX_SIZE);
+                lengths.putLong(payloadLength).putLong(sourceSize).flip();
+                writeFully(channel, lengths, payloadStart - PAYLOAD_PREFIX_SIZE);
+                channel.force(false);
+            }
+
+            Files.move(temp, recordPath(recordId), StandardCopyOption.ATOMIC_MOVE);
+            written = true;
+            return new Record(recordId, reserved, spooledAt, header, payloadStart, payloadLength, sourceSize);
+        } finally {
+            if (!written) {
+                sizeBytes.addAndGet(-reserved);
+            }
+        }
+    }
+
+    // Deletes what was left of the temporary files of appends that didn't complete, and reads the records, dropping corrupt ones
+    private void recover() throws IOException {
+        Map<Long, Path> records = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, RECORD_FILE_PREFIX + "*")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_FILE_SUFFIX)) {
+                    Files.delete(file);
+                } else if (name.endsWith(RECORD_FILE_SUFFIX)) {
+                    records.put(Long.parseLong(name.substring(RECORD_FILE_PREFIX.length(), name.length() - RECORD_FILE_SUFFIX.length())), file);
+                }
+            }
+        }
+
+        for (Map.Entry<Long, Path> file : records.entrySet()) {
+            long recordId = file.getKey();
+            nextRecordId.set(recordId + 1);
+            Record record;
+            try (FileChannel channel = FileChannel.open(file.getValue(), StandardOpenOption.READ)) {
+                record = readRecord(channel, recordId);
+            }
+            if (record == null) {
+                log.warn("Dropping corrupt record {} of the ingestion spool in '{}'", recordId, directory);
+                Files.delete(file.getValue());
+                continue;
+            }
+
+            pending.addLast(record);
+            sizeBytes.addAndGet(record.length);
+        }
+
+        if (!pending.isEmpty()) {
+            log.info("Recovered {} pending ingestions ({} bytes) from the ingestion spool in '{}'", pending.size(), sizeBytes.get(), directory);
+        }
+    }
+
+    @Nullable
+    private Record readRecord(FileChannel channel, long recordId) throws IOException {
+        long size = channel.size();
+        if (size < RECORD_PREFIX_SIZE) {
+            return null;
+        }
+
+        ByteBuffer prefix = readFully(channel, 0, RECORD_PREFIX_SIZE);
+        if (prefix.getInt() != RECORD_MAGIC) {
+            return null;
+        }
+        long spooledAt = prefix.getLong();
+        int headerLength = prefix.getInt();
+        if (headerLength < 0 || size - RECORD_PREFIX_SIZE < (long) headerLength + PAYLOAD_PREFIX_SIZE) {
+            return null;
+        }
+
+        byte[] header = new byte[headerLength];
+        readFully(channel, RECORD_PREFIX_SIZE, headerLength).get(header);
+        long payloadStart = RECORD_PREFIX_SIZE + headerLength + PAYLOAD_PREFIX_SIZE;
+        ByteBuffer lengths = readFully(channel, payloadStart - PAYLOAD_PREFIX_SIZE, PAYLOAD_PREFIX_SIZE);
+        long payloadLength = lengths.getLong();
+        long sourceSize = lengths.getLong();
+        if (payloadLength < 0 || size != payloadStart + payloadLength + CRC_SIZE) {
+            return null;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(header);
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        for (long position = payloadStart; position < payloadStart + payloadLength;) {
+            buffer.clear().limit((int) Math.min(COPY_BUFFER_SIZE, payloadStart + payloadLength - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return null;
+            }
+            buffer.flip();
+            crc.update(buffer);
+            position += read;
+        }
+        if (readFully(channel, payloadStart + payloadLength, CRC_SIZE).getLong() != crc.getValue()) {
+            return null;
+        }
+
+        return new Record(recordId, size, spooledAt, header, payloadStart, payloadLength, sourceSize);
+    }
+
+    private Path recordPath(long recordId) {
+        return directory.resolve(String.format("%s%020d%s", RECORD_FILE_PREFIX, recordId, RECORD_FILE_SUFFIX));
+    }
+
+    private Path tempPath(long recordId) {
+        return directory.resolve(String.format("%s%020d%s", RECORD_FILE_PREFIX, recordId, TEMP_FILE_SUFFIX));
+    }
+
+    private void deleteTemp(Path temp) {
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            // It is deleted when the spool is opened again
+            log.warn("Failed to delete '{}' of the ingestion spool", temp, e);
+        }
+    }
+
+    // Guarded by "this"
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("The ingestion spool is closed");
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of spool record");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * A record of the spool. Its payload is read from disk whenever it is opened, so that a failed delivery can read it again.
+     */
+    final class Record {
+        private final long recordId;
+        private final long length;
+        private final long spooledAtMillis;
+        private final byte[] header;
+        private final long payloadOffset;
+        private final long payloadLength;
+        private final long sourceSize;
+
+        private Record(long recordId, long length, long spooledAtMillis, byte[] header, long payloadOffset, long payloadLength, long sourceSize) {
+            this.recordId = recordId;
+            this.length = length;
+            this.spooledAtMillis = spooledAtMillis;
+            this.header = header;
+            this.payloadOffset = payloadOffset;
+            this.payloadLength = payloadLength;
+            this.sourceSize = sourceSize;
+        }
+
+        byte[] getHeader() {
+            return header;
+        }
+
+        /**
+         * @return the number of bytes the payload was read from, before it was compressed
+         */
+        long getSourceSize() {
+            return sourceSize;
+        }
+
+        long getPayloadLength() {
+            return payloadLength;
+        }
+
+        /**
+         * @return a new stream of the payload, as it was written to disk
+         * @throws IOException if the file of the record can't be opened
+         */
+        InputStream openPayload() throws IOException {
+            return new PayloadInputStream(FileChannel.open(recordPath(recordId), StandardOpenOption.READ), payloadOffset, payloadOffset + payloadLength);
+        }
+    }
+
+    private static class PayloadInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        PayloadInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+
+            int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // Reserves the quota for every write before it happens. The channel is closed by its owner, so closing the stream only flushes it.
+    private class QuotaOutputStream extends FilterOutputStream {
+        private long reserved = 0;
+
+        QuotaOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            reserve(1);
+            reserved++;
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            reserve(len);
+            reserved += len;
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    private static class SpoolFullException extends IOException {
+    }
+}
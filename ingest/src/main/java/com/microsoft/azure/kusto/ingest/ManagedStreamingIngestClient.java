@@ -35,12 +35,12 @@ import reactor.util.retry.Retry;
 import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.SequenceInputStream;
 import java.lang.invoke.MethodHandles;
 import java.net.URISyntaxException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.time.Duration;
 import java.util.UUID;
 
 /**
@@ -50,9 +50,11 @@ import java.util.UUID;
  * Since the streaming client communicates directly with the engine, it's more prone to failure, so this class
  * holds both a streaming client and a queued client.
  * It retries {@value RETRY_COUNT} times using the streaming client, after which it falls back to the queued streaming client in case of failure.
+ * When ingestions into a table keep falling back, a {@link StreamingCircuitBreaker} queues the ingestions into it right away for a while.
  * By default the policy for choosing a queued ingestion on the first try is the checking of weather the size of the estimated
  * raw stream size (a conversion to compressed CSV) is bigger than 4MB, it will fall back to the queued streaming client.
- * Use {@link #setQueuingPolicyFactor(double)} to override the predicate heuristics.
+ * Use {@link #setQueuingPolicyFactor(double)} to override the predicate heuristics, or {@link #setQueuingPolicy(ManagedStreamingQueuingPolicy)} with an
+ * {@link AdaptiveManagedStreamingQueuingPolicy} to learn them per table from the outcomes of streaming.
  * Use SourceInfo.setRawSizeInBytes to set the raw size of the data.
  */
 public class ManagedStreamingIngestClient extends IngestClientBase implements QueuedIngestClient {
@@ -60,13 +62,19 @@ public class ManagedStreamingIngestClient extends IngestClientBase implements Qu
     private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
     // 2 Retry count ends with total 3 streaming attempts
     public static final int RETRY_COUNT = 2;
+    static final int CHUNK_SIZE = 64 * 1024;
     public static final String CLASS_NAME = ManagedStreamingIngestClient.class.getSimpleName();
     final QueuedIngestClient queuedIngestClient;
     final StreamingIngestClient streamingIngestClient;
     private ExponentialRetry exponentialRetryTemplate = new ExponentialRetry(RETRY_COUNT);
     private Retry streamingRetry = new ExponentialRetry(exponentialRetryTemplate).retry(null, this::streamingIngestionErrorPredicate);
     private HttpClient httpClient = null;
-    private ManagedStreamingQueuingPolicy queuingPolicy = ManagedStreamingQueuingPolicy.Default;
+    private volatile ManagedStreamingQueuingPolicy queuingPolicy = ManagedStreamingQueuingPolicy.Default;
+    // Holds the chunks of about 4 streams of the largest size that is streamed
+    private final ChunkedInputStream.Pool chunkPool = new ChunkedInputStream.Pool(CHUNK_SIZE,
+            4 * (ManagedStreamingQueuingPolicy.MAX_STREAMING_STREAM_SIZE_BYTES / CHUNK_SIZE));
+    private volatile StreamingCircuitBreaker circuitBreaker = new StreamingCircuitBreaker();
+    private static final String CIRCUIT_OPEN_LOG_STRING = "Streaming ingestion for source id '%s' is suspended for table '%s.%s' after repeated failures. Falling back to queued.";
     private static final String FALLBACK_LOG_STRING = "Data size for source id '%s' is greater than max streaming size according to the policy. Falling back to queued.";
 
     /**
@@ -319,21 +327,34 @@ public class ManagedStreamingIngestClient extends IngestClientBase implements Qu
             IngestionProperties ingestionProperties,
             BlobAsyncClient blobAsyncClient,
             long blobSize) {
-        if (queuingPolicy.shouldUseQueuedIngestion(blobSize, blobSourceInfo.getCompressionType() != null, ingestionProperties.getDataFormat())) {
+        boolean compressed = blobSourceInfo.getCompressionType() != null;
+        if (queuingPolicy.shouldUseQueuedIngestion(blobSize, compressed, ingestionProperties)) {
             log.info(String.format(FALLBACK_LOG_STRING, blobSourceInfo.getSourceId()));
             return queuedIngestClient.ingestFromBlobAsync(blobSourceInfo, ingestionProperties);
         }
+        String database = ingestionProperties.getDatabaseName();
+        String table = ingestionProperties.getTableName();
+        StreamingCircuitBreaker breaker = circuitBreaker;
+        if (!breaker.allowStreaming(database, table)) {
+            log.info(String.format(CIRCUIT_OPEN_LOG_STRING, blobSourceInfo.getSourceId(), database, table));
+            return queuedIngestClient.ingestFromBlobAsync(blobSourceInfo, ingestionProperties);
+        }
         IngestionUtils.IntegerHolder i = new IngestionUtils.IntegerHolder();
 
         // If an error occurs, each time the retryWhen subscribes to executeStream create a new instance
         // instead of using the same executeStream Mono for all retries
-        return Mono.defer(() -> executeStream(blobSourceInfo, ingestionProperties, blobAsyncClient, i.increment()))
+        return Mono.defer(() -> reportOutcome(executeStream(blobSourceInfo, ingestionProperties, blobAsyncClient, i.increment()), blobSize, compressed,
+                ingestionProperties))
                 .retryWhen(streamingRetry)
+                .doOnSuccess(ignore -> breaker.onStreamingSucceeded(database, table))
                 .onErrorResume(e -> {
                     if (streamingIngestionErrorPredicate(e)) {
+                        breaker.onStreamingFailed(database, table);
                         log.info("Streaming ingestion failed for sourceId: {}, falling back to queued ingestion.", blobSourceInfo.getSourceId());
                         return queuedIngestClient.ingestFromBlobAsync(blobSourceInfo, ingestionProperties);
                     }
+                    // The service answered, so streaming works
+                    breaker.onStreamingSucceeded(database, table);
                     return Mono.error(e);
                 }); // Fall back to queued ingestion
     }
@@ -346,6 +367,15 @@ public class ManagedStreamingIngestClient extends IngestClientBase implements Qu
         }
     }
 
+    // Lets the queuing policy learn from the outcome of every streaming attempt
+    private Mono<IngestionResult> reportOutcome(Mono<IngestionResult> attempt, long dataSize, boolean compressed, IngestionProperties ingestionProperties) {
+        ManagedStreamingQueuingPolicy policy = queuingPolicy;
+        long start = System.nanoTime();
+        return attempt
+                .doOnSuccess(ignore -> policy.onStreamingSucceeded(dataSize, compressed, ingestionProperties, Duration.ofNanos(System.nanoTime() - start)))
+                .doOnError(e -> policy.onStreamingFailed(dataSize, compressed, ingestionProperties, e));
+    }
+
     private Mono<IngestionResult> executeStream(SourceInfo sourceInfo, IngestionProperties ingestionProperties, @Nullable BlobAsyncClient blobAsyncClient,
             int currentAttempt) {
         if (blobAsyncClient != null) {
@@ -407,54 +437,67 @@ public class ManagedStreamingIngestClient extends IngestClientBase implements Qu
             boolean shouldUseQueuedIngestion = queuingPolicy.shouldUseQueuedIngestion(
                     availableBytes,
                     streamSourceInfo.getCompressionType() != null,
-                    ingestionProperties.getDataFormat());
+                    ingestionProperties);
             return shouldUseQueuedIngestion
                     ? queuedIngestClient.ingestFromStreamAsync(streamSourceInfo, ingestionProperties)
-                    : processStream(streamSourceInfo, ingestionProperties);
+                    : processStream(streamSourceInfo, ingestionProperties, availableBytes);
         } catch (IOException e) {
             throw new IngestionClientException("Failed to read from stream.", e);
         }
     }
 
-    private Mono<IngestionResult> ingestStreamWithRetries(StreamSourceInfo streamSourceInfo, IngestionProperties ingestionProperties) {
+    private Mono<IngestionResult> ingestStreamWithRetries(StreamSourceInfo streamSourceInfo, IngestionProperties ingestionProperties, long dataSize) {
+        String database = ingestionProperties.getDatabaseName();
+        String table = ingestionProperties.getTableName();
+        StreamingCircuitBreaker breaker = circuitBreaker;
+        if (!breaker.allowStreaming(database, table)) {
+            log.info(String.format(CIRCUIT_OPEN_LOG_STRING, streamSourceInfo.getSourceId(), database, table));
+            return queuedIngestClient.ingestFromStreamAsync(streamSourceInfo, ingestionProperties)
+                    .doFinally(signal -> closeStreamSafely(streamSourceInfo));
+        }
+
         IngestionUtils.IntegerHolder integerHolder = new IngestionUtils.IntegerHolder();
-        return Mono.defer(() -> executeStream(streamSourceInfo, ingestionProperties, null, integerHolder.increment()))
+        return Mono.defer(() -> reportOutcome(executeStream(streamSourceInfo, ingestionProperties, null, integerHolder.increment()), dataSize,
+                streamSourceInfo.getCompressionType() != null, ingestionProperties))
                 .doOnError((e) -> resetStream(streamSourceInfo))
                 .retryWhen(streamingRetry)
+                .doOnSuccess(ignore -> breaker.onStreamingSucceeded(database, table))
                 .onErrorResume(e -> {
                     // If the error is not recoverable, we should not fall back to queued ingestion
                     if (streamingIngestionErrorPredicate(e)) {
+                        breaker.onStreamingFailed(database, table);
                         log.info("Streaming ingestion failed for sourceId: {}, falling back to queued ingestion.", streamSourceInfo.getSourceId());
                         return queuedIngestClient.ingestFromStreamAsync(streamSourceInfo, ingestionProperties);
                     }
 
+                    // The service answered, so streaming works
+                    breaker.onStreamingSucceeded(database, table);
                     return Mono.error(e);
                 })
                 .doFinally(signal -> closeStreamSafely(streamSourceInfo));
     }
 
-    private Mono<IngestionResult> processStream(StreamSourceInfo streamSourceInfo, IngestionProperties ingestionProperties) {
+    private Mono<IngestionResult> processStream(StreamSourceInfo streamSourceInfo, IngestionProperties ingestionProperties, int availableBytes) {
 
         if (streamSourceInfo.getStream() instanceof ByteArrayInputStream || streamSourceInfo.getStream() instanceof ResettableFileInputStream) {
             StreamSourceInfo managedSourceInfo = new StreamSourceInfo(streamSourceInfo.getStream(),
                     true, streamSourceInfo.getSourceId(), streamSourceInfo.getCompressionType());
-            return ingestStreamWithRetries(managedSourceInfo, ingestionProperties);
+            return ingestStreamWithRetries(managedSourceInfo, ingestionProperties, availableBytes);
         }
         try {
-            byte[] streamingBytes = IngestionUtils.readBytesFromInputStream(streamSourceInfo.getStream(),
-                    ManagedStreamingQueuingPolicy.MAX_STREAMING_STREAM_SIZE_BYTES + 1);
-
-            InputStream byteArrayStream = new ByteArrayInputStream(streamingBytes);
-            int size = streamingBytes.length;
+            // Only what the stream holds is read, into pooled chunks that the retries replay and that go back to the pool once the stream is closed
+            ChunkedInputStream chunkedStream = ChunkedInputStream.read(streamSourceInfo.getStream(),
+                    ManagedStreamingQueuingPolicy.MAX_STREAMING_STREAM_SIZE_BYTES + 1, chunkPool);
+            int size = chunkedStream.size();
 
             boolean shouldUseQueuedIngestion = queuingPolicy.shouldUseQueuedIngestion(
                     size,
                     streamSourceInfo.getCompressionType() != null,
-                    ingestionProperties.getDataFormat());
+                    ingestionProperties);
 
             if (shouldUseQueuedIngestion) {
                 log.info(String.format(FALLBACK_LOG_STRING, streamSourceInfo.getSourceId()));
-                StreamSourceInfo managedSourceInfo = new StreamSourceInfo(new SequenceInputStream(byteArrayStream, streamSourceInfo.getStream()),
+                StreamSourceInfo managedSourceInfo = new StreamSourceInfo(new SequenceInputStream(chunkedStream, streamSourceInfo.getStream()),
                         streamSourceInfo.isLeaveOpen(), streamSourceInfo.getSourceId(), streamSourceInfo.getCompressionType());
 
                 return queuedIngestClient.ingestFromStreamAsync(managedSourceInfo, ingestionProperties);
@@ -470,9 +513,9 @@ public class ManagedStreamingIngestClient extends IngestClientBase implements Qu
                 }
             }
 
-            StreamSourceInfo managedSourceInfo = new StreamSourceInfo(byteArrayStream,
+            StreamSourceInfo managedSourceInfo = new StreamSourceInfo(chunkedStream,
                     true, streamSourceInfo.getSourceId(), streamSourceInfo.getCompressionType());
-            return ingestStreamWithRetries(managedSourceInfo, ingestionProperties);
+            return ingestStreamWithRetries(managedSourceInfo, ingestionProperties, size);
         } catch (IOException e) {
             throw new IngestionClientException("Failed to read from stream.", e);
         }
@@ -499,6 +542,39 @@ public class ManagedStreamingIngestClient extends IngestClientBase implements Qu
         this.queuingPolicy = new ManagedStreamingQueuingPolicy(factor);
     }
 
+    /**
+     * <p>setQueuingPolicy</p>
+     * Sets the policy that chooses between streaming and queued ingestion, and is told the outcome of every streaming attempt, such as an
+     * {@link AdaptiveManagedStreamingQueuingPolicy}.
+     *
+     * @param queuingPolicy - Default is {@link ManagedStreamingQueuingPolicy#Default}.
+     **/
+    public void setQueuingPolicy(ManagedStreamingQueuingPolicy queuingPolicy) {
+        Ensure.argIsNotNull(queuingPolicy, "queuingPolicy");
+        this.queuingPolicy = queuingPolicy;
+    }
+
+    public ManagedStreamingQueuingPolicy getQueuingPolicy() {
+        return queuingPolicy;
+    }
+
+    /**
+     * <p>setCircuitBreaker</p>
+     * Sets the circuit breaker that queues the ingestions into a table right away while streaming into it keeps failing, and probes streaming again
+     * periodically.
+     *
+     * @param circuitBreaker - Default is a {@link StreamingCircuitBreaker} that opens after {@value StreamingCircuitBreaker#DEFAULT_FAILURE_THRESHOLD}
+     *                       ingestions in a row fall back, for a minute.
+     **/
+    public void setCircuitBreaker(StreamingCircuitBreaker circuitBreaker) {
+        Ensure.argIsNotNull(circuitBreaker, "circuitBreaker");
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public StreamingCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
     @Override
     protected String getClientType() {
         return CLASS_NAME;
@@ -515,6 +591,33 @@ public class ManagedStreamingIngestClient extends IngestClientBase implements Qu
         queuedIngestClient.setQueueRequestOptions(queueRequestOptions);
     }
 
+    @Override
+    public void setMaxUploadBlocksInFlight(int maxUploadBlocksInFlight) {
+        queuedIngestClient.setMaxUploadBlocksInFlight(maxUploadBlocksInFlight);
+    }
+
+    @Override
+    public void setCompressionParallelism(int compressionParallelism) {
+        queuedIngestClient.setCompressionParallelism(compressionParallelism);
+    }
+
+    /**
+     * Sets a spool on the wrapped client, see {@link QueuedIngestClientImpl#setSpool(IngestionSpool)}.
+     *
+     * @param spool the spool, or null to upload and queue queued ingestions directly
+     * @throws UnsupportedOperationException if the wrapped client doesn't support spooling
+     */
+    public void setSpool(IngestionSpool spool) {
+        IngestionSpool.setOn(queuedIngestClient, spool);
+    }
+
+    @Override
+    public Flux<IngestionResult> ingestFromResultSetInBlobsAsync(ResultSetSourceInfo resultSetSourceInfo, IngestionProperties ingestionProperties,
+            long maxBlobSize) {
+        // Result sets large enough to need several blobs are always queued
+        return queuedIngestClient.ingestFromResultSetInBlobsAsync(resultSetSourceInfo, ingestionProperties, maxBlobSize);
+    }
+
     @Override
     public IngestionResourceManager getResourceManager() {
         return queuedIngestClient.getResourceManager();
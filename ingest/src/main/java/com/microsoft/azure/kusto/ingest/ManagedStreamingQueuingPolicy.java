@@ -2,6 +2,8 @@ package com.microsoft.azure.kusto.ingest;
 
 import com.microsoft.azure.kusto.data.Ensure;
 
+import java.time.Duration;
+
 interface ManagedStreamingQueuingPolicyPredicator {
     boolean shouldUseQueuedIngestion(long dataSize, boolean compressed, IngestionProperties.DataFormat dataFormat);
 }
@@ -29,32 +31,74 @@ public class ManagedStreamingQueuingPolicy implements ManagedStreamingQueuingPol
             return false;
         }
 
+        return dataSize > getStreamingSizeLimit(compressed, dataFormat);
+    }
+
+    /**
+     * Decides whether to skip streaming for an ingestion into a specific table. The default policy decides by size, compression and format only.
+     *
+     * @param dataSize            the size of the data, as it would be sent
+     * @param compressed          whether the data is compressed
+     * @param ingestionProperties the properties of the ingestion
+     * @return true if streaming ingestion should not be tried
+     */
+    public boolean shouldUseQueuedIngestion(long dataSize, boolean compressed, IngestionProperties ingestionProperties) {
+        return shouldUseQueuedIngestion(dataSize, compressed, ingestionProperties.getDataFormat());
+    }
+
+    // The largest data size that is streamed, estimating the raw size of the data from its size, compression and format
+    double getStreamingSizeLimit(boolean compressed, IngestionProperties.DataFormat dataFormat) {
         // In any case - don't stream more than 10mb
-        if (dataSize > factor * MAX_STREAMING_STREAM_SIZE_BYTES) {
-            return true;
-        }
+        double maxStreamSize = factor * MAX_STREAMING_STREAM_SIZE_BYTES;
+        double maxRawSize = factor * MAX_STREAMING_UNCOMPRESSED_RAW_SIZE_BYTES;
 
         if (!dataFormat.isCompressible()) {
             // Binary format
             if (compressed) {
-                return (dataSize * BINARY_COMPRESSED_FACTOR) > factor * MAX_STREAMING_UNCOMPRESSED_RAW_SIZE_BYTES;
+                return Math.min(maxStreamSize, maxRawSize / BINARY_COMPRESSED_FACTOR);
             }
 
-            return (dataSize * BINARY_UNCOMPRESSED_FACTOR) > factor * MAX_STREAMING_UNCOMPRESSED_RAW_SIZE_BYTES;
+            return Math.min(maxStreamSize, maxRawSize / BINARY_UNCOMPRESSED_FACTOR);
         }
 
         if (compressed) {
             // Compressed + non-binary
-            return (dataSize * NON_BINARY_FACTOR) > factor * MAX_STREAMING_UNCOMPRESSED_RAW_SIZE_BYTES;
+            return Math.min(maxStreamSize, maxRawSize / NON_BINARY_FACTOR);
         }
 
         if (dataFormat.isJsonFormat()) {
             // JSON uncompressed format
-            return (dataSize / JSON_UNCOMPRESSED_FACTOR) > factor * MAX_STREAMING_UNCOMPRESSED_RAW_SIZE_BYTES;
+            return Math.min(maxStreamSize, maxRawSize * JSON_UNCOMPRESSED_FACTOR);
         }
 
         // Uncompressed + non-binary
-        return ((double) dataSize / NON_BINARY_FACTOR) > factor * MAX_STREAMING_UNCOMPRESSED_RAW_SIZE_BYTES;
+        return Math.min(maxStreamSize, maxRawSize * NON_BINARY_FACTOR);
+    }
+
+    double getFactor() {
+        return factor;
+    }
+
+    /**
+     * Called when streaming ingestion of data the policy chose to stream succeeds. The default policy ignores it.
+     *
+     * @param dataSize            the size of the data that was streamed
+     * @param compressed          whether the data was compressed
+     * @param ingestionProperties the properties of the ingestion
+     * @param latency             how long the streaming request took
+     */
+    public void onStreamingSucceeded(long dataSize, boolean compressed, IngestionProperties ingestionProperties, Duration latency) {
+    }
+
+    /**
+     * Called when an attempt to stream data the policy chose to stream fails. The default policy ignores it.
+     *
+     * @param dataSize            the size of the data that was streamed
+     * @param compressed          whether the data was compressed
+     * @param ingestionProperties the properties of the ingestion
+     * @param error               the error the attempt failed with
+     */
+    public void onStreamingFailed(long dataSize, boolean compressed, IngestionProperties ingestionProperties, Throwable error) {
     }
 
     public static final ManagedStreamingQueuingPolicy Default = new ManagedStreamingQueuingPolicy(1);
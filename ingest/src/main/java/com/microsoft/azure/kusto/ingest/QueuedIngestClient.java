@@ -4,6 +4,9 @@
 package com.microsoft.azure.kusto.ingest;
 
 import com.azure.storage.common.policy.RequestRetryOptions;
+import com.microsoft.azure.kusto.ingest.result.IngestionResult;
+import com.microsoft.azure.kusto.ingest.source.ResultSetSourceInfo;
+import reactor.core.publisher.Flux;
 
 public interface QueuedIngestClient extends IngestClient {
     /**
@@ -14,5 +17,43 @@ public interface QueuedIngestClient extends IngestClient {
      */
     void setQueueRequestOptions(RequestRetryOptions queueRequestOptions);
 
+    /**
+     * Sets how many blocks of a stream are uploaded to blob storage concurrently. Streams are read and uploaded in blocks of 4 MB, without holding
+     * the whole stream in memory, so this also bounds the memory an upload holds. Defaults to 4.
+     * The default implementation does nothing, for clients that don't upload in blocks.
+     * @param maxUploadBlocksInFlight - the number of blocks, must be positive
+     */
+    default void setMaxUploadBlocksInFlight(int maxUploadBlocksInFlight) {
+    }
+
+    /**
+     * Sets how many cores compress a stream or file that is compressed before it is uploaded. With more than one, the source is compressed in
+     * chunks of 4 MB in parallel, into a multi-member gzip blob, which the service ingests like any gzip blob. Defaults to 1.
+     * The default implementation does nothing, for clients that don't compress in parallel.
+     * @param compressionParallelism - the number of chunks compressed at once, must be positive
+     */
+    default void setCompressionParallelism(int compressionParallelism) {
+    }
+
+    /**
+     * <p>Ingest data from a ResultSet into Kusto, in as many blobs as it takes.</p>
+     * The rows are read as CSV while they are compressed and uploaded, and the upload rolls over to a new blob at the first row after
+     * {@code maxBlobSize} bytes of CSV, so a result set of any size is ingested without holding it in memory. Each blob is queued for ingestion
+     * while the next one is read and uploaded. Set {@link ResultSetSourceInfo#setFetchSize(Integer)} for drivers that fetch the whole result by
+     * default.
+     * The default implementation ingests the result set in a single blob with {@link #ingestFromResultSetAsync(ResultSetSourceInfo, IngestionProperties)}.
+     *
+     * @param resultSetSourceInfo The specific SourceInfo to be ingested
+     * @param ingestionProperties Settings used to customize the ingestion operation
+     * @param maxBlobSize         The number of bytes of CSV after which a blob is completed, must be positive
+     * @return a {@link IngestionResult} for every blob, in the order of the rows, or none if the result set has no rows
+     * @see IngestionProperties
+     * @see ResultSetSourceInfo
+     */
+    default Flux<IngestionResult> ingestFromResultSetInBlobsAsync(ResultSetSourceInfo resultSetSourceInfo, IngestionProperties ingestionProperties,
+            long maxBlobSize) {
+        return ingestFromResultSetAsync(resultSetSourceInfo, ingestionProperties).flux();
+    }
+
     IngestionResourceManager getResourceManager();
 }
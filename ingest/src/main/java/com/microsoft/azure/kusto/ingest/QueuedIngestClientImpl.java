@@ -4,6 +4,9 @@
 package com.microsoft.azure.kusto.ingest;
 
 import com.azure.core.http.HttpClient;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.azure.data.tables.models.TableEntity;
 import com.azure.data.tables.models.TableServiceException;
 import com.azure.storage.blob.models.BlobStorageException;
@@ -14,6 +17,7 @@ import com.microsoft.azure.kusto.data.ClientDetails;
 import com.microsoft.azure.kusto.data.ClientFactory;
 import com.microsoft.azure.kusto.data.Ensure;
 import com.microsoft.azure.kusto.data.UriUtils;
+import com.microsoft.azure.kusto.data.Utils;
 import com.microsoft.azure.kusto.data.auth.ConnectionStringBuilder;
 import com.microsoft.azure.kusto.data.http.HttpClientFactory;
 import com.microsoft.azure.kusto.data.http.HttpClientProperties;
@@ -33,34 +37,44 @@ import com.microsoft.azure.kusto.ingest.source.StreamSourceInfo;
 import com.microsoft.azure.kusto.ingest.utils.IngestionUtils;
 import com.microsoft.azure.kusto.ingest.utils.SecurityUtils;
 import com.microsoft.azure.kusto.ingest.utils.TableWithSas;
-import com.univocity.parsers.csv.CsvRoutines;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.invoke.MethodHandles;
 import java.net.URISyntaxException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.time.Instant;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class QueuedIngestClientImpl extends IngestClientBase implements QueuedIngestClient {
 
     public static final String CLASS_NAME = QueuedIngestClientImpl.class.getSimpleName();
     private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final int MAX_RESULT_SET_BLOBS_QUEUED_AT_ONCE = 4;
+    // The fields of the header of a spooled ingestion
+    private static final String SPOOL_MESSAGE = "message";
+    private static final String SPOOL_BLOB_NAME = "blobName";
+    private static final String SPOOL_RAW_DATA_SIZE_FROM_PAYLOAD = "rawDataSizeFromPayload";
+    private static final ObjectMapper objectMapper = Utils.getObjectMapper();
     private final ResourceManager resourceManager;
     private final AzureStorageClient azureStorageClient;
     String connectionDataSource;
     private String applicationForTracing;
     private String clientVersionForTracing;
+    private volatile IngestionSpool spool;
 
     QueuedIngestClientImpl(ConnectionStringBuilder csb, @Nullable HttpClientProperties properties, boolean autoCorrectEndpoint) throws URISyntaxException {
         this(csb, properties == null ? null : HttpClientFactory.create(properties), autoCorrectEndpoint);
@@ -89,6 +103,34 @@ public class QueuedIngestClientImpl extends IngestClientBase implements QueuedIn
         this.resourceManager.setQueueRequestOptions(queueRequestOptions);
     }
 
+    @Override
+    public void setMaxUploadBlocksInFlight(int maxUploadBlocksInFlight) {
+        this.azureStorageClient.setMaxUploadBlocksInFlight(maxUploadBlocksInFlight);
+    }
+
+    @Override
+    public void setCompressionParallelism(int compressionParallelism) {
+        this.azureStorageClient.setCompressionParallelism(compressionParallelism);
+    }
+
+    /**
+     * Sets a spool on local disk that ingestions are written to before they are uploaded and queued, so that they survive outages of blob storage
+     * and the ingestion queues, and restarts of the process. An ingestion returns a {@link com.microsoft.azure.kusto.ingest.result.OperationStatus#Queued}
+     * result once it is spooled, and the spool is drained in the background. Ingestions that report their status to a table aren't spooled, since
+     * their status can only be tracked once they are queued. The spool belongs to the caller, which closes it after closing the client.
+     * @param spool - the spool, or null to upload and queue ingestions directly, which is the default
+     */
+    public synchronized void setSpool(IngestionSpool spool) {
+        if (this.spool != null) {
+            this.spool.stopDraining();
+        }
+
+        this.spool = spool;
+        if (spool != null) {
+            spool.startDraining(this::deliverSpooledAsync);
+        }
+    }
+
     @Override
     public IngestionResourceManager getResourceManager() {
         return resourceManager;
@@ -100,19 +142,74 @@ public class QueuedIngestClientImpl extends IngestClientBase implements QueuedIn
         Ensure.argIsNotNull(ingestionProperties, "ingestionProperties");
         blobSourceInfo.validate();
         ingestionProperties.validate();
-        ingestionProperties.setAuthorizationContextToken(resourceManager.getIdentityToken());
 
+        IngestionSpool currentSpool = spool;
+        if (currentSpool != null && !reportsToTable(ingestionProperties)) {
+            IngestionBlobInfo ingestionBlobInfo = createIngestionBlobInfo(blobSourceInfo.getBlobPath(), blobSourceInfo.getBlobExactSize(),
+                    blobSourceInfo.getSourceId(), ingestionProperties);
+            return spoolAsync(currentSpool, ingestionBlobInfo, ingestionProperties, null, null, false, false);
+        }
+
+        return resourceManager.getIdentityTokenAsync().flatMap(identityToken -> {
+            ingestionProperties.setAuthorizationContextToken(identityToken);
+            return queueBlobAsync(blobSourceInfo, ingestionProperties);
+        });
+    }
+
+    private Mono<IngestionResult> queueBlobAsync(BlobSourceInfo blobSourceInfo, IngestionProperties ingestionProperties) {
         // Create the ingestion message
-        IngestionBlobInfo ingestionBlobInfo = new IngestionBlobInfo(blobSourceInfo.getBlobPath(),
-                ingestionProperties.getDatabaseName(), ingestionProperties.getTableName(), this.applicationForTracing,
-                this.clientVersionForTracing);
+        IngestionBlobInfo ingestionBlobInfo = createIngestionBlobInfo(blobSourceInfo.getBlobPath(), blobSourceInfo.getBlobExactSize(),
+                blobSourceInfo.getSourceId(), ingestionProperties);
         String urlWithoutSecrets = SecurityUtils.removeSecretsFromUrl(blobSourceInfo.getBlobPath());
-        if (blobSourceInfo.getBlobExactSize() != null) {
-            ingestionBlobInfo.setRawDataSize(blobSourceInfo.getBlobExactSize());
-        } else {
+        if (blobSourceInfo.getBlobExactSize() == null) {
             log.warn("Blob '{}' was sent for ingestion without specifying its raw data size", urlWithoutSecrets);
         }
 
+        String id = ingestionBlobInfo.getId().toString();
+        IngestionStatus status = createStatus(ingestionBlobInfo, ingestionProperties, urlWithoutSecrets);
+
+        List<IngestionStatusInTableDescription> tableStatuses = new LinkedList<>();
+
+        if (reportsToTable(ingestionProperties)) {
+            status.setStatus(OperationStatus.Pending);
+            return resourceManager.getStatusTableAsync().flatMap(statusTable -> {
+                IngestionStatusInTableDescription ingestionStatusInTable = new IngestionStatusInTableDescription();
+                ingestionStatusInTable.setAsyncTableClient(statusTable.getTableAsyncClient());
+                ingestionStatusInTable.setTableConnectionString(statusTable.getUri());
+                ingestionStatusInTable.setPartitionKey(ingestionBlobInfo.getId().toString());
+                ingestionStatusInTable.setRowKey(ingestionBlobInfo.getId().toString());
+                ingestionBlobInfo.setIngestionStatusInTable(ingestionStatusInTable);
+
+                return azureStorageClient
+                        .azureTableInsertEntity(statusTable.getTableAsyncClient(), new TableEntity(id, id).setProperties(status.getEntityProperties()))
+                        .doOnTerminate(() -> tableStatuses.add(ingestionBlobInfo.getIngestionStatusInTable()))
+                        .then(ResourceAlgorithms.postToQueueWithRetriesAsync(resourceManager, azureStorageClient, ingestionBlobInfo)
+                                .thenReturn((IngestionResult) new TableReportIngestionResult(tableStatuses)));
+            })
+                    .onErrorMap(e -> {
+                        if (e instanceof BlobStorageException || e instanceof QueueStorageException || e instanceof TableServiceException) {
+                            return new IngestionServiceException("Failed to ingest from blob", (Exception) e);
+                        } else if (e instanceof URISyntaxException) {
+                            return new IngestionClientException("Failed to ingest from blob", e);
+                        } else {
+                            return e;
+                        }
+                    });
+        }
+
+        return ResourceAlgorithms.postToQueueWithRetriesAsync(resourceManager, azureStorageClient, ingestionBlobInfo)
+                .thenReturn(new IngestionStatusResult(status));
+    }
+
+    private IngestionBlobInfo createIngestionBlobInfo(@Nullable String blobPath, @Nullable Long rawDataSize, @Nullable UUID sourceId,
+            IngestionProperties ingestionProperties) {
+        IngestionBlobInfo ingestionBlobInfo = new IngestionBlobInfo(blobPath,
+                ingestionProperties.getDatabaseName(), ingestionProperties.getTableName(), this.applicationForTracing,
+                this.clientVersionForTracing);
+        if (rawDataSize != null) {
+            ingestionBlobInfo.setRawDataSize(rawDataSize);
+        }
+
         Map<String, String> properties;
         try {
             properties = ingestionProperties.getIngestionProperties();
@@ -125,51 +222,83 @@ public class QueuedIngestClientImpl extends IngestClientBase implements QueuedIn
         ingestionBlobInfo.setFlushImmediately(ingestionProperties.getFlushImmediately());
         ingestionBlobInfo.setValidationPolicy(ingestionProperties.getValidationPolicy());
         ingestionBlobInfo.setAdditionalProperties(properties);
-        if (blobSourceInfo.getSourceId() != null) {
-            ingestionBlobInfo.setId(blobSourceInfo.getSourceId());
+        if (sourceId != null) {
+            ingestionBlobInfo.setId(sourceId);
         }
+        return ingestionBlobInfo;
+    }
 
-        String id = ingestionBlobInfo.getId().toString();
+    private static IngestionStatus createStatus(IngestionBlobInfo ingestionBlobInfo, IngestionProperties ingestionProperties, String sourcePath) {
         IngestionStatus status = new IngestionStatus();
         status.setDatabase(ingestionProperties.getDatabaseName());
         status.setTable(ingestionProperties.getTableName());
         status.setStatus(OperationStatus.Queued);
         status.setUpdatedOn(Instant.now());
         status.setIngestionSourceId(ingestionBlobInfo.getId());
-        status.setIngestionSourcePath(urlWithoutSecrets);
+        status.setIngestionSourcePath(sourcePath);
+        return status;
+    }
 
-        boolean reportToTable = ingestionProperties.getReportLevel() != IngestionProperties.IngestionReportLevel.NONE &&
+    private static boolean reportsToTable(IngestionProperties ingestionProperties) {
+        return ingestionProperties.getReportLevel() != IngestionProperties.IngestionReportLevel.NONE &&
                 ingestionProperties.getReportMethod() != IngestionProperties.IngestionReportMethod.QUEUE;
-        List<IngestionStatusInTableDescription> tableStatuses = new LinkedList<>();
+    }
 
-        if (reportToTable) {
-            status.setStatus(OperationStatus.Pending);
-            TableWithSas statusTable = resourceManager.getStatusTable();
-            IngestionStatusInTableDescription ingestionStatusInTable = new IngestionStatusInTableDescription();
-            ingestionStatusInTable.setAsyncTableClient(statusTable.getTableAsyncClient());
-            ingestionStatusInTable.setTableConnectionString(statusTable.getUri());
-            ingestionStatusInTable.setPartitionKey(ingestionBlobInfo.getId().toString());
-            ingestionStatusInTable.setRowKey(ingestionBlobInfo.getId().toString());
-            ingestionBlobInfo.setIngestionStatusInTable(ingestionStatusInTable);
-
-            return azureStorageClient
-                    .azureTableInsertEntity(statusTable.getTableAsyncClient(), new TableEntity(id, id).setProperties(status.getEntityProperties()))
-                    .doOnTerminate(() -> tableStatuses.add(ingestionBlobInfo.getIngestionStatusInTable()))
-                    .then(ResourceAlgorithms.postToQueueWithRetriesAsync(resourceManager, azureStorageClient, ingestionBlobInfo)
-                            .thenReturn((IngestionResult) new TableReportIngestionResult(tableStatuses)))
-                    .onErrorMap(e -> {
-                        if (e instanceof BlobStorageException || e instanceof QueueStorageException || e instanceof TableServiceException) {
-                            return new IngestionServiceException("Failed to ingest from blob", (Exception) e);
-                        } else if (e instanceof URISyntaxException) {
-                            return new IngestionClientException("Failed to ingest from blob", e);
-                        } else {
-                            return e;
-                        }
+    /**
+     * Writes an ingestion to the spool, to be uploaded and queued by {@link #deliverSpooledAsync(IngestionSpool.Record)}.
+     *
+     * @param blobName               the name of the blob to upload the payload to, or null if the ingestion message already points at a blob
+     * @param payload                the data to upload, or null
+     * @param compress               whether to compress the payload while it is spooled
+     * @param rawDataSizeFromPayload whether the raw data size of the ingestion is the size of the payload, before it is compressed
+     */
+    private Mono<IngestionResult> spoolAsync(IngestionSpool spool, IngestionBlobInfo ingestionBlobInfo, IngestionProperties ingestionProperties,
+            @Nullable String blobName, @Nullable InputStream payload, boolean compress, boolean rawDataSizeFromPayload) {
+        return Mono.fromCallable(() -> {
+            ObjectNode header = objectMapper.createObjectNode();
+            header.set(SPOOL_MESSAGE, objectMapper.valueToTree(ingestionBlobInfo));
+            if (blobName != null) {
+                header.put(SPOOL_BLOB_NAME, blobName);
+                header.put(SPOOL_RAW_DATA_SIZE_FROM_PAYLOAD, rawDataSizeFromPayload);
+            }
+
+            spool.append(objectMapper.writeValueAsBytes(header), payload, compress);
+            String sourcePath = blobName != null ? blobName : SecurityUtils.removeSecretsFromUrl(ingestionBlobInfo.getBlobPath());
+            return (IngestionResult) new IngestionStatusResult(createStatus(ingestionBlobInfo, ingestionProperties, sourcePath));
+        })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorMap(IOException.class, e -> new IngestionClientException("Failed to spool ingestion", e));
+    }
+
+    private Mono<Void> deliverSpooledAsync(IngestionSpool.Record record) {
+        return Mono.fromCallable(() -> (ObjectNode) objectMapper.readTree(record.getHeader()))
+                .flatMap(header -> {
+                    ObjectNode message = (ObjectNode) header.get(SPOOL_MESSAGE);
+                    // The identity token may have expired while the ingestion was spooled, so the current one is used
+                    Mono<ObjectNode> authorized = resourceManager.getIdentityTokenAsync().map(identityToken -> {
+                        JsonNode additionalProperties = message.get("additionalProperties");
+                        ObjectNode properties = additionalProperties instanceof ObjectNode ? (ObjectNode) additionalProperties
+                                : message.putObject("additionalProperties");
+                        properties.put("authorizationContext", identityToken);
+                        return message;
                     });
-        }
+                    if (!header.hasNonNull(SPOOL_BLOB_NAME)) {
+                        return authorized;
+                    }
 
-        return ResourceAlgorithms.postToQueueWithRetriesAsync(resourceManager, azureStorageClient, ingestionBlobInfo)
-                .thenReturn(new IngestionStatusResult(status));
+                    return authorized.flatMap(ignore -> ResourceAlgorithms.uploadSpooledPayloadWithRetriesAsync(resourceManager, azureStorageClient,
+                            record, header.get(SPOOL_BLOB_NAME).asText()))
+                            .map(blobPath -> {
+                                message.put("blobPath", blobPath);
+                                if (header.path(SPOOL_RAW_DATA_SIZE_FROM_PAYLOAD).asBoolean()) {
+                                    message.put("rawDataSize", record.getSourceSize());
+                                }
+                                return message;
+                            });
+                })
+                .flatMap(message -> Mono.fromCallable(() -> objectMapper.writeValueAsString(message))
+                        .flatMap(serialized -> ResourceAlgorithms.postMessageToQueueWithRetriesAsync(resourceManager, azureStorageClient, serialized,
+                                message.path("blobPath").asText())));
     }
 
     @Override
@@ -198,6 +327,15 @@ public class QueuedIngestClientImpl extends IngestClientBase implements QueuedIn
                 dataFormat.getKustoValue(), // Used to use an empty string if the DataFormat was empty. Now it can't be empty, with a default of
                 // CSV.
                 shouldCompress ? CompressionType.gz : sourceCompressionType);
+
+        IngestionSpool currentSpool = spool;
+        if (currentSpool != null && !reportsToTable(ingestionProperties)) {
+            IngestionBlobInfo ingestionBlobInfo = createIngestionBlobInfo(null, null, fileSourceInfo.getSourceId(), ingestionProperties);
+            return Mono.using(() -> new FileInputStream(file),
+                    stream -> spoolAsync(currentSpool, ingestionBlobInfo, ingestionProperties, blobName, stream, shouldCompress, sourceCompressionType == null),
+                    QueuedIngestClientImpl::closeSpooledFile);
+        }
+
         return ResourceAlgorithms.uploadLocalFileWithRetriesAsync(resourceManager, azureStorageClient, file, blobName, shouldCompress)
                 .flatMap(blobPath -> {
                     BlobSourceInfo blobSourceInfo = BlobSourceInfo.fromFile(blobPath, fileSourceInfo, sourceCompressionType, shouldCompress);
@@ -236,6 +374,28 @@ public class QueuedIngestClientImpl extends IngestClientBase implements QueuedIn
                 // CSV.
                 shouldCompress ? CompressionType.gz : streamSourceInfo.getCompressionType());
 
+        IngestionSpool currentSpool = spool;
+        Mono<IngestionResult> ingestion;
+        if (currentSpool != null && !reportsToTable(ingestionProperties)) {
+            IngestionBlobInfo ingestionBlobInfo = createIngestionBlobInfo(null, null, streamSourceInfo.getSourceId(), ingestionProperties);
+            ingestion = spoolAsync(currentSpool, ingestionBlobInfo, ingestionProperties, blobName, streamSourceInfo.getStream(), shouldCompress, true);
+        } else {
+            ingestion = uploadAndIngestStreamAsync(streamSourceInfo, ingestionProperties, blobName, shouldCompress);
+        }
+
+        return ingestion.doFinally(signalType -> {
+            if (!streamSourceInfo.isLeaveOpen()) {
+                try {
+                    streamSourceInfo.getStream().close();
+                } catch (IOException e) {
+                    throw new IngestionClientException("Failed to close stream after ingestion", e);
+                }
+            }
+        });
+    }
+
+    private Mono<IngestionResult> uploadAndIngestStreamAsync(StreamSourceInfo streamSourceInfo, IngestionProperties ingestionProperties, String blobName,
+            boolean shouldCompress) {
         return ResourceAlgorithms.uploadStreamToBlobWithRetriesAsync(resourceManager,
                 azureStorageClient,
                 streamSourceInfo.getStream(),
@@ -250,17 +410,15 @@ public class QueuedIngestClientImpl extends IngestClientBase implements QueuedIn
                     BlobSourceInfo blobSourceInfo = BlobSourceInfo.fromStream(blobUploadedDetails.blobPath, blobUploadedDetails.size, streamSourceInfo);
                     return ingestFromBlobAsync(blobSourceInfo, ingestionProperties);
                 })
-                .onErrorMap(BlobStorageException.class, e -> new IngestionServiceException("Failed to ingest from stream", e))
-                .doFinally(signalType -> {
-                    if (!streamSourceInfo.isLeaveOpen()) {
-                        try {
-                            streamSourceInfo.getStream().close();
-                        } catch (IOException e) {
-                            throw new IngestionClientException("Failed to close stream after ingestion", e);
-                        }
-                    }
-                });
+                .onErrorMap(BlobStorageException.class, e -> new IngestionServiceException("Failed to ingest from stream", e));
+    }
 
+    private static void closeSpooledFile(InputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            log.warn("Failed to close a file after spooling it", e);
+        }
     }
 
     @Override
@@ -285,27 +443,77 @@ public class QueuedIngestClientImpl extends IngestClientBase implements QueuedIn
         resultSetSourceInfo.validate();
         ingestionProperties.validateResultSetProperties();
 
-        return Mono.fromCallable(() -> {
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            new CsvRoutines().write(resultSetSourceInfo.getResultSet(), byteArrayOutputStream); // TODO: CsvRoutines is not maintained from 2021. replace?
-            byteArrayOutputStream.flush();
-            ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(byteArrayOutputStream.toByteArray());
-            return new StreamSourceInfo(byteArrayInputStream, false, resultSetSourceInfo.getSourceId());
-        }).subscribeOn(Schedulers.boundedElastic())
+        // The rows are written as CSV while the stream is read and uploaded, rather than all at once
+        return Mono.fromCallable(() -> new StreamSourceInfo(openResultSet(resultSetSourceInfo, Long.MAX_VALUE), false, resultSetSourceInfo.getSourceId()))
+                .subscribeOn(Schedulers.boundedElastic())
                 .flatMap(streamSourceInfo -> ingestFromStreamAsync(streamSourceInfo, ingestionProperties))
-                .onErrorMap(IOException.class, e -> {
+                .onErrorMap(e -> e instanceof IOException || e instanceof SQLException, e -> {
+                    String msg = "Failed to read from ResultSet.";
+                    log.error(msg, e);
+                    return new IngestionClientException(msg, e);
+                });
+    }
+
+    @Override
+    public Flux<IngestionResult> ingestFromResultSetInBlobsAsync(ResultSetSourceInfo resultSetSourceInfo, IngestionProperties ingestionProperties,
+            long maxBlobSize) {
+        Ensure.argIsNotNull(resultSetSourceInfo, "resultSetSourceInfo");
+        Ensure.argIsNotNull(ingestionProperties, "ingestionProperties");
+        Ensure.isTrue(maxBlobSize > 0, "maxBlobSize must be positive");
+        resultSetSourceInfo.validate();
+        ingestionProperties.validateResultSetProperties();
+
+        // The result set is read one blob after the other, and each blob is queued for ingestion while the next one is read and uploaded
+        AtomicReference<ResultSetCsvInputStream> current = new AtomicReference<>();
+        return Mono.fromCallable(() -> {
+            ResultSetCsvInputStream stream = openResultSet(resultSetSourceInfo, maxBlobSize);
+            current.set(stream);
+            return stream.available() > 0 ? stream : null;
+        })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(stream -> uploadResultSetBlob(stream, ingestionProperties))
+                .repeat(() -> !current.get().isExhausted())
+                .flatMapSequential(blobSourceInfo -> ingestFromBlobAsync(blobSourceInfo, new IngestionProperties(ingestionProperties)),
+                        MAX_RESULT_SET_BLOBS_QUEUED_AT_ONCE, 1)
+                .onErrorMap(e -> e instanceof IOException || e instanceof SQLException, e -> {
                     String msg = "Failed to read from ResultSet.";
                     log.error(msg, e);
                     return new IngestionClientException(msg, e);
                 });
     }
 
+    private Mono<BlobSourceInfo> uploadResultSetBlob(ResultSetCsvInputStream stream, IngestionProperties ingestionProperties) {
+        String blobName = genBlobName(
+                "ResultSet",
+                ingestionProperties.getDatabaseName(),
+                ingestionProperties.getTableName(),
+                ingestionProperties.getDataFormat().getKustoValue(),
+                CompressionType.gz);
+        StreamSourceInfo streamSourceInfo = new StreamSourceInfo(stream, false, null, CompressionType.gz);
+        return ResourceAlgorithms.uploadStreamToBlobWithRetriesAsync(resourceManager, azureStorageClient, stream, blobName, true)
+                .map(blobUploadedDetails -> BlobSourceInfo.fromStream(blobUploadedDetails.blobPath, stream.getSize(), streamSourceInfo))
+                .onErrorMap(BlobStorageException.class, e -> new IngestionServiceException("Failed to ingest from ResultSet", e));
+    }
+
+    private static ResultSetCsvInputStream openResultSet(ResultSetSourceInfo resultSetSourceInfo, long maxSize) throws SQLException {
+        ResultSet resultSet = resultSetSourceInfo.getResultSet();
+        if (resultSetSourceInfo.getFetchSize() != null) {
+            resultSet.setFetchSize(resultSetSourceInfo.getFetchSize());
+        }
+
+        return new ResultSetCsvInputStream(resultSet, maxSize);
+    }
+
     protected void setConnectionDataSource(String connectionDataSource) {
         this.connectionDataSource = connectionDataSource;
     }
 
     @Override
     public void close() {
+        IngestionSpool currentSpool = spool;
+        if (currentSpool != null) {
+            currentSpool.stopDraining();
+        }
         this.resourceManager.close();
     }
 }
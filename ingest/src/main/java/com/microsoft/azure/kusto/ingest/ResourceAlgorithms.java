@@ -5,6 +5,7 @@ import com.microsoft.azure.kusto.data.Utils;
 import com.microsoft.azure.kusto.data.exceptions.ExceptionUtils;
 import com.microsoft.azure.kusto.data.instrumentation.FunctionOneException;
 import com.microsoft.azure.kusto.data.instrumentation.MonitoredActivity;
+import com.microsoft.azure.kusto.data.instrumentation.SupplierOneException;
 import com.microsoft.azure.kusto.ingest.exceptions.IngestionClientException;
 import com.microsoft.azure.kusto.ingest.resources.RankedStorageAccount;
 import com.microsoft.azure.kusto.ingest.resources.ResourceWithSas;
@@ -15,6 +16,8 @@ import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Mono;
 
 import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
@@ -28,6 +31,8 @@ import java.util.stream.IntStream;
 
 class ResourceAlgorithms {
     private static final int RETRY_COUNT = 3;
+    // How much of a stream that buffers to support mark (such as a BufferedInputStream) can be read before an upload of it can't be retried
+    static final int STREAM_RETRY_MARK_LIMIT = AzureStorageClient.UPLOAD_BLOCK_SIZE;
     private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
     private ResourceAlgorithms() {
@@ -39,6 +44,21 @@ class ResourceAlgorithms {
             FunctionOneException<Mono<TOut>, TWrapper, Exception> action,
             String actionName,
             Map<String, String> additionalAttributes) {
+        return resourceActionWithRetriesAsync(resourceManager, resources, action, actionName, additionalAttributes, () -> true);
+    }
+
+    /**
+     * Like {@link #resourceActionWithRetriesAsync(ResourceManager, List, FunctionOneException, String, Map)}, but asks {@code prepareRetry} before
+     * every retry whether the action can run again, so that an action that consumes its input fails with the error of its last attempt instead of
+     * retrying with what is left of it.
+     */
+    static <TInner, TWrapper extends ResourceWithSas<TInner>, TOut> Mono<TOut> resourceActionWithRetriesAsync(
+            ResourceManager resourceManager,
+            List<TWrapper> resources,
+            FunctionOneException<Mono<TOut>, TWrapper, Exception> action,
+            String actionName,
+            Map<String, String> additionalAttributes,
+            SupplierOneException<Boolean, IOException> prepareRetry) {
 
         if (resources.isEmpty()) {
             throw new IngestionClientException(String.format("%s: No resources were provided.", actionName));
@@ -46,7 +66,7 @@ class ResourceAlgorithms {
 
         List<Map<String, String>> totalAttributes = new ArrayList<>();
 
-        return attemptAction(1, resources, resourceManager, action, actionName, additionalAttributes, null, totalAttributes);
+        return attemptAction(1, resources, resourceManager, action, actionName, additionalAttributes, null, totalAttributes, prepareRetry);
     }
 
     private static <TInner, TWrapper extends ResourceWithSas<TInner>, TOut> Mono<TOut> attemptAction(
@@ -57,7 +77,8 @@ class ResourceAlgorithms {
             String actionName,
             Map<String, String> additionalAttributes,
             Exception ex,
-            List<Map<String, String>> totalAttributes) {
+            List<Map<String, String>> totalAttributes,
+            SupplierOneException<Boolean, IOException> prepareRetry) {
 
         if (attempt > RETRY_COUNT) {
             String errorMessage = String.format("%s: All %d retries failed with last error: %s\n. Used resources: %s",
@@ -87,7 +108,26 @@ class ResourceAlgorithms {
                 .onErrorResume(e -> {
                     log.warn(String.format("Error during attempt %d of %d for %s.", attempt, RETRY_COUNT, actionName), e);
                     resourceManager.reportIngestionResult(resource, false);
-                    return attemptAction(attempt + 1, resources, resourceManager, action, actionName, additionalAttributes, (Exception) e, totalAttributes);
+                    if (attempt < RETRY_COUNT) {
+                        IOException retryError = null;
+                        boolean canRetry;
+                        try {
+                            canRetry = prepareRetry.get();
+                        } catch (IOException rewindError) {
+                            canRetry = false;
+                            retryError = rewindError;
+                        }
+                        if (!canRetry) {
+                            IngestionClientException error = new IngestionClientException(String.format("%s: Attempt %d failed and can't be retried: %s",
+                                    actionName, attempt, ExceptionUtils.getMessageEx((Exception) e)), e);
+                            if (retryError != null) {
+                                error.addSuppressed(retryError);
+                            }
+                            return Mono.error(error);
+                        }
+                    }
+                    return attemptAction(attempt + 1, resources, resourceManager, action, actionName, additionalAttributes, (Exception) e, totalAttributes,
+                            prepareRetry);
                 });
     }
 
@@ -100,41 +140,88 @@ class ResourceAlgorithms {
             throw new IngestionClientException("Failed to ingest from blob", e);
         }
 
-        return resourceActionWithRetriesAsync(
+        return postMessageToQueueWithRetriesAsync(resourceManager, azureStorageClient, message, blob.getBlobPath());
+    }
+
+    public static Mono<Void> postMessageToQueueWithRetriesAsync(ResourceManager resourceManager, AzureStorageClient azureStorageClient, String message,
+            String blobPath) {
+        return resourceManager.getShuffledQueuesAsync().flatMap(queues -> resourceActionWithRetriesAsync(
                 resourceManager,
-                resourceManager.getShuffledQueues(),
+                queues,
                 queue -> azureStorageClient.postMessageToQueue(queue.getAsyncQueue(), message),
                 "ResourceAlgorithms.postToQueueWithRetriesAsync",
-                Collections.singletonMap("blob", SecurityUtils.removeSecretsFromUrl(blob.getBlobPath())));
+                Collections.singletonMap("blob", SecurityUtils.removeSecretsFromUrl(blobPath))));
     }
 
+    // Every attempt uploads the stream from where the first one started: a stream that supports mark is reset to that point, and any other stream
+    // is only retried if the failed attempt didn't read from it
     public static Mono<UploadResult> uploadStreamToBlobWithRetriesAsync(ResourceManager resourceManager, AzureStorageClient azureStorageClient,
             InputStream stream,
             String blobName, boolean shouldCompress) {
-        return resourceActionWithRetriesAsync(
+        return resourceManager.getShuffledContainersAsync().flatMap(containers -> {
+            InputStream source;
+            SupplierOneException<Boolean, IOException> prepareRetry;
+            if (stream.markSupported()) {
+                stream.mark(STREAM_RETRY_MARK_LIMIT);
+                source = stream;
+                prepareRetry = () -> {
+                    stream.reset();
+                    return true;
+                };
+            } else {
+                ReadTrackingInputStream tracked = new ReadTrackingInputStream(stream);
+                source = tracked;
+                prepareRetry = () -> !tracked.wasRead();
+            }
+
+            return resourceActionWithRetriesAsync(
+                    resourceManager,
+                    containers,
+                    container -> azureStorageClient.uploadStreamToBlob(source, blobName, container.getAsyncContainer(), shouldCompress)
+                            .map((size) -> {
+                                UploadResult uploadResult = new UploadResult();
+                                uploadResult.blobPath = container.getAsyncContainer().getBlobContainerUrl() + "/" + blobName + container.getSas();
+                                uploadResult.size = size;
+                                return uploadResult;
+                            }),
+                    "ResourceAlgorithms.uploadStreamToBlobWithRetriesAsync",
+                    Collections.emptyMap(),
+                    prepareRetry);
+        });
+    }
+
+    public static Mono<String> uploadSpooledPayloadWithRetriesAsync(ResourceManager resourceManager, AzureStorageClient azureStorageClient,
+            IngestionSpool.Record record, String blobName) {
+        return resourceManager.getShuffledContainersAsync().flatMap(containers -> resourceActionWithRetriesAsync(
                 resourceManager,
-                resourceManager.getShuffledContainers(),
-                container -> azureStorageClient.uploadStreamToBlob(stream, blobName, container.getAsyncContainer(), shouldCompress)
-                        .map((size) -> {
-                            UploadResult uploadResult = new UploadResult();
-                            uploadResult.blobPath = container.getAsyncContainer().getBlobContainerUrl() + "/" + blobName + container.getSas();
-                            uploadResult.size = size;
-                            return uploadResult;
-                        }),
-                "ResourceAlgorithms.uploadStreamToBlobWithRetriesAsync",
-                Collections.emptyMap());
+                containers,
+                // Every attempt reads the payload from the spool again, from its start
+                container -> Mono.using(record::openPayload,
+                        payload -> azureStorageClient.uploadStreamToBlob(payload, blobName, container.getAsyncContainer(), false),
+                        ResourceAlgorithms::closePayload)
+                        .thenReturn(container.getAsyncContainer().getBlobContainerUrl() + "/" + blobName + container.getSas()),
+                "ResourceAlgorithms.uploadSpooledPayloadWithRetriesAsync",
+                Collections.emptyMap()));
+    }
+
+    private static void closePayload(InputStream payload) {
+        try {
+            payload.close();
+        } catch (IOException e) {
+            log.warn("Failed to close a spooled payload", e);
+        }
     }
 
     public static Mono<String> uploadLocalFileWithRetriesAsync(ResourceManager resourceManager, AzureStorageClient azureStorageClient, File file,
             String blobName,
             boolean shouldCompress) {
-        return resourceActionWithRetriesAsync(
+        return resourceManager.getShuffledContainersAsync().flatMap(containers -> resourceActionWithRetriesAsync(
                 resourceManager,
-                resourceManager.getShuffledContainers(),
+                containers,
                 container -> azureStorageClient.uploadLocalFileToBlob(file, blobName, container.getAsyncContainer(), shouldCompress)
                         .thenReturn(container.getAsyncContainer().getBlobContainerUrl() + "/" + blobName + container.getSas()),
                 "ResourceAlgorithms.uploadLocalFileWithRetriesAsync",
-                Collections.emptyMap());
+                Collections.emptyMap()));
     }
 
     @NotNull
@@ -173,8 +260,42 @@ class ResourceAlgorithms {
         return resourceSet.stream().collect(Collectors.groupingBy(ResourceWithSas::getAccountName, Collectors.toList()));
     }
 
+    // Tells whether anything was read from a stream that can't be rewound
+    private static class ReadTrackingInputStream extends FilterInputStream {
+        private volatile boolean consumed;
+
+        ReadTrackingInputStream(InputStream in) {
+            super(in);
+        }
+
+        boolean wasRead() {
+            return consumed;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            consumed |= value != -1;
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            consumed |= count > 0;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long count = super.skip(n);
+            consumed |= count > 0;
+            return count;
+        }
+    }
+
     public static class UploadResult {
         public String blobPath;
-        public int size;
+        public long size;
     }
 }
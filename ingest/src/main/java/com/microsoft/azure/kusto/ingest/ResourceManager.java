@@ -7,7 +7,6 @@ import com.azure.core.http.HttpClient;
 import com.azure.storage.common.policy.RequestRetryOptions;
 import com.microsoft.azure.kusto.data.Client;
 import com.microsoft.azure.kusto.data.ExponentialRetry;
-import com.microsoft.azure.kusto.data.KustoOperationResult;
 import com.microsoft.azure.kusto.data.KustoResultSetTable;
 import com.microsoft.azure.kusto.data.exceptions.DataClientException;
 import com.microsoft.azure.kusto.data.exceptions.DataServiceException;
@@ -15,7 +14,6 @@ import com.microsoft.azure.kusto.data.exceptions.ThrottleException;
 import com.microsoft.azure.kusto.data.http.HttpClientFactory;
 import com.microsoft.azure.kusto.data.http.HttpClientProperties;
 import com.microsoft.azure.kusto.data.instrumentation.MonitoredActivity;
-import com.microsoft.azure.kusto.data.instrumentation.SupplierTwoExceptions;
 import com.microsoft.azure.kusto.ingest.exceptions.IngestionClientException;
 import com.microsoft.azure.kusto.ingest.exceptions.IngestionServiceException;
 import com.microsoft.azure.kusto.ingest.resources.ContainerWithSas;
@@ -26,23 +24,27 @@ import com.microsoft.azure.kusto.ingest.resources.ResourceWithSas;
 import com.microsoft.azure.kusto.ingest.utils.TableWithSas;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 import reactor.util.annotation.Nullable;
 import reactor.util.retry.Retry;
 
 import java.io.Closeable;
 import java.lang.invoke.MethodHandles;
 import java.net.URISyntaxException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Callable;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 class ResourceManager implements Closeable, IngestionResourceManager {
@@ -57,353 +59,355 @@ class ResourceManager implements Closeable, IngestionResourceManager {
             .retry(Collections.singletonList(ThrottleException.class), null);
     private final Client client;
     private final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
-    private Timer refreshTasksTimer;
-    private final ReadWriteLock ingestionResourcesLock = new ReentrantReadWriteLock();
-    private final ReadWriteLock ingestionAuthTokenLock = new ReentrantReadWriteLock();
-    private final ReadWriteLock ingestionResourcesSchedulingLock = new ReentrantReadWriteLock();
-    private final ReadWriteLock ingestionAuthTokenSchedulingLock = new ReentrantReadWriteLock();
-    private final Long defaultRefreshTime;
-    private final Long refreshTimeOnFailure;
+    private final long defaultRefreshTime;
+    private final long refreshTimeOnFailure;
     private final HttpClient httpClient;
-    private RequestRetryOptions queueRequestOptions = null;
-    private RankedStorageAccountSet storageAccountSet;
-    private String identityToken;
-    private IngestionResourceSet ingestionResourceSet;
-    protected RefreshIngestionAuthTokenTask refreshIngestionAuthTokenTask;
-    protected RefreshIngestionResourcesTask refreshIngestionResourcesTask;
+    private final Scheduler scheduler;
+    private volatile RequestRetryOptions queueRequestOptions = null;
+    final Refresher<IngestionResourceSet> ingestionResources;
+    final Refresher<String> identityToken;
 
     /// <summary>
     ///
     /// Creates a new instance of the ResourceManager.
-    /// This class is not async at its nature therefore it was not implemented as one, a cache is only doing async work
-    /// once in a while and most requests should return immediately
+    /// The resources and the identity token are immutable snapshots, that are replaced by a refresh scheduled in the background. Reading them
+    /// takes no locks, and only waits for the first refresh, which the async getters do without blocking.
     /// </summary>
     public ResourceManager(Client client, long defaultRefreshTime, long refreshTimeOnFailure, @Nullable HttpClient httpClient) {
+        this(client, defaultRefreshTime, refreshTimeOnFailure, httpClient, Schedulers.parallel());
+    }
+
+    public ResourceManager(Client client, @Nullable HttpClient httpClient) {
+        this(client, REFRESH_INGESTION_RESOURCES_PERIOD, REFRESH_INGESTION_RESOURCES_PERIOD_ON_FAILURE, httpClient);
+    }
+
+    ResourceManager(Client client, long defaultRefreshTime, long refreshTimeOnFailure, @Nullable HttpClient httpClient, Scheduler scheduler) {
         this.client = client;
         // Using ctor with client so that the dependency is used
         this.httpClient = httpClient == null
                 ? HttpClientFactory.create(HttpClientProperties.builder().build())
                 : httpClient;
-
-        // Refresh tasks
-        this.refreshTasksTimer = new Timer(true);
         this.defaultRefreshTime = defaultRefreshTime;
         this.refreshTimeOnFailure = refreshTimeOnFailure;
-        initRefreshTasks();
-
-        this.storageAccountSet = new RankedStorageAccountSet();
-    }
+        this.scheduler = scheduler;
 
-    public ResourceManager(Client client, @Nullable HttpClient httpClient) {
-        this(client, REFRESH_INGESTION_RESOURCES_PERIOD, REFRESH_INGESTION_RESOURCES_PERIOD_ON_FAILURE, httpClient);
+        // Refresh tasks
+        this.ingestionResources = new Refresher<>("ResourceManager.refreshIngestionResource", this::loadIngestionResources);
+        this.identityToken = new Refresher<>("ResourceManager.refreshIngestionAuthToken", this::loadIngestionAuthToken);
+        ingestionResources.refreshNow();
+        identityToken.refreshNow();
     }
 
     @Override
     public void close() {
-        refreshTasksTimer.cancel();
-        refreshTasksTimer.purge();
-        refreshTasksTimer = null;
+        ingestionResources.close();
+        identityToken.close();
     }
 
-    abstract static class RefreshResourceTask extends TimerTask {
-        protected final BlockingQueue<Boolean> refreshedAtLeastOnce = new LinkedBlockingDeque<>();
-
-        public Boolean waitUntilRefreshedAtLeastOnce() {
-            return waitUntilRefreshedAtLeastOnce(REFRESH_RESULT_POLL_TIMEOUT_MILLIS);
+    /**
+     * Keeps a value that is loaded in the background: every {@code defaultRefreshTime} after a successful load, and after a jittered, exponentially
+     * growing delay, starting from {@code refreshTimeOnFailure}, after a failed one. A refresh can also be started on demand, which replaces the one
+     * that was scheduled.
+     */
+    class Refresher<T> {
+        private final String name;
+        private final Supplier<Mono<T>> loader;
+        private final AtomicReference<T> value = new AtomicReference<>();
+        // The refresh in flight, shared by everyone waiting for it
+        private final AtomicReference<Mono<T>> inFlight = new AtomicReference<>();
+        private volatile int consecutiveFailures;
+
+        // Guarded by "this"
+        private Disposable scheduled;
+        private boolean closed;
+
+        Refresher(String name, Supplier<Mono<T>> loader) {
+            this.name = name;
+            this.loader = loader;
         }
 
-        public Boolean waitUntilRefreshedAtLeastOnce(long timeoutMillis) {
-            try {
-                Boolean refreshedAtLeastOncePollResult = refreshedAtLeastOnce.poll(timeoutMillis, TimeUnit.MILLISECONDS);
-                if (refreshedAtLeastOncePollResult != null) {
-                    refreshedAtLeastOnce.put(refreshedAtLeastOncePollResult); // Since the poll above removed the indication whether a refresh was done
-                    return refreshedAtLeastOncePollResult;
-                } else {
-                    return null;
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return null;
-            }
+        @Nullable
+        T get() {
+            return value.get();
         }
-    }
 
-    class RefreshIngestionResourcesTask extends RefreshResourceTask {
-
-        @Override
-        public void run() {
-            try {
-                MonitoredActivity.invoke((SupplierTwoExceptions<Void, IngestionClientException, IngestionServiceException>) () -> {
-                    refreshIngestionResources();
-                    return null;
-                }, "ResourceManager.refreshIngestionResource");
-            } catch (Exception e) {
-                log.error("Error in refreshIngestionResources: " + e.getMessage(), e);
-                scheduleRefreshIngestionResourcesTask(refreshTimeOnFailure);
-            }
+        int getConsecutiveFailures() {
+            return consecutiveFailures;
         }
 
-        private void refreshIngestionResources() throws IngestionClientException, IngestionServiceException {
-            // Here we use tryLock(): If there is another instance doing the refresh, then just skip it.
-            if (ingestionResourcesLock.writeLock().tryLock()) {
-                try {
-                    log.info("Refreshing Ingestion Resources");
-                    IngestionResourceSet newIngestionResourceSet = new IngestionResourceSet();
-
-                    KustoOperationResult ingestionResourcesResults = client.executeMgmtAsync(Commands.INGESTION_RESOURCES_SHOW_COMMAND)
-                            .retryWhen(RETRY_CONFIG)
-                            .block();
+        /**
+         * @return the refresh in flight, or a new one if there is none. It completes empty if the loader found nothing.
+         */
+        Mono<T> refreshNow() {
+            while (true) {
+                Mono<T> current = inFlight.get();
+                if (current != null) {
+                    return current;
+                }
 
-                    if (ingestionResourcesResults != null) {
-                        KustoResultSetTable table = ingestionResourcesResults.getPrimaryResults();
-                        // Add the received values to the new ingestion resources
-                        while (table.next()) {
-                            String resourceTypeName = table.getString(0);
-                            String storageUrl = table.getString(1);
-                            addIngestionResource(newIngestionResourceSet, resourceTypeName, storageUrl);
-                        }
-                    }
-                    populateStorageAccounts(newIngestionResourceSet);
-                    ingestionResourceSet = newIngestionResourceSet;
-                    refreshedAtLeastOnce.clear();
-                    refreshedAtLeastOnce.put(true);
-                    log.info("Refreshing Ingestion Resources Finished");
-                } catch (DataServiceException e) {
-                    throw new IngestionServiceException(e.getIngestionSource(), "Error refreshing IngestionResources. " + e.getMessage(), e);
-                } catch (DataClientException e) {
-                    throw new IngestionClientException(e.getIngestionSource(), "Error refreshing IngestionResources. " + e.getMessage(), e);
-                } catch (Throwable e) {
-                    throw new IngestionClientException(e.getMessage(), e);
-                } finally {
-                    ingestionResourcesLock.writeLock().unlock();
+                Mono<T> refresh = Mono.defer(() -> {
+                    log.info("{} started", name);
+                    return MonitoredActivity.invokeAsync(span -> loader.get(), name, Collections.emptyMap());
+                })
+                        .doOnSuccess(loaded -> {
+                            if (loaded != null) {
+                                value.set(loaded);
+                            }
+                            consecutiveFailures = 0;
+                            inFlight.set(null);
+                            log.info("{} finished", name);
+                            scheduleRefresh(defaultRefreshTime);
+                        })
+                        .doOnError(e -> {
+                            log.error("Error in {}: {}", name, e.getMessage(), e);
+                            int failures = ++consecutiveFailures;
+                            inFlight.set(null);
+                            scheduleRefresh(getDelayAfterFailure(failures));
+                        })
+                        .cache();
+                if (inFlight.compareAndSet(null, refresh)) {
+                    refresh.subscribe(ignore -> {
+                    }, ignore -> {
+                    });
+                    return refresh;
                 }
             }
         }
 
-        private void addIngestionResource(IngestionResourceSet ingestionResourceSet, String resourceTypeName, String storageUrl) throws URISyntaxException {
-            ResourceType resourceType = ResourceType.findByResourceTypeName(resourceTypeName);
-            switch (resourceType) {
-                case TEMP_STORAGE:
-                    ingestionResourceSet.containers.addResource(new ContainerWithSas(storageUrl, httpClient));
-                    break;
-                case INGESTIONS_STATUS_TABLE:
-                    ingestionResourceSet.statusTable.addResource(new TableWithSas(storageUrl, httpClient));
-                    break;
-                case SECURED_READY_FOR_AGGREGATION_QUEUE:
-                    ingestionResourceSet.queues.addResource(new QueueWithSas(storageUrl, httpClient, queueRequestOptions));
-                    break;
-                case SUCCESSFUL_INGESTIONS_QUEUE:
-                    ingestionResourceSet.successfulIngestionsQueues.addResource(new QueueWithSas(storageUrl, httpClient, queueRequestOptions));
-                    break;
-                case FAILED_INGESTIONS_QUEUE:
-                    ingestionResourceSet.failedIngestionsQueues.addResource(new QueueWithSas(storageUrl, httpClient, queueRequestOptions));
-                    break;
-                default:
-                    throw new IllegalStateException("Unexpected value: " + resourceType);
+        private synchronized void scheduleRefresh(long delayMillis) {
+            if (closed) {
+                return;
             }
-        }
-
-        private void populateStorageAccounts(IngestionResourceSet ingestionResourceSet) {
-            RankedStorageAccountSet tempAccount = new RankedStorageAccountSet();
-            Stream<? extends ResourceWithSas<?>> queueStream = (ingestionResourceSet.queues == null ? Stream.empty()
-                    : ingestionResourceSet.queues.getResourcesList().stream());
-            Stream<? extends ResourceWithSas<?>> containerStream = (ingestionResourceSet.containers == null ? Stream.empty()
-                    : ingestionResourceSet.containers.getResourcesList().stream());
-
-            Stream.concat(queueStream, containerStream).forEach(resource -> {
-                String accountName = resource.getAccountName();
-                if (tempAccount.getAccount(accountName) != null) {
-                    return;
-                }
 
-                RankedStorageAccount previousAccount = storageAccountSet.getAccount(accountName);
-                if (previousAccount != null) {
-                    tempAccount.addAccount(previousAccount);
-                } else {
-                    tempAccount.addAccount(accountName);
-                }
-            });
+            if (scheduled != null) {
+                scheduled.dispose();
+            }
+            scheduled = scheduler.schedule(this::refreshNow, delayMillis, TimeUnit.MILLISECONDS);
+        }
 
-            storageAccountSet = tempAccount;
+        synchronized void close() {
+            closed = true;
+            if (scheduled != null) {
+                scheduled.dispose();
+            }
         }
     }
 
-    class RefreshIngestionAuthTokenTask extends RefreshResourceTask {
-        @Override
-        public void run() {
-            try {
-                MonitoredActivity.invoke((SupplierTwoExceptions<Void, IngestionClientException, IngestionServiceException>) () -> {
-                    refreshIngestionAuthToken();
-                    return null;
-                }, "ResourceManager.refreshIngestionAuthToken");
-            } catch (Exception e) {
-                log.error("Error in refreshIngestionAuthToken: " + e.getMessage(), e);
-                scheduleRefreshIngestionAuthTokenTask(refreshTimeOnFailure);
-            }
+    long getDelayAfterFailure(int consecutiveFailures) {
+        long delay = refreshTimeOnFailure << Math.min(consecutiveFailures - 1, 20);
+        if (delay <= 0 || delay > defaultRefreshTime) {
+            delay = Math.max(defaultRefreshTime, refreshTimeOnFailure);
         }
 
-        private void refreshIngestionAuthToken() throws IngestionClientException, IngestionServiceException {
-            if (ingestionAuthTokenLock.writeLock().tryLock()) {
-                try {
-                    log.info("Refreshing Ingestion Auth Token");
+        // Spread the retries of many clients that failed together
+        return delay - (long) (delay * JITTER_FACTOR * ThreadLocalRandom.current().nextDouble());
+    }
 
-                    KustoOperationResult identityTokenResult = client.executeMgmtAsync(Commands.IDENTITY_GET_COMMAND)
-                            .retryWhen(RETRY_CONFIG)
-                            .block();
+    private Mono<IngestionResourceSet> loadIngestionResources() {
+        return client.executeMgmtAsync(Commands.INGESTION_RESOURCES_SHOW_COMMAND)
+                .retryWhen(RETRY_CONFIG)
+                .map(ingestionResourcesResults -> {
+                    IngestionResourceSet newIngestionResourceSet = new IngestionResourceSet();
+                    KustoResultSetTable table = ingestionResourcesResults.getPrimaryResults();
+                    // Add the received values to the new ingestion resources
+                    while (table.next()) {
+                        String resourceTypeName = table.getString(0);
+                        String storageUrl = table.getString(1);
+                        try {
+                            addIngestionResource(newIngestionResourceSet, resourceTypeName, storageUrl);
+                        } catch (URISyntaxException e) {
+                            throw new IngestionClientException(e.getMessage(), e);
+                        }
+                    }
+                    populateStorageAccounts(newIngestionResourceSet);
+                    return newIngestionResourceSet;
+                })
+                .onErrorMap(e -> mapRefreshException(e, "Error refreshing IngestionResources. "));
+    }
 
-                    if (identityTokenResult != null
-                            && identityTokenResult.hasNext()
-                            && !identityTokenResult.getResultTables().isEmpty()) {
+    private Mono<String> loadIngestionAuthToken() {
+        return client.executeMgmtAsync(Commands.IDENTITY_GET_COMMAND)
+                .retryWhen(RETRY_CONFIG)
+                .flatMap(identityTokenResult -> {
+                    if (identityTokenResult.hasNext() && !identityTokenResult.getResultTables().isEmpty()) {
                         KustoResultSetTable resultTable = identityTokenResult.next();
                         resultTable.next();
-                        identityToken = resultTable.getString(0);
+                        return Mono.justOrEmpty(resultTable.getString(0));
                     }
-                    refreshedAtLeastOnce.clear();
-                    refreshedAtLeastOnce.put(true);
-                    log.info("Refreshing Ingestion Auth Token Finished");
-                } catch (DataServiceException e) {
-                    throw new IngestionServiceException(e.getIngestionSource(), "Error refreshing IngestionAuthToken. " + e.getMessage(), e);
-                } catch (DataClientException e) {
-                    throw new IngestionClientException(e.getIngestionSource(), "Error refreshing IngestionAuthToken. " + e.getMessage(), e);
-                } catch (Throwable e) {
-                    throw new IngestionClientException(e.getMessage(), e);
-                } finally {
-                    ingestionAuthTokenLock.writeLock().unlock();
-                }
-            }
-        }
+                    return Mono.empty();
+                })
+                .onErrorMap(e -> mapRefreshException(e, "Error refreshing IngestionAuthToken. "));
     }
 
-    private void initRefreshTasks() {
-        scheduleRefreshIngestionResourcesTask(0L);
-        scheduleRefreshIngestionAuthTokenTask(0L);
+    private static Throwable mapRefreshException(Throwable e, String message) {
+        if (e instanceof IngestionServiceException || e instanceof IngestionClientException) {
+            return e;
+        } else if (e instanceof DataServiceException) {
+            return new IngestionServiceException(((DataServiceException) e).getIngestionSource(), message + e.getMessage(), (DataServiceException) e);
+        } else if (e instanceof DataClientException) {
+            return new IngestionClientException(((DataClientException) e).getIngestionSource(), message + e.getMessage(), (DataClientException) e);
+        }
+        return new IngestionClientException(e.getMessage(), e);
     }
 
-    // If we combined these 2 methods, ensuring we're using distinct synchronized locks for both would be inelegant
-    private synchronized void scheduleRefreshIngestionResourcesTask(Long delay) {
-        if (refreshTasksTimer != null) {
-            if (refreshIngestionResourcesTask != null) {
-                refreshIngestionResourcesTask.cancel();
-            }
-
-            refreshIngestionResourcesTask = new RefreshIngestionResourcesTask();
-            refreshTasksTimer.schedule(refreshIngestionResourcesTask, delay, defaultRefreshTime);
+    private void addIngestionResource(IngestionResourceSet ingestionResourceSet, String resourceTypeName, String storageUrl) throws URISyntaxException {
+        ResourceType resourceType = ResourceType.findByResourceTypeName(resourceTypeName);
+        switch (resourceType) {
+            case TEMP_STORAGE:
+                ingestionResourceSet.containers.addResource(new ContainerWithSas(storageUrl, httpClient));
+                break;
+            case INGESTIONS_STATUS_TABLE:
+                ingestionResourceSet.statusTable.addResource(new TableWithSas(storageUrl, httpClient));
+                break;
+            case SECURED_READY_FOR_AGGREGATION_QUEUE:
+                ingestionResourceSet.queues.addResource(new QueueWithSas(storageUrl, httpClient, queueRequestOptions));
+                break;
+            case SUCCESSFUL_INGESTIONS_QUEUE:
+                ingestionResourceSet.successfulIngestionsQueues.addResource(new QueueWithSas(storageUrl, httpClient, queueRequestOptions));
+                break;
+            case FAILED_INGESTIONS_QUEUE:
+                ingestionResourceSet.failedIngestionsQueues.addResource(new QueueWithSas(storageUrl, httpClient, queueRequestOptions));
+                break;
+            default:
+                throw new IllegalStateException("Unexpected value: " + resourceType);
         }
     }
 
-    private synchronized void scheduleRefreshIngestionAuthTokenTask(Long delay) {
-        if (refreshTasksTimer != null) {
-            if (refreshIngestionAuthTokenTask != null) {
-                refreshIngestionAuthTokenTask.cancel();
+    private void populateStorageAccounts(IngestionResourceSet ingestionResourceSet) {
+        RankedStorageAccountSet tempAccount = ingestionResourceSet.storageAccountSet;
+        IngestionResourceSet previousResourceSet = ingestionResources.get();
+        Stream<? extends ResourceWithSas<?>> queueStream = ingestionResourceSet.queues.getResourcesList().stream();
+        Stream<? extends ResourceWithSas<?>> containerStream = ingestionResourceSet.containers.getResourcesList().stream();
+
+        Stream.concat(queueStream, containerStream).forEach(resource -> {
+            String accountName = resource.getAccountName();
+            if (tempAccount.getAccount(accountName) != null) {
+                return;
             }
 
-            refreshIngestionAuthTokenTask = new RefreshIngestionAuthTokenTask();
-            refreshTasksTimer.schedule(refreshIngestionAuthTokenTask, delay, defaultRefreshTime);
-        }
+            // Keep the success rates that were collected for accounts that are still in use
+            RankedStorageAccount previousAccount = previousResourceSet == null ? null : previousResourceSet.storageAccountSet.getAccount(accountName);
+            if (previousAccount != null) {
+                tempAccount.addAccount(previousAccount);
+            } else {
+                tempAccount.addAccount(accountName);
+            }
+        });
     }
 
     @Override
     public List<ContainerWithSas> getShuffledContainers() throws IngestionServiceException {
-        IngestionResource<ContainerWithSas> containers = getResourceSet(() -> this.ingestionResourceSet.containers);
-        return ResourceAlgorithms.getShuffledResources(storageAccountSet.getRankedShuffledAccounts(), containers.getResourcesList());
+        return getShuffledResources(getResourceSet(set -> set.containers));
+    }
+
+    public Mono<List<ContainerWithSas>> getShuffledContainersAsync() {
+        return getResourceSetAsync(set -> set.containers).map(this::getShuffledResources);
     }
 
     public List<QueueWithSas> getShuffledQueues() throws IngestionServiceException {
-        IngestionResource<QueueWithSas> queues = getResourceSet(() -> this.ingestionResourceSet.queues);
-        return ResourceAlgorithms.getShuffledResources(storageAccountSet.getRankedShuffledAccounts(), queues.getResourcesList());
+        return getShuffledResources(getResourceSet(set -> set.queues));
+    }
+
+    public Mono<List<QueueWithSas>> getShuffledQueuesAsync() {
+        return getResourceSetAsync(set -> set.queues).map(this::getShuffledResources);
     }
 
     public TableWithSas getStatusTable() throws IngestionServiceException {
-        return getResource(() -> this.ingestionResourceSet.statusTable);
+        return getResourceSet(set -> set.statusTable).nextResource();
+    }
+
+    public Mono<TableWithSas> getStatusTableAsync() {
+        return getResourceSetAsync(set -> set.statusTable).map(IngestionResource::nextResource);
     }
 
     public QueueWithSas getFailedQueue() throws IngestionServiceException {
-        return getResource(() -> this.ingestionResourceSet.failedIngestionsQueues);
+        return getResourceSet(set -> set.failedIngestionsQueues).nextResource();
     }
 
     public QueueWithSas getSuccessfulQueue() throws IngestionServiceException {
-        return getResource(() -> this.ingestionResourceSet.successfulIngestionsQueues);
+        return getResourceSet(set -> set.successfulIngestionsQueues).nextResource();
     }
 
     public String getIdentityToken() throws IngestionServiceException {
-        if (identityToken == null) {
-            // If this method is called multiple times, don't schedule the task multiple times
-            if (ingestionAuthTokenSchedulingLock.writeLock().tryLock()) {
-                try {
-                    // Scheduling the task with no delay will force it to try now, with its normal retry logic
-                    scheduleRefreshIngestionAuthTokenTask(0L);
-                } finally {
-                    ingestionAuthTokenSchedulingLock.writeLock().unlock();
-                }
-            }
+        String token = identityToken.get();
+        if (token != null) {
+            return token;
+        }
 
-            Boolean refreshedOnce = refreshIngestionAuthTokenTask.waitUntilRefreshedAtLeastOnce();
-            if (identityToken == null) {
-                throwNoResultException("Unable to get Identity token", refreshedOnce);
+        return getIdentityTokenAsync().block();
+    }
+
+    public Mono<String> getIdentityTokenAsync() {
+        return Mono.defer(() -> {
+            String token = identityToken.get();
+            if (token != null) {
+                return Mono.just(token);
             }
-        }
 
-        return identityToken;
+            // Refreshing now, with the normal retry logic, rather than waiting for the scheduled refresh
+            return awaitRefresh(identityToken, "Unable to get Identity token");
+        });
     }
 
     public void setQueueRequestOptions(RequestRetryOptions queueRequestOptions) {
         this.queueRequestOptions = queueRequestOptions;
     }
 
-    private <T> T getResource(Callable<IngestionResource<T>> resourceGetter) throws IngestionServiceException {
-        return getResourceSet(resourceGetter).nextResource();
+    private <T extends ResourceWithSas<?>> List<T> getShuffledResources(IngestionResource<T> resource) {
+        return ResourceAlgorithms.getShuffledResources(resource.resourceSet.storageAccountSet.getRankedShuffledAccounts(), resource.getResourcesList());
     }
 
-    private <T> IngestionResource<T> getResourceSet(Callable<IngestionResource<T>> resourceGetter) throws IngestionServiceException {
-        IngestionResource<T> resource = null;
-        try {
-            resource = resourceGetter.call();
-        } catch (Exception ignore) {
-        }
-
-        if (resource == null || resource.empty()) {
-            // If this method is called multiple times, don't schedule the task multiple times
-            if (ingestionResourcesSchedulingLock.writeLock().tryLock()) {
-                try {
-                    // Scheduling the task with no delay will force it to try now, with its normal retry logic
-                    scheduleRefreshIngestionResourcesTask(0L);
-                } finally {
-                    ingestionResourcesSchedulingLock.writeLock().unlock();
-                }
+    private <T> IngestionResource<T> getResourceSet(Function<IngestionResourceSet, IngestionResource<T>> resourceGetter) throws IngestionServiceException {
+        IngestionResourceSet ingestionResourceSet = ingestionResources.get();
+        if (ingestionResourceSet != null) {
+            IngestionResource<T> resource = resourceGetter.apply(ingestionResourceSet);
+            if (!resource.empty()) {
+                return resource;
             }
+        }
 
-            // If the write lock is locked (refresh is running), then the read will wait here until it ends
-            Boolean refreshedOnce = refreshIngestionResourcesTask.waitUntilRefreshedAtLeastOnce();
-            try {
-                resource = resourceGetter.call();
-            } catch (Exception ignore) {
-            }
+        return getResourceSetAsync(resourceGetter).block();
+    }
 
-            if (resource == null || resource.empty()) {
-                throwNoResultException("Unable to get ingestion resources for this type: " +
-                        (resource == null ? "" : resource.resourceType), refreshedOnce);
+    private <T> Mono<IngestionResource<T>> getResourceSetAsync(Function<IngestionResourceSet, IngestionResource<T>> resourceGetter) {
+        return Mono.defer(() -> {
+            IngestionResourceSet ingestionResourceSet = ingestionResources.get();
+            if (ingestionResourceSet != null) {
+                IngestionResource<T> resource = resourceGetter.apply(ingestionResourceSet);
+                if (!resource.empty()) {
+                    return Mono.just(resource);
+                }
             }
-        }
 
-        return resource;
+            // Refreshing now, with the normal retry logic, rather than waiting for the scheduled refresh
+            return awaitRefresh(ingestionResources, "Unable to get ingestion resources")
+                    .flatMap(refreshed -> {
+                        IngestionResource<T> resource = resourceGetter.apply(refreshed);
+                        if (resource.empty()) {
+                            return Mono.error(new IngestionServiceException("Unable to get ingestion resources for this type: " + resource.resourceType));
+                        }
+                        return Mono.just(resource);
+                    });
+        });
     }
 
-    private static void throwNoResultException(String baseMessage, Boolean refreshedOnce) throws IngestionServiceException {
-        if (refreshedOnce == null) {
-            baseMessage += " because thread checking refresh job timed out or was interrupted";
-        } else if (!refreshedOnce) {
-            baseMessage += " because refresh job failed";
-        }
-        throw new IngestionServiceException(baseMessage);
+    private <T> Mono<T> awaitRefresh(Refresher<T> refresher, String baseMessage) {
+        return refresher.refreshNow()
+                .timeout(Duration.ofMillis(REFRESH_RESULT_POLL_TIMEOUT_MILLIS), scheduler)
+                .onErrorMap(e -> new IngestionServiceException(baseMessage + (e instanceof TimeoutException
+                        ? " because thread checking refresh job timed out"
+                        : " because refresh job failed")))
+                .switchIfEmpty(Mono.error(() -> new IngestionServiceException(baseMessage)));
     }
 
     @Override
     public void reportIngestionResult(ResourceWithSas<?> resource, boolean success) {
-        if (storageAccountSet == null) {
+        IngestionResourceSet ingestionResourceSet = ingestionResources.get();
+        if (ingestionResourceSet == null) {
             log.warn("StorageAccountSet is null");
             return;
         }
-        storageAccountSet.addResultToAccount(resource.getAccountName(), success);
+        ingestionResourceSet.storageAccountSet.addResultToAccount(resource.getAccountName(), success);
     }
 
     enum ResourceType {
@@ -435,11 +439,14 @@ class ResourceManager implements Closeable, IngestionResourceManager {
 
     private static class IngestionResource<T> {
         final ResourceType resourceType;
-        int roundRobinIdx = 0;
-        List<T> resourcesList;
+        // The set that holds this resource, whose accounts rank it
+        final IngestionResourceSet resourceSet;
+        final AtomicInteger roundRobinIdx = new AtomicInteger();
+        final List<T> resourcesList;
 
-        IngestionResource(ResourceType resourceType) {
+        IngestionResource(ResourceType resourceType, IngestionResourceSet resourceSet) {
             this.resourceType = resourceType;
+            this.resourceSet = resourceSet;
             resourcesList = new ArrayList<>();
         }
 
@@ -452,8 +459,7 @@ class ResourceManager implements Closeable, IngestionResourceManager {
         }
 
         T nextResource() {
-            roundRobinIdx = (roundRobinIdx + 1) % resourcesList.size();
-            return resourcesList.get(roundRobinIdx);
+            return resourcesList.get(Math.floorMod(roundRobinIdx.incrementAndGet(), resourcesList.size()));
         }
 
         boolean empty() {
@@ -461,11 +467,13 @@ class ResourceManager implements Closeable, IngestionResourceManager {
         }
     }
 
-    private static class IngestionResourceSet {
-        IngestionResource<ContainerWithSas> containers = new IngestionResource<>(ResourceType.TEMP_STORAGE);
-        IngestionResource<TableWithSas> statusTable = new IngestionResource<>(ResourceType.INGESTIONS_STATUS_TABLE);
-        IngestionResource<QueueWithSas> queues = new IngestionResource<>(ResourceType.SECURED_READY_FOR_AGGREGATION_QUEUE);
-        IngestionResource<QueueWithSas> successfulIngestionsQueues = new IngestionResource<>(ResourceType.SUCCESSFUL_INGESTIONS_QUEUE);
-        IngestionResource<QueueWithSas> failedIngestionsQueues = new IngestionResource<>(ResourceType.FAILED_INGESTIONS_QUEUE);
+    // Built by a refresh, and never modified once it's published
+    static class IngestionResourceSet {
+        final IngestionResource<ContainerWithSas> containers = new IngestionResource<>(ResourceType.TEMP_STORAGE, this);
+        final IngestionResource<TableWithSas> statusTable = new IngestionResource<>(ResourceType.INGESTIONS_STATUS_TABLE, this);
+        final IngestionResource<QueueWithSas> queues = new IngestionResource<>(ResourceType.SECURED_READY_FOR_AGGREGATION_QUEUE, this);
+        final IngestionResource<QueueWithSas> successfulIngestionsQueues = new IngestionResource<>(ResourceType.SUCCESSFUL_INGESTIONS_QUEUE, this);
+        final IngestionResource<QueueWithSas> failedIngestionsQueues = new IngestionResource<>(ResourceType.FAILED_INGESTIONS_QUEUE, this);
+        final RankedStorageAccountSet storageAccountSet = new RankedStorageAccountSet();
     }
 }
@@ -0,0 +1,137 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.ingest;
+
+import com.univocity.parsers.csv.CsvWriter;
+import com.univocity.parsers.csv.CsvWriterSettings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * An input stream of the rows of a {@link ResultSet} as CSV, in the format {@link com.univocity.parsers.csv.CsvRoutines} writes it. Rows are read
+ * from the result set only as the stream is read, a batch at a time, so that only a batch of them is held in memory however large the result set is.
+ * <p>
+ * The stream ends at the first row boundary at or after {@code maxSize} bytes, leaving the cursor on the last row it wrote, so that another stream over
+ * the same result set continues with the next row.
+ */
+class ResultSetCsvInputStream extends InputStream {
+    // The rows read from the result set at once are written to a buffer of about this size
+    private static final int BATCH_SIZE = 64 * 1024;
+
+    private final ResultSet resultSet;
+    private final long maxSize;
+    private final int columnCount;
+    private final ExposedByteArrayOutputStream batch = new ExposedByteArrayOutputStream();
+    private final CsvWriter csvWriter;
+    private int batchPosition = 0;
+    private long size = 0;
+    private boolean exhausted = false;
+
+    ResultSetCsvInputStream(ResultSet resultSet, long maxSize) throws SQLException {
+        this.resultSet = resultSet;
+        this.maxSize = maxSize;
+        this.columnCount = resultSet.getMetaData().getColumnCount();
+        this.csvWriter = new CsvWriter(new OutputStreamWriter(batch, StandardCharsets.UTF_8), new CsvWriterSettings());
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fillBatch()) {
+            return -1;
+        }
+        return batch.buffer()[batchPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fillBatch()) {
+            return -1;
+        }
+
+        int count = Math.min(len, batch.size() - batchPosition);
+        System.arraycopy(batch.buffer(), batchPosition, b, off, count);
+        batchPosition += count;
+        return count;
+    }
+
+    /**
+     * Reads the next batch of rows if the current one was read, so that the stream of a result set with rows is never empty.
+     */
+    @Override
+    public int available() throws IOException {
+        fillBatch();
+        return batch.size() - batchPosition;
+    }
+
+    /**
+     * @return the number of bytes of CSV the rows read so far were written to
+     */
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * @return whether the result set has no more rows. Before the stream ends, it may still be false when there are no more rows.
+     */
+    boolean isExhausted() {
+        return exhausted;
+    }
+
+    @Override
+    public void close() {
+        // The result set belongs to the caller, which may read the rest of it with another stream
+        csvWriter.close();
+    }
+
+    // Returns whether there are bytes to read
+    private boolean fillBatch() throws IOException {
+        if (batchPosition < batch.size()) {
+            return true;
+        }
+
+        batch.reset();
+        batchPosition = 0;
+        try {
+            while (batch.size() < BATCH_SIZE && size < maxSize) {
+                if (!resultSet.next()) {
+                    exhausted = true;
+                    break;
+                }
+
+                Object[] row = new Object[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    row[i] = resultSet.getObject(i + 1);
+                }
+
+                int before = batch.size();
+                csvWriter.writeRow(row);
+                csvWriter.flush();
+                size += batch.size() - before;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to read from ResultSet", e);
+        }
+
+        return batch.size() > 0;
+    }
+
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ExposedByteArrayOutputStream() {
+            super(BATCH_SIZE * 2);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
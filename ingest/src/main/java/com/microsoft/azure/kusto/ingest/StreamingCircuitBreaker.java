@@ -0,0 +1,165 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.ingest;
+
+import com.microsoft.azure.kusto.data.Ensure;
+import com.microsoft.azure.kusto.ingest.utils.SystemTimeProvider;
+import com.microsoft.azure.kusto.ingest.utils.TimeProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>StreamingCircuitBreaker</p>
+ * <p>
+ * Tracks, for every database and table, whether a {@link ManagedStreamingIngestClient} should try streaming ingestion at all. A table's circuit
+ * opens once {@code failureThreshold} ingestions in a row fell back to queued ingestion because streaming kept failing with transient errors, for
+ * example when streaming ingestion is disabled for the table or the cluster throttles. While it is open, ingestions into the table are queued right
+ * away, instead of waiting for the streaming retries to run out. After {@code openDuration}, a single ingestion probes streaming again (half-open);
+ * the circuit closes if the probe streams, and opens again if it falls back.
+ */
+public class StreamingCircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    public static final Duration DEFAULT_OPEN_DURATION = Duration.ofMinutes(1);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationMillis;
+    private final TimeProvider timeProvider;
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    public StreamingCircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION);
+    }
+
+    /**
+     * @param failureThreshold the number of ingestions in a row that fall back to queued ingestion after which a table's circuit opens
+     * @param openDuration     how long a table's circuit stays open before streaming is probed again
+     */
+    public StreamingCircuitBreaker(int failureThreshold, Duration openDuration) {
+        this(failureThreshold, openDuration, new SystemTimeProvider());
+    }
+
+    StreamingCircuitBreaker(int failureThreshold, Duration openDuration, TimeProvider timeProvider) {
+        Ensure.isTrue(failureThreshold > 0, "failureThreshold must be positive");
+        Ensure.argIsNotNull(openDuration, "openDuration");
+        Ensure.isTrue(!openDuration.isNegative() && !openDuration.isZero(), "openDuration must be positive");
+        this.failureThreshold = failureThreshold;
+        this.openDurationMillis = openDuration.toMillis();
+        this.timeProvider = timeProvider;
+    }
+
+    /**
+     * @param database the database of the ingestion
+     * @param table    the table of the ingestion
+     * @return whether the ingestion should try streaming. When the circuit is half-open, only the ingestion that probes it is allowed to.
+     */
+    public boolean allowStreaming(String database, String table) {
+        return getCircuit(database, table).allowStreaming();
+    }
+
+    /**
+     * Reports that streaming ingestion into a table succeeded, or failed with a permanent error, which means streaming works but the data didn't.
+     *
+     * @param database the database of the ingestion
+     * @param table    the table of the ingestion
+     */
+    public void onStreamingSucceeded(String database, String table) {
+        getCircuit(database, table).onSucceeded();
+    }
+
+    /**
+     * Reports that streaming ingestion into a table failed with transient errors, and the ingestion fell back to queued ingestion.
+     *
+     * @param database the database of the ingestion
+     * @param table    the table of the ingestion
+     */
+    public void onStreamingFailed(String database, String table) {
+        getCircuit(database, table).onFailed();
+    }
+
+    /**
+     * @param database the database
+     * @param table    the table
+     * @return the state of the table's circuit
+     */
+    public State getState(String database, String table) {
+        Circuit circuit = circuits.get(key(database, table));
+        return circuit == null ? State.CLOSED : circuit.getState();
+    }
+
+    private Circuit getCircuit(String database, String table) {
+        return circuits.computeIfAbsent(key(database, table), Circuit::new);
+    }
+
+    private static String key(String database, String table) {
+        return database + "." + table;
+    }
+
+    private class Circuit {
+        private final String name;
+
+        // Guarded by "this"
+        private State state = State.CLOSED;
+        private int consecutiveFailures = 0;
+        // When the circuit opened, or when the probe of a half-open circuit started
+        private long sinceMillis = 0;
+
+        Circuit(String name) {
+            this.name = name;
+        }
+
+        synchronized boolean allowStreaming() {
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                case HALF_OPEN:
+                    // A probe that never reported back, for example because it was cancelled, is replaced by a new one
+                    if (timeProvider.currentTimeMillis() - sinceMillis < openDurationMillis) {
+                        return false;
+                    }
+
+                    log.info("Probing streaming ingestion into '{}'", name);
+                    state = State.HALF_OPEN;
+                    sinceMillis = timeProvider.currentTimeMillis();
+                    return true;
+                default:
+                    throw new IllegalStateException("Unexpected state: " + state);
+            }
+        }
+
+        synchronized void onSucceeded() {
+            if (state != State.CLOSED) {
+                log.info("Streaming ingestion into '{}' works again, closing its circuit", name);
+            }
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+        }
+
+        synchronized void onFailed() {
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                log.warn("Streaming ingestion into '{}' failed {} times in a row, queuing its ingestions for {}ms", name, consecutiveFailures,
+                        openDurationMillis);
+                state = State.OPEN;
+                sinceMillis = timeProvider.currentTimeMillis();
+            }
+        }
+
+        synchronized State getState() {
+            return state;
+        }
+    }
+}
@@ -2,115 +2,119 @@ package com.microsoft.azure.kusto.ingest.resources;
 
 import com.microsoft.azure.kusto.ingest.utils.TimeProvider;
 
-import java.util.ArrayDeque;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
 public class RankedStorageAccount {
     static class Bucket {
-        public int successCount;
-        public int totalCount;
+        // The number of the time slice this bucket counts, since the account was created
+        final long number;
+        final LongAdder successCount = new LongAdder();
+        final LongAdder totalCount = new LongAdder();
 
-        public Bucket() {
-            this.successCount = 0;
-            this.totalCount = 0;
+        Bucket(long number) {
+            this.number = number;
         }
     }
 
-    private final ArrayDeque<Bucket> buckets = new ArrayDeque<>();
-    private final ReadWriteLock bucketsLock = new ReentrantReadWriteLock();
+    // A ring of buckets, where bucket number n is at floorMod(n, maxNumberOfBuckets). A slot is replaced, never reset, when its time slice comes around
+    // again, so that results are never added to a bucket that was reused.
+    private final AtomicReferenceArray<Bucket> buckets;
     private final String accountName;
     private final int maxNumberOfBuckets;
     private final int bucketDurationMillis;
     private final TimeProvider timeProvider;
-
-    private long lastActionTimestamp;
+    private final long originMillis;
+    // The number of the newest bucket with results, and of the oldest bucket since results last stopped for longer than all the buckets
+    private final AtomicLong lastBucketNumber = new AtomicLong(-1);
+    private final AtomicLong firstBucketNumber = new AtomicLong(-1);
 
     public RankedStorageAccount(String accountName, int maxNumberOfBuckets, int bucketDurationMillis, TimeProvider timeProvider) {
         this.accountName = accountName;
         this.maxNumberOfBuckets = maxNumberOfBuckets;
         this.bucketDurationMillis = bucketDurationMillis;
         this.timeProvider = timeProvider;
-        lastActionTimestamp = timeProvider.currentTimeMillis();
+        this.buckets = new AtomicReferenceArray<>(maxNumberOfBuckets);
+        originMillis = timeProvider.currentTimeMillis();
     }
 
     public void addResult(boolean success) {
-        Bucket lastBucket = adjustForTimePassed();
-        lastBucket.totalCount++;
+        Bucket bucket = getBucket(Math.max(0, (timeProvider.currentTimeMillis() - originMillis) / bucketDurationMillis));
+        bucket.totalCount.increment();
         if (success) {
-            lastBucket.successCount++;
+            bucket.successCount.increment();
         }
     }
 
-    private Bucket adjustForTimePassed() {
-        if (buckets.isEmpty()) {
-            Bucket b = new Bucket();
-            try {
-                bucketsLock.writeLock().lock();
-                buckets.push(b);
-            } finally {
-                bucketsLock.writeLock().unlock();
-            }
-            lastActionTimestamp = timeProvider.currentTimeMillis();
-            return b;
-        }
-
-        long timePassed = timeProvider.currentTimeMillis() - lastActionTimestamp;
-        long bucketsToCreate = timePassed / bucketDurationMillis;
-        if (bucketsToCreate == 0) {
-            return buckets.peek();
+    private Bucket getBucket(long bucketNumber) {
+        // The first bucket is moved before the newest one, so that getRank never sees a newest bucket without the first bucket that goes with it
+        long previousBucketNumber = lastBucketNumber.get();
+        if (previousBucketNumber < 0 || bucketNumber - previousBucketNumber >= maxNumberOfBuckets) {
+            // Every bucket has expired, so the ones before this one are no longer counted, even as empty buckets
+            firstBucketNumber.accumulateAndGet(bucketNumber, Math::max);
         }
+        lastBucketNumber.accumulateAndGet(bucketNumber, Math::max);
+
+        int index = getIndex(bucketNumber);
+        while (true) {
+            Bucket bucket = buckets.get(index);
+            if (bucket != null && bucket.number >= bucketNumber) {
+                // A result that raced with the start of a newer time slice is counted in it
+                return bucket;
+            }
 
-        try {
-            bucketsLock.writeLock().lock();
-            if (bucketsToCreate >= maxNumberOfBuckets) {
-                buckets.clear();
-                buckets.push(new Bucket());
-            } else {
-                for (int i = 0; i < bucketsToCreate; i++) {
-                    buckets.push(new Bucket());
-                    if (buckets.size() > maxNumberOfBuckets) {
-                        buckets.poll();
-                    }
-                }
+            Bucket newBucket = new Bucket(bucketNumber);
+            if (buckets.compareAndSet(index, bucket, newBucket)) {
+                return newBucket;
             }
-        } finally {
-            bucketsLock.writeLock().unlock();
         }
-
-        lastActionTimestamp = timeProvider.currentTimeMillis();
-        return buckets.peek();
     }
 
     public double getRank() {
-        if (buckets.isEmpty()) {
+        long newest = lastBucketNumber.get();
+        if (newest < 0) {
             // Start assuming the account is good
             return 1;
         }
 
-        int bucketWeight = buckets.size() + 1;
+        long oldest = Math.max(0, Math.max(firstBucketNumber.get(), newest - maxNumberOfBuckets + 1));
+        long bucketWeight = newest - oldest + 2;
         double rank = 0;
         double totalWeight = 0;
 
         // For each bucket, calculate the success rate ( success / total ) and multiply it by the bucket weight.
         // The older the bucket, the less weight it has. For example, if there are 3 buckets, the oldest bucket will have
-        // a weight of 1, the middle bucket will have a weight of 2 and the newest bucket will have a weight of 3.
-        try {
-            bucketsLock.readLock().lock();
-            for (Bucket bucket : buckets) {
-                if (bucket.totalCount == 0) {
-                    bucketWeight--;
-                    continue;
-                }
-                double successRate = (double) bucket.successCount / bucket.totalCount;
-                rank += successRate * bucketWeight;
-                totalWeight += bucketWeight;
+        // a weight of 2, the middle bucket will have a weight of 3 and the newest bucket will have a weight of 4.
+        for (long bucketNumber = newest; bucketNumber >= oldest; bucketNumber--) {
+            Bucket bucket = buckets.get(getIndex(bucketNumber));
+            long totalCount = bucket == null || bucket.number != bucketNumber ? 0 : bucket.totalCount.sum();
+            if (totalCount == 0) {
                 bucketWeight--;
+                continue;
+            }
+            double successRate = (double) bucket.successCount.sum() / totalCount;
+            rank += successRate * bucketWeight;
+            totalWeight += bucketWeight;
+            bucketWeight--;
+        }
+
+        return totalWeight == 0 ? 1 : rank / totalWeight;
+    }
+
+    private int getIndex(long bucketNumber) {
+        return (int) Math.floorMod(bucketNumber, (long) maxNumberOfBuckets);
+    }
+
+    long getTotalCount() {
+        long totalCount = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket != null) {
+                totalCount += bucket.totalCount.sum();
             }
-        } finally {
-            bucketsLock.readLock().unlock();
         }
-        return rank / totalWeight;
+        return totalCount;
     }
 
     public String getAccountName() {
@@ -8,6 +8,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class RankedStorageAccountSet {
@@ -30,7 +31,7 @@ public class RankedStorageAccountSet {
         this.tiers = tiers;
         this.timeProvider = timeProvider;
         this.randomProvider = randomProvider;
-        this.accounts = new HashMap<>();
+        this.accounts = new ConcurrentHashMap<>();
     }
 
     public RankedStorageAccountSet() {
@@ -47,17 +48,13 @@ public class RankedStorageAccountSet {
     }
 
     public void addAccount(String accountName) {
-        if (!accounts.containsKey(accountName)) {
-            accounts.put(accountName, new RankedStorageAccount(accountName, bucketCount, bucketDurationMillis, timeProvider));
-        } else {
+        if (accounts.putIfAbsent(accountName, new RankedStorageAccount(accountName, bucketCount, bucketDurationMillis, timeProvider)) != null) {
             throw new IllegalArgumentException("Account " + accountName + " already exists");
         }
     }
 
     public void addAccount(RankedStorageAccount account) {
-        if (!accounts.containsKey(account.getAccountName())) {
-            accounts.put(account.getAccountName(), account);
-        } else {
+        if (accounts.putIfAbsent(account.getAccountName(), account) != null) {
             throw new IllegalArgumentException("Account " + account.getAccountName() + " already exists");
         }
     }
@@ -0,0 +1,245 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.ingest.result;
+
+import com.azure.data.tables.TableAsyncClient;
+import com.azure.data.tables.models.ListEntitiesOptions;
+import com.microsoft.azure.kusto.data.Ensure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.lang.invoke.MethodHandles;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * <p>IngestionStatusTracker</p>
+ * <p>
+ * Tracks the status of many ingestions that report to a status table, until each of them reaches a permanent status. Instead of reading the row of every
+ * ingestion on every poll, as {@link TableReportIngestionResult#getIngestionStatusCollectionAsync()} does, the tracked rows are grouped by status table,
+ * and the rows of a table that are due are read with filtered queries of up to {@value #MAX_KEYS_PER_QUERY} rows each.
+ * <p>
+ * An ingestion is first polled {@code initialPollInterval} after it is tracked, and the interval doubles with every poll that finds it still pending,
+ * up to {@code maxPollInterval}. Once its status is permanent, it is no longer polled, its status is emitted to {@link #completions()}, and the
+ * {@link Mono} returned by {@link #track(IngestionStatusInTableDescription)} completes with it.
+ */
+public class IngestionStatusTracker implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    public static final Duration DEFAULT_INITIAL_POLL_INTERVAL = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_MAX_POLL_INTERVAL = Duration.ofMinutes(5);
+    // The table service allows at most 15 comparisons in a filter
+    static final int MAX_KEYS_PER_QUERY = 15;
+    private static final int MAX_QUERIES_IN_FLIGHT = 4;
+    private static final Duration MAX_TICK_INTERVAL = Duration.ofSeconds(1);
+
+    private final long initialPollIntervalNanos;
+    private final long maxPollIntervalNanos;
+    private final Scheduler scheduler;
+    // Status table connection string -> partition key -> tracked ingestion
+    private final Map<String, Map<String, TrackedStatus>> tables = new ConcurrentHashMap<>();
+    // Statuses are buffered until every subscriber requested them, but only once completions() was called, so that a tracker that is only used
+    // with track doesn't accumulate them
+    private final Sinks.Many<IngestionStatus> completions = Sinks.many().multicast().onBackpressureBuffer(Integer.MAX_VALUE, false);
+    private volatile boolean completionsRequested;
+
+    // Guarded by "this"
+    private Disposable timer;
+    private boolean closed;
+
+    public IngestionStatusTracker() {
+        this(DEFAULT_INITIAL_POLL_INTERVAL, DEFAULT_MAX_POLL_INTERVAL);
+    }
+
+    public IngestionStatusTracker(Duration initialPollInterval, Duration maxPollInterval) {
+        this(initialPollInterval, maxPollInterval, Schedulers.parallel());
+    }
+
+    IngestionStatusTracker(Duration initialPollInterval, Duration maxPollInterval, Scheduler scheduler) {
+        Ensure.argIsNotNull(initialPollInterval, "initialPollInterval");
+        Ensure.argIsNotNull(maxPollInterval, "maxPollInterval");
+        Ensure.isTrue(!initialPollInterval.isNegative() && !initialPollInterval.isZero(), "initialPollInterval must be positive");
+        Ensure.isTrue(maxPollInterval.compareTo(initialPollInterval) >= 0, "maxPollInterval must not be shorter than initialPollInterval");
+        this.initialPollIntervalNanos = initialPollInterval.toNanos();
+        this.maxPollIntervalNanos = maxPollInterval.toNanos();
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Tracks every ingestion of a result. Results that don't report to a status table already hold their final status, which is emitted as is.
+     *
+     * @param ingestionResult the result of an ingestion
+     * @return the permanent statuses of the ingestions, in the order they are reached
+     */
+    public Flux<IngestionStatus> track(IngestionResult ingestionResult) {
+        Ensure.argIsNotNull(ingestionResult, "ingestionResult");
+        if (ingestionResult instanceof TableReportIngestionResult) {
+            return Flux.fromIterable(((TableReportIngestionResult) ingestionResult).getDescriptors())
+                    .flatMap(this::track);
+        }
+
+        Mono<List<IngestionStatus>> statuses;
+        try {
+            statuses = ingestionResult.getIngestionStatusCollectionAsync();
+        } catch (URISyntaxException e) {
+            return Flux.error(e);
+        }
+
+        return statuses.flatMapIterable(list -> list)
+                .doOnNext(this::emitCompletion);
+    }
+
+    /**
+     * @param descriptor the status table row of an ingestion
+     * @return the permanent status of the ingestion, once it is reached
+     */
+    public Mono<IngestionStatus> track(IngestionStatusInTableDescription descriptor) {
+        Ensure.argIsNotNull(descriptor, "descriptor");
+        TrackedStatus trackedStatus = new TrackedStatus(descriptor, scheduler.now(TimeUnit.NANOSECONDS) + initialPollIntervalNanos,
+                initialPollIntervalNanos);
+        TrackedStatus existing = tables.computeIfAbsent(descriptor.getTableConnectionString(), ignore -> new ConcurrentHashMap<>())
+                .putIfAbsent(descriptor.getPartitionKey(), trackedStatus);
+        if (existing != null) {
+            return existing.result.asMono();
+        }
+
+        startTimer();
+        return trackedStatus.result.asMono();
+    }
+
+    /**
+     * @return a stream of the permanent statuses of the tracked ingestions reached since this method was first called. Statuses are buffered for
+     *         the first subscriber until it subscribes, and for slow subscribers until they request them. The stream completes when the tracker is
+     *         closed.
+     */
+    public Flux<IngestionStatus> completions() {
+        completionsRequested = true;
+        return completions.asFlux();
+    }
+
+    /**
+     * @return the number of ingestions that haven't reached a permanent status yet
+     */
+    public int getTrackedCount() {
+        return tables.values().stream().mapToInt(Map::size).sum();
+    }
+
+    /**
+     * Stops polling. The ingestions that are still tracked are dropped, and their {@link Mono}s complete empty.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            if (timer != null) {
+                timer.dispose();
+            }
+        }
+
+        for (Map<String, TrackedStatus> table : tables.values()) {
+            for (TrackedStatus trackedStatus : table.values()) {
+                trackedStatus.result.tryEmitEmpty();
+            }
+        }
+        tables.clear();
+        completions.tryEmitComplete();
+    }
+
+    private synchronized void startTimer() {
+        if (timer == null && !closed) {
+            long tickNanos = Math.min(initialPollIntervalNanos, MAX_TICK_INTERVAL.toNanos());
+            timer = scheduler.schedulePeriodically(this::poll, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    void poll() {
+        long now = scheduler.now(TimeUnit.NANOSECONDS);
+        List<Mono<Void>> queries = new ArrayList<>();
+        for (Map.Entry<String, Map<String, TrackedStatus>> table : tables.entrySet()) {
+            List<TrackedStatus> due = new ArrayList<>();
+            for (TrackedStatus trackedStatus : table.getValue().values()) {
+                if (trackedStatus.nextPollNanos <= now) {
+                    // Back off before the query is sent, so that the next tick doesn't poll it again while the query is in flight
+                    trackedStatus.intervalNanos = Math.min(trackedStatus.intervalNanos * 2, maxPollIntervalNanos);
+                    trackedStatus.nextPollNanos = now + trackedStatus.intervalNanos;
+                    due.add(trackedStatus);
+                }
+            }
+
+            for (int i = 0; i < due.size(); i += MAX_KEYS_PER_QUERY) {
+                queries.add(query(table.getValue(), due.subList(i, Math.min(i + MAX_KEYS_PER_QUERY, due.size()))));
+            }
+        }
+
+        if (!queries.isEmpty()) {
+            Flux.fromIterable(queries).flatMap(query -> query, MAX_QUERIES_IN_FLIGHT).subscribe();
+        }
+    }
+
+    private Mono<Void> query(Map<String, TrackedStatus> table, List<TrackedStatus> due) {
+        TableAsyncClient tableAsyncClient = due.get(0).descriptor.getTableAsyncClient();
+        if (tableAsyncClient == null) {
+            return Mono.empty();
+        }
+
+        ListEntitiesOptions options = new ListEntitiesOptions().setFilter(createFilter(due));
+        return tableAsyncClient.listEntities(options)
+                .doOnNext(entity -> {
+                    IngestionStatus status = IngestionStatus.fromEntity(entity);
+                    if (status.status == null || status.status == OperationStatus.Pending) {
+                        return;
+                    }
+
+                    TrackedStatus trackedStatus = table.remove(entity.getPartitionKey());
+                    if (trackedStatus != null) {
+                        emitCompletion(status);
+                        trackedStatus.result.tryEmitValue(status);
+                    }
+                })
+                .then()
+                .onErrorResume(e -> {
+                    log.warn("Failed to poll the status of {} ingestions, will retry", due.size(), e);
+                    return Mono.empty();
+                });
+    }
+
+    private void emitCompletion(IngestionStatus status) {
+        if (completionsRequested) {
+            // Queries complete concurrently, so another emission may be in progress
+            completions.emitNext(status, Sinks.EmitFailureHandler.busyLooping(Duration.ofSeconds(1)));
+        }
+    }
+
+    static String createFilter(List<TrackedStatus> trackedStatuses) {
+        return trackedStatuses.stream()
+                .map(trackedStatus -> "PartitionKey eq '" + trackedStatus.descriptor.getPartitionKey().replace("'", "''") + "'")
+                .collect(Collectors.joining(" or "));
+    }
+
+    static class TrackedStatus {
+        final IngestionStatusInTableDescription descriptor;
+        final Sinks.One<IngestionStatus> result = Sinks.one();
+        // Only updated by the poll that picks the status up
+        volatile long nextPollNanos;
+        volatile long intervalNanos;
+
+        TrackedStatus(IngestionStatusInTableDescription descriptor, long nextPollNanos, long intervalNanos) {
+            this.descriptor = descriptor;
+            this.nextPollNanos = nextPollNanos;
+            this.intervalNanos = intervalNanos;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.ingest.result;
+
+import com.microsoft.azure.kusto.ingest.source.SourceInfo;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The outcome of ingesting one of the sources of a bulk ingestion: either the {@link IngestionResult} of the source, or the error it failed with.
+ */
+public class SourceIngestionResult {
+    private final SourceInfo source;
+    private final IngestionResult result;
+    private final Throwable error;
+
+    private SourceIngestionResult(SourceInfo source, IngestionResult result, Throwable error) {
+        this.source = source;
+        this.result = result;
+        this.error = error;
+    }
+
+    public static SourceIngestionResult success(SourceInfo source, IngestionResult result) {
+        return new SourceIngestionResult(source, result, null);
+    }
+
+    public static SourceIngestionResult failure(SourceInfo source, Throwable error) {
+        return new SourceIngestionResult(source, null, error);
+    }
+
+    public SourceInfo getSource() {
+        return source;
+    }
+
+    @Nullable
+    public IngestionResult getResult() {
+        return result;
+    }
+
+    @Nullable
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
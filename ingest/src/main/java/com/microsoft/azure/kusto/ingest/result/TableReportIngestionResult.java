@@ -19,6 +19,10 @@ public class TableReportIngestionResult implements IngestionResult {
         this.descriptors = descriptors;
     }
 
+    List<IngestionStatusInTableDescription> getDescriptors() {
+        return descriptors;
+    }
+
     @Override
     public Mono<List<IngestionStatus>> getIngestionStatusCollectionAsync() throws TableServiceErrorException {
         List<Mono<IngestionStatus>> ingestionStatusMonos = descriptors.stream()
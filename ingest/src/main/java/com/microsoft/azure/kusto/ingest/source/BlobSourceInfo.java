@@ -81,9 +81,9 @@ public class BlobSourceInfo extends AbstractSourceInfo {
     /*
      * For internal usage, adding blobExactSize
      */
-    public static BlobSourceInfo fromStream(String blobPath, Integer size, StreamSourceInfo streamSourceInfo) {
+    public static BlobSourceInfo fromStream(String blobPath, long size, StreamSourceInfo streamSourceInfo) {
         BlobSourceInfo blobSourceInfo = new BlobSourceInfo(blobPath, streamSourceInfo.getCompressionType(), streamSourceInfo.getSourceId());
-        blobSourceInfo.blobExactSize = size.longValue();
+        blobSourceInfo.blobExactSize = size;
         return blobSourceInfo;
     }
 }
@@ -3,6 +3,8 @@
 
 package com.microsoft.azure.kusto.ingest.source;
 
+import com.microsoft.azure.kusto.data.Ensure;
+
 import java.sql.ResultSet;
 import java.util.Map;
 import java.util.Objects;
@@ -14,6 +16,7 @@ import java.util.UUID;
 public class ResultSetSourceInfo extends AbstractSourceInfo {
 
     private ResultSet resultSet;
+    private Integer fetchSize;
 
     /**
      * Creates a ResultSetSourceInfo.
@@ -54,13 +57,35 @@ public class ResultSetSourceInfo extends AbstractSourceInfo {
         this.resultSet = Objects.requireNonNull(resultSet, "ResultSet cannot be null");
     }
 
+    /**
+     * Gets the number of rows the driver is asked to fetch from the database at once, or null to leave it to the driver.
+     *
+     * @return The fetch size
+     */
+    public Integer getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Sets the number of rows the driver is asked to fetch from the database at once, when the rows are read for ingestion. Some drivers fetch the
+     * whole result by default, so a large result set should be read with a fetch size.
+     *
+     * @param fetchSize The fetch size, or null to leave it to the driver
+     * @see ResultSet#setFetchSize(int)
+     */
+    public void setFetchSize(Integer fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
     @Override
     public String toString() {
         return String.format("ResultSet with SourceId: %s", getSourceId());
     }
 
     public void validate() {
-        // nothing to validate as of now.
+        if (fetchSize != null) {
+            Ensure.isTrue(fetchSize >= 0, "fetchSize must not be negative");
+        }
     }
 
     public Map<String, String> getTracingAttributes() {
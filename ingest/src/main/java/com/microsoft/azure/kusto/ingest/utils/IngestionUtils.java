@@ -2,6 +2,7 @@ package com.microsoft.azure.kusto.ingest.utils;
 
 import com.azure.core.implementation.ByteBufferCollector;
 import com.azure.core.util.FluxUtil;
+import com.microsoft.azure.kusto.data.Ensure;
 import com.microsoft.azure.kusto.data.exceptions.ExceptionUtils;
 import com.microsoft.azure.kusto.ingest.ResettableFileInputStream;
 import com.microsoft.azure.kusto.ingest.exceptions.IngestionClientException;
@@ -20,6 +21,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -30,6 +32,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.invoke.MethodHandles;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.GZIPOutputStream;
 
 public class IngestionUtils {
     private IngestionUtils() {
@@ -37,6 +47,8 @@ public class IngestionUtils {
     }
 
     private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final int INITIAL_BLOCK_CAPACITY = 64 * 1024;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
 
     @NotNull
     public static StreamSourceInfo fileToStream(FileSourceInfo fileSourceInfo, boolean resettable)
@@ -137,6 +149,180 @@ public class IngestionUtils {
                 }).map(ByteArrayInputStream::new);
     }
 
+    /**
+     * Compresses a stream with gzip into blocks of {@code blockSize} bytes, the last of which may be smaller. The stream is read and compressed as
+     * blocks are requested, so unlike {@link #compressStream} only the block being filled is buffered beyond the blocks requested downstream.
+     *
+     * @param uncompressedStream the stream to compress, read with blocking reads
+     * @param leaveOpen          whether to leave the stream open once it was read
+     * @param blockSize          the size of the blocks, in bytes
+     * @return the compressed blocks, or an {@link IngestionClientException} if the stream is empty
+     */
+    public static Flux<ByteBuffer> compressStreamToBlocks(InputStream uncompressedStream, boolean leaveOpen, int blockSize) {
+        Ensure.isTrue(blockSize > 0, "blockSize must be positive");
+
+        return Flux.using(() -> new GzipBlockEncoder(blockSize),
+                encoder -> FluxUtil.toFluxByteBuffer(uncompressedStream)
+                        .switchIfEmpty(Mono.error(new IngestionClientException("Empty stream.")))
+                        .concatMapIterable(encoder::write, 1)
+                        .concatWith(Flux.defer(() -> Flux.fromIterable(encoder.finish()))),
+                encoder -> {
+                    encoder.release();
+                    if (!leaveOpen) {
+                        try {
+                            uncompressedStream.close();
+                        } catch (IOException e) {
+                            String msg = ExceptionUtils.getMessageEx(e);
+                            log.error(msg, e);
+                            throw new IngestionClientException(msg, e);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Reads a stream into blocks of {@code blockSize} bytes, the last of which may be smaller. The stream is read as blocks are requested, into
+     * buffers taken from {@code pool} when it has any; the caller may return blocks to the pool once it is done with them. A short stream is read
+     * into a buffer that grows as needed, rather than into a whole block.
+     *
+     * @param stream    the stream to read, with blocking reads
+     * @param leaveOpen whether to leave the stream open once it was read
+     * @param blockSize the size of the blocks, in bytes
+     * @param pool      buffers of at most {@code blockSize} bytes to reuse
+     * @return the blocks, none if the stream is empty
+     */
+    public static Flux<ByteBuffer> readStreamToBlocks(InputStream stream, boolean leaveOpen, int blockSize, Queue<ByteBuffer> pool) {
+        Ensure.isTrue(blockSize > 0, "blockSize must be positive");
+
+        return Flux.<ByteBuffer>generate(sink -> {
+            try {
+                ByteBuffer block = readBlock(stream, blockSize, pool);
+                if (block.hasRemaining()) {
+                    sink.next(block);
+                } else {
+                    pool.offer(block);
+                    sink.complete();
+                }
+            } catch (IOException e) {
+                sink.error(e);
+            }
+        }).doFinally(ignore -> {
+            if (!leaveOpen) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    String msg = ExceptionUtils.getMessageEx(e);
+                    log.error(msg, e);
+                    throw new IngestionClientException(msg, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Maps a file into memory in blocks of {@code blockSize} bytes, the last of which may be smaller. Every block is a read-only mapping of its region
+     * of the file, mapped as it is requested, so uploading them copies nothing to the heap.
+     *
+     * @param file      the file to map
+     * @param blockSize the size of the blocks, in bytes
+     * @return the blocks, none if the file is empty
+     */
+    public static Flux<ByteBuffer> mapFileToBlocks(Path file, int blockSize) {
+        Ensure.isTrue(blockSize > 0, "blockSize must be positive");
+
+        // The mappings stay valid once the channel is closed
+        return Flux.using(() -> FileChannel.open(file, StandardOpenOption.READ),
+                channel -> Flux.<ByteBuffer, Long>generate(() -> 0L, (offset, sink) -> {
+                    try {
+                        long size = channel.size();
+                        if (offset >= size) {
+                            sink.complete();
+                            return offset;
+                        }
+
+                        long length = Math.min(blockSize, size - offset);
+                        sink.next(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+                        return offset + length;
+                    } catch (IOException e) {
+                        sink.error(e);
+                        return offset;
+                    }
+                }),
+                channel -> {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        log.warn("Failed to close file channel", e);
+                    }
+                });
+    }
+
+    /**
+     * Compresses a stream with gzip in parallel, like pigz: the stream is read in chunks of {@code chunkSize} bytes, and every chunk is compressed
+     * into a gzip member of its own on {@code scheduler}. The members are emitted in order, and their concatenation is a multi-member gzip stream,
+     * which decompresses to the whole stream. It is slightly larger than a single-member stream, as the compression can't refer back across chunks.
+     *
+     * @param uncompressedStream the stream to compress, read with blocking reads
+     * @param leaveOpen          whether to leave the stream open once it was read
+     * @param chunkSize          the size of the chunks compressed independently, in bytes
+     * @param parallelism        the number of chunks compressed at once
+     * @param scheduler          the scheduler to compress on
+     * @return the compressed members, or an {@link IngestionClientException} if the stream is empty
+     */
+    public static Flux<ByteBuffer> compressStreamInParallel(InputStream uncompressedStream, boolean leaveOpen, int chunkSize, int parallelism,
+            Scheduler scheduler) {
+        Ensure.isTrue(parallelism > 0, "parallelism must be positive");
+
+        // Chunks go back to the pool once compressed, so the stream is read into about as many buffers as there are chunks being compressed
+        Queue<ByteBuffer> pool = new ArrayBlockingQueue<>(parallelism + 1);
+        return readStreamToBlocks(uncompressedStream, leaveOpen, chunkSize, pool)
+                .switchIfEmpty(Mono.error(new IngestionClientException("Empty stream.")))
+                .flatMapSequential(chunk -> Mono.fromCallable(() -> {
+                    try {
+                        return gzipMember(chunk);
+                    } finally {
+                        pool.offer(chunk);
+                    }
+                }).subscribeOn(scheduler), parallelism, 1);
+    }
+
+    private static ByteBuffer gzipMember(ByteBuffer chunk) throws IOException {
+        ByteArrayOutputStream member = new ByteArrayOutputStream(chunk.remaining() / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(member, GZIP_BUFFER_SIZE)) {
+            gzip.write(chunk.array(), chunk.position(), chunk.remaining());
+        }
+        return ByteBuffer.wrap(member.toByteArray());
+    }
+
+    private static ByteBuffer readBlock(InputStream stream, int blockSize, Queue<ByteBuffer> pool) throws IOException {
+        ByteBuffer block = pool.poll();
+        if (block == null) {
+            block = ByteBuffer.allocate(Math.min(blockSize, INITIAL_BLOCK_CAPACITY));
+        } else {
+            block.clear();
+        }
+
+        while (true) {
+            if (!block.hasRemaining()) {
+                if (block.capacity() >= blockSize) {
+                    break;
+                }
+                ByteBuffer grown = ByteBuffer.allocate(Math.min(blockSize, block.capacity() * 2));
+                block.flip();
+                grown.put(block);
+                block = grown;
+            }
+            int read = stream.read(block.array(), block.position(), block.remaining());
+            if (read == -1) {
+                break;
+            }
+            block.position(block.position() + read);
+        }
+
+        block.flip();
+        return block;
+    }
+
     /**
      * Converts an InputStream to a Mono of byte array.
      *
@@ -166,6 +352,63 @@ public class IngestionUtils {
         });
     }
 
+    // Cuts the output of a gzip encoder into fixed-size blocks
+    private static class GzipBlockEncoder {
+        private final EmbeddedChannel encoder = new EmbeddedChannel(ZlibCodecFactory.newZlibEncoder(ZlibWrapper.GZIP));
+        private final int blockSize;
+        private ByteBuffer block;
+
+        private GzipBlockEncoder(int blockSize) {
+            this.blockSize = blockSize;
+        }
+
+        private List<ByteBuffer> write(ByteBuffer uncompressed) {
+            encoder.writeAndFlush(Unpooled.wrappedBuffer(uncompressed));
+            return drain();
+        }
+
+        private List<ByteBuffer> finish() {
+            encoder.finish();
+            List<ByteBuffer> blocks = drain();
+            if (block != null && block.position() > 0) {
+                block.flip();
+                blocks.add(block);
+                block = null;
+            }
+            return blocks;
+        }
+
+        private List<ByteBuffer> drain() {
+            List<ByteBuffer> blocks = new ArrayList<>(1);
+            ByteBuf compressedByteBuf;
+            while ((compressedByteBuf = encoder.readOutbound()) != null) {
+                try {
+                    while (compressedByteBuf.isReadable()) {
+                        if (block == null) {
+                            block = ByteBuffer.allocate(blockSize);
+                        }
+                        int length = Math.min(compressedByteBuf.readableBytes(), block.remaining());
+                        compressedByteBuf.readBytes(block.array(), block.position(), length);
+                        block.position(block.position() + length);
+                        if (!block.hasRemaining()) {
+                            block.flip();
+                            blocks.add(block);
+                            block = null;
+                        }
+                    }
+                } finally {
+                    compressedByteBuf.release();
+                }
+            }
+            return blocks;
+        }
+
+        private void release() {
+            encoder.finishAndReleaseAll();
+            block = null;
+        }
+    }
+
     public static class IntegerHolder {
         int value;
 
@@ -0,0 +1,104 @@
+package com.microsoft.azure.kusto.ingest;
+
+import com.microsoft.azure.kusto.data.exceptions.DataServiceException;
+import com.microsoft.azure.kusto.data.exceptions.DataWebException;
+import com.microsoft.azure.kusto.ingest.exceptions.IngestionServiceException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AdaptiveManagedStreamingQueuingPolicyTest {
+    private static final int MB = 1024 * 1024;
+
+    private final AdaptiveManagedStreamingQueuingPolicy policy = new AdaptiveManagedStreamingQueuingPolicy(1, Duration.ofSeconds(5));
+    private final IngestionProperties events = properties("Events");
+    private final IngestionProperties logs = properties("Logs");
+
+    @Test
+    void startsFromTheDefaultPolicy() {
+        assertFalse(policy.shouldUseQueuedIngestion(7 * MB, false, events));
+        assertTrue(policy.shouldUseQueuedIngestion(3 * MB, true, events));
+        assertFalse(policy.shouldUseQueuedIngestion(0, true, events));
+        assertEquals(2, policy.getTableStatistics().size());
+    }
+
+    @Test
+    void learnsTheLimitOfEveryTableFromTheOutcomes() {
+        long initialLimit = statistics(events).getStreamingSizeLimit();
+        assertEquals(2 * MB, initialLimit);
+
+        // Data close to the limit that streams quickly grows the limit, until the service rejects it as too large
+        for (int i = 0; i < 5; i++) {
+            long limit = statistics(events).getStreamingSizeLimit();
+            assertFalse(policy.shouldUseQueuedIngestion(limit, true, events));
+            policy.onStreamingSucceeded(limit, true, events, Duration.ofMillis(100));
+        }
+        long grownLimit = statistics(events).getStreamingSizeLimit();
+        assertTrue(grownLimit > 3 * MB);
+        assertFalse(policy.shouldUseQueuedIngestion(3 * MB, true, events));
+
+        policy.onStreamingFailed(grownLimit, true, events, tooLarge());
+        assertEquals((long) (grownLimit * AdaptiveManagedStreamingQueuingPolicy.TOO_LARGE_MARGIN), statistics(events).getStreamingSizeLimit());
+        assertTrue(policy.shouldUseQueuedIngestion(grownLimit, true, events));
+
+        // Other failures, and small data, don't move the limit
+        long limit = statistics(events).getStreamingSizeLimit();
+        policy.onStreamingFailed(limit, true, events, new RuntimeException("timeout"));
+        policy.onStreamingSucceeded(MB / 2, true, events, Duration.ofSeconds(30));
+        assertEquals(limit, statistics(events).getStreamingSizeLimit());
+
+        // Slow streaming of data close to the limit shrinks it
+        policy.onStreamingSucceeded(limit, true, events, Duration.ofSeconds(30));
+        assertEquals((long) (limit * AdaptiveManagedStreamingQueuingPolicy.SLOW_SHRINK_RATE), statistics(events).getStreamingSizeLimit(), 1);
+
+        AdaptiveManagedStreamingQueuingPolicy.TableStatistics statistics = statistics(events);
+        assertEquals(7, statistics.getSucceededCount());
+        assertEquals(2, statistics.getFailedCount());
+        assertEquals(1, statistics.getTooLargeCount());
+        assertEquals(1, statistics.getQueuedCount());
+
+        // Other tables keep their own limits
+        assertEquals(initialLimit, statistics(logs).getStreamingSizeLimit());
+        assertNull(statistics(logs).getAverageLatency());
+    }
+
+    @Test
+    void neverExceedsTheStreamingRequestLimit() {
+        for (int i = 0; i < 100; i++) {
+            long limit = statistics(events).getStreamingSizeLimit();
+            policy.onStreamingSucceeded(limit, true, events, Duration.ofMillis(100));
+        }
+        assertEquals(ManagedStreamingQueuingPolicy.MAX_STREAMING_STREAM_SIZE_BYTES, statistics(events).getStreamingSizeLimit());
+
+        for (int i = 0; i < 100; i++) {
+            policy.onStreamingFailed(1024, true, events, tooLarge());
+        }
+        assertEquals((long) AdaptiveManagedStreamingQueuingPolicy.MIN_STREAMING_SIZE_LIMIT, statistics(events).getStreamingSizeLimit());
+    }
+
+    private AdaptiveManagedStreamingQueuingPolicy.TableStatistics statistics(IngestionProperties ingestionProperties) {
+        // Making a decision registers the table
+        policy.shouldUseQueuedIngestion(1, true, ingestionProperties);
+        return policy.getTableStatistics().get(new AdaptiveManagedStreamingQueuingPolicy.TableKey(ingestionProperties.getDatabaseName(),
+                ingestionProperties.getTableName(), ingestionProperties.getDataFormat(), true));
+    }
+
+    private static Throwable tooLarge() {
+        DataWebException webException = mock(DataWebException.class);
+        when(webException.getStatusCode()).thenReturn(413);
+        return new IngestionServiceException("Request too large", new DataServiceException("https://cluster", "Request too large", webException, false));
+    }
+
+    private static IngestionProperties properties(String table) {
+        IngestionProperties ingestionProperties = new IngestionProperties("db", table);
+        ingestionProperties.setDataFormat(IngestionProperties.DataFormat.CSV);
+        return ingestionProperties;
+    }
+}
@@ -3,11 +3,14 @@
 
 package com.microsoft.azure.kusto.ingest;
 
+import com.azure.core.util.BinaryData;
 import com.azure.data.tables.TableAsyncClient;
 import com.azure.data.tables.models.TableEntity;
 import com.azure.storage.blob.BlobAsyncClient;
 import com.azure.storage.blob.BlobContainerAsyncClient;
 import com.azure.storage.blob.BlobContainerClientBuilder;
+import com.azure.storage.blob.models.BlockBlobItem;
+import com.azure.storage.blob.specialized.BlockBlobAsyncClient;
 import com.azure.storage.queue.QueueAsyncClient;
 import com.microsoft.azure.kusto.data.Ensure;
 import com.microsoft.azure.kusto.ingest.source.CompressionType;
@@ -15,16 +18,32 @@ import com.microsoft.azure.kusto.ingest.utils.IngestionUtils;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import reactor.core.publisher.Mono;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 
 import static com.microsoft.azure.kusto.ingest.IngestClientBase.shouldCompress;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 class AzureStorageClientTest {
@@ -258,4 +277,142 @@ class AzureStorageClientTest {
                     () -> azureStorageClient.compressAndUploadStream(stream, null));
         }
     }
+
+    @Test
+    void compressAndUploadStream_StagesCompressedBlocksAndCommitsThemInOrder() throws IOException {
+        // Random bytes hardly compress, so they span several blocks
+        byte[] data = new byte[100_000];
+        new Random(42).nextBytes(data);
+        StagingBlob blob = new StagingBlob();
+
+        int blockSize = 8192;
+        Long size = new AzureStorageClient(blockSize, 2).compressAndUploadStream(new ByteArrayInputStream(data), blob.blobAsyncClient).block();
+
+        byte[] compressed = blob.committedContent(blockSize);
+        assertEquals(compressed.length, size);
+        assertTrue(blob.maxInFlight.get() <= 2);
+        try (InputStream uncompressed = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertArrayEquals(data, uncompressed.readAllBytes());
+        }
+    }
+
+    @Test
+    void compressAndUploadStream_CompressesInParallel() throws IOException {
+        byte[] data = new byte[100_000];
+        new Random(42).nextBytes(data);
+        StagingBlob blob = new StagingBlob();
+
+        AzureStorageClient client = new AzureStorageClient(8192, 2);
+        client.setCompressionParallelism(4);
+        Long size = client.compressAndUploadStream(new ByteArrayInputStream(data), blob.blobAsyncClient).block();
+
+        // Every block is a gzip member of its own, a little larger than the chunk it compresses
+        byte[] compressed = blob.committedContent();
+        assertEquals(compressed.length, size);
+        try (InputStream uncompressed = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertArrayEquals(data, uncompressed.readAllBytes());
+        }
+    }
+
+    @Test
+    void uploadStream_StagesBlocksAndCommitsThemInOrder() throws IOException {
+        byte[] data = new byte[100_000];
+        new Random(42).nextBytes(data);
+        StagingBlob blob = new StagingBlob();
+
+        int blockSize = 8192;
+        Long size = new AzureStorageClient(blockSize, 2).uploadStream(new ByteArrayInputStream(data), blob.blobAsyncClient).block();
+
+        assertEquals(data.length, size);
+        assertArrayEquals(data, blob.committedContent(blockSize));
+        assertTrue(blob.maxInFlight.get() <= 2);
+    }
+
+    @Test
+    void uploadStream_FailedUpload_CanBeRetriedFromAMark() throws IOException {
+        byte[] data = new byte[100_000];
+        new Random(42).nextBytes(data);
+        // Reading it once it was closed fails
+        InputStream stream = new CloseableByteArrayInputStream(data);
+        stream.mark(data.length);
+
+        AzureStorageClient client = new AzureStorageClient(8192, 2);
+        StagingBlob failingBlob = new StagingBlob(3);
+        assertThrows(RuntimeException.class, () -> client.uploadStream(stream, failingBlob.blobAsyncClient).block());
+        assertTrue(failingBlob.committedBlockIds.isEmpty());
+
+        stream.reset();
+        StagingBlob blob = new StagingBlob();
+        Long size = client.uploadStream(stream, blob.blobAsyncClient).block();
+
+        assertEquals(data.length, size);
+        assertArrayEquals(data, blob.committedContent(8192));
+    }
+
+    @Test
+    void uploadFileToBlob_StagesMappedBlocksAndCommitsThemInOrder(@TempDir Path directory) throws IOException {
+        byte[] data = new byte[100_000];
+        new Random(42).nextBytes(data);
+        Path file = directory.resolve("data.csv.gz");
+        Files.write(file, data);
+        StagingBlob blob = new StagingBlob();
+
+        int blockSize = 8192;
+        new AzureStorageClient(blockSize, 2).uploadFileToBlob(file.toFile(), blob.blobAsyncClient).block();
+
+        assertArrayEquals(data, blob.committedContent(blockSize));
+        assertTrue(blob.maxInFlight.get() <= 2);
+    }
+
+    // A block blob that records its staged blocks, and takes a little while to stage each
+    private static class StagingBlob {
+        private final BlobAsyncClient blobAsyncClient = mock(BlobAsyncClient.class);
+        private final Map<String, byte[]> stagedBlocks = new ConcurrentHashMap<>();
+        private final List<String> committedBlockIds = new ArrayList<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        private StagingBlob() {
+            this(-1);
+        }
+
+        // Staging the block of the given index fails
+        private StagingBlob(int failingBlock) {
+            BlockBlobAsyncClient blockBlobAsyncClient = mock(BlockBlobAsyncClient.class);
+            when(blobAsyncClient.getBlockBlobAsyncClient()).thenReturn(blockBlobAsyncClient);
+            AtomicInteger stagedCount = new AtomicInteger();
+            when(blockBlobAsyncClient.stageBlock(anyString(), any(BinaryData.class))).thenAnswer(invocation -> {
+                if (stagedCount.getAndIncrement() == failingBlock) {
+                    return Mono.error(new IOException("Connection reset"));
+                }
+                stagedBlocks.put(invocation.getArgument(0), ((BinaryData) invocation.getArgument(1)).toBytes());
+                return Mono.defer(() -> {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    return Mono.delay(Duration.ofMillis(5)).doOnTerminate(inFlight::decrementAndGet);
+                }).then();
+            });
+            when(blockBlobAsyncClient.commitBlockList(anyList(), eq(true))).thenAnswer(invocation -> {
+                committedBlockIds.addAll(invocation.getArgument(0));
+                return Mono.just(new BlockBlobItem("etag", OffsetDateTime.now(), null, false, null));
+            });
+        }
+
+        private byte[] committedContent(int blockSize) throws IOException {
+            for (int i = 0; i < committedBlockIds.size(); i++) {
+                int length = stagedBlocks.get(committedBlockIds.get(i)).length;
+                assertTrue(i == committedBlockIds.size() - 1 ? length <= blockSize : length == blockSize);
+            }
+            return committedContent();
+        }
+
+        private byte[] committedContent() throws IOException {
+            assertTrue(committedBlockIds.size() > 1);
+            assertEquals(stagedBlocks.keySet(), new HashSet<>(committedBlockIds));
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            for (String blockId : committedBlockIds) {
+                content.write(stagedBlocks.get(blockId));
+            }
+            return content.toByteArray();
+        }
+    }
 }
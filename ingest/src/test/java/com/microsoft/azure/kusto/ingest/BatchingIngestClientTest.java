@@ -0,0 +1,141 @@
+package com.microsoft.azure.kusto.ingest;
+
+import com.microsoft.azure.kusto.ingest.result.IngestionResult;
+import com.microsoft.azure.kusto.ingest.result.IngestionStatus;
+import com.microsoft.azure.kusto.ingest.result.IngestionStatusResult;
+import com.microsoft.azure.kusto.ingest.source.StreamSourceInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BatchingIngestClientTest {
+    private final QueuedIngestClient queuedIngestClient = mock(QueuedIngestClient.class);
+    private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+    private final List<String> ingested = new CopyOnWriteArrayList<>();
+    private final Map<String, IngestionResult> results = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        when(queuedIngestClient.ingestFromStreamAsync(any(), any())).thenAnswer(invocation -> {
+            StreamSourceInfo streamSourceInfo = invocation.getArgument(0);
+            IngestionProperties properties = invocation.getArgument(1);
+            String data = new String(streamSourceInfo.getStream().readAllBytes(), StandardCharsets.UTF_8);
+            ingested.add(properties.getTableName() + ":" + data);
+            IngestionResult result = new IngestionStatusResult(new IngestionStatus());
+            results.put(data, result);
+            return Mono.just(result);
+        });
+    }
+
+    @Test
+    void flushesABatchOnceItReachesItsCount() {
+        BatchingIngestClient client = new BatchingIngestClient(queuedIngestClient, Long.MAX_VALUE, 3, Duration.ofMinutes(1), scheduler);
+        IngestionProperties properties = new IngestionProperties("db", "table");
+
+        Mono<IngestionResult> first = client.ingestFromStreamAsync(stream("a,1"), properties).cache();
+        Mono<IngestionResult> second = client.ingestFromStreamAsync(stream("b,2\n"), properties).cache();
+        first.subscribe();
+        second.subscribe();
+        assertTrue(ingested.isEmpty());
+
+        IngestionResult third = client.ingestFromStream(stream("c,3"), properties);
+        assertEquals(List.of("table:a,1\nb,2\nc,3"), ingested);
+        assertSame(results.get("a,1\nb,2\nc,3"), third);
+        assertSame(third, first.block());
+        assertSame(third, second.block());
+    }
+
+    @Test
+    void flushesBatchesAfterTheirDelayAndKeepsPropertiesApart() {
+        BatchingIngestClient client = new BatchingIngestClient(queuedIngestClient, Long.MAX_VALUE, 1000, Duration.ofSeconds(10), scheduler);
+        IngestionProperties properties = new IngestionProperties("db", "table");
+        IngestionProperties otherTable = new IngestionProperties("db", "other");
+        IngestionProperties withTags = new IngestionProperties("db", "table");
+        withTags.setIngestByTags(List.of("tag"));
+
+        client.ingestFromStreamAsync(stream("a"), properties).subscribe();
+        scheduler.advanceTimeBy(Duration.ofSeconds(5));
+        client.ingestFromStreamAsync(stream("b"), otherTable).subscribe();
+        client.ingestFromStreamAsync(stream("c"), withTags).subscribe();
+        client.ingestFromStreamAsync(stream("d"), properties).subscribe();
+        assertTrue(ingested.isEmpty());
+
+        scheduler.advanceTimeBy(Duration.ofSeconds(5));
+        assertEquals(List.of("table:a\nd"), ingested);
+        scheduler.advanceTimeBy(Duration.ofSeconds(5));
+        assertEquals(3, ingested.size());
+        assertTrue(ingested.containsAll(List.of("other:b", "table:c")));
+    }
+
+    @Test
+    void ingestsStreamsThatCannotBeConcatenatedDirectly() throws IOException {
+        BatchingIngestClient client = new BatchingIngestClient(queuedIngestClient, 1024, 1000, Duration.ofMinutes(1), scheduler);
+        IngestionProperties withHeader = new IngestionProperties("db", "table");
+        withHeader.setIgnoreFirstRecord(true);
+
+        client.ingestFromStream(stream("header\na"), withHeader);
+        assertEquals(List.of("table:header\na"), ingested);
+
+        // Closing flushes the pending batches
+        client.ingestFromStreamAsync(stream("b"), new IngestionProperties("db", "table")).subscribe();
+        client.close();
+        assertEquals(List.of("table:header\na", "table:b"), ingested);
+    }
+
+    @Test
+    void batchesOnlyLineDelimitedFormats() {
+        BatchingIngestClient client = new BatchingIngestClient(queuedIngestClient, 1024, 1000, Duration.ofMinutes(1), scheduler);
+        IngestionProperties raw = new IngestionProperties("db", "table");
+        raw.setDataFormat(IngestionProperties.DataFormat.RAW);
+
+        // Raw data is ingested as a single record, so joining it with another stream would merge their records
+        client.ingestFromStream(stream("a"), raw);
+        client.ingestFromStream(stream("b"), raw);
+        assertEquals(List.of("table:a", "table:b"), ingested);
+
+        List<IngestionProperties.DataFormat> batchable = List.of(IngestionProperties.DataFormat.CSV, IngestionProperties.DataFormat.TSV,
+                IngestionProperties.DataFormat.SCSV, IngestionProperties.DataFormat.SOHSV, IngestionProperties.DataFormat.PSV,
+                IngestionProperties.DataFormat.TXT, IngestionProperties.DataFormat.TSVE, IngestionProperties.DataFormat.JSON,
+                IngestionProperties.DataFormat.MULTIJSON);
+        for (IngestionProperties.DataFormat dataFormat : IngestionProperties.DataFormat.values()) {
+            IngestionProperties properties = new IngestionProperties("db", "table");
+            properties.setDataFormat(dataFormat);
+            assertEquals(batchable.contains(dataFormat), BatchingIngestClient.isBatchable(stream("a"), properties), dataFormat.name());
+        }
+    }
+
+    @Test
+    void ingestsStreamsLargerThanABatchDirectly() {
+        BatchingIngestClient client = new BatchingIngestClient(queuedIngestClient, 4, 1000, Duration.ofMinutes(1), scheduler);
+        IngestionProperties properties = new IngestionProperties("db", "table");
+
+        client.ingestFromStreamAsync(stream("a,1"), properties).subscribe();
+        client.ingestFromStream(stream("b,2\nc,3\n"), properties);
+        assertEquals(List.of("table:b,2\nc,3\n"), ingested);
+
+        // A stream of exactly the batch size is still batched
+        client.ingestFromStream(stream("d,4\n"), properties);
+        assertEquals(List.of("table:b,2\nc,3\n", "table:a,1\nd,4\n"), ingested);
+    }
+
+    private static StreamSourceInfo stream(String data) {
+        return new StreamSourceInfo(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,67 @@
+package com.microsoft.azure.kusto.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChunkedInputStreamTest {
+    private final ChunkedInputStream.Pool pool = new ChunkedInputStream.Pool(1024, 4);
+
+    @Test
+    void readsOnlyWhatTheStreamHoldsAndReplaysIt() throws IOException {
+        byte[] data = randomBytes(2500);
+
+        ChunkedInputStream stream = ChunkedInputStream.read(new ByteArrayInputStream(data), 10_000, pool);
+        assertEquals(2500, stream.size());
+        assertEquals(2500, stream.available());
+        assertArrayEquals(data, stream.readAllBytes());
+        assertEquals(-1, stream.read());
+
+        // A retry replays the same bytes
+        stream.reset();
+        assertEquals(data[0], (byte) stream.read());
+        byte[] rest = new byte[3000];
+        assertEquals(2499, stream.read(rest, 0, rest.length));
+        assertArrayEquals(Arrays.copyOfRange(data, 1, data.length), Arrays.copyOf(rest, 2499));
+
+        // Closing returns the 3 chunks to the pool, which the next stream takes
+        stream.close();
+        assertEquals(3, pool.getPooledCount());
+        assertThrows(IOException.class, stream::reset);
+        ChunkedInputStream small = ChunkedInputStream.read(new ByteArrayInputStream(new byte[] {1, 2}), 10_000, pool);
+        assertEquals(2, pool.getPooledCount());
+        small.close();
+        small.close();
+        assertEquals(3, pool.getPooledCount());
+    }
+
+    @Test
+    void stopsAtMaxBytesAndLeavesTheRestInTheSource() throws IOException {
+        byte[] data = randomBytes(5000);
+        InputStream source = new ByteArrayInputStream(data);
+
+        try (ChunkedInputStream stream = ChunkedInputStream.read(source, 2049, pool)) {
+            assertEquals(2049, stream.size());
+            assertArrayEquals(Arrays.copyOf(data, 2049), stream.readAllBytes());
+            assertEquals(5000 - 2049, source.available());
+        }
+
+        // The pool only keeps as many chunks as it is bounded to
+        ChunkedInputStream.read(new ByteArrayInputStream(data), 10_000, pool).close();
+        assertEquals(4, pool.getPooledCount());
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+}
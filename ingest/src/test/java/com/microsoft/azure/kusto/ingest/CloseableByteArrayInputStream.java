@@ -22,6 +22,14 @@ public class CloseableByteArrayInputStream extends java.io.ByteArrayInputStream
         return super.read(b);
     }
 
+    @Override
+    public synchronized int read(byte @NotNull [] b, int off, int len) {
+        if (closed) {
+            throw new IllegalStateException("Stream is closed");
+        }
+        return super.read(b, off, len);
+    }
+
     @Override
     public void close() {
         closed = true;
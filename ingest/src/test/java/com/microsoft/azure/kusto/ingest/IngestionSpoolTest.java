@@ -0,0 +1,219 @@
+package com.microsoft.azure.kusto.ingest;
+
+import com.microsoft.azure.kusto.ingest.exceptions.IngestionClientException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IngestionSpoolTest {
+    private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+    private final MockTimeProvider timeProvider = new MockTimeProvider(0);
+
+    @Test
+    void deliversRecordsInOrderAndBacksOffWhileDeliveryFails(@TempDir Path directory) throws IOException {
+        IngestionSpool spool = new IngestionSpool(directory, 1024 * 1024, timeProvider, scheduler);
+        spool.append(bytes("first"), stream("first payload"), false);
+        spool.append(bytes("second"), null, false);
+        timeProvider.setCurrentTimeMillis(5000);
+        spool.append(bytes("third"), stream("third payload"), true);
+        assertEquals(3, spool.getPendingCount());
+        assertEquals(Duration.ofSeconds(5), spool.getOldestPendingAge());
+        assertEquals(3, records(directory).size());
+
+        AtomicInteger failuresLeft = new AtomicInteger(2);
+        List<String> delivered = new ArrayList<>();
+        spool.startDraining(record -> Mono.fromCallable(() -> {
+            if (failuresLeft.getAndDecrement() > 0) {
+                throw new IOException("Storage is down");
+            }
+            delivered.add(new String(record.getHeader(), StandardCharsets.UTF_8) + ":" + readPayload(record));
+            return "";
+        }).then());
+
+        scheduler.advanceTime();
+        scheduler.advanceTimeBy(IngestionSpool.MIN_BACKOFF.minusMillis(1));
+        assertEquals(3, spool.getPendingCount());
+        assertTrue(delivered.isEmpty());
+
+        // The second failure doubles the backoff
+        scheduler.advanceTimeBy(Duration.ofMillis(1));
+        scheduler.advanceTimeBy(IngestionSpool.MIN_BACKOFF);
+        assertEquals(3, spool.getPendingCount());
+        scheduler.advanceTimeBy(IngestionSpool.MIN_BACKOFF);
+        scheduler.advanceTime();
+
+        assertEquals(3, delivered.size());
+        assertEquals("first:first payload", delivered.get(0));
+        assertEquals("second:", delivered.get(1));
+        assertEquals("third:third payload", delivered.get(2));
+        assertEquals(0, spool.getPendingCount());
+        assertEquals(0, spool.getSizeBytes());
+        assertNull(spool.getOldestPendingAge());
+        assertTrue(records(directory).isEmpty());
+
+        // Appending to a drained spool delivers right away
+        spool.append(bytes("fourth"), stream("fourth payload"), false);
+        scheduler.advanceTime();
+        assertEquals("fourth:fourth payload", delivered.get(3));
+        spool.close();
+    }
+
+    @Test
+    void recoversPendingRecordsAfterACrash(@TempDir Path directory) throws IOException {
+        IngestionSpool spool = new IngestionSpool(directory, 1024 * 1024, timeProvider, scheduler);
+        spool.append(bytes("first"), stream("first payload"), false);
+        spool.append(bytes("second"), stream("second payload"), true);
+        spool.append(bytes("third"), stream("third payload"), false);
+
+        // Only the first record is delivered before the crash
+        AtomicInteger deliveries = new AtomicInteger();
+        spool.startDraining(record -> deliveries.getAndIncrement() == 0 ? Mono.empty() : Mono.never());
+        scheduler.advanceTime();
+        assertEquals(2, spool.getPendingCount());
+        spool.close();
+
+        // A record that was being appended during the crash, and a corrupt one, are dropped
+        Files.write(directory.resolve("record-00000000000000000010.tmp"), new byte[] {0x4B, 0x53, 0x50, 0x4C, 0, 0, 0});
+        Path corrupt = records(directory).get(1);
+        Files.write(corrupt, new byte[] {0}, StandardOpenOption.APPEND);
+
+        IngestionSpool recovered = new IngestionSpool(directory, 1024 * 1024, timeProvider, scheduler);
+        assertEquals(1, recovered.getPendingCount());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+
+        List<String> delivered = new ArrayList<>();
+        recovered.startDraining(record -> Mono.fromCallable(() -> delivered.add(readPayload(record) + " of " + record.getSourceSize())).then());
+        scheduler.advanceTime();
+        recovered.append(bytes("fourth"), stream("fourth payload"), false);
+        scheduler.advanceTime();
+
+        assertEquals(2, delivered.size());
+        assertEquals("second payload of 14", delivered.get(0));
+        assertEquals("fourth payload of 14", delivered.get(1));
+        assertEquals(0, recovered.getPendingCount());
+        recovered.close();
+    }
+
+    @Test
+    void rejectsRecordsThatDontFitItsQuota(@TempDir Path directory) throws IOException {
+        IngestionSpool spool = new IngestionSpool(directory, 200, timeProvider, scheduler);
+        assertThrows(IngestionClientException.class, () -> spool.append(bytes("large"), new ByteArrayInputStream(new byte[500]), false));
+        assertEquals(0, spool.getPendingCount());
+        assertEquals(0, spool.getSizeBytes());
+
+        // Writing stops as soon as the quota is exceeded, rather than once the payload was read to its end
+        InputStream endless = new InputStream() {
+            @Override
+            public int read() {
+                return 0;
+            }
+        };
+        assertThrows(IngestionClientException.class, () -> spool.append(bytes("endless"), endless, false));
+        assertEquals(0, spool.getSizeBytes());
+        assertTrue(records(directory).isEmpty());
+
+        spool.append(bytes("small"), stream("small payload"), false);
+        assertEquals(1, spool.getPendingCount());
+        assertEquals(Files.size(records(directory).get(0)), spool.getSizeBytes());
+        spool.close();
+    }
+
+    @Test
+    void appendsWithoutWaitingForOtherAppends(@TempDir Path directory) throws Exception {
+        IngestionSpool spool = new IngestionSpool(directory, 1024 * 1024, timeProvider, scheduler);
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InputStream slow = new InputStream() {
+            private boolean read = false;
+
+            @Override
+            public int read() throws IOException {
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                if (read) {
+                    return -1;
+                }
+                read = true;
+                return 'a';
+            }
+        };
+        CompletableFuture<IngestionSpool.Record> slowAppend = CompletableFuture.supplyAsync(() -> spool.append(bytes("slow"), slow, false));
+        assertTrue(reading.await(10, TimeUnit.SECONDS));
+
+        spool.append(bytes("fast"), stream("fast payload"), false);
+        assertEquals(1, spool.getPendingCount());
+        assertEquals(Duration.ZERO, spool.getOldestPendingAge());
+        assertFalse(slowAppend.isDone());
+
+        release.countDown();
+        assertEquals("a", readPayload(slowAppend.get(10, TimeUnit.SECONDS)));
+        assertEquals(2, spool.getPendingCount());
+        spool.close();
+    }
+
+    @Test
+    void backsOffExponentiallyUpToTheMaximum() {
+        assertEquals(Duration.ofSeconds(1), IngestionSpool.getBackoff(1));
+        assertEquals(Duration.ofSeconds(8), IngestionSpool.getBackoff(4));
+        assertEquals(IngestionSpool.MAX_BACKOFF, IngestionSpool.getBackoff(100));
+    }
+
+    private static String readPayload(IngestionSpool.Record record) throws IOException {
+        byte[] bytes;
+        try (InputStream payload = record.openPayload()) {
+            bytes = payload.readAllBytes();
+        }
+        if (bytes.length > 2 && bytes[0] == (byte) 0x1f && bytes[1] == (byte) 0x8b) {
+            try (InputStream decompressed = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+                bytes = decompressed.readAllBytes();
+            }
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static List<Path> records(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".spool")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static InputStream stream(String value) {
+        return new ByteArrayInputStream(bytes(value));
+    }
+}
@@ -20,6 +20,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
 
@@ -31,6 +32,7 @@ import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -57,6 +59,11 @@ public class ManagedStreamingTest {
                 .thenReturn(TestUtils.tableWithSasFromTableName("http://statusTable.com"));
 
         when(resourceManagerMock.getIdentityToken()).thenReturn("identityToken");
+        // The async getters return what the sync ones are stubbed with
+        when(resourceManagerMock.getShuffledContainersAsync()).thenAnswer(invocation -> Mono.fromCallable(resourceManagerMock::getShuffledContainers));
+        when(resourceManagerMock.getShuffledQueuesAsync()).thenAnswer(invocation -> Mono.fromCallable(resourceManagerMock::getShuffledQueues));
+        when(resourceManagerMock.getStatusTableAsync()).thenAnswer(invocation -> Mono.fromCallable(resourceManagerMock::getStatusTable));
+        when(resourceManagerMock.getIdentityTokenAsync()).thenAnswer(invocation -> Mono.fromCallable(resourceManagerMock::getIdentityToken));
 
         when(azureStorageClientMock.azureTableInsertEntity(any(), any(TableEntity.class))).thenReturn(Mono.empty());
 
@@ -120,6 +127,44 @@ public class ManagedStreamingTest {
         };
     }
 
+    @Test
+    void ingestFromStream_ReportsStreamingOutcomesToThePolicy() throws Exception {
+        AdaptiveManagedStreamingQueuingPolicy policy = new AdaptiveManagedStreamingQueuingPolicy();
+        managedStreamingIngestClient.setQueuingPolicy(policy);
+        try {
+            StreamSourceInfo streamSourceInfo = new StreamSourceInfo(createStreamOfSize(1024));
+            OperationStatus status = managedStreamingIngestClient.ingestFromStream(streamSourceInfo, ingestionProperties).getIngestionStatusCollectionAsync()
+                    .block().get(0).status;
+            assertEquals(OperationStatus.Succeeded, status);
+
+            AdaptiveManagedStreamingQueuingPolicy.TableStatistics statistics = policy.getTableStatistics()
+                    .get(new AdaptiveManagedStreamingQueuingPolicy.TableKey("dbName", "tableName", ingestionProperties.getDataFormat(), false));
+            assertEquals(1, statistics.getSucceededCount());
+            assertEquals(0, statistics.getFailedCount());
+        } finally {
+            managedStreamingIngestClient.setQueuingPolicy(ManagedStreamingQueuingPolicy.Default);
+        }
+    }
+
+    @Test
+    void ingestFromStream_QueuesRightAwayWhileTheCircuitIsOpen() throws Exception {
+        StreamingIngestClient streamingIngestClient = mock(StreamingIngestClient.class);
+        when(streamingIngestClient.ingestFromStreamAsync(any(), any(), any())).thenReturn(Mono.error(new IngestionServiceException("Throttled")));
+        QueuedIngestClient queuedIngestClient = mock(QueuedIngestClientImpl.class);
+        when(queuedIngestClient.ingestFromStreamAsync(any(), any())).thenReturn(Mono.empty());
+        ManagedStreamingIngestClient client = new ManagedStreamingIngestClient(streamingIngestClient, queuedIngestClient, new ExponentialRetry(0, 0, 0));
+        client.setCircuitBreaker(new StreamingCircuitBreaker(2, Duration.ofMinutes(1)));
+
+        for (int i = 0; i < 4; i++) {
+            client.ingestFromStreamAsync(new StreamSourceInfo(createStreamOfSize(10)), ingestionProperties).block();
+        }
+
+        // The first two ingestions tried streaming and fell back, the rest were queued without trying
+        verify(streamingIngestClient, times(2)).ingestFromStreamAsync(any(), any(), any());
+        verify(queuedIngestClient, times(4)).ingestFromStreamAsync(any(), any());
+        assertEquals(StreamingCircuitBreaker.State.OPEN, client.getCircuitBreaker().getState("dbName", "tableName"));
+    }
+
     @Test
     void shouldUseQueueingPredicate_DefaultBehavior() {
         // CSV uncompressed - allow big file
@@ -4,13 +4,17 @@
 package com.microsoft.azure.kusto.ingest;
 
 import com.azure.data.tables.models.TableEntity;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.microsoft.azure.kusto.data.Utils;
 import com.microsoft.azure.kusto.data.auth.ConnectionStringBuilder;
 import com.microsoft.azure.kusto.ingest.IngestionProperties.DataFormat;
 import com.microsoft.azure.kusto.ingest.exceptions.IngestionClientException;
 import com.microsoft.azure.kusto.ingest.exceptions.IngestionServiceException;
 import com.microsoft.azure.kusto.ingest.result.IngestionResult;
 import com.microsoft.azure.kusto.ingest.result.IngestionStatus;
+import com.microsoft.azure.kusto.ingest.result.IngestionStatusResult;
 import com.microsoft.azure.kusto.ingest.result.OperationStatus;
+import com.microsoft.azure.kusto.ingest.result.SourceIngestionResult;
 import com.microsoft.azure.kusto.ingest.result.ValidationPolicy;
 import com.microsoft.azure.kusto.ingest.source.BlobSourceInfo;
 import com.microsoft.azure.kusto.ingest.source.CompressionType;
@@ -22,16 +26,23 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
@@ -39,19 +50,29 @@ import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyBoolean;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.argThat;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doReturn;
@@ -80,6 +101,11 @@ class QueuedIngestClientTest {
                 .thenReturn(TestUtils.tableWithSasFromTableName("http://statusTable.com"));
 
         when(resourceManagerMock.getIdentityToken()).thenReturn("identityToken");
+        // The async getters return what the sync ones are stubbed with
+        when(resourceManagerMock.getShuffledContainersAsync()).thenAnswer(invocation -> Mono.fromCallable(resourceManagerMock::getShuffledContainers));
+        when(resourceManagerMock.getShuffledQueuesAsync()).thenAnswer(invocation -> Mono.fromCallable(resourceManagerMock::getShuffledQueues));
+        when(resourceManagerMock.getStatusTableAsync()).thenAnswer(invocation -> Mono.fromCallable(resourceManagerMock::getStatusTable));
+        when(resourceManagerMock.getIdentityTokenAsync()).thenAnswer(invocation -> Mono.fromCallable(resourceManagerMock::getIdentityToken));
 
         when(azureStorageClientMock.azureTableInsertEntity(any(), any(TableEntity.class)))
                 .thenReturn(Mono.empty());
@@ -120,6 +146,50 @@ class QueuedIngestClientTest {
         IngestionResult result = queuedIngestClient.ingestFromBlob(blobSourceInfo, ingestionProperties);
     }
 
+    @Test
+    void ingestManyAsync_IngestsEverySourceAndReportsFailuresPerSource() throws Exception {
+        BlobSourceInfo first = new BlobSourceInfo("https://blobPath.blob.core.windows.net/container/blob1");
+        BlobSourceInfo invalid = new BlobSourceInfo(" ");
+        BlobSourceInfo last = new BlobSourceInfo("https://blobPath.blob.core.windows.net/container/blob2");
+
+        List<SourceIngestionResult> results = queuedIngestClient.ingestManyAsync(Flux.just(first, invalid, last), ingestionProperties, 2)
+                .collectList()
+                .block();
+
+        assertEquals(3, results.size());
+        for (SourceIngestionResult result : results) {
+            assertEquals(result.getSource() != invalid, result.isSuccess());
+            if (result.isSuccess()) {
+                assertEquals(OperationStatus.Queued, result.getResult().getIngestionStatusCollection().get(0).status);
+            } else {
+                assertTrue(result.getError() instanceof IllegalArgumentException);
+            }
+        }
+        // Every source is ingested with its own copy of the properties
+        assertFalse(ingestionProperties.getAdditionalProperties().containsKey("authorizationContext"));
+    }
+
+    @Test
+    void queuedIngestClient_ImplementationWithoutTheOptionalMethods_GetsTheirDefaults() {
+        // Implementations of the interfaces outside of the SDK only implement the methods that have no default
+        QueuedIngestClient client = mock(QueuedIngestClient.class, CALLS_REAL_METHODS);
+        BlobSourceInfo blob = new BlobSourceInfo("https://blobPath.blob.core.windows.net/container/blob1");
+        doReturn(Mono.error(new IngestionClientException("Blob storage is down"))).when(client).ingestFromBlobAsync(any(BlobSourceInfo.class),
+                any(IngestionProperties.class));
+
+        SourceIngestionResult result = client.ingestManyAsync(Flux.just(blob), ingestionProperties, 1).single().block();
+        assertFalse(result.isSuccess());
+        assertTrue(result.getError() instanceof IngestionClientException);
+        // The tuning setters do nothing, and a result set is ingested in a single blob
+        assertDoesNotThrow(() -> client.setMaxUploadBlocksInFlight(1));
+        assertDoesNotThrow(() -> client.setCompressionParallelism(1));
+        IngestionResult resultSetResult = new IngestionStatusResult(new IngestionStatus());
+        ResultSetSourceInfo resultSet = new ResultSetSourceInfo(mock(ResultSet.class));
+        doReturn(Mono.just(resultSetResult)).when(client).ingestFromResultSetAsync(resultSet, ingestionProperties);
+        StepVerifier.create(client.ingestFromResultSetInBlobsAsync(resultSet, ingestionProperties, 1)).expectNext(resultSetResult).verifyComplete();
+        assertThrows(UnsupportedOperationException.class, () -> IngestionSpool.setOn(client, null));
+    }
+
     @Test
     void ingestFromBlob_NullIngestionProperties_IllegalArgumentException() {
         BlobSourceInfo blobSourceInfo = new BlobSourceInfo("https://blobPath.blob.core.windows.net/container/blob");
@@ -320,14 +390,105 @@ class QueuedIngestClientTest {
             verify(ingestClientSpy, atLeastOnce()).ingestFromStreamAsync(argumentCaptor.capture(), any());
             InputStream ingestFromStreamReceivedStream = argumentCaptor.getValue().getStream();
 
-            int len = ingestFromStreamReceivedStream.available();
-            byte[] streamContent = new byte[len];
-            ingestFromStreamReceivedStream.read(streamContent, 0, len);
-            String stringContent = new String(streamContent);
+            // The rows are only read as the stream is
+            String stringContent = new String(ingestFromStreamReceivedStream.readAllBytes());
             assertEquals(stringContent, getSampleResultSetDump());
         }
     }
 
+    @Test
+    void ingestFromResultSetInBlobsAsync_RollsOverToANewBlobAtARowBoundary() throws Exception {
+        AzureStorageClient azureStorageClient = mock(AzureStorageClient.class);
+        List<String> blobs = new CopyOnWriteArrayList<>();
+        when(azureStorageClient.uploadStreamToBlob(any(), any(), any(), anyBoolean())).thenAnswer(invocation -> Mono.fromCallable(() -> {
+            InputStream stream = invocation.getArgument(0);
+            blobs.add(new String(stream.readAllBytes()));
+            assertTrue(invocation.getArgument(1, String.class).endsWith(".csv.gz"));
+            return 1L;
+        }));
+        when(azureStorageClient.postMessageToQueue(any(), anyString())).thenReturn(Mono.empty());
+
+        ResultSetSourceInfo resultSetSourceInfo = new ResultSetSourceInfo(getLargeResultSet(1000));
+        resultSetSourceInfo.setFetchSize(100);
+        try (QueuedIngestClient ingestClient = new QueuedIngestClientImpl(resourceManagerMock, azureStorageClient)) {
+            List<IngestionResult> results = ingestClient.ingestFromResultSetInBlobsAsync(resultSetSourceInfo, ingestionProperties, 2000)
+                    .collectList()
+                    .block();
+
+            assertTrue(blobs.size() > 1);
+            assertEquals(blobs.size(), results.size());
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 1000; i++) {
+                expected.append(i).append(",name").append(i).append(System.lineSeparator());
+            }
+            assertEquals(expected.toString(), String.join("", blobs));
+            for (int i = 0; i < blobs.size(); i++) {
+                assertTrue(blobs.get(i).endsWith(System.lineSeparator()));
+                assertTrue(i == blobs.size() - 1 || blobs.get(i).length() >= 2000);
+            }
+            // Every blob is a separate ingestion
+            Set<UUID> sourceIds = new HashSet<>();
+            for (IngestionResult result : results) {
+                sourceIds.add(result.getIngestionStatusCollection().get(0).getIngestionSourceId());
+            }
+            assertEquals(blobs.size(), sourceIds.size());
+        }
+
+        // A result set without rows uploads nothing
+        blobs.clear();
+        StepVerifier.create(queuedIngestClient.ingestFromResultSetInBlobsAsync(new ResultSetSourceInfo(getLargeResultSet(0)), ingestionProperties, 2000))
+                .verifyComplete();
+        assertTrue(blobs.isEmpty());
+    }
+
+    @Test
+    void ingestFromStream_UploadFails_RetriesFromTheStartOfTheStream() throws Exception {
+        AzureStorageClient azureStorageClient = mock(AzureStorageClient.class);
+        List<String> uploads = new CopyOnWriteArrayList<>();
+        when(azureStorageClient.uploadStreamToBlob(any(), any(), any(), anyBoolean())).thenAnswer(invocation -> Mono.fromCallable(() -> {
+            InputStream stream = invocation.getArgument(0);
+            if (uploads.isEmpty()) {
+                uploads.add(new String(stream.readNBytes(4)));
+                throw new IOException("Connection reset");
+            }
+            uploads.add(new String(stream.readAllBytes()));
+            return 12L;
+        }));
+        when(azureStorageClient.postMessageToQueue(any(), anyString())).thenReturn(Mono.empty());
+
+        try (QueuedIngestClient ingestClient = new QueuedIngestClientImpl(resourceManagerMock, azureStorageClient)) {
+            InputStream stream = new CloseableByteArrayInputStream("1,retried\n".getBytes(StandardCharsets.UTF_8));
+            IngestionResult result = ingestClient.ingestFromStream(new StreamSourceInfo(stream), ingestionProperties);
+
+            assertEquals(OperationStatus.Queued, result.getIngestionStatusCollection().get(0).status);
+            assertEquals(Arrays.asList("1,re", "1,retried\n"), uploads);
+        }
+    }
+
+    @Test
+    void ingestFromStream_StreamCantBeRewound_OnlyRetriesWhileNothingWasRead() throws Exception {
+        AzureStorageClient azureStorageClient = mock(AzureStorageClient.class);
+        AtomicInteger attempts = new AtomicInteger();
+        when(azureStorageClient.uploadStreamToBlob(any(), any(), any(), anyBoolean())).thenAnswer(invocation -> Mono.fromCallable(() -> {
+            InputStream stream = invocation.getArgument(0);
+            // The first attempt fails before reading, and the second one after reading
+            if (attempts.incrementAndGet() == 2) {
+                stream.readNBytes(4);
+            }
+            throw new IOException("Connection reset");
+        }));
+
+        try (QueuedIngestClient ingestClient = new QueuedIngestClientImpl(resourceManagerMock, azureStorageClient)) {
+            InputStream stream = new SequenceInputStream(Collections.enumeration(Collections.singletonList(
+                    new ByteArrayInputStream("1,retried\n".getBytes(StandardCharsets.UTF_8)))));
+            IngestionClientException e = assertThrows(IngestionClientException.class,
+                    () -> ingestClient.ingestFromStream(new StreamSourceInfo(stream), ingestionProperties));
+
+            assertTrue(e.getMessage().contains("Attempt 2 failed and can't be retried"));
+            assertEquals(2, attempts.get());
+        }
+    }
+
     private static Stream<Arguments> provideParametersForAutoCorrectEndpoint() {
         return Stream.of(
                 Arguments.of(true, "https://testendpoint.dev.kusto.windows.net", "https://ingest-testendpoint.dev.kusto.windows.net"),
@@ -389,6 +550,34 @@ class QueuedIngestClientTest {
         ingestClient.close();
     }
 
+    @Test
+    void ingestFromStream_WithSpool_SpoolsAndThenUploadsAndQueues(@TempDir Path directory) throws Exception {
+        VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+        IngestionSpool spool = new IngestionSpool(directory, 1024 * 1024, new MockTimeProvider(0), scheduler);
+        ((QueuedIngestClientImpl) queuedIngestClient).setSpool(spool);
+
+        UUID sourceId = UUID.randomUUID();
+        InputStream stream = new CloseableByteArrayInputStream("1,spooled\n".getBytes(StandardCharsets.UTF_8));
+        IngestionResult result = queuedIngestClient.ingestFromStream(new StreamSourceInfo(stream, false, sourceId), ingestionProperties);
+        assertEquals(OperationStatus.Queued, result.getIngestionStatusCollection().get(0).status);
+
+        // The ingestion is delivered in the background
+        scheduler.advanceTime();
+        assertEquals(0, spool.getPendingCount());
+        verify(azureStorageClientMock, atLeastOnce()).uploadStreamToBlob(any(), argThat(name -> name.contains("StreamUpload")), any(),
+                ArgumentMatchers.eq(false));
+        ArgumentCaptor<String> messages = ArgumentCaptor.forClass(String.class);
+        verify(azureStorageClientMock, atLeastOnce()).postMessageToQueue(any(), messages.capture());
+        JsonNode message = Utils.getObjectMapper().readTree(messages.getAllValues().stream()
+                .filter(value -> value.contains(sourceId.toString())).findFirst().orElseThrow());
+        assertTrue(message.get("blobPath").asText().contains("StreamUpload"));
+        assertEquals(10, message.get("rawDataSize").asLong());
+        assertEquals("identityToken", message.get("additionalProperties").get("authorizationContext").asText());
+
+        ((QueuedIngestClientImpl) queuedIngestClient).setSpool(null);
+        spool.close();
+    }
+
     private ResultSet getSampleResultSet() throws SQLException {
         // create a database connection
         Connection connection = DriverManager.getConnection("jdbc:sqlite:");
@@ -404,6 +593,17 @@ class QueuedIngestClientTest {
         return statement.executeQuery("select * from person");
     }
 
+    private ResultSet getLargeResultSet(int rows) throws SQLException {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:");
+        Statement statement = connection.createStatement();
+        statement.executeUpdate("create table person (id integer, name string)");
+        for (int i = 0; i < rows; i++) {
+            statement.executeUpdate("insert into person values(" + i + ", 'name" + i + "')");
+        }
+
+        return statement.executeQuery("select * from person order by id");
+    }
+
     private String getSampleResultSetDump() {
         return System.lineSeparator().equals("\n") ? "1,leo\n2,yui\n" : "1,leo\r\n2,yui\r\n";
     }
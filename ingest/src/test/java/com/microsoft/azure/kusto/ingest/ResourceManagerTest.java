@@ -283,7 +283,7 @@ class ResourceManagerTest {
 
         ResourceManager resourceManager = new ResourceManager(mockClient, null);
 
-        resourceManager.refreshIngestionResourcesTask.waitUntilRefreshedAtLeastOnce();
+        resourceManager.ingestionResources.refreshNow().block();
 
         assertEquals(3, attemptCount.get(), "Should have retried exactly 3 times");
         assertNotNull(resourceManager.getShuffledContainers(), "Should successfully get containers after retries");
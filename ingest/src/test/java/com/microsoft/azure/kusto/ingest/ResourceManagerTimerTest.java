@@ -5,37 +5,40 @@ import com.microsoft.azure.kusto.data.Client;
 import com.microsoft.azure.kusto.data.KustoOperationResult;
 import com.microsoft.azure.kusto.data.exceptions.DataClientException;
 import com.microsoft.azure.kusto.data.exceptions.DataServiceException;
-import com.microsoft.azure.kusto.data.exceptions.KustoServiceQueryError;
+import com.microsoft.azure.kusto.ingest.exceptions.IngestionServiceException;
 import org.junit.jupiter.api.Test;
 import org.mockito.stubbing.Answer;
 import reactor.core.publisher.Mono;
+import reactor.test.scheduler.VirtualTimeScheduler;
 
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Date;
+import java.time.Duration;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import static com.microsoft.azure.kusto.ingest.ResourceManagerTest.generateIngestionAuthTokenResult;
 import static com.microsoft.azure.kusto.ingest.ResourceManagerTest.generateIngestionResourcesResult;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 class ResourceManagerTimerTest {
+    private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+    private final List<Long> refreshTimestamps = new CopyOnWriteArrayList<>();
 
     @Test
-    void timerTest() throws DataClientException, DataServiceException, InterruptedException, KustoServiceQueryError, IOException {
+    void timerTest() throws DataClientException, DataServiceException {
         Client mockedClient = mock(Client.class);
-        final List<Date> refreshTimestamps = new ArrayList<>();
-        AtomicBoolean gotHere = new AtomicBoolean(false);
         when(mockedClient.executeMgmtAsync(Commands.IDENTITY_GET_COMMAND))
-                .thenReturn(Mono.just(generateIngestionAuthTokenResult()));
+                .thenAnswer(invocationOnMock -> Mono.just(generateIngestionAuthTokenResult()));
         when(mockedClient.executeMgmtAsync(Commands.INGESTION_RESOURCES_SHOW_COMMAND)).then((Answer<Mono<KustoOperationResult>>) invocationOnMock -> {
-            refreshTimestamps.add((new Date()));
-            gotHere.set(true);
+            refreshTimestamps.add(scheduler.now(TimeUnit.MILLISECONDS));
             if (refreshTimestamps.size() == 2) {
                 return Mono.error(new Exception());
             }
@@ -43,57 +46,62 @@ class ResourceManagerTimerTest {
             return Mono.just(generateIngestionResourcesResult());
         });
 
-        ResourceManager resourceManager = new ResourceManager(mockedClient, 1000L, 500L, null);
-        assertTrue(resourceManager.refreshIngestionResourcesTask.refreshedAtLeastOnce.isEmpty());
-        assertTrue(resourceManager.refreshIngestionAuthTokenTask.refreshedAtLeastOnce.isEmpty());
-
-        int runtime = 0;
-        while (!gotHere.get() && runtime < 5000) {
-            Thread.sleep(100);
-            runtime += 100;
-        }
-
-        assertTrue(resourceManager.refreshIngestionResourcesTask.waitUntilRefreshedAtLeastOnce());
-        assertTrue(resourceManager.refreshIngestionAuthTokenTask.waitUntilRefreshedAtLeastOnce());
+        ResourceManager resourceManager = new ResourceManager(mockedClient, 1000L, 500L, null, scheduler);
         assertEquals(1, refreshTimestamps.size());
-        Thread.sleep(1100);
+        ResourceManager.IngestionResourceSet firstResources = resourceManager.ingestionResources.get();
+        assertNotNull(firstResources);
+        assertEquals("AuthenticationToken", resourceManager.getIdentityTokenAsync().block());
+
+        // A failed refresh keeps the resources that were loaded before, and is retried sooner
+        scheduler.advanceTimeBy(Duration.ofMillis(1000));
         assertEquals(2, refreshTimestamps.size());
-        Thread.sleep(600);
+        assertSame(firstResources, resourceManager.ingestionResources.get());
+        assertEquals(1, resourceManager.ingestionResources.getConsecutiveFailures());
+        scheduler.advanceTimeBy(Duration.ofMillis(500));
         assertEquals(3, refreshTimestamps.size());
+        assertTrue(refreshTimestamps.get(2) - refreshTimestamps.get(1) >= 250);
+        assertNotSame(firstResources, resourceManager.ingestionResources.get());
+        assertEquals(0, resourceManager.ingestionResources.getConsecutiveFailures());
+
         resourceManager.close();
+        scheduler.advanceTimeBy(Duration.ofMillis(5000));
+        assertEquals(3, refreshTimestamps.size());
     }
 
     @Test
-    void timerTestFailureGettingResources() throws DataClientException, DataServiceException, InterruptedException {
+    void timerTestFailureGettingResources() throws DataClientException, DataServiceException {
         Client mockedClient = mock(Client.class);
-        final List<Date> refreshTimestamps = new ArrayList<>();
-        AtomicBoolean gotHere = new AtomicBoolean(false);
         when(mockedClient.executeMgmtAsync(Commands.IDENTITY_GET_COMMAND))
                 .thenReturn(Mono.error(new RuntimeException(BaseClient.createExceptionFromResponse("https://sample.kusto.windows.net", null, new Exception(), "error"))));
         when(mockedClient.executeMgmtAsync(Commands.INGESTION_RESOURCES_SHOW_COMMAND))
                 .thenAnswer(invocation -> {
-                    refreshTimestamps.add(new Date());
-                    gotHere.set(true);
+                    refreshTimestamps.add(scheduler.now(TimeUnit.MILLISECONDS));
                     return Mono.error(new RuntimeException(BaseClient.createExceptionFromResponse("https://sample.kusto.windows.net", null, new Exception(), "error")));
                 });
 
-        ResourceManager resourceManager = new ResourceManager(mockedClient, 1000L, 500L, null);
-        int runtime = 0;
-        while (!gotHere.get() && runtime < 5000) {
-            Thread.sleep(100);
-            runtime += 100;
-        }
-
-        assertTrue(resourceManager.refreshIngestionResourcesTask.refreshedAtLeastOnce.isEmpty());
-        assertTrue(resourceManager.refreshIngestionAuthTokenTask.refreshedAtLeastOnce.isEmpty());
+        ResourceManager resourceManager = new ResourceManager(mockedClient, 1000L, 500L, null, scheduler);
         assertEquals(1, refreshTimestamps.size());
-        Thread.sleep(600);
-        assertEquals(2, refreshTimestamps.size());
-        Thread.sleep(600);
-        assertEquals(3, refreshTimestamps.size());
-        assertNull(resourceManager.refreshIngestionResourcesTask.waitUntilRefreshedAtLeastOnce(1));
-        assertNull(resourceManager.refreshIngestionAuthTokenTask.waitUntilRefreshedAtLeastOnce(1));
+        assertNull(resourceManager.ingestionResources.get());
+        assertNull(resourceManager.identityToken.get());
+
+        // The delay between failed refreshes doubles, up to the default refresh time, and is shortened by up to half by the jitter
+        scheduler.advanceTimeBy(Duration.ofMillis(2500));
+        assertTrue(refreshTimestamps.size() >= 4);
+        assertGapBetween(refreshTimestamps.get(0), refreshTimestamps.get(1), 250, 500);
+        assertGapBetween(refreshTimestamps.get(1), refreshTimestamps.get(2), 500, 1000);
+        assertGapBetween(refreshTimestamps.get(2), refreshTimestamps.get(3), 500, 1000);
+
+        // Getting a resource that was never loaded refreshes on demand, and fails with it
+        int refreshes = refreshTimestamps.size();
+        IngestionServiceException e = assertThrows(IngestionServiceException.class, resourceManager::getShuffledContainers);
+        assertTrue(e.getMessage().contains("because refresh job failed"));
+        assertEquals(refreshes + 1, refreshTimestamps.size());
+        assertThrows(IngestionServiceException.class, resourceManager::getIdentityToken);
 
         resourceManager.close();
     }
+
+    private static void assertGapBetween(long first, long second, long min, long max) {
+        assertTrue(second - first >= min && second - first <= max, "Expected a gap of " + min + " to " + max + "ms, but was " + (second - first));
+    }
 }
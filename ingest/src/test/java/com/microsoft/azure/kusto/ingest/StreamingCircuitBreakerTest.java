@@ -0,0 +1,58 @@
+package com.microsoft.azure.kusto.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingCircuitBreakerTest {
+    private final AtomicLong now = new AtomicLong(1000);
+    private final StreamingCircuitBreaker breaker = new StreamingCircuitBreaker(2, Duration.ofSeconds(10), now::get);
+
+    @Test
+    void opensAfterConsecutiveFailuresAndProbesAfterTheOpenDuration() {
+        breaker.onStreamingFailed("db", "table");
+        breaker.onStreamingSucceeded("db", "table");
+        breaker.onStreamingFailed("db", "table");
+        assertTrue(breaker.allowStreaming("db", "table"));
+
+        breaker.onStreamingFailed("db", "table");
+        assertEquals(StreamingCircuitBreaker.State.OPEN, breaker.getState("db", "table"));
+        assertFalse(breaker.allowStreaming("db", "table"));
+        // Other tables are not affected
+        assertTrue(breaker.allowStreaming("db", "other"));
+
+        // A single ingestion probes streaming once the circuit was open long enough, and a failed probe opens it again
+        now.addAndGet(10_000);
+        assertTrue(breaker.allowStreaming("db", "table"));
+        assertEquals(StreamingCircuitBreaker.State.HALF_OPEN, breaker.getState("db", "table"));
+        assertFalse(breaker.allowStreaming("db", "table"));
+        breaker.onStreamingFailed("db", "table");
+        assertEquals(StreamingCircuitBreaker.State.OPEN, breaker.getState("db", "table"));
+        assertFalse(breaker.allowStreaming("db", "table"));
+
+        // A successful probe closes it
+        now.addAndGet(10_000);
+        assertTrue(breaker.allowStreaming("db", "table"));
+        breaker.onStreamingSucceeded("db", "table");
+        assertEquals(StreamingCircuitBreaker.State.CLOSED, breaker.getState("db", "table"));
+        assertTrue(breaker.allowStreaming("db", "table"));
+    }
+
+    @Test
+    void replacesAProbeThatNeverReportedBack() {
+        breaker.onStreamingFailed("db", "table");
+        breaker.onStreamingFailed("db", "table");
+        now.addAndGet(10_000);
+        assertTrue(breaker.allowStreaming("db", "table"));
+
+        now.addAndGet(9_999);
+        assertFalse(breaker.allowStreaming("db", "table"));
+        now.addAndGet(1);
+        assertTrue(breaker.allowStreaming("db", "table"));
+    }
+}
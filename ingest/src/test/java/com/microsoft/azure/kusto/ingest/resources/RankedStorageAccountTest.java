@@ -3,6 +3,9 @@ package com.microsoft.azure.kusto.ingest.resources;
 import com.microsoft.azure.kusto.ingest.MockTimeProvider;
 import org.junit.jupiter.api.Test;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class RankedStorageAccountTest {
@@ -139,4 +142,59 @@ class RankedStorageAccountTest {
         rank = account.getRank();
         assertEquals(1.0, rank, 0.001); // it would be 0.5 without the override
     }
+
+    @Test
+    public void testConcurrentResults() throws InterruptedException {
+        // Rationale: To ensure that results added by many threads at once are all counted
+        MockTimeProvider timeProvider = new MockTimeProvider(System.currentTimeMillis());
+        RankedStorageAccount account = new RankedStorageAccount("testAccount", 5, 10000, timeProvider);
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            boolean success = i % 4 != 0;
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    account.addResult(success);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(80000, account.getTotalCount());
+        assertEquals(0.75, account.getRank(), 0.001);
+    }
+
+    @Test
+    public void testRankWhileResultsSkipEveryBucket() throws InterruptedException {
+        // Rationale: To ensure that ranks read while results move past all the buckets only count the buckets since then
+        MockTimeProvider timeProvider = new MockTimeProvider(0);
+        RankedStorageAccount account = new RankedStorageAccount("testAccount", 5, 10, timeProvider);
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    double rank = account.getRank();
+                    assertTrue(rank >= 0 && rank <= 1);
+                }
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 10000; i++) {
+            timeProvider.setCurrentTimeMillis(i * 100L);
+            account.addResult(i % 2 == 0);
+        }
+        done.set(true);
+        reader.join();
+
+        assertNull(error.get());
+        // Only the last result is within the buckets
+        assertEquals(0.0, account.getRank(), 0.001);
+    }
 }
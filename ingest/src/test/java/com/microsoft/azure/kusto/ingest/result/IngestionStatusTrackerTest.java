@@ -0,0 +1,174 @@
+package com.microsoft.azure.kusto.ingest.result;
+
+import com.azure.core.http.HttpHeaders;
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.rest.PagedFlux;
+import com.azure.core.http.rest.PagedResponseBase;
+import com.azure.data.tables.TableAsyncClient;
+import com.azure.data.tables.models.ListEntitiesOptions;
+import com.azure.data.tables.models.TableEntity;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IngestionStatusTrackerTest {
+    private static final Pattern PARTITION_KEY = Pattern.compile("PartitionKey eq '([^']*)'");
+
+    private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+    private final Map<String, String> rows = new ConcurrentHashMap<>();
+    // The number of keys of every query that was sent
+    private final List<Integer> queries = new CopyOnWriteArrayList<>();
+    private final TableAsyncClient tableAsyncClient = mock(TableAsyncClient.class);
+
+    IngestionStatusTrackerTest() {
+        when(tableAsyncClient.listEntities(any(ListEntitiesOptions.class))).thenAnswer(invocation -> {
+            ListEntitiesOptions options = invocation.getArgument(0);
+            Matcher matcher = PARTITION_KEY.matcher(options.getFilter());
+            List<TableEntity> entities = new ArrayList<>();
+            int keys = 0;
+            while (matcher.find()) {
+                keys++;
+                String status = rows.get(matcher.group(1));
+                if (status != null) {
+                    entities.add(new TableEntity(matcher.group(1), matcher.group(1)).addProperty("Status", status));
+                }
+            }
+            queries.add(keys);
+            return new PagedFlux<>(() -> Mono.just(new PagedResponseBase<Void, TableEntity>(new HttpRequest(HttpMethod.GET, "https://table"), 200,
+                    new HttpHeaders(), entities, null, null)));
+        });
+    }
+
+    @Test
+    void pollsTheRowsOfATableTogetherAndBacksOff() {
+        IngestionStatusTracker tracker = new IngestionStatusTracker(Duration.ofSeconds(10), Duration.ofSeconds(40), scheduler);
+        List<IngestionStatus> completions = new CopyOnWriteArrayList<>();
+        tracker.completions().subscribe(completions::add);
+
+        for (int i = 0; i < 20; i++) {
+            rows.put("id-" + i, OperationStatus.Pending.name());
+            tracker.track(descriptor("id-" + i)).subscribe();
+        }
+        assertEquals(20, tracker.getTrackedCount());
+
+        scheduler.advanceTimeBy(Duration.ofSeconds(9));
+        assertTrue(queries.isEmpty());
+        scheduler.advanceTimeBy(Duration.ofSeconds(1));
+        assertEquals(List.of(15, 5), queries);
+
+        // Still pending, so the next poll is 20 seconds later
+        rows.put("id-3", OperationStatus.Succeeded.name());
+        rows.put("id-17", OperationStatus.Failed.name());
+        scheduler.advanceTimeBy(Duration.ofSeconds(19));
+        assertEquals(2, queries.size());
+        scheduler.advanceTimeBy(Duration.ofSeconds(1));
+        assertEquals(4, queries.size());
+        assertEquals(List.of(OperationStatus.Succeeded, OperationStatus.Failed), sortedStatuses(completions));
+        assertEquals(18, tracker.getTrackedCount());
+
+        // The interval is capped, and permanent statuses are no longer polled
+        scheduler.advanceTimeBy(Duration.ofSeconds(40));
+        assertEquals(List.of(15, 5, 15, 5, 15, 3), queries);
+        assertEquals(2, completions.size());
+    }
+
+    @Test
+    void completesTheStatusOfEachTrackedIngestion() {
+        IngestionStatusTracker tracker = new IngestionStatusTracker(Duration.ofSeconds(1), Duration.ofSeconds(1), scheduler);
+        rows.put("a", OperationStatus.Pending.name());
+        Mono<IngestionStatus> status = tracker.track(descriptor("a")).cache();
+        status.subscribe();
+        // Tracking the same row again shares the result
+        Mono<IngestionStatus> again = tracker.track(descriptor("a")).cache();
+        again.subscribe();
+        assertEquals(1, tracker.getTrackedCount());
+
+        scheduler.advanceTimeBy(Duration.ofSeconds(5));
+        rows.put("a", OperationStatus.PartiallySucceeded.name());
+        scheduler.advanceTimeBy(Duration.ofSeconds(1));
+        assertEquals(OperationStatus.PartiallySucceeded, status.block().status);
+        assertEquals(OperationStatus.PartiallySucceeded, again.block().status);
+
+        // Closing drops the ingestions that are still tracked
+        Mono<IngestionStatus> dropped = tracker.track(descriptor("b")).cache();
+        dropped.subscribe();
+        tracker.close();
+        assertNull(dropped.block());
+        assertEquals(0, tracker.getTrackedCount());
+        // Statuses reached before the completions were asked for aren't kept
+        assertNull(tracker.completions().blockLast());
+    }
+
+    @Test
+    void buffersCompletionsForLateAndSlowSubscribers() {
+        IngestionStatusTracker tracker = new IngestionStatusTracker(Duration.ofSeconds(1), Duration.ofSeconds(1), scheduler);
+        Flux<IngestionStatus> completions = tracker.completions();
+        rows.put("a", OperationStatus.Succeeded.name());
+        tracker.track(descriptor("a")).subscribe();
+        scheduler.advanceTimeBy(Duration.ofSeconds(1));
+        assertEquals(0, tracker.getTrackedCount());
+
+        // The first subscriber gets the statuses reached before it subscribed, and a subscriber without demand gets them once it requests them
+        List<IngestionStatus> received = new CopyOnWriteArrayList<>();
+        BaseSubscriber<IngestionStatus> subscriber = new BaseSubscriber<IngestionStatus>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+            }
+
+            @Override
+            protected void hookOnNext(IngestionStatus value) {
+                received.add(value);
+            }
+        };
+        completions.subscribe(subscriber);
+        rows.put("b", OperationStatus.Failed.name());
+        tracker.track(descriptor("b")).subscribe();
+        scheduler.advanceTimeBy(Duration.ofSeconds(1));
+        assertTrue(received.isEmpty());
+
+        subscriber.request(2);
+        assertEquals(List.of(OperationStatus.Succeeded, OperationStatus.Failed), sortedStatuses(received));
+        tracker.close();
+    }
+
+    @Test
+    void escapesKeysInFilters() {
+        IngestionStatusTracker.TrackedStatus first = new IngestionStatusTracker.TrackedStatus(descriptor("a'b"), 0, 0);
+        IngestionStatusTracker.TrackedStatus second = new IngestionStatusTracker.TrackedStatus(descriptor("c"), 0, 0);
+        assertEquals("PartitionKey eq 'a''b' or PartitionKey eq 'c'", IngestionStatusTracker.createFilter(List.of(first, second)));
+    }
+
+    private static List<OperationStatus> sortedStatuses(List<IngestionStatus> statuses) {
+        return statuses.stream().map(status -> status.status).sorted().collect(Collectors.toList());
+    }
+
+    private IngestionStatusInTableDescription descriptor(String id) {
+        IngestionStatusInTableDescription descriptor = new IngestionStatusInTableDescription();
+        descriptor.setTableConnectionString("https://account.table.core.windows.net/status");
+        descriptor.setPartitionKey(id);
+        descriptor.setRowKey(id);
+        descriptor.setAsyncTableClient(tableAsyncClient);
+        return descriptor;
+    }
+}
@@ -0,0 +1,101 @@
+// Copyright (c) Microsoft Corporation.
+// Licensed under the MIT License.
+
+package com.microsoft.azure.kusto.ingest.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IngestionUtilsTest {
+    @Test
+    void readStreamToBlocks_ReusesPooledBuffers() {
+        byte[] data = new byte[100_000];
+        new Random(42).nextBytes(data);
+        Queue<ByteBuffer> pool = new ArrayDeque<>();
+        Set<ByteBuffer> buffers = Collections.newSetFromMap(new IdentityHashMap<>());
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        List<Integer> blockSizes = IngestionUtils.readStreamToBlocks(new ByteArrayInputStream(data), false, 8192, pool)
+                .map(block -> {
+                    buffers.add(block);
+                    int size = block.remaining();
+                    content.write(block.array(), block.position(), size);
+                    pool.offer(block);
+                    return size;
+                })
+                .collectList()
+                .block();
+
+        assertArrayEquals(data, content.toByteArray());
+        assertEquals(13, blockSizes.size());
+        assertTrue(blockSizes.subList(0, 12).stream().allMatch(size -> size == 8192));
+        assertEquals(1, buffers.size());
+    }
+
+    @Test
+    void readStreamToBlocks_ShortStreamDoesNotTakeAWholeBlock() {
+        byte[] data = new byte[100];
+        ByteBuffer block = IngestionUtils.readStreamToBlocks(new ByteArrayInputStream(data), false, 4 * 1024 * 1024, new ArrayDeque<>()).single().block();
+
+        assertEquals(100, block.remaining());
+        assertTrue(block.capacity() < 4 * 1024 * 1024);
+    }
+
+    @Test
+    void compressStreamInParallel_ConcatenatesGzipMembersInOrder() throws IOException {
+        byte[] data = new byte[100_000];
+        new Random(42).nextBytes(data);
+
+        List<ByteBuffer> members = IngestionUtils.compressStreamInParallel(new ByteArrayInputStream(data), false, 8192, 4, Schedulers.parallel())
+                .collectList()
+                .block();
+
+        assertEquals(13, members.size());
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        for (ByteBuffer member : members) {
+            compressed.write(member.array(), member.position(), member.remaining());
+        }
+        try (InputStream uncompressed = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            assertArrayEquals(data, uncompressed.readAllBytes());
+        }
+    }
+
+    @Test
+    void mapFileToBlocks_MapsTheFileInBlocks(@TempDir Path directory) throws IOException {
+        byte[] data = new byte[100_000];
+        new Random(42).nextBytes(data);
+        Path file = directory.resolve("data.csv");
+        Files.write(file, data);
+
+        List<ByteBuffer> mappedBlocks = IngestionUtils.mapFileToBlocks(file, 8192).collectList().block();
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (ByteBuffer block : mappedBlocks) {
+            byte[] bytes = new byte[block.remaining()];
+            block.get(bytes);
+            content.write(bytes);
+        }
+        assertEquals(13, mappedBlocks.size());
+        assertArrayEquals(data, content.toByteArray());
+    }
+}